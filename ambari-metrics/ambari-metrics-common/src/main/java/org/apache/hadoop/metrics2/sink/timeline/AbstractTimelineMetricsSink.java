@@ -29,6 +29,8 @@ import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class AbstractTimelineMetricsSink {
   public static final String TAGS_FOR_PREFIX_PROPERTY_PREFIX = "tagsForPrefix.";
@@ -37,10 +39,15 @@ public abstract class AbstractTimelineMetricsSink {
   public static final String METRICS_POST_TIMEOUT_SECONDS = "timeout";
   public static final String COLLECTOR_HOST_PROPERTY = "collector";
   public static final String COLLECTOR_PORT_PROPERTY = "port";
+  public static final String METRICS_ASYNC_EMIT = "asyncEmit";
+  public static final String METRICS_EMIT_BUFFER_SIZE = "emitBufferSize";
+  public static final String METRICS_EMIT_MAX_RETRIES = "emitMaxRetries";
+  public static final String METRICS_EMIT_COMPRESSION = "emitCompression";
 
   protected static final int DEFAULT_POST_TIMEOUT_SECONDS = 10;
   protected final Log LOG;
   private HttpClient httpClient = new HttpClient();
+  private volatile TimelineMetricsEmitter emitter;
 
   protected static ObjectMapper mapper;
 
@@ -59,13 +66,20 @@ public abstract class AbstractTimelineMetricsSink {
   }
 
   protected void emitMetrics(TimelineMetrics metrics) throws IOException {
+    TimelineMetricsEmitter emitter = this.emitter;
+    if (emitter != null) {
+      emitter.emit(metrics);
+      return;
+    }
+
     String connectUrl = getCollectorUri();
+    PostMethod postMethod = null;
     try {
       String jsonData = mapper.writeValueAsString(metrics);
 
       StringRequestEntity requestEntity = new StringRequestEntity(jsonData, "application/json", "UTF-8");
 
-      PostMethod postMethod = new PostMethod(connectUrl);
+      postMethod = new PostMethod(connectUrl);
       postMethod.setRequestEntity(requestEntity);
       int statusCode = httpClient.executeMethod(postMethod);
 
@@ -77,9 +91,69 @@ public abstract class AbstractTimelineMetricsSink {
       }
     } catch (ConnectException e) {
       throw new UnableToConnectException(e).setConnectUrl(connectUrl);
+    } finally {
+      if (postMethod != null) {
+        postMethod.releaseConnection();
+      }
     }
   }
 
+  /**
+   * Send metrics from a background thread, instead of posting them on the
+   * thread calling {@link #emitMetrics(TimelineMetrics)}.
+   *
+   * @param collectorUris collectors to fail over across
+   */
+  protected synchronized void startEmitter(List<String> collectorUris,
+                                           int bufferSize, int maxRetries,
+                                           boolean compress) {
+    stopEmitter();
+    emitter = new TimelineMetricsEmitter(collectorUris, getTimeoutSeconds(),
+      bufferSize, maxRetries, compress);
+    emitter.start();
+  }
+
+  /**
+   * Send the buffered metrics and post metrics on the calling thread again.
+   */
+  protected synchronized void stopEmitter() {
+    if (emitter != null) {
+      emitter.stop();
+      emitter = null;
+    }
+  }
+
+  /**
+   * @return the background emitter, or null if metrics are posted by the
+   * calling thread
+   */
+  public TimelineMetricsEmitter getEmitter() {
+    return emitter;
+  }
+
+  /**
+   * @param collectorHosts comma separated collector hosts
+   * @return metrics endpoint of every collector host, at least one
+   */
+  protected static List<String> getCollectorUris(String collectorHosts, String port) {
+    List<String> collectorUris = new ArrayList<String>();
+    if (collectorHosts != null) {
+      for (String host : collectorHosts.split(",")) {
+        if (!host.trim().isEmpty()) {
+          collectorUris.add(buildCollectorUri(host.trim(), port));
+        }
+      }
+    }
+    if (collectorUris.isEmpty()) {
+      collectorUris.add(buildCollectorUri(collectorHosts, port));
+    }
+    return collectorUris;
+  }
+
+  protected static String buildCollectorUri(String host, Object port) {
+    return "http://" + host + ":" + port + "/ws/v1/timeline/metrics";
+  }
+
   public void setHttpClient(HttpClient httpClient) {
     this.httpClient = httpClient;
   }
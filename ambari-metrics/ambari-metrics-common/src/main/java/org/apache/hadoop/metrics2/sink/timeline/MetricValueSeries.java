@@ -0,0 +1,398 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Datapoints of a metric kept sorted by timestamp in parallel primitive
+ * arrays, instead of the two boxed objects and the tree entry per datapoint
+ * of a TreeMap. Sinks mostly append datapoints in time order, which is
+ * amortized O(1); out of order datapoints are inserted in place.
+ *
+ * This is a regular {@link Map}, so it serializes to the same JSON as the
+ * TreeMap it replaces. Null values are supported for compatibility with
+ * padded series; {@link #getValue(int)} returns NaN for them.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class MetricValueSeries extends AbstractMap<Long, Double> {
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  // A NaN with a payload that arithmetic never produces, marking null values
+  private static final long NULL_VALUE_BITS = 0x7ff80000deadbeefL;
+
+  private long[] timestamps;
+  private double[] values;
+  private int size;
+  private int modCount;
+  private transient Set<Map.Entry<Long, Double>> entrySet;
+
+  public MetricValueSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public MetricValueSeries(int initialCapacity) {
+    timestamps = new long[Math.max(1, initialCapacity)];
+    values = new double[timestamps.length];
+  }
+
+  public MetricValueSeries(Map<Long, Double> metricValues) {
+    this(metricValues.size());
+    putAll(metricValues);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public long getTimestamp(int index) {
+    checkIndex(index);
+    return timestamps[index];
+  }
+
+  /**
+   * @return the value at the given position, or NaN for a null value
+   */
+  public double getValue(int index) {
+    checkIndex(index);
+    return values[index];
+  }
+
+  public boolean isNullValue(int index) {
+    checkIndex(index);
+    return isNull(values[index]);
+  }
+
+  public long getFirstTimestamp() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return timestamps[0];
+  }
+
+  public long getLastTimestamp() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return timestamps[size - 1];
+  }
+
+  public boolean hasNullValues() {
+    for (int i = 0; i < size; i++) {
+      if (isNull(values[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Add a datapoint, replacing the value of an existing one with the same
+   * timestamp.
+   */
+  public void putValue(long timestamp, double value) {
+    if (size == 0 || timestamp > timestamps[size - 1]) {
+      ensureCapacity(size + 1);
+      timestamps[size] = timestamp;
+      values[size] = value;
+      size++;
+      modCount++;
+      return;
+    }
+
+    int index = indexOf(timestamp);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+
+    int insertAt = -(index + 1);
+    ensureCapacity(size + 1);
+    System.arraycopy(timestamps, insertAt, timestamps, insertAt + 1, size - insertAt);
+    System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+    timestamps[insertAt] = timestamp;
+    values[insertAt] = value;
+    size++;
+    modCount++;
+  }
+
+  @Override
+  public Double put(Long timestamp, Double value) {
+    int index = indexOf(timestamp);
+    Double previous = index >= 0 ? toObject(values[index]) : null;
+    putValue(timestamp, toPrimitive(value));
+    return previous;
+  }
+
+  @Override
+  public void putAll(Map<? extends Long, ? extends Double> metricValues) {
+    if (metricValues instanceof MetricValueSeries) {
+      merge((MetricValueSeries) metricValues);
+    } else {
+      ensureCapacity(size + metricValues.size());
+      for (Map.Entry<? extends Long, ? extends Double> entry : metricValues.entrySet()) {
+        putValue(entry.getKey(), toPrimitive(entry.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Merge two sorted series in a single pass; values of the other series
+   * win on equal timestamps.
+   */
+  private void merge(MetricValueSeries other) {
+    if (other.size == 0) {
+      return;
+    }
+    if (size == 0 || other.timestamps[0] > timestamps[size - 1]) {
+      ensureCapacity(size + other.size);
+      System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+      System.arraycopy(other.values, 0, values, size, other.size);
+      size += other.size;
+      modCount++;
+      return;
+    }
+
+    long[] mergedTimestamps = new long[size + other.size];
+    double[] mergedValues = new double[mergedTimestamps.length];
+    int i = 0, j = 0, k = 0;
+    while (i < size && j < other.size) {
+      if (timestamps[i] < other.timestamps[j]) {
+        mergedTimestamps[k] = timestamps[i];
+        mergedValues[k++] = values[i++];
+      } else {
+        if (timestamps[i] == other.timestamps[j]) {
+          i++;
+        }
+        mergedTimestamps[k] = other.timestamps[j];
+        mergedValues[k++] = other.values[j++];
+      }
+    }
+    while (i < size) {
+      mergedTimestamps[k] = timestamps[i];
+      mergedValues[k++] = values[i++];
+    }
+    while (j < other.size) {
+      mergedTimestamps[k] = other.timestamps[j];
+      mergedValues[k++] = other.values[j++];
+    }
+    timestamps = mergedTimestamps;
+    values = mergedValues;
+    size = k;
+    modCount++;
+  }
+
+  @Override
+  public Double get(Object key) {
+    if (!(key instanceof Long)) {
+      return null;
+    }
+    int index = indexOf((Long) key);
+    return index >= 0 ? toObject(values[index]) : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Long && indexOf((Long) key) >= 0;
+  }
+
+  @Override
+  public Double remove(Object key) {
+    if (!(key instanceof Long)) {
+      return null;
+    }
+    int index = indexOf((Long) key);
+    if (index < 0) {
+      return null;
+    }
+    Double previous = toObject(values[index]);
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Set<Map.Entry<Long, Double>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Map.Entry<Long, Double>>() {
+        @Override
+        public Iterator<Map.Entry<Long, Double>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+
+        @Override
+        public void clear() {
+          MetricValueSeries.this.clear();
+        }
+      };
+    }
+    return entrySet;
+  }
+
+  private int indexOf(long timestamp) {
+    return Arrays.binarySearch(timestamps, 0, size, timestamp);
+  }
+
+  private void removeAt(int index) {
+    System.arraycopy(timestamps, index + 1, timestamps, index, size - index - 1);
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    size--;
+    modCount++;
+  }
+
+  /**
+   * Reserve room for the given number of datapoints.
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > timestamps.length) {
+      int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+      timestamps = Arrays.copyOf(timestamps, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private static boolean isNull(double value) {
+    return Double.doubleToRawLongBits(value) == NULL_VALUE_BITS;
+  }
+
+  private static double toPrimitive(Double value) {
+    return value == null ? Double.longBitsToDouble(NULL_VALUE_BITS) : value;
+  }
+
+  private static Double toObject(double value) {
+    return isNull(value) ? null : Double.valueOf(value);
+  }
+
+  private class EntryIterator implements Iterator<Map.Entry<Long, Double>> {
+    private int next = 0;
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public Map.Entry<Long, Double> next() {
+      if (expectedModCount != modCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      return new Entry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (expectedModCount != modCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  private class Entry implements Map.Entry<Long, Double> {
+    private final int index;
+
+    Entry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public Long getKey() {
+      return timestamps[index];
+    }
+
+    @Override
+    public Double getValue() {
+      return toObject(values[index]);
+    }
+
+    @Override
+    public Double setValue(Double value) {
+      Double previous = getValue();
+      values[index] = toPrimitive(value);
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Double value = getValue();
+      return getKey().equals(e.getKey()) &&
+        (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Double value = getValue();
+      return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
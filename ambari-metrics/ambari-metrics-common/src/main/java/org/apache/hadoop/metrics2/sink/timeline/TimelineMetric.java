@@ -18,7 +18,6 @@
 package org.apache.hadoop.metrics2.sink.timeline;
 
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -41,7 +40,7 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
   private long timestamp;
   private long startTime;
   private String type;
-  private Map<Long, Double> metricValues = new TreeMap<Long, Double>();
+  private MetricValueSeries metricValues = new MetricValueSeries();
 
   @XmlElement(name = "metricname")
   public String getMetricName() {
@@ -111,8 +110,17 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     return metricValues;
   }
 
+  /**
+   * Replace the datapoints of this metric. Values which are not already a
+   * {@link MetricValueSeries} are copied into one, so later changes to the
+   * given map are not reflected.
+   */
   public void setMetricValues(Map<Long, Double> metricValues) {
-    this.metricValues = metricValues;
+    if (metricValues instanceof MetricValueSeries) {
+      this.metricValues = (MetricValueSeries) metricValues;
+    } else {
+      this.metricValues = new MetricValueSeries(metricValues);
+    }
   }
 
   public void addMetricValues(Map<Long, Double> metricValues) {
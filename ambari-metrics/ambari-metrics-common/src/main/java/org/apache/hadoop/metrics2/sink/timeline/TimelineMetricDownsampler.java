@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Reduces a series to at most a given number of datapoints, so that a
+ * graph of a long time range is not shipped and rendered at the full
+ * resolution of the store.
+ *
+ * {@link Method#LTTB} (largest triangle three buckets) keeps actual
+ * datapoints, picking the one per bucket that best preserves the visual
+ * shape of the series, including its peaks. The other methods replace every
+ * bucket of equal duration by the average, minimum or maximum of its values.
+ * Null values are ignored.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class TimelineMetricDownsampler {
+
+  public enum Method {
+    LTTB,
+    AVG,
+    MIN,
+    MAX;
+
+    /**
+     * @return the method of the given name, ignoring case
+     * @throws IllegalArgumentException for unknown methods
+     */
+    public static Method getMethod(String name) {
+      return valueOf(name.trim().toUpperCase());
+    }
+  }
+
+  private TimelineMetricDownsampler() {
+  }
+
+  /**
+   * Downsample the datapoints of every metric to at most maxPoints.
+   */
+  public static void downsample(TimelineMetrics metrics, int maxPoints,
+                                Method method) {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      downsample(metric, maxPoints, method);
+    }
+  }
+
+  public static void downsample(TimelineMetric metric, int maxPoints,
+                                Method method) {
+    Map<Long, Double> metricValues = metric.getMetricValues();
+    if (metricValues != null && metricValues.size() > maxPoints) {
+      metric.setMetricValues(downsample(metricValues, maxPoints, method));
+    }
+  }
+
+  /**
+   * @param metricValues datapoints sorted by timestamp
+   * @return the datapoints themselves if there are no more than maxPoints,
+   * otherwise a new series of at most maxPoints
+   */
+  public static Map<Long, Double> downsample(Map<Long, Double> metricValues,
+                                             int maxPoints, Method method) {
+    if (maxPoints <= 0) {
+      throw new IllegalArgumentException("maxPoints should be positive: " + maxPoints);
+    }
+    if (metricValues.size() <= maxPoints) {
+      return metricValues;
+    }
+
+    MetricValueSeries series = toNonNullSeries(metricValues);
+    if (series.size() <= maxPoints) {
+      return series;
+    }
+
+    switch (method) {
+      case LTTB:
+        return largestTriangleThreeBuckets(series, maxPoints);
+      default:
+        return aggregateBuckets(series, maxPoints, method);
+    }
+  }
+
+  private static MetricValueSeries toNonNullSeries(Map<Long, Double> metricValues) {
+    MetricValueSeries series = new MetricValueSeries(metricValues.size());
+    for (Map.Entry<Long, Double> value : metricValues.entrySet()) {
+      if (value.getValue() != null && !value.getValue().isNaN()) {
+        series.putValue(value.getKey(), value.getValue());
+      }
+    }
+    return series;
+  }
+
+  /**
+   * Keeps the first and last datapoints and splits the rest into maxPoints - 2
+   * buckets of equal count. Of each bucket, the datapoint forming the largest
+   * triangle with the one kept from the previous bucket and the average of
+   * the next bucket is kept.
+   */
+  private static MetricValueSeries largestTriangleThreeBuckets(
+      MetricValueSeries series, int maxPoints) {
+    int size = series.size();
+    MetricValueSeries sampled = new MetricValueSeries(maxPoints);
+    if (maxPoints < 3) {
+      sampled.putValue(series.getFirstTimestamp(), series.getValue(0));
+      if (maxPoints == 2) {
+        sampled.putValue(series.getLastTimestamp(), series.getValue(size - 1));
+      }
+      return sampled;
+    }
+
+    int buckets = maxPoints - 2;
+    int selected = 0;
+    sampled.putValue(series.getTimestamp(0), series.getValue(0));
+
+    for (int bucket = 0; bucket < buckets; bucket++) {
+      int start = bucketStart(bucket, buckets, size);
+      int end = bucketStart(bucket + 1, buckets, size);
+
+      // Average of the next bucket, or the last datapoint
+      int nextStart = end;
+      int nextEnd = bucket + 1 < buckets ? bucketStart(bucket + 2, buckets, size) : size;
+      double avgTime = 0;
+      double avgValue = 0;
+      for (int i = nextStart; i < nextEnd; i++) {
+        avgTime += series.getTimestamp(i);
+        avgValue += series.getValue(i);
+      }
+      avgTime /= nextEnd - nextStart;
+      avgValue /= nextEnd - nextStart;
+
+      double selectedTime = series.getTimestamp(selected);
+      double selectedValue = series.getValue(selected);
+      double maxArea = -1;
+      int maxAreaIndex = start;
+      for (int i = start; i < end; i++) {
+        double area = Math.abs(
+          (selectedTime - avgTime) * (series.getValue(i) - selectedValue) -
+          (selectedTime - series.getTimestamp(i)) * (avgValue - selectedValue));
+        if (area > maxArea) {
+          maxArea = area;
+          maxAreaIndex = i;
+        }
+      }
+
+      sampled.putValue(series.getTimestamp(maxAreaIndex),
+        series.getValue(maxAreaIndex));
+      selected = maxAreaIndex;
+    }
+
+    sampled.putValue(series.getTimestamp(size - 1), series.getValue(size - 1));
+    return sampled;
+  }
+
+  private static int bucketStart(int bucket, int buckets, int size) {
+    return (int) ((long) bucket * (size - 2) / buckets) + 1;
+  }
+
+  /**
+   * Splits the time range into maxPoints buckets of equal duration, each
+   * datapoint taking the start time of its bucket. Empty buckets are left out.
+   */
+  private static MetricValueSeries aggregateBuckets(MetricValueSeries series,
+                                                    int maxPoints, Method method) {
+    long startTime = series.getFirstTimestamp();
+    long interval = (series.getLastTimestamp() - startTime) / maxPoints + 1;
+    MetricValueSeries sampled = new MetricValueSeries(maxPoints);
+
+    int i = 0;
+    while (i < series.size()) {
+      long bucketStart = startTime +
+        (series.getTimestamp(i) - startTime) / interval * interval;
+      long bucketEnd = bucketStart + interval;
+
+      double sum = 0;
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      int count = 0;
+      for (; i < series.size() && series.getTimestamp(i) < bucketEnd; i++) {
+        double value = series.getValue(i);
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        count++;
+      }
+
+      double value;
+      switch (method) {
+        case MIN:
+          value = min;
+          break;
+        case MAX:
+          value = max;
+          break;
+        default:
+          value = sum / count;
+      }
+      sampled.putValue(bucketStart, value);
+    }
+
+    return sampled;
+  }
+}
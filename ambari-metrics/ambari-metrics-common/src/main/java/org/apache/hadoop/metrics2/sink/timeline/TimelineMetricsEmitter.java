@@ -0,0 +1,412 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Posts metrics to the collector from a background thread, so that a slow or
+ * unavailable collector does not block the reporting thread of a sink.
+ *
+ * Metrics are buffered up to a bounded number, further metrics are dropped
+ * until the sender catches up. The sender posts everything buffered in a
+ * single request of at most {@link #DEFAULT_BATCH_SIZE} metrics, serialized
+ * straight to the request body over a persistent connection. The body is
+ * only gzip compressed when asked for, since the collector does not decode
+ * compressed request bodies by itself. A failed post is retried a bounded
+ * number of times, failing over to the next collector each time.
+ *
+ * Once a minute the emitter also sends its own counters, named with the
+ * {@link #EMITTER_METRIC_PREFIX} prefix, for the host and application of the
+ * metrics it is given.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class TimelineMetricsEmitter {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsEmitter.class);
+
+  public static final int DEFAULT_BUFFER_SIZE = 10000;
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  public static final int DEFAULT_MAX_RETRIES = 2;
+  private static final long RETRY_INTERVAL_MILLIS = 1000;
+  private static final long DROP_WARNING_INTERVAL_MILLIS = 60000;
+  private static final long DEFAULT_REPORT_INTERVAL_MILLIS = 60000;
+
+  public static final String EMITTER_METRIC_PREFIX = "timeline.emitter.";
+
+  private final List<String> collectorUris;
+  private final HttpClient httpClient;
+  private final BlockingQueue<TimelineMetric> buffer;
+  private final int maxRetries;
+  private final boolean compress;
+  private final long stopTimeoutMillis;
+  private volatile int activeCollector = 0;
+
+  private volatile boolean running = false;
+  private Thread senderThread;
+  private volatile long lastDropWarningTime = 0;
+  private long reportIntervalMillis = DEFAULT_REPORT_INTERVAL_MILLIS;
+  private final AtomicLong lastReportTime = new AtomicLong(System.currentTimeMillis());
+
+  private final AtomicLong sentMetricCount = new AtomicLong();
+  private final AtomicLong droppedMetricCount = new AtomicLong();
+  private final AtomicLong postCount = new AtomicLong();
+  private final AtomicLong failedPostCount = new AtomicLong();
+  private final AtomicLong postTimeNanos = new AtomicLong();
+
+  /**
+   * @param collectorUris metrics endpoints of the collectors, in order of
+   *                      preference
+   * @param timeoutSeconds connect and read timeout of a post
+   * @param bufferSize maximum number of metrics waiting to be sent
+   * @param maxRetries number of times a failed post is retried
+   * @param compress gzip the request body
+   */
+  public TimelineMetricsEmitter(List<String> collectorUris, int timeoutSeconds,
+                                int bufferSize, int maxRetries,
+                                boolean compress) {
+    this(collectorUris, createHttpClient(timeoutSeconds), bufferSize,
+      maxRetries, compress, timeoutSeconds * 1000L);
+  }
+
+  TimelineMetricsEmitter(List<String> collectorUris, HttpClient httpClient,
+                         int bufferSize, int maxRetries, boolean compress,
+                         long stopTimeoutMillis) {
+    if (collectorUris == null || collectorUris.isEmpty()) {
+      throw new IllegalArgumentException("No metric collector configured.");
+    }
+    this.collectorUris = new ArrayList<String>(collectorUris);
+    this.httpClient = httpClient;
+    this.buffer = new ArrayBlockingQueue<TimelineMetric>(Math.max(1, bufferSize));
+    this.maxRetries = Math.max(0, maxRetries);
+    this.compress = compress;
+    this.stopTimeoutMillis = stopTimeoutMillis;
+  }
+
+  private static HttpClient createHttpClient(int timeoutSeconds) {
+    // Keeps the connection to the collector open between posts
+    MultiThreadedHttpConnectionManager connectionManager =
+      new MultiThreadedHttpConnectionManager();
+    connectionManager.getParams().setConnectionTimeout(timeoutSeconds * 1000);
+    connectionManager.getParams().setSoTimeout(timeoutSeconds * 1000);
+    HttpClient httpClient = new HttpClient(connectionManager);
+    httpClient.getParams().setConnectionManagerTimeout(timeoutSeconds * 1000);
+    return httpClient;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    senderThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        sendBufferedMetrics();
+      }
+    }, "timeline-metrics-emitter");
+    senderThread.setDaemon(true);
+    senderThread.start();
+    LOG.info("Started sending metrics to " + collectorUris + ", bufferSize = " +
+      (buffer.size() + buffer.remainingCapacity()) + ", maxRetries = " +
+      maxRetries + ", compress = " + compress);
+  }
+
+  /**
+   * Stop the sender after it sent the buffered metrics, waiting at most the
+   * post timeout for it.
+   */
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    try {
+      senderThread.join(stopTimeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (senderThread.isAlive()) {
+      senderThread.interrupt();
+    }
+    LOG.info("Stopped sending metrics, " + this);
+  }
+
+  /**
+   * Buffer the metrics to be sent, without blocking. Metrics not fitting
+   * into the buffer are dropped.
+   */
+  public void emit(TimelineMetrics metrics) {
+    int dropped = 0;
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      if (!buffer.offer(metric)) {
+        dropped++;
+      }
+    }
+
+    if (dropped > 0) {
+      droppedMetricCount.addAndGet(dropped);
+      long currentTime = System.currentTimeMillis();
+      if (currentTime - lastDropWarningTime > DROP_WARNING_INTERVAL_MILLIS) {
+        lastDropWarningTime = currentTime;
+        LOG.warn("Metrics buffer is full, dropped " + dropped + " metrics. " + this);
+      }
+    }
+
+    if (!metrics.getMetrics().isEmpty()) {
+      reportEmitterMetrics(metrics.getMetrics().get(0));
+    }
+  }
+
+  /**
+   * Buffer the counters of the emitter once per report interval, for the
+   * host and application of the given metric.
+   */
+  private void reportEmitterMetrics(TimelineMetric sample) {
+    long currentTime = System.currentTimeMillis();
+    long lastTime = lastReportTime.get();
+    if (currentTime - lastTime < reportIntervalMillis ||
+        !lastReportTime.compareAndSet(lastTime, currentTime)) {
+      return;
+    }
+
+    for (TimelineMetric metric : createEmitterMetrics(sample.getHostName(),
+        sample.getAppId(), currentTime)) {
+      buffer.offer(metric);
+    }
+  }
+
+  /**
+   * @return the counters of the emitter as metrics of the given host and
+   * application
+   */
+  List<TimelineMetric> createEmitterMetrics(String hostName, String appId,
+                                            long timestamp) {
+    List<TimelineMetric> metrics = new ArrayList<TimelineMetric>();
+    metrics.add(createEmitterMetric("sent", getSentMetricCount(), hostName, appId, timestamp));
+    metrics.add(createEmitterMetric("dropped", getDroppedMetricCount(), hostName, appId, timestamp));
+    metrics.add(createEmitterMetric("failedPosts", getFailedPostCount(), hostName, appId, timestamp));
+    metrics.add(createEmitterMetric("buffered", getBufferedMetricCount(), hostName, appId, timestamp));
+    metrics.add(createEmitterMetric("averagePostTime", getAveragePostTime(), hostName, appId, timestamp));
+    return metrics;
+  }
+
+  private static TimelineMetric createEmitterMetric(String name, double value,
+                                                    String hostName, String appId,
+                                                    long timestamp) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(EMITTER_METRIC_PREFIX + name);
+    metric.setHostName(hostName);
+    metric.setAppId(appId);
+    metric.setStartTime(timestamp);
+    metric.getMetricValues().put(timestamp, value);
+    return metric;
+  }
+
+  void setReportInterval(long reportIntervalMillis) {
+    this.reportIntervalMillis = reportIntervalMillis;
+  }
+
+  private void sendBufferedMetrics() {
+    while (running || !buffer.isEmpty()) {
+      try {
+        TimelineMetric metric = buffer.poll(1, TimeUnit.SECONDS);
+        if (metric == null) {
+          continue;
+        }
+        List<TimelineMetric> batch = new ArrayList<TimelineMetric>();
+        batch.add(metric);
+        buffer.drainTo(batch, DEFAULT_BATCH_SIZE - 1);
+
+        TimelineMetrics metrics = new TimelineMetrics();
+        metrics.setMetrics(batch);
+        send(metrics);
+      } catch (InterruptedException e) {
+        LOG.info("Interrupted, dropping " + buffer.size() + " buffered metrics");
+        return;
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to send metrics", e);
+      }
+    }
+  }
+
+  /**
+   * Post the metrics, failing over to the next collector on errors.
+   *
+   * @return whether a collector accepted the metrics
+   */
+  boolean send(TimelineMetrics metrics) throws InterruptedException {
+    int size = metrics.getMetrics().size();
+
+    for (int attempt = 0; attempt <= maxRetries; attempt++) {
+      int collector = activeCollector;
+      String connectUrl = collectorUris.get(collector);
+      long startTime = System.nanoTime();
+      PostMethod postMethod = new PostMethod(connectUrl);
+      try {
+        postMethod.setRequestEntity(new JsonRequestEntity(metrics, compress));
+        if (compress) {
+          postMethod.setRequestHeader("Content-Encoding", "gzip");
+        }
+        int statusCode = httpClient.executeMethod(postMethod);
+        postCount.incrementAndGet();
+        postTimeNanos.addAndGet(System.nanoTime() - startTime);
+
+        if (statusCode == 200) {
+          sentMetricCount.addAndGet(size);
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Posted " + size + " metrics to collector " + connectUrl);
+          }
+          return true;
+        }
+        LOG.info("Unable to POST metrics to collector, " + connectUrl + ", " +
+          "statusCode = " + statusCode);
+      } catch (IOException e) {
+        LOG.info("Unable to POST metrics to collector, " + connectUrl + ", " +
+          e.getClass().getSimpleName() + ": " + e.getMessage());
+      } finally {
+        postMethod.releaseConnection();
+      }
+
+      activeCollector = (collector + 1) % collectorUris.size();
+      // Back off once every collector failed
+      if (attempt < maxRetries && (attempt + 1) % collectorUris.size() == 0) {
+        Thread.sleep(RETRY_INTERVAL_MILLIS);
+      }
+    }
+
+    failedPostCount.incrementAndGet();
+    droppedMetricCount.addAndGet(size);
+    return false;
+  }
+
+  /**
+   * @return metrics accepted by a collector
+   */
+  public long getSentMetricCount() {
+    return sentMetricCount.get();
+  }
+
+  /**
+   * @return metrics dropped because the buffer was full or every post failed
+   */
+  public long getDroppedMetricCount() {
+    return droppedMetricCount.get();
+  }
+
+  /**
+   * @return requests that failed on every attempt
+   */
+  public long getFailedPostCount() {
+    return failedPostCount.get();
+  }
+
+  /**
+   * @return average time in ms a collector took to answer a post
+   */
+  public double getAveragePostTime() {
+    long count = postCount.get();
+    return count == 0 ? 0 : postTimeNanos.get() / 1e6 / count;
+  }
+
+  public int getBufferedMetricCount() {
+    return buffer.size();
+  }
+
+  /**
+   * @return the collector metrics are currently sent to
+   */
+  public String getActiveCollectorUri() {
+    return collectorUris.get(activeCollector);
+  }
+
+  @Override
+  public String toString() {
+    return "TimelineMetricsEmitter{" +
+      "activeCollector='" + getActiveCollectorUri() + '\'' +
+      ", sent=" + getSentMetricCount() +
+      ", dropped=" + getDroppedMetricCount() +
+      ", failedPosts=" + getFailedPostCount() +
+      ", buffered=" + getBufferedMetricCount() +
+      ", averagePostTime=" + getAveragePostTime() + " ms" +
+      '}';
+  }
+
+  /**
+   * Serializes the metrics while the request body is written, instead of
+   * building the whole JSON document in memory first.
+   */
+  static class JsonRequestEntity implements RequestEntity {
+    private final TimelineMetrics metrics;
+    private final boolean compress;
+
+    JsonRequestEntity(TimelineMetrics metrics, boolean compress) {
+      this.metrics = metrics;
+      this.compress = compress;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return true;
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+      GZIPOutputStream gzipStream = compress ? new GZIPOutputStream(out, 8192) : null;
+      JsonGenerator generator = AbstractTimelineMetricsSink.mapper.getJsonFactory()
+        .createJsonGenerator(gzipStream != null ? gzipStream : out, JsonEncoding.UTF8);
+      // The connection stream is closed by the client
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      AbstractTimelineMetricsSink.mapper.writeValue(generator, metrics);
+      generator.close();
+      if (gzipStream != null) {
+        gzipStream.finish();
+      }
+    }
+
+    @Override
+    public long getContentLength() {
+      // Sent chunked
+      return -1;
+    }
+
+    @Override
+    public String getContentType() {
+      return "application/json";
+    }
+  }
+}
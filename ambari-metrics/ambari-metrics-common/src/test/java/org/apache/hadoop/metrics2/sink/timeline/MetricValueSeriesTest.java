@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.AnnotationIntrospector;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricValueSeriesTest {
+  private static final Log LOG = LogFactory.getLog(MetricValueSeriesTest.class);
+
+  private static final int METRICS_PER_HOST = 5000;
+  private static final int DATAPOINTS_PER_METRIC = 6;
+  private static final long START_TIME = 1431000000000L;
+
+  @Test
+  public void testBehavesLikeSortedMap() throws Exception {
+    MetricValueSeries series = new MetricValueSeries();
+    TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+    long[] timestamps = {50, 10, 30, 70, 30, 20, 90, 10};
+    for (int i = 0; i < timestamps.length; i++) {
+      assertEquals(expected.put(timestamps[i], (double) i),
+        series.put(timestamps[i], (double) i));
+    }
+
+    assertEquals(expected, series);
+    assertEquals(expected.hashCode(), series.hashCode());
+    assertEquals(new ArrayList<Long>(expected.keySet()),
+      new ArrayList<Long>(series.keySet()));
+    assertEquals(10L, series.getFirstTimestamp());
+    assertEquals(90L, series.getLastTimestamp());
+
+    assertEquals(expected.remove(30L), series.remove(30L));
+    assertNull(series.remove(31L));
+    assertFalse(series.containsKey(30L));
+    assertEquals(expected, series);
+
+    Iterator<Map.Entry<Long, Double>> iterator = series.entrySet().iterator();
+    iterator.next();
+    iterator.remove();
+    iterator.next().setValue(-1.0);
+    expected.remove(10L);
+    expected.put(20L, -1.0);
+    assertEquals(expected, series);
+  }
+
+  @Test
+  public void testNullValues() throws Exception {
+    MetricValueSeries series = new MetricValueSeries();
+    series.put(1L, null);
+    series.putValue(2L, Double.NaN);
+
+    assertTrue(series.containsKey(1L));
+    assertNull(series.get(1L));
+    assertTrue(series.isNullValue(0));
+    assertTrue(Double.isNaN(series.get(2L)));
+    assertFalse(series.isNullValue(1));
+    assertTrue(series.hasNullValues());
+  }
+
+  @Test
+  public void testPutAllMergesSortedSeries() throws Exception {
+    MetricValueSeries series = new MetricValueSeries();
+    MetricValueSeries other = new MetricValueSeries();
+    TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+    for (long i = 0; i < 20; i += 2) {
+      series.putValue(i, 1.0);
+      expected.put(i, 1.0);
+    }
+    for (long i = 5; i < 30; i += 3) {
+      other.putValue(i, 2.0);
+      expected.put(i, 2.0);
+    }
+
+    series.putAll(other);
+    assertEquals(expected, series);
+
+    // appending a later series
+    other = new MetricValueSeries();
+    other.putValue(100L, 3.0);
+    expected.put(100L, 3.0);
+    series.putAll(other);
+    assertEquals(expected, series);
+  }
+
+  @Test
+  public void testJsonIsUnchanged() throws Exception {
+    ObjectMapper mapper = createMapper();
+
+    TimelineMetric metric = createMetric("cpu_user", START_TIME);
+    Map<Long, Double> treeMapValues =
+      new TreeMap<Long, Double>(metric.getMetricValues());
+    String json = mapper.writeValueAsString(metric);
+    String treeMapJson = mapper.writeValueAsString(treeMapValues);
+
+    assertTrue(json, json.contains(treeMapJson));
+
+    TimelineMetric read = mapper.readValue(json, TimelineMetric.class);
+    assertTrue(read.getMetricValues() instanceof MetricValueSeries);
+    assertEquals(treeMapValues, read.getMetricValues());
+  }
+
+  /**
+   * Compares the heap used by the values of a host emitting 5000 metrics, and
+   * the time to fill, merge and serialize them, when they are kept in TreeMaps
+   * and in MetricValueSeries.
+   */
+  @Test
+  public void testCompareWithTreeMap() throws Exception {
+    ObjectMapper mapper = createMapper();
+
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      runHost(mapper, true);
+      runHost(mapper, false);
+    }
+
+    long treeMapTime = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      runHost(mapper, true);
+    }
+    treeMapTime = System.nanoTime() - treeMapTime;
+
+    long seriesTime = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      runHost(mapper, false);
+    }
+    seriesTime = System.nanoTime() - seriesTime;
+
+    long treeMapHeap = measureHeap(true);
+    long seriesHeap = measureHeap(false);
+
+    LOG.info(METRICS_PER_HOST + " metrics, " + DATAPOINTS_PER_METRIC * 2 +
+      " datapoints each: TreeMap " + treeMapHeap / 1024 + " KB, " +
+      treeMapTime / 5000000 + " ms per cycle; MetricValueSeries " +
+      seriesHeap / 1024 + " KB, " + seriesTime / 5000000 + " ms per cycle");
+  }
+
+  /**
+   * One sink cycle: record two intervals of datapoints for every metric,
+   * merging them as TimelineMetricsCache does, and serialize the result.
+   */
+  private static void runHost(ObjectMapper mapper, boolean treeMap)
+    throws Exception {
+    List<Map<Long, Double>> host = createHostValues(treeMap);
+    for (Map<Long, Double> values : host) {
+      Map<Long, Double> next = createValues(treeMap,
+        START_TIME + DATAPOINTS_PER_METRIC * 10000L);
+      values.putAll(next);
+    }
+    mapper.writeValueAsString(host);
+  }
+
+  private static long measureHeap(boolean treeMap) {
+    long before = usedHeap();
+    List<Map<Long, Double>> host = createHostValues(treeMap);
+    for (Map<Long, Double> values : host) {
+      values.putAll(createValues(treeMap,
+        START_TIME + DATAPOINTS_PER_METRIC * 10000L));
+    }
+    long after = usedHeap();
+    assertEquals(METRICS_PER_HOST, host.size());
+    return after - before;
+  }
+
+  private static List<Map<Long, Double>> createHostValues(boolean treeMap) {
+    List<Map<Long, Double>> host =
+      new ArrayList<Map<Long, Double>>(METRICS_PER_HOST);
+    for (int i = 0; i < METRICS_PER_HOST; i++) {
+      host.add(createValues(treeMap, START_TIME));
+    }
+    return host;
+  }
+
+  private static Map<Long, Double> createValues(boolean treeMap, long start) {
+    Map<Long, Double> values = treeMap ?
+      new TreeMap<Long, Double>() : new MetricValueSeries();
+    for (int j = 0; j < DATAPOINTS_PER_METRIC; j++) {
+      values.put(start + j * 10000L, 100.0 + j);
+    }
+    return values;
+  }
+
+  private static TimelineMetric createMetric(String name, long start) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(name);
+    metric.setAppId("datanode");
+    metric.setHostName("host1");
+    metric.setStartTime(start);
+    metric.setMetricValues(createValues(false, start));
+    return metric;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static ObjectMapper createMapper() {
+    ObjectMapper mapper = new ObjectMapper();
+    AnnotationIntrospector introspector = new JaxbAnnotationIntrospector();
+    mapper.setAnnotationIntrospector(introspector);
+    return mapper;
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler.Method;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricDownsamplerTest {
+
+  private static final long START_TIME = 1431000000000L;
+  private static final long INTERVAL = 10000;
+
+  @Test
+  public void testSmallSeriesIsUnchanged() throws Exception {
+    Map<Long, Double> values = createSeries(10);
+    assertSame(values, TimelineMetricDownsampler.downsample(values, 10, Method.LTTB));
+    assertSame(values, TimelineMetricDownsampler.downsample(values, 100, Method.AVG));
+  }
+
+  @Test
+  public void testLttbKeepsEndsAndPeaks() throws Exception {
+    Map<Long, Double> values = createSeries(1000);
+    long peakTime = START_TIME + 300 * INTERVAL;
+    long troughTime = START_TIME + 700 * INTERVAL;
+    values.put(peakTime, 5000.0);
+    values.put(troughTime, -5000.0);
+
+    Map<Long, Double> sampled = TimelineMetricDownsampler.downsample(values, 50, Method.LTTB);
+
+    assertEquals(50, sampled.size());
+    ArrayList<Long> timestamps = new ArrayList<Long>(sampled.keySet());
+    assertEquals(START_TIME, (long) timestamps.get(0));
+    assertEquals(START_TIME + 999 * INTERVAL, (long) timestamps.get(49));
+    assertEquals(5000.0, sampled.get(peakTime), 0);
+    assertEquals(-5000.0, sampled.get(troughTime), 0);
+    for (Map.Entry<Long, Double> value : sampled.entrySet()) {
+      assertEquals(values.get(value.getKey()), value.getValue());
+    }
+  }
+
+  @Test
+  public void testBucketAggregates() throws Exception {
+    Map<Long, Double> values = createSeries(100);
+
+    Map<Long, Double> avg = TimelineMetricDownsampler.downsample(values, 10, Method.AVG);
+    Map<Long, Double> min = TimelineMetricDownsampler.downsample(values, 10, Method.MIN);
+    Map<Long, Double> max = TimelineMetricDownsampler.downsample(values, 10, Method.MAX);
+
+    assertEquals(10, avg.size());
+    assertEquals(avg.keySet(), min.keySet());
+    assertEquals(avg.keySet(), max.keySet());
+    for (long timestamp : avg.keySet()) {
+      assertTrue(min.get(timestamp) <= avg.get(timestamp));
+      assertTrue(avg.get(timestamp) <= max.get(timestamp));
+    }
+    // Datapoints 0 - 9 fall in the first bucket
+    assertEquals(4.5, avg.get(START_TIME), 0);
+    assertEquals(0.0, min.get(START_TIME), 0);
+    assertEquals(9.0, max.get(START_TIME), 0);
+  }
+
+  @Test
+  public void testNullValuesAreIgnored() throws Exception {
+    Map<Long, Double> values = createSeries(20);
+    for (long i = 0; i < 20; i += 2) {
+      values.put(START_TIME + i * INTERVAL, null);
+    }
+
+    Map<Long, Double> sampled = TimelineMetricDownsampler.downsample(values, 10, Method.LTTB);
+    assertEquals(10, sampled.size());
+    assertFalse(sampled.containsValue(null));
+  }
+
+  @Test
+  public void testDownsampleMetrics() throws Exception {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setMetricValues(createSeries(500));
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+
+    TimelineMetricDownsampler.downsample(metrics, 100, Method.getMethod("max"));
+
+    assertEquals(100, metrics.getMetrics().get(0).getMetricValues().size());
+  }
+
+  private static Map<Long, Double> createSeries(int size) {
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    for (int i = 0; i < size; i++) {
+      values.put(START_TIME + i * INTERVAL, (double) i);
+    }
+    return values;
+  }
+}
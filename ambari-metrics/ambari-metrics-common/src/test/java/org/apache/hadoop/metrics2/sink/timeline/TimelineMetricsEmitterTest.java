@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricsEmitterTest {
+  private static final String COLLECTOR1 = "http://c1:6188/ws/v1/timeline/metrics";
+  private static final String COLLECTOR2 = "http://c2:6188/ws/v1/timeline/metrics";
+
+  @Test
+  public void testFailoverToNextCollector() throws Exception {
+    HttpClient httpClient = Mockito.mock(HttpClient.class);
+    final List<String> postedUris = new ArrayList<String>();
+    Mockito.when(httpClient.executeMethod(Mockito.<HttpMethod>any())).thenAnswer(
+      new Answer<Integer>() {
+        @Override
+        public Integer answer(InvocationOnMock invocation) throws Throwable {
+          HttpMethod method = (HttpMethod) invocation.getArguments()[0];
+          postedUris.add(method.getURI().toString());
+          if (method.getURI().toString().equals(COLLECTOR1)) {
+            throw new ConnectException();
+          }
+          return 200;
+        }
+      });
+
+    TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(
+      Arrays.asList(COLLECTOR1, COLLECTOR2), httpClient, 10, 2, false, 1000);
+
+    assertTrue(emitter.send(createMetrics(3)));
+    assertTrue(emitter.send(createMetrics(2)));
+
+    // The collector that accepted the metrics is used from then on
+    assertEquals(Arrays.asList(COLLECTOR1, COLLECTOR2, COLLECTOR2), postedUris);
+    assertEquals(COLLECTOR2, emitter.getActiveCollectorUri());
+    assertEquals(5, emitter.getSentMetricCount());
+    assertEquals(0, emitter.getDroppedMetricCount());
+  }
+
+  @Test
+  public void testRetriesAreBounded() throws Exception {
+    HttpClient httpClient = Mockito.mock(HttpClient.class);
+    Mockito.when(httpClient.executeMethod(Mockito.<HttpMethod>any())).thenReturn(500);
+
+    TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(
+      Arrays.asList(COLLECTOR1, COLLECTOR2), httpClient, 10, 1, false, 1000);
+
+    assertFalse(emitter.send(createMetrics(4)));
+
+    Mockito.verify(httpClient, Mockito.times(2)).executeMethod(Mockito.<HttpMethod>any());
+    assertEquals(1, emitter.getFailedPostCount());
+    assertEquals(4, emitter.getDroppedMetricCount());
+  }
+
+  @Test
+  public void testFullBufferDropsMetrics() throws Exception {
+    HttpClient httpClient = Mockito.mock(HttpClient.class);
+    TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(
+      Arrays.asList(COLLECTOR1), httpClient, 5, 2, false, 1000);
+
+    emitter.emit(createMetrics(3));
+    emitter.emit(createMetrics(3));
+
+    assertEquals(5, emitter.getBufferedMetricCount());
+    assertEquals(1, emitter.getDroppedMetricCount());
+    Mockito.verifyZeroInteractions(httpClient);
+  }
+
+  @Test
+  public void testCompressedRequestBody() throws Exception {
+    HttpClient httpClient = Mockito.mock(HttpClient.class);
+    final List<TimelineMetrics> posted = new ArrayList<TimelineMetrics>();
+    Mockito.when(httpClient.executeMethod(Mockito.<HttpMethod>any())).thenAnswer(
+      new Answer<Integer>() {
+        @Override
+        public Integer answer(InvocationOnMock invocation) throws Throwable {
+          PostMethod method = (PostMethod) invocation.getArguments()[0];
+          assertEquals("gzip", method.getRequestHeader("Content-Encoding").getValue());
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          method.getRequestEntity().writeRequest(body);
+          posted.add(AbstractTimelineMetricsSink.mapper.readValue(new GZIPInputStream(
+            new ByteArrayInputStream(body.toByteArray())), TimelineMetrics.class));
+          return 200;
+        }
+      });
+
+    TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(
+      Arrays.asList(COLLECTOR1), httpClient, 10, 2, true, 1000);
+
+    assertTrue(emitter.send(createMetrics(3)));
+
+    assertEquals(1, posted.size());
+    List<TimelineMetric> metrics = posted.get(0).getMetrics();
+    assertEquals(3, metrics.size());
+    assertEquals("metric2", metrics.get(2).getMetricName());
+    assertEquals(2.0, metrics.get(2).getMetricValues().get(1000L), 0);
+  }
+
+  @Test
+  public void testEmitterMetricsAreReported() throws Exception {
+    HttpClient httpClient = Mockito.mock(HttpClient.class);
+    Mockito.when(httpClient.executeMethod(Mockito.<HttpMethod>any())).thenReturn(200);
+
+    TimelineMetricsEmitter emitter = new TimelineMetricsEmitter(
+      Arrays.asList(COLLECTOR1), httpClient, 20, 2, false, 1000);
+    assertTrue(emitter.send(createMetrics(3)));
+
+    // not within the report interval
+    emitter.emit(createMetrics(2));
+    assertEquals(2, emitter.getBufferedMetricCount());
+
+    emitter.setReportInterval(0);
+    emitter.emit(createMetrics(2));
+    assertEquals(9, emitter.getBufferedMetricCount());
+
+    List<TimelineMetric> metrics = emitter.createEmitterMetrics("h1", "HOST", 2000L);
+    assertEquals(5, metrics.size());
+    TimelineMetric sent = metrics.get(0);
+    assertEquals(TimelineMetricsEmitter.EMITTER_METRIC_PREFIX + "sent", sent.getMetricName());
+    assertEquals("h1", sent.getHostName());
+    assertEquals("HOST", sent.getAppId());
+    assertEquals(3.0, sent.getMetricValues().get(2000L), 0);
+    assertEquals(9.0, metrics.get(3).getMetricValues().get(2000L), 0);
+  }
+
+  private static TimelineMetrics createMetrics(int count) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (int i = 0; i < count; i++) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("metric" + i);
+      metric.setHostName("h1");
+      metric.setAppId("HOST");
+      metric.setStartTime(1000L);
+      metric.getMetricValues().put(1000L, (double) i);
+      metrics.getMetrics().add(metric);
+    }
+    return metrics;
+  }
+
+}
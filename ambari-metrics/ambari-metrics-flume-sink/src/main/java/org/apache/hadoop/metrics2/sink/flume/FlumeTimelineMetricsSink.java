@@ -27,6 +27,7 @@ import org.apache.flume.instrumentation.util.JMXPollUtil;
 import org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsEmitter;
 import org.apache.hadoop.metrics2.sink.timeline.UnableToConnectException;
 import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
 import org.apache.hadoop.metrics2.sink.timeline.configuration.Configuration;
@@ -53,10 +54,18 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
   private final static String COUNTER_METRICS_PROPERTY = "counters";
   private final Set<String> counterMetrics = new HashSet<String>();
   private int timeoutSeconds = 10;
+  private List<String> collectorUris;
+  private boolean asyncEmit = false;
+  private int emitBufferSize;
+  private int emitMaxRetries;
+  private boolean emitCompression;
 
   @Override
   public void start() {
     LOG.info("Starting Flume Metrics Sink");
+    if (asyncEmit) {
+      startEmitter(collectorUris, emitBufferSize, emitMaxRetries, emitCompression);
+    }
     TimelineMetricsCollector timelineMetricsCollector = new TimelineMetricsCollector();
     if (scheduledExecutorService == null || scheduledExecutorService.isShutdown() || scheduledExecutorService.isTerminated()) {
       scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
@@ -69,6 +78,7 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
   public void stop() {
     LOG.info("Stopping Flume Metrics Sink");
     scheduledExecutorService.shutdown();
+    stopEmitter();
   }
 
   @Override
@@ -90,7 +100,14 @@ public class FlumeTimelineMetricsSink extends AbstractTimelineMetricsSink implem
     metricsCache = new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval);
     String collectorHostname = configuration.getProperty(COLLECTOR_HOST_PROPERTY);
     String port = configuration.getProperty(COLLECTOR_PORT_PROPERTY);
-    collectorUri = "http://" + collectorHostname + ":" + port + "/ws/v1/timeline/metrics";
+    collectorUris = getCollectorUris(collectorHostname, port);
+    collectorUri = collectorUris.get(0);
+    asyncEmit = Boolean.parseBoolean(configuration.getProperty(METRICS_ASYNC_EMIT, "true"));
+    emitBufferSize = Integer.parseInt(configuration.getProperty(METRICS_EMIT_BUFFER_SIZE,
+        String.valueOf(TimelineMetricsEmitter.DEFAULT_BUFFER_SIZE)));
+    emitMaxRetries = Integer.parseInt(configuration.getProperty(METRICS_EMIT_MAX_RETRIES,
+        String.valueOf(TimelineMetricsEmitter.DEFAULT_MAX_RETRIES)));
+    emitCompression = Boolean.parseBoolean(configuration.getProperty(METRICS_EMIT_COMPRESSION, "false"));
     pollFrequency = Long.parseLong(configuration.getProperty("collectionFrequency"));
 
     String[] metrics = configuration.getProperty(COUNTER_METRICS_PROPERTY).trim().split(",");
@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.metrics2.sink.timeline;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -47,7 +49,7 @@ import org.apache.hadoop.net.DNS;
 
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink {
+public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink, Closeable {
   private Map<String, Set<String>> useTagsMap = new HashMap<String, Set<String>>();
   private TimelineMetricsCache metricsCache;
   private String hostName = "UNKNOWN.example.com";
@@ -83,17 +85,29 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
     // Load collector configs
     metricsServers = Servers.parse(conf.getString(COLLECTOR_HOST_PROPERTY), 6188);
 
+    List<String> collectorUris = new ArrayList<String>();
     if (metricsServers == null || metricsServers.isEmpty()) {
       LOG.error("No Metric collector configured.");
     } else {
-      collectorUri = "http://" + conf.getString(COLLECTOR_HOST_PROPERTY).trim()
-          + "/ws/v1/timeline/metrics";
+      for (SocketAddress metricsServer : metricsServers) {
+        InetSocketAddress address = (InetSocketAddress) metricsServer;
+        collectorUris.add(buildCollectorUri(address.getHostString(), address.getPort()));
+      }
+      collectorUri = collectorUris.get(0);
     }
 
-    LOG.info("Collector Uri: " + collectorUri);
+    LOG.info("Collector Uri: " + collectorUris);
 
     timeoutSeconds = conf.getInt(METRICS_POST_TIMEOUT_SECONDS, DEFAULT_POST_TIMEOUT_SECONDS);
 
+    // Fail over across every configured collector
+    if (!collectorUris.isEmpty() && conf.getBoolean(METRICS_ASYNC_EMIT, true)) {
+      startEmitter(collectorUris,
+        conf.getInt(METRICS_EMIT_BUFFER_SIZE, TimelineMetricsEmitter.DEFAULT_BUFFER_SIZE),
+        conf.getInt(METRICS_EMIT_MAX_RETRIES, TimelineMetricsEmitter.DEFAULT_MAX_RETRIES),
+        conf.getBoolean(METRICS_EMIT_COMPRESSION, false));
+    }
+
     int maxRowCacheSize = conf.getInt(MAX_METRIC_ROW_CACHE_SIZE,
       TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT);
     int metricsSendInterval = conf.getInt(METRICS_SEND_INTERVAL,
@@ -244,4 +258,13 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
   public void flush() {
     // TODO: Buffering implementation
   }
+
+  /**
+   * Called by the metrics system when the sink is stopped; sends the
+   * metrics still buffered by the emitter.
+   */
+  @Override
+  public void close() {
+    stopEmitter();
+  }
 }
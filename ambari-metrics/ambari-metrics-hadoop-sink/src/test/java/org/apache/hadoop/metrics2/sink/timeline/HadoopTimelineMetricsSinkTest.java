@@ -20,7 +20,10 @@ package org.apache.hadoop.metrics2.sink.timeline;
 
 import static org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink.COLLECTOR_HOST_PROPERTY;
 import static org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink.MAX_METRIC_ROW_CACHE_SIZE;
+import static org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink.METRICS_ASYNC_EMIT;
+import static org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink.METRICS_POST_TIMEOUT_SECONDS;
 import static org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink.METRICS_SEND_INTERVAL;
+import static org.easymock.EasyMock.anyBoolean;
 import static org.easymock.EasyMock.anyInt;
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createMockBuilder;
@@ -33,6 +36,7 @@ import static org.easymock.EasyMock.verify;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -119,6 +123,29 @@ public class HadoopTimelineMetricsSinkTest {
     verify(conf, httpClient, record, metric);
   }
 
+  @Test
+  public void testCloseStopsEmitter() throws Exception {
+    HadoopTimelineMetricsSink sink = new HadoopTimelineMetricsSink();
+
+    SubsetConfiguration conf = createNiceMock(SubsetConfiguration.class);
+    expect(conf.getString(eq("slave.host.name"))).andReturn("testhost").anyTimes();
+    expect(conf.getParent()).andReturn(null).anyTimes();
+    expect(conf.getPrefix()).andReturn("service").anyTimes();
+    expect(conf.getString(eq(COLLECTOR_HOST_PROPERTY))).andReturn("localhost:63188").anyTimes();
+    expect(conf.getString(eq("serviceName-prefix"), eq(""))).andReturn("").anyTimes();
+    expect(conf.getInt(eq(METRICS_POST_TIMEOUT_SECONDS), anyInt())).andReturn(1).anyTimes();
+    expect(conf.getBoolean(eq(METRICS_ASYNC_EMIT), anyBoolean())).andReturn(true).anyTimes();
+    expect(conf.getKeys()).andReturn(Collections.emptyList().iterator()).once();
+    replay(conf);
+
+    sink.init(conf);
+    Assert.assertNotNull(sink.getEmitter());
+
+    sink.close();
+    Assert.assertNull(sink.getEmitter());
+    verify(conf);
+  }
+
   @Test
   public void testDuplicateTimeSeriesNotSaved() throws Exception {
     HadoopTimelineMetricsSink sink =
@@ -39,6 +39,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsEmitter;
 import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
 
 import java.io.IOException;
@@ -63,6 +64,10 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
   private static final String TIMELINE_HOST_PROPERTY = "kafka.timeline.metrics.host";
   private static final String TIMELINE_PORT_PROPERTY = "kafka.timeline.metrics.port";
   private static final String TIMELINE_REPORTER_ENABLED_PROPERTY = "kafka.timeline.metrics.reporter.enabled";
+  private static final String TIMELINE_METRICS_ASYNC_EMIT_PROPERTY = "kafka.timeline.metrics.asyncEmit";
+  private static final String TIMELINE_METRICS_EMIT_BUFFER_SIZE_PROPERTY = "kafka.timeline.metrics.emitBufferSize";
+  private static final String TIMELINE_METRICS_EMIT_MAX_RETRIES_PROPERTY = "kafka.timeline.metrics.emitMaxRetries";
+  private static final String TIMELINE_METRICS_EMIT_COMPRESSION_PROPERTY = "kafka.timeline.metrics.emitCompression";
   private static final String TIMELINE_DEFAULT_HOST = "localhost";
   private static final String TIMELINE_DEFAULT_PORT = "8188";
 
@@ -74,6 +79,11 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
   private TimelineScheduledReporter reporter;
   private TimelineMetricsCache metricsCache;
   private int timeoutSeconds = 10;
+  private List<String> collectorUris;
+  private boolean asyncEmit;
+  private int emitBufferSize;
+  private int emitMaxRetries;
+  private boolean emitCompression;
 
   @Override
   protected String getCollectorUri() {
@@ -106,7 +116,13 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
         String metricCollectorHost = props.getString(TIMELINE_HOST_PROPERTY, TIMELINE_DEFAULT_HOST);
         String metricCollectorPort = props.getString(TIMELINE_PORT_PROPERTY, TIMELINE_DEFAULT_PORT);
         setMetricsCache(new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval));
-        collectorUri = "http://" + metricCollectorHost + ":" + metricCollectorPort + "/ws/v1/timeline/metrics";
+        collectorUris = getCollectorUris(metricCollectorHost, metricCollectorPort);
+        collectorUri = collectorUris.get(0);
+        // the emitter runs while the reporter does
+        asyncEmit = props.getBoolean(TIMELINE_METRICS_ASYNC_EMIT_PROPERTY, true);
+        emitBufferSize = props.getInt(TIMELINE_METRICS_EMIT_BUFFER_SIZE_PROPERTY, TimelineMetricsEmitter.DEFAULT_BUFFER_SIZE);
+        emitMaxRetries = props.getInt(TIMELINE_METRICS_EMIT_MAX_RETRIES_PROPERTY, TimelineMetricsEmitter.DEFAULT_MAX_RETRIES);
+        emitCompression = props.getBoolean(TIMELINE_METRICS_EMIT_COMPRESSION_PROPERTY, false);
         initializeReporter();
         if (props.getBoolean(TIMELINE_REPORTER_ENABLED_PROPERTY, false)) {
           startReporter(metricsConfig.pollingIntervalSecs());
@@ -127,6 +143,9 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
   public synchronized void startReporter(long period) {
     synchronized (lock) {
       if (initialized && !running) {
+        if (asyncEmit) {
+          startEmitter(collectorUris, emitBufferSize, emitMaxRetries, emitCompression);
+        }
         reporter.start(period, TimeUnit.SECONDS);
         running = true;
         LOG.info(String.format("Started Kafka Timeline metrics reporter with polling period %d seconds", period));
@@ -138,6 +157,8 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
     synchronized (lock) {
       if (initialized && running) {
         reporter.stop();
+        // sends the metrics still buffered
+        stopEmitter();
         running = false;
         LOG.info("Stopped Kafka Timeline metrics reporter");
         initializeReporter();
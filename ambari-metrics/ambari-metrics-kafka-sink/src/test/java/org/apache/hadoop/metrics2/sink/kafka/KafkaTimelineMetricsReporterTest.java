@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.metrics2.sink.kafka;
 
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.powermock.api.easymock.PowerMock.mockStatic;
 import static org.powermock.api.easymock.PowerMock.replay;
@@ -94,7 +96,9 @@ public class KafkaTimelineMetricsReporterTest {
     kafkaTimelineMetricsReporter.setHttpClient(httpClient);
     replay(Metrics.class, httpClient, timelineMetricsCache);
     kafkaTimelineMetricsReporter.init(props);
+    assertNotNull(kafkaTimelineMetricsReporter.getEmitter());
     kafkaTimelineMetricsReporter.stopReporter();
+    assertNull(kafkaTimelineMetricsReporter.getEmitter());
     verifyAll();
   }
 
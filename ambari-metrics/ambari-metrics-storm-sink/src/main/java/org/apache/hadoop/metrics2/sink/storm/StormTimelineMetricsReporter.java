@@ -29,6 +29,7 @@ import org.apache.commons.lang.Validate;
 import org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsEmitter;
 import org.apache.hadoop.metrics2.sink.timeline.UnableToConnectException;
 
 import java.net.InetAddress;
@@ -85,7 +86,21 @@ public class StormTimelineMetricsReporter extends AbstractTimelineMetricsSink
         Integer.parseInt(cf.get(METRICS_POST_TIMEOUT_SECONDS).toString()) :
         DEFAULT_POST_TIMEOUT_SECONDS;
       applicationId = cf.get(APP_ID).toString();
-      collectorUri = "http://" + collectorHostname + ":" + port + "/ws/v1/timeline/metrics";
+      List<String> collectorUris = getCollectorUris(collectorHostname, port);
+      collectorUri = collectorUris.get(0);
+      boolean asyncEmit = cf.get(METRICS_ASYNC_EMIT) == null ||
+        Boolean.parseBoolean(cf.get(METRICS_ASYNC_EMIT).toString());
+      if (asyncEmit) {
+        int bufferSize = cf.get(METRICS_EMIT_BUFFER_SIZE) != null ?
+          Integer.parseInt(cf.get(METRICS_EMIT_BUFFER_SIZE).toString()) :
+          TimelineMetricsEmitter.DEFAULT_BUFFER_SIZE;
+        int maxRetries = cf.get(METRICS_EMIT_MAX_RETRIES) != null ?
+          Integer.parseInt(cf.get(METRICS_EMIT_MAX_RETRIES).toString()) :
+          TimelineMetricsEmitter.DEFAULT_MAX_RETRIES;
+        boolean compress = cf.get(METRICS_EMIT_COMPRESSION) != null &&
+          Boolean.parseBoolean(cf.get(METRICS_EMIT_COMPRESSION).toString());
+        startEmitter(collectorUris, bufferSize, maxRetries, compress);
+      }
     } catch (Exception e) {
       LOG.warn("Could not initialize metrics collector, please specify host, " +
         "port under $STORM_HOME/conf/config.yaml ", e);
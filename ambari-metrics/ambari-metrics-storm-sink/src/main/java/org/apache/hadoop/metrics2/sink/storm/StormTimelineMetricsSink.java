@@ -26,6 +26,7 @@ import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsEmitter;
 import org.apache.hadoop.metrics2.sink.timeline.AbstractTimelineMetricsSink;
 import org.apache.hadoop.metrics2.sink.timeline.UnableToConnectException;
 import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
@@ -74,7 +75,17 @@ public class StormTimelineMetricsSink extends AbstractTimelineMetricsSink implem
     int metricsSendInterval = Integer.parseInt(configuration.getProperty(METRICS_SEND_INTERVAL,
         String.valueOf(MAX_EVICTION_TIME_MILLIS)));
     metricsCache = new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval);
-    collectorUri = "http://" + configuration.getProperty(COLLECTOR_HOST_PROPERTY) + ":" + configuration.getProperty(COLLECTOR_PORT_PROPERTY) + "/ws/v1/timeline/metrics";
+    List<String> collectorUris = getCollectorUris(configuration.getProperty(COLLECTOR_HOST_PROPERTY),
+        configuration.getProperty(COLLECTOR_PORT_PROPERTY));
+    collectorUri = collectorUris.get(0);
+    if (Boolean.parseBoolean(configuration.getProperty(METRICS_ASYNC_EMIT, "true"))) {
+      startEmitter(collectorUris,
+          Integer.parseInt(configuration.getProperty(METRICS_EMIT_BUFFER_SIZE,
+              String.valueOf(TimelineMetricsEmitter.DEFAULT_BUFFER_SIZE))),
+          Integer.parseInt(configuration.getProperty(METRICS_EMIT_MAX_RETRIES,
+              String.valueOf(TimelineMetricsEmitter.DEFAULT_MAX_RETRIES))),
+          Boolean.parseBoolean(configuration.getProperty(METRICS_EMIT_COMPRESSION, "false")));
+    }
   }
 
   @Override
@@ -112,6 +123,7 @@ public class StormTimelineMetricsSink extends AbstractTimelineMetricsSink implem
   @Override
   public void cleanup() {
     LOG.info("Stopping Storm Metrics Sink");
+    stopEmitter();
   }
 
   private TimelineMetric createTimelineMetric(long currentTimeMillis, String component, String attributeName, String attributeValue) {
@@ -21,15 +21,21 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.MetricValueSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterAggregatorMinute;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricHostAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricStreamingAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -38,14 +44,31 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_AGGREGATION_STREAMING_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_WRITE_ASYNC_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_MAX_POINTS;
 
 public class HBaseTimelineMetricStore extends AbstractService
     implements TimelineMetricStore {
 
   static final Log LOG = LogFactory.getLog(HBaseTimelineMetricStore.class);
+  // Sinks send host metrics every 10 seconds by default
+  private static final long PRECISION_TABLE_RESOLUTION = 10000;
   private final TimelineMetricConfiguration configuration;
   private PhoenixHBaseAccessor hBaseAccessor;
+  private TimelineMetricsWriter metricsWriter;
+  private TimelineMetricStreamingAggregator streamingAggregator;
+  private final List<TimelineMetricAggregator> aggregators =
+    new ArrayList<TimelineMetricAggregator>();
+  private TimelineMetricQueryCache queryCache;
+  private long hostMinuteResolutionMillis;
+  private long clusterSecondResolutionMillis;
+  private int maxPointsPerSeries;
 
   /**
    * Construct the service.
@@ -56,6 +79,17 @@ public class HBaseTimelineMetricStore extends AbstractService
     this.configuration = configuration;
   }
 
+  /**
+   * Construct a store querying the accessor, without any aggregators.
+   * Access relaxed for tests.
+   */
+  HBaseTimelineMetricStore(PhoenixHBaseAccessor hBaseAccessor,
+                           Configuration metricsConf) {
+    this(null);
+    this.hBaseAccessor = hBaseAccessor;
+    initializeQueries(metricsConf);
+  }
+
   @Override
   protected void serviceInit(Configuration conf) throws Exception {
     super.serviceInit(conf);
@@ -67,10 +101,21 @@ public class HBaseTimelineMetricStore extends AbstractService
     hBaseAccessor = new PhoenixHBaseAccessor(hbaseConf, metricsConf);
     hBaseAccessor.initMetricSchema();
 
+    if (metricsConf.getBoolean(METRICS_WRITE_ASYNC_ENABLED, false)) {
+      metricsWriter = new TimelineMetricsWriter(hBaseAccessor, metricsConf);
+      metricsWriter.start();
+    }
+
+    // Minute aggregates are computed as metrics are received in streaming
+    // mode, the minute aggregators then only catch up after a restart
+    boolean streamingAggregation =
+      metricsConf.getBoolean(METRICS_AGGREGATION_STREAMING_ENABLED, false);
+
     // Start the cluster aggregator minute
-    TimelineMetricAggregator minuteClusterAggregator =
+    TimelineMetricClusterAggregatorMinute minuteClusterAggregator =
       TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinute(hBaseAccessor, metricsConf);
-    if (!minuteClusterAggregator.isDisabled()) {
+    aggregators.add(minuteClusterAggregator);
+    if (!minuteClusterAggregator.isDisabled() && !streamingAggregation) {
       Thread aggregatorThread = new Thread(minuteClusterAggregator);
       aggregatorThread.start();
     }
@@ -78,6 +123,7 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Start the hourly cluster aggregator
     TimelineMetricAggregator hourlyClusterAggregator =
       TimelineMetricAggregatorFactory.createTimelineClusterAggregatorHourly(hBaseAccessor, metricsConf);
+    aggregators.add(hourlyClusterAggregator);
     if (!hourlyClusterAggregator.isDisabled()) {
       Thread aggregatorThread = new Thread(hourlyClusterAggregator);
       aggregatorThread.start();
@@ -86,15 +132,17 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Start the daily cluster aggregator
     TimelineMetricAggregator dailyClusterAggregator =
       TimelineMetricAggregatorFactory.createTimelineClusterAggregatorDaily(hBaseAccessor, metricsConf);
+    aggregators.add(dailyClusterAggregator);
     if (!dailyClusterAggregator.isDisabled()) {
       Thread aggregatorThread = new Thread(dailyClusterAggregator);
       aggregatorThread.start();
     }
 
     // Start the minute host aggregator
-    TimelineMetricAggregator minuteHostAggregator =
+    TimelineMetricHostAggregator minuteHostAggregator =
       TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinute(hBaseAccessor, metricsConf);
-    if (!minuteHostAggregator.isDisabled()) {
+    aggregators.add(minuteHostAggregator);
+    if (!minuteHostAggregator.isDisabled() && !streamingAggregation) {
       Thread minuteAggregatorThread = new Thread(minuteHostAggregator);
       minuteAggregatorThread.start();
     }
@@ -102,6 +150,7 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Start the hourly host aggregator
     TimelineMetricAggregator hourlyHostAggregator =
       TimelineMetricAggregatorFactory.createTimelineMetricAggregatorHourly(hBaseAccessor, metricsConf);
+    aggregators.add(hourlyHostAggregator);
     if (!hourlyHostAggregator.isDisabled()) {
       Thread aggregatorHourlyThread = new Thread(hourlyHostAggregator);
       aggregatorHourlyThread.start();
@@ -110,22 +159,77 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Start the daily host aggregator
     TimelineMetricAggregator dailyHostAggregator =
       TimelineMetricAggregatorFactory.createTimelineMetricAggregatorDaily(hBaseAccessor, metricsConf);
+    aggregators.add(dailyHostAggregator);
     if (!dailyHostAggregator.isDisabled()) {
       Thread aggregatorDailyThread = new Thread(dailyHostAggregator);
       aggregatorDailyThread.start();
     }
+
+    if (streamingAggregation) {
+      streamingAggregator = new TimelineMetricStreamingAggregator(hBaseAccessor,
+        metricsConf, minuteHostAggregator, minuteClusterAggregator);
+      streamingAggregator.start();
+    }
+
+    initializeQueries(metricsConf);
+  }
+
+  private void initializeQueries(Configuration metricsConf) {
+    hostMinuteResolutionMillis = SECONDS.toMillis(
+      metricsConf.getLong(HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300));
+    clusterSecondResolutionMillis = SECONDS.toMillis(
+      metricsConf.getInt(CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL, 15));
+    maxPointsPerSeries = metricsConf.getInt(TIMELINE_METRICS_QUERY_MAX_POINTS, 0);
+    if (metricsConf.getBoolean(TIMELINE_METRICS_QUERY_CACHE_ENABLED, false)) {
+      queryCache = new TimelineMetricQueryCache(metricsConf);
+    }
   }
 
   @Override
   protected void serviceStop() throws Exception {
+    if (metricsWriter != null) {
+      metricsWriter.stop();
+    }
+    if (streamingAggregator != null) {
+      streamingAggregator.stop();
+    }
+    for (TimelineMetricAggregator aggregator : aggregators) {
+      aggregator.stop();
+    }
     super.serviceStop();
   }
 
+  /**
+   * @return the asynchronous metrics writer, or null if metrics are written
+   * on the calling thread
+   */
+  public TimelineMetricsWriter getMetricsWriter() {
+    return metricsWriter;
+  }
+
+  /**
+   * @return the aggregator computing minute aggregates as metrics are
+   * received, or null if they are computed from storage
+   */
+  public TimelineMetricStreamingAggregator getStreamingAggregator() {
+    return streamingAggregator;
+  }
+
+  /**
+   * @return the cache of recent query results, or null if queries always
+   * read from storage
+   */
+  public TimelineMetricQueryCache getQueryCache() {
+    return queryCache;
+  }
+
   @Override
   public TimelineMetrics getTimelineMetrics(List<String> metricNames,
       String hostname, String applicationId, String instanceId,
       Long startTime, Long endTime, Precision precision, Integer limit,
-      boolean groupedByHosts) throws SQLException, IOException {
+      boolean groupedByHosts, Integer maxPoints,
+      TimelineMetricDownsampler.Method downsamplingMethod)
+      throws SQLException, IOException {
 
     if (metricNames == null || metricNames.isEmpty()) {
       throw new IllegalArgumentException("No metric name filter specified.");
@@ -137,23 +241,114 @@ public class HBaseTimelineMetricStore extends AbstractService
     if (limit != null && limit > PhoenixHBaseAccessor.RESULTSET_LIMIT){
       throw new IllegalArgumentException("Limit too big");
     }
-    Map<String, List<Function>> metricFunctions =
+    if (maxPoints != null && maxPoints <= 0) {
+      throw new IllegalArgumentException("maxPoints should be positive");
+    }
+    final Map<String, List<Function>> metricFunctions =
       parseMetricNamesToAggregationFunctions(metricNames);
 
+    boolean clusterQuery = hostname == null;
+    if (precision == null && startTime != null) {
+      precision = selectPrecision(startTime, endTime, clusterQuery,
+        maxPoints != null ? maxPoints : maxPointsPerSeries);
+    }
+
+    TimelineMetrics metrics;
+    if (queryCache != null && startTime != null && limit == null
+        && groupedByHosts) {
+      final String queryHostname = hostname;
+      final String queryAppId = applicationId;
+      final String queryInstanceId = instanceId;
+      final Precision queryPrecision = precision;
+
+      metrics = queryCache.getTimelineMetrics(
+        new TimelineMetricQueryCache.QueryKey(metricNames, hostname,
+          applicationId, instanceId, precision),
+        startTime, endTime, getPrecisionResolution(precision, clusterQuery),
+        new TimelineMetricQueryCache.Loader() {
+          @Override
+          public TimelineMetrics load(long startTime, long endTime)
+              throws SQLException, IOException {
+            return getMetricRecords(metricFunctions, queryHostname,
+              queryAppId, queryInstanceId, startTime, endTime,
+              queryPrecision, null, true);
+          }
+        });
+    } else {
+      metrics = getMetricRecords(metricFunctions, hostname, applicationId,
+        instanceId, startTime, endTime, precision, limit, groupedByHosts);
+    }
+
+    metrics = postProcessMetrics(metrics);
+    if (maxPoints != null) {
+      TimelineMetricDownsampler.downsample(metrics, maxPoints,
+        downsamplingMethod != null ? downsamplingMethod :
+          TimelineMetricDownsampler.Method.LTTB);
+    }
+    return metrics;
+  }
+
+  private TimelineMetrics getMetricRecords(
+      Map<String, List<Function>> metricFunctions, String hostname,
+      String applicationId, String instanceId, Long startTime, Long endTime,
+      Precision precision, Integer limit, boolean groupedByHosts)
+      throws SQLException, IOException {
+
     Condition condition = new DefaultCondition(
       new ArrayList<String>(metricFunctions.keySet()),
       hostname, applicationId, instanceId, startTime, endTime,
       precision, limit, groupedByHosts);
 
     if (hostname == null) {
-      TimelineMetrics metrics = hBaseAccessor.getAggregateMetricRecords
-        (condition,  metricFunctions);
+      return hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions);
+    }
 
-      return postProcessMetrics(metrics);
+    return hBaseAccessor.getMetricRecords(condition, metricFunctions);
+  }
+
+  /**
+   * Select the precision of a query that did not request one. With a point
+   * budget this is the finest precision returning at most that many points
+   * per series, otherwise it is based on the time range only.
+   *
+   * @param maxPoints point budget per series, 0 for none
+   */
+  Precision selectPrecision(long startTime, long endTime, boolean clusterQuery,
+                            int maxPoints) {
+    if (maxPoints > 0) {
+      long timeRange = endTime - startTime;
+      for (Precision precision : Precision.values()) {
+        // Cluster aggregates are not stored at minute precision
+        if (clusterQuery && precision == Precision.MINUTES) {
+          continue;
+        }
+        if (timeRange / getPrecisionResolution(precision, clusterQuery)
+            <= maxPoints) {
+          return precision;
+        }
+      }
+      return Precision.DAYS;
     }
+    return PhoenixTransactSQL.getDefaultPrecision(startTime, endTime, clusterQuery);
+  }
 
-    return postProcessMetrics(
-      hBaseAccessor.getMetricRecords(condition, metricFunctions));
+  /**
+   * @return interval in ms between the datapoints stored at the precision
+   */
+  private long getPrecisionResolution(Precision precision, boolean clusterQuery) {
+    switch (precision) {
+      case DAYS:
+        return PhoenixTransactSQL.DAY;
+      case HOURS:
+        return PhoenixTransactSQL.HOUR;
+      case MINUTES:
+        // Served from the cluster precision table for cluster queries
+        return clusterQuery ? clusterSecondResolutionMillis :
+          hostMinuteResolutionMillis;
+      default:
+        return clusterQuery ? clusterSecondResolutionMillis :
+          PRECISION_TABLE_RESOLUTION;
+    }
   }
 
   private TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
@@ -264,7 +459,7 @@ public class HBaseTimelineMetricStore extends AbstractService
       metric.setHostName(metricList.get(0).getHostName());
       // Assumption that metrics are ordered by start time
       metric.setStartTime(metricList.get(0).getStartTime());
-      Map<Long, Double> metricRecords = new TreeMap<Long, Double>();
+      MetricValueSeries metricRecords = new MetricValueSeries();
       for (TimelineMetric timelineMetric : metricList) {
         metricRecords.putAll(timelineMetric.getMetricValues());
       }
@@ -282,7 +477,15 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Error indicated by the Sql exception
     TimelinePutResponse response = new TimelinePutResponse();
 
-    hBaseAccessor.insertMetricRecords(metrics);
+    if (metricsWriter != null) {
+      metricsWriter.putMetrics(metrics);
+    } else {
+      hBaseAccessor.insertMetricRecords(metrics);
+    }
+
+    if (streamingAggregator != null) {
+      streamingAggregator.putMetrics(metrics);
+    }
 
     return response;
   }
@@ -22,6 +22,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.RetryCounter;
 import org.apache.hadoop.hbase.util.RetryCounterFactory;
+import org.apache.hadoop.metrics2.sink.timeline.MetricValueSeries;
 import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
@@ -46,6 +47,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -63,7 +65,9 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_DAILY_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_HOUR_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_RECORD_ENCODING;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_METRICS_TABLE_ADD_BINARY_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.ALTER_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_AGGREGATE_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_SQL;
@@ -81,6 +85,7 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_AGGREGATE_RECORD_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CLUSTER_AGGREGATE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_CLUSTER_AGGREGATE_TIME_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_METRICS_BINARY_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.UPSERT_METRICS_SQL;
 
 /**
@@ -104,6 +109,7 @@ public class PhoenixHBaseAccessor {
   private final Configuration metricsConf;
   private final RetryCounterFactory retryCounterFactory;
   private final ConnectionProvider dataSource;
+  private final boolean binaryEncoding;
 
   public PhoenixHBaseAccessor(Configuration hbaseConf,
                               Configuration metricsConf){
@@ -123,6 +129,8 @@ public class PhoenixHBaseAccessor {
       throw new IllegalStateException(e);
     }
     this.dataSource = dataSource;
+    this.binaryEncoding = "binary".equalsIgnoreCase(
+      metricsConf.get(METRICS_RECORD_ENCODING, "json"));
     this.retryCounterFactory = new RetryCounterFactory(
       metricsConf.getInt(GLOBAL_MAX_RETRIES, 10),
       (int) SECONDS.toMillis(metricsConf.getInt(GLOBAL_RETRY_INTERVAL, 5)));
@@ -131,7 +139,12 @@ public class PhoenixHBaseAccessor {
   private static TimelineMetric getLastTimelineMetricFromResultSet(ResultSet rs)
     throws SQLException, IOException {
     TimelineMetric metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricCommonsFromResultSet(rs);
-    metric.setMetricValues(readLastMetricValueFromJSON(rs.getString("METRICS")));
+    byte[] binaryValues = rs.getBytes("METRICS_BINARY");
+    if (binaryValues != null) {
+      metric.setMetricValues(MetricValuesCodec.decodeLast(binaryValues));
+    } else {
+      metric.setMetricValues(readLastMetricValueFromJSON(rs.getString("METRICS")));
+    }
     return metric;
   }
 
@@ -189,6 +202,20 @@ public class PhoenixHBaseAccessor {
     return (Map<Long, Double>) mapper.readValue(json, metricValuesTypeRef);
   }
 
+  /**
+   * Read the values of a METRIC_RECORD row sorted by time, from the binary
+   * column if the row was written in that form, and from the JSON column
+   * otherwise.
+   */
+  public static MetricValueSeries readMetricValues(ResultSet rs)
+    throws SQLException, IOException {
+    byte[] binaryValues = rs.getBytes("METRICS_BINARY");
+    if (binaryValues != null) {
+      return MetricValuesCodec.decode(binaryValues);
+    }
+    return new MetricValueSeries(readMetricFromJSON(rs.getString("METRICS")));
+  }
+
   private Connection getConnectionRetryingOnException()
     throws SQLException, InterruptedException {
     RetryCounter retryCounter = retryCounterFactory.create();
@@ -241,6 +268,8 @@ public class PhoenixHBaseAccessor {
       // Host level
       stmt.executeUpdate(String.format(CREATE_METRICS_TABLE_SQL,
         encoding, precisionTtl, compression));
+      stmt.executeUpdate(String.format(ALTER_METRICS_TABLE_ADD_BINARY_SQL,
+        METRICS_RECORD_TABLE_NAME));
       stmt.executeUpdate(String.format(CREATE_METRICS_AGGREGATE_TABLE_SQL,
         METRICS_AGGREGATE_MINUTE_TABLE_NAME, encoding, hostMinTtl, compression));
       stmt.executeUpdate(String.format(CREATE_METRICS_AGGREGATE_TABLE_SQL,
@@ -322,13 +351,37 @@ public class PhoenixHBaseAccessor {
     }
 
     Connection conn = getConnection();
+
+    try {
+      insertMetricRecords(conn, timelineMetrics);
+    } finally {
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+  }
+
+  /**
+   * Upsert the given metrics using an open connection, committing every
+   * {@link #PHOENIX_MAX_MUTATION_STATE_SIZE} rows so that large batches do not
+   * overflow the Phoenix mutation state. The connection is not closed.
+   */
+  public void insertMetricRecords(Connection conn, List<TimelineMetric> timelineMetrics)
+    throws SQLException, IOException {
+
     PreparedStatement metricRecordStmt = null;
     long currentTime = System.currentTimeMillis();
 
     try {
       metricRecordStmt = conn.prepareStatement(String.format(
-        UPSERT_METRICS_SQL, METRICS_RECORD_TABLE_NAME));
+        binaryEncoding ? UPSERT_METRICS_BINARY_SQL : UPSERT_METRICS_SQL,
+        METRICS_RECORD_TABLE_NAME));
 
+      int rowCount = 0;
       for (TimelineMetric metric : timelineMetrics) {
         metricRecordStmt.clearParameters();
 
@@ -351,14 +404,33 @@ public class PhoenixHBaseAccessor {
         metricRecordStmt.setDouble(9, aggregates[1]);
         metricRecordStmt.setDouble(10, aggregates[2]);
         metricRecordStmt.setLong(11, (long) aggregates[3]);
-        String json = TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
-        metricRecordStmt.setString(12, json);
+        if (binaryEncoding) {
+          // series with null values can only be stored as JSON
+          byte[] binaryValues = MetricValuesCodec.encode(metric.getMetricValues());
+          if (binaryValues != null) {
+            metricRecordStmt.setNull(12, Types.VARCHAR);
+            metricRecordStmt.setBytes(13, binaryValues);
+          } else {
+            metricRecordStmt.setString(12,
+              TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues()));
+            metricRecordStmt.setNull(13, Types.VARBINARY);
+          }
+        } else {
+          String json = TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
+          metricRecordStmt.setString(12, json);
+        }
 
         try {
           metricRecordStmt.executeUpdate();
+          rowCount++;
         } catch (SQLException sql) {
           LOG.error(sql);
         }
+
+        if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE) {
+          conn.commit();
+          rowCount = 0;
+        }
       }
 
       conn.commit();
@@ -371,13 +443,6 @@ public class PhoenixHBaseAccessor {
           // Ignore
         }
       }
-      if (conn != null) {
-        try {
-          conn.close();
-        } catch (SQLException sql) {
-          // Ignore
-        }
-      }
     }
   }
 
@@ -160,6 +160,60 @@ public class TimelineMetricConfiguration {
   public static final String SERVER_SIDE_TIMESIFT_ADJUSTMENT =
     "timeline.metrics.service.cluster.aggregator.timeshift.adjustment";
 
+  public static final String METRICS_WRITE_ASYNC_ENABLED =
+    "timeline.metrics.service.write.async";
+
+  public static final String METRICS_WRITE_QUEUE_SIZE =
+    "timeline.metrics.service.write.queue.size";
+
+  public static final String METRICS_WRITE_QUEUE_TIMEOUT =
+    "timeline.metrics.service.write.queue.timeout";
+
+  public static final String METRICS_WRITE_BATCH_SIZE =
+    "timeline.metrics.service.write.batch.size";
+
+  public static final String METRICS_WRITE_LINGER_TIME =
+    "timeline.metrics.service.write.linger.ms";
+
+  public static final String METRICS_WRITE_THREADS =
+    "timeline.metrics.service.write.threads";
+
+  public static final String METRICS_RECORD_ENCODING =
+    "timeline.metrics.service.metric.record.encoding";
+
+  public static final String AGGREGATOR_PARTITIONS =
+    "timeline.metrics.service.aggregator.partitions";
+
+  public static final String AGGREGATOR_PARTITION_THREADS =
+    "timeline.metrics.service.aggregator.partition.threads";
+
+  public static final String AGGREGATOR_PARTITION_REFRESH_INTERVAL =
+    "timeline.metrics.service.aggregator.partition.refresh.interval";
+
+  public static final String METRICS_AGGREGATION_STREAMING_ENABLED =
+    "timeline.metrics.service.aggregation.streaming";
+
+  public static final String METRICS_AGGREGATION_STREAMING_FLUSH_INTERVAL =
+    "timeline.metrics.service.aggregation.streaming.flush.interval";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_ENABLED =
+    "timeline.metrics.service.query.cache.enabled";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_SIZE =
+    "timeline.metrics.service.query.cache.size";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_MAX_DATAPOINTS =
+    "timeline.metrics.service.query.cache.max.datapoints";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_RECENT_WINDOW =
+    "timeline.metrics.service.query.cache.recent.window";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_REFRESH_OVERLAP =
+    "timeline.metrics.service.query.cache.refresh.overlap";
+
+  public static final String TIMELINE_METRICS_QUERY_MAX_POINTS =
+    "timeline.metrics.service.query.max.points";
+
   public static final String HOST_APP_ID = "HOST";
 
   private Configuration hbaseConf;
@@ -0,0 +1,366 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.MetricValueSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.util.Clock;
+import org.apache.hadoop.yarn.util.SystemClock;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_RECENT_WINDOW;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_REFRESH_OVERLAP;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_MAX_DATAPOINTS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_SIZE;
+
+/**
+ * Caches the results of recent metric queries, which dashboards poll over
+ * and over with the same metrics and a window sliding with the current
+ * time. A query for a cached window only reads the datapoints written since
+ * the cached ones settled from storage.
+ *
+ * Datapoints newer than the refresh overlap are never treated as settled,
+ * since late metrics and aggregates may still be written for that time.
+ *
+ * The least recently used windows are evicted once either the number of
+ * windows or the number of datapoints they hold exceeds its limit.
+ */
+public class TimelineMetricQueryCache {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricQueryCache.class);
+
+  /**
+   * Reads the metrics of a time range from storage.
+   */
+  public interface Loader {
+    TimelineMetrics load(long startTime, long endTime)
+      throws SQLException, IOException;
+  }
+
+  private final Map<QueryKey, CachedWindow> windows;
+  private final int maxEntries;
+  private final long maxDatapoints;
+  // Guarded by windows
+  private long cachedDatapoints;
+  private final long recentWindowMillis;
+  private final long refreshOverlapMillis;
+  private final Clock clock;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong tailRefreshCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong bypassCount = new AtomicLong();
+  private final AtomicLong cachedQueryTimeNanos = new AtomicLong();
+  private final AtomicLong storeQueryTimeNanos = new AtomicLong();
+
+  public TimelineMetricQueryCache(Configuration metricsConf) {
+    this(metricsConf, new SystemClock());
+  }
+
+  TimelineMetricQueryCache(Configuration metricsConf, Clock clock) {
+    this.maxEntries = metricsConf.getInt(TIMELINE_METRICS_QUERY_CACHE_SIZE, 500);
+    this.maxDatapoints = metricsConf.getLong(
+      TIMELINE_METRICS_QUERY_CACHE_MAX_DATAPOINTS, 5000000);
+    this.recentWindowMillis = SECONDS.toMillis(
+      metricsConf.getLong(TIMELINE_METRICS_QUERY_CACHE_RECENT_WINDOW, 3600));
+    this.refreshOverlapMillis = SECONDS.toMillis(
+      metricsConf.getLong(TIMELINE_METRICS_QUERY_CACHE_REFRESH_OVERLAP, 300));
+    this.clock = clock;
+    this.windows = new LinkedHashMap<QueryKey, CachedWindow>(16, 0.75f, true);
+    LOG.info("Caching metric queries, maxEntries = " + maxEntries +
+      ", maxDatapoints = " + maxDatapoints +
+      ", recentWindow = " + recentWindowMillis + " ms, refreshOverlap = " +
+      refreshOverlapMillis + " ms");
+  }
+
+  /**
+   * Return the metrics of the time range, from the cache when possible.
+   * Only windows ending within the recent window are cached.
+   *
+   * @param key the normalized query
+   * @param resolutionMillis interval between datapoints of the queried
+   *                         precision, at least twice this is refetched
+   * @param loader reads the metrics of a time range from storage
+   * @return a copy of the metrics the caller may modify
+   */
+  public TimelineMetrics getTimelineMetrics(QueryKey key, long startTime,
+                                            long endTime, long resolutionMillis,
+                                            Loader loader)
+      throws SQLException, IOException {
+    long queryStartTime = System.nanoTime();
+    long currentTime = clock.getTime();
+
+    if (startTime >= endTime || endTime < currentTime - recentWindowMillis) {
+      TimelineMetrics metrics = loader.load(startTime, endTime);
+      bypassCount.incrementAndGet();
+      storeQueryTimeNanos.addAndGet(System.nanoTime() - queryStartTime);
+      return metrics;
+    }
+
+    CachedWindow window;
+    synchronized (windows) {
+      window = windows.get(key);
+    }
+
+    long stableTime = Math.max(startTime, Math.min(endTime,
+      currentTime - Math.max(refreshOverlapMillis, 2 * resolutionMillis)));
+
+    TimelineMetrics result;
+    if (window != null && window.startTime <= startTime &&
+        startTime < window.stableTime) {
+      if (endTime <= window.stableTime) {
+        result = copyTimelineMetrics(window.metrics, startTime, endTime);
+        hitCount.incrementAndGet();
+      } else {
+        // Keep the settled datapoints, read everything newer
+        TimelineMetrics tail = loader.load(window.stableTime, endTime);
+        TimelineMetrics merged = new TimelineMetrics();
+        mergeTimelineMetrics(merged, window.metrics, startTime, window.stableTime);
+        mergeTimelineMetrics(merged, tail, startTime, endTime);
+        putWindow(key, new CachedWindow(merged, startTime, stableTime));
+        result = copyTimelineMetrics(merged, startTime, endTime);
+        tailRefreshCount.incrementAndGet();
+      }
+      cachedQueryTimeNanos.addAndGet(System.nanoTime() - queryStartTime);
+    } else {
+      TimelineMetrics metrics = loader.load(startTime, endTime);
+      putWindow(key, new CachedWindow(metrics, startTime, stableTime));
+      result = copyTimelineMetrics(metrics, startTime, endTime);
+      missCount.incrementAndGet();
+      storeQueryTimeNanos.addAndGet(System.nanoTime() - queryStartTime);
+    }
+
+    return result;
+  }
+
+  private void putWindow(QueryKey key, CachedWindow window) {
+    synchronized (windows) {
+      CachedWindow previous = windows.put(key, window);
+      cachedDatapoints += window.datapoints;
+      if (previous != null) {
+        cachedDatapoints -= previous.datapoints;
+      }
+
+      // Least recently used first, a window larger than the whole limit
+      // is evicted as well
+      Iterator<CachedWindow> iterator = windows.values().iterator();
+      while (iterator.hasNext() && (windows.size() > maxEntries ||
+          cachedDatapoints > maxDatapoints)) {
+        cachedDatapoints -= iterator.next().datapoints;
+        iterator.remove();
+      }
+    }
+  }
+
+  private static TimelineMetrics copyTimelineMetrics(TimelineMetrics metrics,
+                                                     long startTime, long endTime) {
+    TimelineMetrics copy = new TimelineMetrics();
+    mergeTimelineMetrics(copy, metrics, startTime, endTime);
+    return copy;
+  }
+
+  /**
+   * Merge copies of the datapoints of the metrics within the time range.
+   */
+  private static void mergeTimelineMetrics(TimelineMetrics target,
+                                           TimelineMetrics metrics,
+                                           long startTime, long endTime) {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      MetricValueSeries values = new MetricValueSeries();
+      for (Map.Entry<Long, Double> value : metric.getMetricValues().entrySet()) {
+        if (value.getKey() >= startTime && value.getKey() < endTime) {
+          values.put(value.getKey(), value.getValue());
+        }
+      }
+      if (values.isEmpty()) {
+        continue;
+      }
+
+      TimelineMetric copy = new TimelineMetric();
+      copy.setMetricName(metric.getMetricName());
+      copy.setAppId(metric.getAppId());
+      copy.setInstanceId(metric.getInstanceId());
+      copy.setHostName(metric.getHostName());
+      copy.setType(metric.getType());
+      copy.setTimestamp(Math.max(metric.getTimestamp(), values.getFirstTimestamp()));
+      copy.setStartTime(Math.max(metric.getStartTime(), values.getFirstTimestamp()));
+      copy.setMetricValues(values);
+      target.addOrMergeTimelineMetric(copy);
+    }
+  }
+
+  public int getCachedWindowCount() {
+    synchronized (windows) {
+      return windows.size();
+    }
+  }
+
+  /**
+   * @return datapoints held by the cached windows
+   */
+  public long getCachedDatapointCount() {
+    synchronized (windows) {
+      return cachedDatapoints;
+    }
+  }
+
+  /**
+   * @return queries answered from the cache alone
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return queries answered from the cache and the datapoints written since
+   */
+  public long getTailRefreshCount() {
+    return tailRefreshCount.get();
+  }
+
+  /**
+   * @return cacheable queries answered from storage alone
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return queries for windows too old to be cached
+   */
+  public long getBypassCount() {
+    return bypassCount.get();
+  }
+
+  /**
+   * @return share of the cacheable queries that used cached datapoints
+   */
+  public double getHitRatio() {
+    long cached = hitCount.get() + tailRefreshCount.get();
+    long total = cached + missCount.get();
+    return total == 0 ? 0 : (double) cached / total;
+  }
+
+  /**
+   * @return average time in ms of the queries that used cached datapoints
+   */
+  public double getAverageCachedQueryTime() {
+    long count = hitCount.get() + tailRefreshCount.get();
+    return count == 0 ? 0 : cachedQueryTimeNanos.get() / 1e6 / count;
+  }
+
+  /**
+   * @return average time in ms of the queries answered from storage alone
+   */
+  public double getAverageStoreQueryTime() {
+    long count = missCount.get() + bypassCount.get();
+    return count == 0 ? 0 : storeQueryTimeNanos.get() / 1e6 / count;
+  }
+
+  private static class CachedWindow {
+    private final TimelineMetrics metrics;
+    private final long startTime;
+    // Datapoints before this time will not change anymore
+    private final long stableTime;
+    private final long datapoints;
+
+    CachedWindow(TimelineMetrics metrics, long startTime, long stableTime) {
+      this.metrics = metrics;
+      this.startTime = startTime;
+      this.stableTime = stableTime;
+      long count = 0;
+      for (TimelineMetric metric : metrics.getMetrics()) {
+        count += metric.getMetricValues().size();
+      }
+      this.datapoints = count;
+    }
+  }
+
+  /**
+   * Query filter and precision, regardless of the time range.
+   */
+  public static class QueryKey {
+    private final List<String> metricNames;
+    private final String hostname;
+    private final String appId;
+    private final String instanceId;
+    private final Precision precision;
+
+    public QueryKey(List<String> metricNames, String hostname, String appId,
+                    String instanceId, Precision precision) {
+      List<String> sortedNames = new ArrayList<String>(metricNames);
+      Collections.sort(sortedNames);
+      this.metricNames = sortedNames;
+      this.hostname = hostname;
+      this.appId = appId;
+      this.instanceId = instanceId;
+      this.precision = precision;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      QueryKey queryKey = (QueryKey) o;
+
+      if (!metricNames.equals(queryKey.metricNames)) return false;
+      if (hostname != null ? !hostname.equals(queryKey.hostname) : queryKey.hostname != null)
+        return false;
+      if (appId != null ? !appId.equals(queryKey.appId) : queryKey.appId != null)
+        return false;
+      if (instanceId != null ? !instanceId.equals(queryKey.instanceId) : queryKey.instanceId != null)
+        return false;
+      return precision == queryKey.precision;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = metricNames.hashCode();
+      result = 31 * result + (hostname != null ? hostname.hashCode() : 0);
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+      result = 31 * result + (precision != null ? precision.hashCode() : 0);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "QueryKey{" +
+        "metricNames=" + metricNames +
+        ", hostname='" + hostname + '\'' +
+        ", appId='" + appId + '\'' +
+        ", instanceId='" + instanceId + '\'' +
+        ", precision=" + precision +
+        '}';
+    }
+  }
+}
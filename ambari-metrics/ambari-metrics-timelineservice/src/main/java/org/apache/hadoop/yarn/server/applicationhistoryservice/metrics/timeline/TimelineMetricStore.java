@@ -18,6 +18,7 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import java.io.IOException;
@@ -38,13 +39,17 @@ public interface TimelineMetricStore {
    * @param limit Override default result limit
    * @param groupedByHosts Group {@link TimelineMetric} by metric name, hostname,
    *                app id and instance id
+   * @param maxPoints Maximum number of datapoints per {@link TimelineMetric},
+   *                  null to return every stored datapoint
+   * @param downsamplingMethod Reduces a series exceeding maxPoints
    *
    * @return {@link TimelineMetric}
    * @throws java.sql.SQLException
    */
   TimelineMetrics getTimelineMetrics(List<String> metricNames, String hostname,
       String applicationId, String instanceId, Long startTime,
-      Long endTime, Precision precision, Integer limit, boolean groupedByHosts)
+      Long endTime, Precision precision, Integer limit, boolean groupedByHosts,
+      Integer maxPoints, TimelineMetricDownsampler.Method downsamplingMethod)
     throws SQLException, IOException;
 
 
@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_WRITE_BATCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_WRITE_LINGER_TIME;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_WRITE_QUEUE_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_WRITE_QUEUE_TIMEOUT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_WRITE_THREADS;
+
+/**
+ * Buffers incoming metrics in a bounded queue and writes them to the
+ * METRIC_RECORD table in batches from dedicated writer threads, each of
+ * which keeps its own connection open across batches.
+ *
+ * When the queue is full, {@link #putMetrics(TimelineMetrics)} blocks for up
+ * to the configured timeout and then fails, pushing back on the sinks rather
+ * than buffering without bound. Room is reserved for all the metrics of a
+ * request before any of them is queued, so a request is either queued as a
+ * whole or rejected as a whole and a sink retrying it never duplicates
+ * metrics.
+ */
+public class TimelineMetricsWriter {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsWriter.class);
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final BlockingQueue<TimelineMetric> queue;
+  private final int queueCapacity;
+  // free slots of the queue; taken before metrics are queued and given back
+  // once the writers have dequeued them
+  private final Semaphore capacity;
+  private final long queueTimeout;
+  private final int batchSize;
+  private final long lingerTime;
+  private final int writerCount;
+  private final List<Thread> writers = new ArrayList<Thread>();
+  private volatile boolean shouldRun = true;
+
+  // Ingest statistics
+  private final AtomicLong acceptedCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong writtenCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong totalWriteTime = new AtomicLong();
+  private volatile long startTime;
+
+  public TimelineMetricsWriter(PhoenixHBaseAccessor hBaseAccessor,
+                               Configuration metricsConf) {
+    this(hBaseAccessor,
+      metricsConf.getInt(METRICS_WRITE_QUEUE_SIZE, 100000),
+      metricsConf.getLong(METRICS_WRITE_QUEUE_TIMEOUT, 5000),
+      metricsConf.getInt(METRICS_WRITE_BATCH_SIZE, 10000),
+      metricsConf.getLong(METRICS_WRITE_LINGER_TIME, 1000),
+      metricsConf.getInt(METRICS_WRITE_THREADS, 2));
+  }
+
+  TimelineMetricsWriter(PhoenixHBaseAccessor hBaseAccessor, int queueSize,
+                        long queueTimeout, int batchSize, long lingerTime,
+                        int writerCount) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.queueCapacity = Math.max(1, queueSize);
+    this.queue = new ArrayBlockingQueue<TimelineMetric>(queueCapacity);
+    this.capacity = new Semaphore(queueCapacity, true);
+    this.queueTimeout = Math.max(0, queueTimeout);
+    this.batchSize = Math.max(1, batchSize);
+    this.lingerTime = Math.max(0, lingerTime);
+    this.writerCount = Math.max(1, writerCount);
+  }
+
+  public void start() {
+    startTime = System.currentTimeMillis();
+    for (int i = 0; i < writerCount; i++) {
+      Thread writer = new Thread(new Writer(), "timeline-metrics-writer-" + i);
+      writer.setDaemon(true);
+      writer.start();
+      writers.add(writer);
+    }
+    LOG.info("Started " + writerCount + " metric writers, batch size = " +
+      batchSize + ", linger time = " + lingerTime + " ms");
+  }
+
+  /**
+   * Stop the writers after the metrics already queued have been written.
+   */
+  public void stop() throws InterruptedException {
+    shouldRun = false;
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    writers.clear();
+  }
+
+  /**
+   * Queue the metrics for writing. Either all of the metrics are queued or
+   * none of them are.
+   *
+   * @throws IOException if the queue has no room for all of the metrics
+   * within the configured timeout, or could never hold them; none of the
+   * metrics are queued.
+   */
+  public void putMetrics(TimelineMetrics metrics) throws IOException {
+    List<TimelineMetric> timelineMetrics = metrics.getMetrics();
+    if (timelineMetrics == null || timelineMetrics.isEmpty()) {
+      return;
+    }
+
+    int count = timelineMetrics.size();
+    if (count > queueCapacity) {
+      rejectedCount.addAndGet(count);
+      throw new IOException("Metrics write queue holds at most " +
+        queueCapacity + " metrics, " + count + " metrics were not accepted.");
+    }
+
+    boolean reserved = false;
+    try {
+      reserved = capacity.tryAcquire(count, queueTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (!reserved) {
+      rejectedCount.addAndGet(count);
+      throw new IOException("Metrics write queue is full, " + count +
+        " metrics were not accepted.");
+    }
+
+    // the reservation guarantees room for every metric
+    queue.addAll(timelineMetrics);
+    acceptedCount.addAndGet(count);
+  }
+
+  /**
+   * Take the next batch from the queue, waiting up to the linger time for it
+   * to fill up.
+   */
+  private List<TimelineMetric> nextBatch() throws InterruptedException {
+    List<TimelineMetric> batch = new ArrayList<TimelineMetric>();
+    TimelineMetric first = queue.poll(1, TimeUnit.SECONDS);
+    if (first == null) {
+      return batch;
+    }
+    batch.add(first);
+
+    try {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerTime);
+      while (batch.size() < batchSize) {
+        queue.drainTo(batch, batchSize - batch.size());
+        if (batch.size() >= batchSize) {
+          break;
+        }
+        TimelineMetric next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (next == null) {
+          break;
+        }
+        batch.add(next);
+      }
+    } finally {
+      capacity.release(batch.size());
+    }
+    return batch;
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public long getAcceptedCount() {
+    return acceptedCount.get();
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  public long getWrittenCount() {
+    return writtenCount.get();
+  }
+
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  /**
+   * @return average time taken to write a batch, in milliseconds
+   */
+  public double getAverageBatchWriteTime() {
+    long batches = batchCount.get();
+    return batches == 0 ? 0 : (double) totalWriteTime.get() / batches;
+  }
+
+  /**
+   * @return metrics written per second since the writers were started
+   */
+  public double getWriteThroughput() {
+    long elapsed = System.currentTimeMillis() - startTime;
+    return elapsed <= 0 ? 0 : writtenCount.get() * 1000.0 / elapsed;
+  }
+
+  private class Writer implements Runnable {
+    private Connection conn;
+
+    @Override
+    public void run() {
+      try {
+        while (shouldRun || !queue.isEmpty()) {
+          try {
+            List<TimelineMetric> batch = nextBatch();
+            if (!batch.isEmpty()) {
+              write(batch);
+            }
+          } catch (InterruptedException e) {
+            LOG.info("Metric writer interrupted, stopping.");
+            shouldRun = false;
+          }
+        }
+      } finally {
+        closeConnection();
+      }
+    }
+
+    private void write(List<TimelineMetric> batch) {
+      long start = System.currentTimeMillis();
+      try {
+        if (conn == null) {
+          conn = hBaseAccessor.getConnection();
+        }
+        hBaseAccessor.insertMetricRecords(conn, batch);
+        writtenCount.addAndGet(batch.size());
+      } catch (SQLException e) {
+        LOG.error("Failed to write " + batch.size() + " metrics.", e);
+        failedCount.addAndGet(batch.size());
+        // start over with a new connection on the next batch
+        closeConnection();
+      } catch (IOException e) {
+        LOG.error("Failed to write " + batch.size() + " metrics.", e);
+        failedCount.addAndGet(batch.size());
+      } finally {
+        batchCount.incrementAndGet();
+        totalWriteTime.addAndGet(System.currentTimeMillis() - start);
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Wrote " + batch.size() + " metrics in " +
+          (System.currentTimeMillis() - start) + " ms, " + queue.size() +
+          " metrics queued.");
+      }
+    }
+
+    private void closeConnection() {
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+        conn = null;
+      }
+    }
+  }
+}
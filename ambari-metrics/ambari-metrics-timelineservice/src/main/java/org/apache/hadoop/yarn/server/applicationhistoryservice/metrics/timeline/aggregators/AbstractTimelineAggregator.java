@@ -23,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameRangeCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.util.Clock;
 import org.apache.hadoop.yarn.util.SystemClock;
@@ -32,10 +33,25 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_PARTITIONS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_PARTITION_REFRESH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_PARTITION_THREADS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.RESULTSET_FETCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_METRIC_NAMES_SQL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.NATIVE_TIME_RANGE_DELTA;
 
 /**
  * Base class for all runnable aggregators. Provides common functions like
@@ -57,6 +73,12 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
   protected String outputTableName;
   protected Long nativeTimeRangeDelay;
 
+  private ExecutorService partitionExecutor;
+  private volatile boolean stopped = false;
+  private volatile Thread runner;
+  private volatile List<String> partitionBoundaries;
+  private long partitionBoundariesTime;
+
   public AbstractTimelineAggregator(PhoenixHBaseAccessor hBaseAccessor,
                                     Configuration metricsConf, Clock clk) {
     this.hBaseAccessor = hBaseAccessor;
@@ -96,14 +118,37 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
   public void run() {
     LOG.info("Started Timeline aggregator thread @ " + new Date());
     Long SLEEP_INTERVAL = getSleepIntervalMillis();
+    runner = Thread.currentThread();
 
-    while (true) {
+    while (!stopped) {
       long sleepTime = runOnce(SLEEP_INTERVAL);
 
       try {
         Thread.sleep(sleepTime);
       } catch (InterruptedException e) {
-        LOG.info("Sleep interrupted, continuing with aggregation.");
+        if (!stopped) {
+          LOG.info("Sleep interrupted, continuing with aggregation.");
+        }
+      }
+    }
+    LOG.info("Stopped Timeline aggregator thread @ " + new Date());
+  }
+
+  /**
+   * Stop the aggregator thread, if it is running, and shut down the pool
+   * used to aggregate partitions.
+   */
+  @Override
+  public void stop() {
+    stopped = true;
+    Thread thread = runner;
+    if (thread != null) {
+      thread.interrupt();
+    }
+    synchronized (this) {
+      if (partitionExecutor != null) {
+        partitionExecutor.shutdownNow();
+        partitionExecutor = null;
       }
     }
   }
@@ -158,6 +203,36 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     return sleepTime;
   }
 
+  /**
+   * Aggregate the intervals between the given times by reading them back from
+   * storage, saving the checkpoint after each interval. Used to catch up
+   * after a restart when metrics are otherwise aggregated as they are
+   * received, see {@link TimelineMetricStreamingAggregator}.
+   *
+   * @return the time up to which metrics were aggregated
+   */
+  long catchUp(long fromTime, long toTime) {
+    long sleepInterval = getSleepIntervalMillis();
+    long startTime = fromTime;
+
+    while (startTime < toTime) {
+      long endTime = Math.min(startTime + sleepInterval, toTime);
+      if (!doWork(startTime, endTime)) {
+        break;
+      }
+
+      try {
+        saveCheckPoint(endTime);
+      } catch (IOException io) {
+        LOG.warn("Error saving checkpoint, restarting aggregation at " +
+          "previous checkpoint.");
+      }
+      startTime = endTime;
+    }
+
+    return startTime;
+  }
+
   private long readLastCheckpointSavingOnFirstRun(long currentTime) {
     long lastCheckPointTime = -1;
 
@@ -219,7 +294,8 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
 
   /**
    * Read metrics written during the time interval and save the sum and total
-   * in the aggregate table.
+   * in the aggregate table. When more than one partition is configured the
+   * interval is read in ranges of metric names, aggregated concurrently.
    *
    * @param startTime Sample start time
    * @param endTime Sample end time
@@ -229,9 +305,36 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     LOG.info("Start aggregation cycle @ " + new Date() + ", " +
       "startTime = " + new Date(startTime) + ", endTime = " + new Date(endTime));
 
-    boolean success = true;
+    boolean success;
     Condition condition = prepareMetricQueryCondition(startTime, endTime);
+    List<String> boundaries = getPartitionBoundaries(startTime, endTime);
 
+    beginAggregation(startTime, endTime);
+    if (boundaries.isEmpty()) {
+      success = aggregatePartition(condition, startTime, endTime);
+    } else {
+      success = aggregatePartitions(condition, boundaries, startTime, endTime);
+    }
+
+    if (success) {
+      try {
+        endAggregation(startTime, endTime);
+      } catch (SQLException e) {
+        LOG.error("Exception during aggregating metrics.", e);
+        success = false;
+      }
+    }
+
+    LOG.info("End aggregation cycle @ " + new Date());
+    return success;
+  }
+
+  /**
+   * Read and aggregate the metrics matched by the condition.
+   */
+  private boolean aggregatePartition(Condition condition, long startTime,
+                                     long endTime) {
+    boolean success = true;
     Connection conn = null;
     PreparedStatement stmt = null;
     ResultSet rs = null;
@@ -246,7 +349,6 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
       LOG.debug("Query returned @: " + new Date());
 
       aggregate(rs, startTime, endTime);
-      LOG.info("End aggregation cycle @ " + new Date());
 
     } catch (SQLException e) {
       LOG.error("Exception during aggregating metrics.", e);
@@ -278,10 +380,213 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
       }
     }
 
-    LOG.info("End aggregation cycle @ " + new Date());
     return success;
   }
 
+  /**
+   * Aggregate each range of metric names on the partition pool. Partitions
+   * hold disjoint keys so each one saves its own aggregates, the cycle only
+   * succeeds if all of them do.
+   */
+  private boolean aggregatePartitions(final Condition condition,
+                                      List<String> boundaries,
+                                      final long startTime,
+                                      final long endTime) {
+    List<Future<Long>> futures = new ArrayList<Future<Long>>();
+    ExecutorService executor = getPartitionExecutor();
+
+    for (int i = 0; i <= boundaries.size(); i++) {
+      String lowerBound = i == 0 ? null : boundaries.get(i - 1);
+      String upperBound = i == boundaries.size() ? null : boundaries.get(i);
+      final Condition partitionCondition =
+        new MetricNameRangeCondition(condition, lowerBound, upperBound);
+
+      futures.add(executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          long partitionStartTime = System.currentTimeMillis();
+          if (!aggregatePartition(partitionCondition, startTime, endTime)) {
+            return -1L;
+          }
+          return System.currentTimeMillis() - partitionStartTime;
+        }
+      }));
+    }
+
+    boolean success = true;
+    long slowest = 0;
+    long total = 0;
+    StringBuilder partitionTimes = new StringBuilder();
+    for (int i = 0; i < futures.size(); i++) {
+      long partitionTime;
+      try {
+        partitionTime = futures.get(i).get();
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted waiting for partition " + i + " to aggregate.");
+        partitionTime = -1;
+      } catch (ExecutionException e) {
+        LOG.error("Exception during aggregating metrics.", e.getCause());
+        partitionTime = -1;
+      }
+
+      if (partitionTime < 0) {
+        success = false;
+      } else {
+        slowest = Math.max(slowest, partitionTime);
+        total += partitionTime;
+      }
+      if (i > 0) {
+        partitionTimes.append(", ");
+      }
+      partitionTimes.append(partitionTime);
+    }
+
+    LOG.info("Aggregated " + futures.size() + " partitions, " +
+      "totalTime = " + total + " ms, slowestPartition = " + slowest + " ms, " +
+      "partitionTimes = [" + partitionTimes + "]");
+    return success;
+  }
+
+  /**
+   * Metric names splitting the input table in partitions of about the same
+   * number of metrics, empty if aggregation is not partitioned. Names are
+   * re-read at most once per refresh interval, stale boundaries only affect
+   * the balance of the partitions since together they cover every name.
+   */
+  private List<String> getPartitionBoundaries(long startTime, long endTime) {
+    int partitions = metricsConf.getInt(AGGREGATOR_PARTITIONS, 1);
+    if (partitions <= 1 || tableName == null) {
+      return Collections.emptyList();
+    }
+
+    long refreshIntervalMillis = SECONDS.toMillis(
+      metricsConf.getLong(AGGREGATOR_PARTITION_REFRESH_INTERVAL, 3600));
+    long currentTime = clock.getTime();
+    if (partitionBoundaries == null ||
+        currentTime - partitionBoundariesTime >= refreshIntervalMillis) {
+      try {
+        partitionBoundaries = computePartitionBoundaries(
+          readMetricNames(startTime, endTime), partitions);
+        LOG.info("Aggregating " + tableName + " in " +
+          (partitionBoundaries.size() + 1) + " partitions, " +
+          "boundaries = " + partitionBoundaries);
+      } catch (SQLException e) {
+        LOG.warn("Unable to read metric names for partitioning, " +
+          "using previous boundaries.", e);
+        if (partitionBoundaries == null) {
+          return Collections.emptyList();
+        }
+      }
+      partitionBoundariesTime = currentTime;
+    }
+    return partitionBoundaries;
+  }
+
+  private List<String> readMetricNames(long startTime, long endTime)
+      throws SQLException {
+    List<String> metricNames = new ArrayList<String>();
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+
+    try {
+      conn = hBaseAccessor.getConnection();
+      stmt = conn.prepareStatement(String.format(GET_METRIC_NAMES_SQL,
+        PhoenixTransactSQL.getNaiveTimeRangeHint(startTime,
+          nativeTimeRangeDelay != null ? nativeTimeRangeDelay : NATIVE_TIME_RANGE_DELTA),
+        tableName));
+      stmt.setLong(1, startTime);
+      stmt.setLong(2, endTime);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        metricNames.add(rs.getString("METRIC_NAME"));
+      }
+    } finally {
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // Ignore
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException sql) {
+          // Ignore
+        }
+      }
+    }
+    return metricNames;
+  }
+
+  /**
+   * Pick the metric names that split the sorted names in the given number of
+   * partitions with about the same number of names each.
+   *
+   * @return the exclusive upper bound of every partition but the last
+   */
+  public static List<String> computePartitionBoundaries(List<String> sortedNames,
+                                                        int partitions) {
+    List<String> boundaries = new ArrayList<String>();
+    if (partitions <= 1) {
+      return boundaries;
+    }
+    for (int i = 1; i < partitions; i++) {
+      int index = (int) ((long) i * sortedNames.size() / partitions);
+      if (index == 0 || index >= sortedNames.size()) {
+        continue;
+      }
+      String boundary = sortedNames.get(index);
+      if (boundaries.isEmpty() ||
+          !boundaries.get(boundaries.size() - 1).equals(boundary)) {
+        boundaries.add(boundary);
+      }
+    }
+    return boundaries;
+  }
+
+  private synchronized ExecutorService getPartitionExecutor() {
+    if (partitionExecutor == null) {
+      int threads = metricsConf.getInt(AGGREGATOR_PARTITION_THREADS,
+        metricsConf.getInt(AGGREGATOR_PARTITIONS, 1));
+      final String threadName = getClass().getSimpleName() + "-partition-";
+      partitionExecutor = Executors.newFixedThreadPool(Math.max(1, threads),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+              threadName + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    }
+    return partitionExecutor;
+  }
+
+  /**
+   * Called before the partitions of an aggregation cycle are aggregated.
+   */
+  protected void beginAggregation(long startTime, long endTime) {
+  }
+
+  /**
+   * Called once all partitions of an aggregation cycle were aggregated,
+   * to save aggregates that span partitions.
+   */
+  protected void endAggregation(long startTime, long endTime) throws SQLException {
+  }
+
   protected abstract Condition prepareMetricQueryCondition(long startTime, long endTime);
 
   protected abstract void aggregate(ResultSet rs, long startTime, long endTime) throws IOException, SQLException;
@@ -18,6 +18,8 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
 
 
+import org.apache.hadoop.metrics2.sink.timeline.MetricValueSeries;
+
 import java.util.Map;
 
 /**
@@ -32,7 +34,22 @@ public class AggregatorUtils {
     double sum = 0.0;
     int metricCount = 0;
 
-    if (metricValues != null && !metricValues.isEmpty()) {
+    if (metricValues instanceof MetricValueSeries) {
+      MetricValueSeries series = (MetricValueSeries) metricValues;
+      for (int i = 0; i < series.size(); i++) {
+        if (!series.isNullValue(i)) {
+          double value = series.getValue(i);
+          if (value > max) {
+            max = value;
+          }
+          if (value < min) {
+            min = value;
+          }
+          sum += value;
+        }
+      }
+      metricCount = series.size();
+    } else if (metricValues != null && !metricValues.isEmpty()) {
       for (Double value : metricValues.values()) {
         // TODO: Some nulls in data - need to investigate null values from host
         if (value != null) {
@@ -31,4 +31,9 @@ public interface TimelineMetricAggregator extends Runnable {
    * @return true/false
    */
   public boolean isDisabled();
+
+  /**
+   * Stop aggregating and release the threads used by the aggregator.
+   */
+  public void stop();
 }
@@ -72,7 +72,7 @@ public class TimelineMetricAggregatorFactory {
   /**
    * Minute based aggregation for hosts.
    */
-  public static TimelineMetricAggregator createTimelineMetricAggregatorMinute
+  public static TimelineMetricHostAggregator createTimelineMetricAggregatorMinute
     (PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
 
     String checkpointDir = metricsConf.get(
@@ -162,7 +162,7 @@ public class TimelineMetricAggregatorFactory {
   /**
    * Minute based aggregation for cluster.
    */
-  public static TimelineMetricAggregator createTimelineClusterAggregatorMinute(
+  public static TimelineMetricClusterAggregatorMinute createTimelineClusterAggregatorMinute(
       PhoenixHBaseAccessor hBaseAccessor, Configuration metricsConf) {
 
     String checkpointDir = metricsConf.get(
@@ -35,6 +35,7 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
  * is accomplished without doing a round trip to storage, rather
  * TimelineMetricClusterAggregators are responsible for lifecycle of
  * @TimelineMetricAppAggregator and provide the raw data to aggregate.
+ * Partitions of an aggregation cycle may provide data concurrently.
  */
 public class TimelineMetricAppAggregator {
   private static final Log LOG = LogFactory.getLog(TimelineMetricAppAggregator.class);
@@ -53,7 +54,7 @@ public class TimelineMetricAppAggregator {
   /**
    * Lifecycle method to initialize aggregation cycle.
    */
-  public void init() {
+  public synchronized void init() {
     LOG.debug("Initializing aggregation cycle.");
     aggregateClusterMetrics = new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
   }
@@ -61,7 +62,7 @@ public class TimelineMetricAppAggregator {
   /**
    * Lifecycle method to indicate end of aggregation cycle.
    */
-  public void cleanup() {
+  public synchronized void cleanup() {
     LOG.debug("Cleanup aggregated data.");
     aggregateClusterMetrics = null;
   }
@@ -69,7 +70,7 @@ public class TimelineMetricAppAggregator {
   /**
    * Useful for resetting apps that no-longer need aggregation without restart.
    */
-  public void destroy() {
+  public synchronized void destroy() {
     LOG.debug("Cleanup aggregated data as well as in-memory state.");
     aggregateClusterMetrics = null;
     hostedAppsMap = new HashMap<String, List<String>>();
@@ -83,8 +84,8 @@ public class TimelineMetricAppAggregator {
    * @param hostname This is the hostname from which this clusterMetric originated.
    * @param metricValue The metric value for this metric.
    */
-  public void processTimelineClusterMetric(TimelineClusterMetric clusterMetric,
-                                           String hostname, Double metricValue) {
+  public synchronized void processTimelineClusterMetric(TimelineClusterMetric clusterMetric,
+                                                        String hostname, Double metricValue) {
 
     String appId = clusterMetric.getAppId();
     if (appId == null) {
@@ -155,7 +156,7 @@ public class TimelineMetricAppAggregator {
   /**
    * Return current copy of aggregated data.
    */
-  public Map<TimelineClusterMetric, MetricClusterAggregate> getAggregateClusterMetrics() {
+  public synchronized Map<TimelineClusterMetric, MetricClusterAggregate> getAggregateClusterMetrics() {
     return aggregateClusterMetrics;
   }
 
@@ -75,13 +75,28 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
     // Account for time shift due to client side buffering by shifting the
     // timestamps with the difference between server time and series start time
     List<Long[]> timeSlices = getTimeSlices(startTime - serverTimeShiftAdjustment, endTime);
-    // Initialize app aggregates for host metrics
-    appAggregator.init();
     Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
       aggregateMetricsFromResultSet(rs, timeSlices);
 
     LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
     hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
+  }
+
+  @Override
+  protected void beginAggregation(long startTime, long endTime) {
+    // Initialize app aggregates for host metrics
+    appAggregator.init();
+  }
+
+  @Override
+  protected void endAggregation(long startTime, long endTime) throws SQLException {
+    // App level aggregates are built from every partition, save them once
+    Map<TimelineClusterMetric, MetricClusterAggregate> appAggregates =
+      appAggregator.getAggregateClusterMetrics();
+    if (appAggregates != null && !appAggregates.isEmpty()) {
+      LOG.info("Saving " + appAggregates.size() + " app metric aggregates.");
+      hBaseAccessor.saveClusterAggregateRecords(appAggregates);
+    }
     appAggregator.cleanup();
   }
 
@@ -144,8 +159,6 @@ public class TimelineMetricClusterAggregatorMinute extends AbstractTimelineAggre
       processAggregateClusterMetrics(aggregateClusterMetrics, metric, timeSlices);
     }
 
-    // Add app level aggregates to save
-    aggregateClusterMetrics.putAll(appAggregator.getAggregateClusterMetrics());
     return aggregateClusterMetrics;
   }
 
@@ -0,0 +1,681 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.MetricValueSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.util.Clock;
+import org.apache.hadoop.yarn.util.SystemClock;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_AGGREGATION_STREAMING_FLUSH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
+
+/**
+ * Computes the minute host and cluster aggregates from the metrics as they
+ * are received instead of reading them back from the METRIC_RECORD table.
+ *
+ * Host metrics are accumulated in windows of the host minute aggregator
+ * interval by server time, the same way the
+ * {@link TimelineMetricHostAggregator} groups rows by SERVER_TIME. Cluster
+ * metrics are averaged per host into time slices by metric timestamp and
+ * then summed across hosts, as done by
+ * {@link TimelineMetricClusterAggregatorMinute}. A flusher thread saves each
+ * window once it is closed and moves the checkpoint of the corresponding
+ * aggregator past it; the checkpoints are only used to catch up after a
+ * restart, by reading the metrics received while the collector was down
+ * back from storage with the regular aggregators. The checkpoint of an
+ * aggregator is left alone until it has caught up, a failed catch up is
+ * retried on every flush interval.
+ */
+public class TimelineMetricStreamingAggregator {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricStreamingAggregator.class);
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  // Either aggregator is null if its aggregation is disabled
+  private final TimelineMetricHostAggregator hostAggregator;
+  private final TimelineMetricClusterAggregatorMinute clusterAggregator;
+  private final TimelineMetricAppAggregator appAggregator;
+  private final Clock clock;
+  private final long hostInterval;
+  private final long sliceInterval;
+  private final long serverTimeShiftAdjustment;
+  private final long checkpointDelayMillis;
+  private final long flushIntervalMillis;
+
+  // Open host windows by start time, guarded by this
+  private final TreeMap<Long, Map<TimelineMetric, MetricHostAggregate>> hostWindows =
+    new TreeMap<Long, Map<TimelineMetric, MetricHostAggregate>>();
+  // Open cluster slices by start time with the sum and count of the values
+  // received from each host, guarded by this
+  private final TreeMap<Long, Map<TimelineClusterMetric, Map<String, double[]>>> clusterSlices =
+    new TreeMap<Long, Map<TimelineClusterMetric, Map<String, double[]>>>();
+  // Metrics received before this time are aggregated from storage
+  private long streamingStartTime = 0;
+  private long hostFlushedTime = 0;
+  private long clusterFlushedTime = 0;
+
+  // Aggregates which could not be saved, retried on the next flush
+  private final Map<TimelineMetric, MetricHostAggregate> pendingHostAggregates =
+    new HashMap<TimelineMetric, MetricHostAggregate>();
+  private final Map<TimelineClusterMetric, MetricClusterAggregate> pendingClusterAggregates =
+    new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+
+  // Aggregators which have not caught up yet, with the time from which
+  // they still need to aggregate from storage
+  private final Map<AbstractTimelineAggregator, Long> recoveryTimes =
+    new ConcurrentHashMap<AbstractTimelineAggregator, Long>();
+  private volatile boolean shouldRun = true;
+  private final List<Thread> threads = new ArrayList<Thread>();
+
+  // Aggregation statistics
+  private final AtomicLong acceptedValueCount = new AtomicLong();
+  private final AtomicLong droppedValueCount = new AtomicLong();
+  private final AtomicLong flushCount = new AtomicLong();
+  private final AtomicLong failedFlushCount = new AtomicLong();
+  private final AtomicLong savedHostAggregateCount = new AtomicLong();
+  private final AtomicLong savedClusterAggregateCount = new AtomicLong();
+  private final AtomicLong totalFlushTime = new AtomicLong();
+
+  public TimelineMetricStreamingAggregator(PhoenixHBaseAccessor hBaseAccessor,
+                                           Configuration metricsConf,
+                                           TimelineMetricHostAggregator hostAggregator,
+                                           TimelineMetricClusterAggregatorMinute clusterAggregator) {
+    this(hBaseAccessor, metricsConf, hostAggregator, clusterAggregator,
+      new SystemClock());
+  }
+
+  public TimelineMetricStreamingAggregator(PhoenixHBaseAccessor hBaseAccessor,
+                                           Configuration metricsConf,
+                                           TimelineMetricHostAggregator hostAggregator,
+                                           TimelineMetricClusterAggregatorMinute clusterAggregator,
+                                           Clock clock) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.hostAggregator = hostAggregator == null || hostAggregator.isDisabled() ?
+      null : hostAggregator;
+    this.clusterAggregator = clusterAggregator == null || clusterAggregator.isDisabled() ?
+      null : clusterAggregator;
+    this.appAggregator = new TimelineMetricAppAggregator(metricsConf);
+    this.clock = clock;
+    this.hostInterval = this.hostAggregator == null ?
+      0 : Math.max(1, this.hostAggregator.getSleepIntervalMillis());
+    this.sliceInterval = this.clusterAggregator == null ?
+      0 : Math.max(1, this.clusterAggregator.timeSliceIntervalMillis);
+    this.serverTimeShiftAdjustment = Long.parseLong(
+      metricsConf.get(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "90000"));
+    this.checkpointDelayMillis = SECONDS.toMillis(
+      metricsConf.getInt(AGGREGATOR_CHECKPOINT_DELAY, 120));
+    this.flushIntervalMillis = SECONDS.toMillis(Math.max(1,
+      metricsConf.getInt(METRICS_AGGREGATION_STREAMING_FLUSH_INTERVAL, 10)));
+  }
+
+  /**
+   * Start aggregating metrics from the beginning of the next window and
+   * catch up with the metrics received since the last checkpoints, once they
+   * have been written, by reading them back from storage.
+   */
+  public void start() {
+    long currentTime = clock.getTime();
+    long startTime = currentTime;
+    if (hostInterval > 0) {
+      startTime = alignUp(currentTime, hostInterval);
+    } else if (sliceInterval > 0) {
+      startTime = alignUp(currentTime, sliceInterval);
+    }
+
+    synchronized (this) {
+      streamingStartTime = startTime;
+      hostFlushedTime = startTime;
+      clusterFlushedTime = startTime;
+    }
+
+    addRecovery(hostAggregator, startTime);
+    addRecovery(clusterAggregator, startTime);
+    if (!recoveryTimes.isEmpty()) {
+      startThread(new Recovery(startTime),
+        "timeline-metrics-aggregator-recovery");
+    }
+
+    startThread(new Flusher(), "timeline-metrics-aggregator-flusher");
+    LOG.info("Started streaming aggregation @ " + new Date(startTime) +
+      ", host window = " + hostInterval + " ms, cluster time slice = " +
+      sliceInterval + " ms");
+  }
+
+  /**
+   * Stop the aggregation. Open windows are not saved, they are aggregated
+   * from storage on the next start since the checkpoints were not moved
+   * past them.
+   */
+  public void stop() throws InterruptedException {
+    shouldRun = false;
+    for (Thread thread : threads) {
+      thread.interrupt();
+      thread.join();
+    }
+    threads.clear();
+  }
+
+  /**
+   * Add received metrics to the open windows.
+   */
+  public void putMetrics(TimelineMetrics metrics) {
+    List<TimelineMetric> timelineMetrics = metrics.getMetrics();
+    if (timelineMetrics == null || timelineMetrics.isEmpty()) {
+      return;
+    }
+
+    // Compute what can be outside of the lock
+    List<double[]> aggregates = new ArrayList<double[]>(timelineMetrics.size());
+    List<Map<Long, double[]>> slices = new ArrayList<Map<Long, double[]>>(timelineMetrics.size());
+    long currentTime = clock.getTime();
+    for (TimelineMetric metric : timelineMetrics) {
+      aggregates.add(hostAggregator == null ?
+        null : AggregatorUtils.calculateAggregates(metric.getMetricValues()));
+      slices.add(clusterAggregator == null ?
+        null : sliceMetricValues(metric.getMetricValues(), currentTime));
+    }
+
+    synchronized (this) {
+      // Server time is read under the lock so that no metrics are added to a
+      // window which was already flushed
+      long serverTime = clock.getTime();
+      if (serverTime < streamingStartTime) {
+        return;
+      }
+
+      for (int i = 0; i < timelineMetrics.size(); i++) {
+        TimelineMetric metric = timelineMetrics.get(i);
+        if (aggregates.get(i) != null) {
+          addHostAggregate(metric, aggregates.get(i), serverTime);
+        }
+        if (slices.get(i) != null) {
+          addClusterSlices(metric, slices.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Aggregate the metrics received between the last checkpoints and the
+   * start of the streaming aggregation from storage. Access relaxed for
+   * tests.
+   *
+   * @return true once every aggregator has caught up
+   */
+  public boolean catchUp() {
+    long startTime;
+    synchronized (this) {
+      startTime = streamingStartTime;
+    }
+
+    for (Map.Entry<AbstractTimelineAggregator, Long> entry : recoveryTimes.entrySet()) {
+      AbstractTimelineAggregator aggregator = entry.getKey();
+      long fromTime = entry.getValue();
+
+      LOG.info("Aggregating metrics from storage, startTime = " +
+        new Date(fromTime) + ", endTime = " + new Date(startTime));
+      long aggregatedTime = aggregator.catchUp(fromTime, startTime);
+      if (aggregatedTime < startTime) {
+        LOG.error("Metrics between " + new Date(aggregatedTime) + " and " +
+          new Date(startTime) + " could not be aggregated, retrying.");
+        recoveryTimes.put(aggregator, aggregatedTime);
+      } else {
+        // Streaming may move the checkpoint from now on
+        recoveryTimes.remove(aggregator);
+      }
+    }
+
+    return recoveryTimes.isEmpty();
+  }
+
+  /**
+   * Save the windows which are closed. Access relaxed for tests.
+   */
+  public void flush() {
+    long start = clock.getTime();
+    Map<TimelineMetric, MetricHostAggregate> hostAggregates =
+      new HashMap<TimelineMetric, MetricHostAggregate>();
+    List<Map<TimelineClusterMetric, Map<String, double[]>>> closedSlices =
+      new ArrayList<Map<TimelineClusterMetric, Map<String, double[]>>>();
+    long hostTime;
+    long clusterTime;
+
+    synchronized (this) {
+      long currentTime = clock.getTime();
+      if (hostAggregator != null) {
+        long windowStart = Math.max(streamingStartTime,
+          alignDown(currentTime, hostInterval));
+        SortedMap<Long, Map<TimelineMetric, MetricHostAggregate>> closed =
+          hostWindows.headMap(windowStart);
+        for (Map<TimelineMetric, MetricHostAggregate> window : closed.values()) {
+          hostAggregates.putAll(window);
+        }
+        closed.clear();
+        hostFlushedTime = Math.max(hostFlushedTime, windowStart);
+      }
+
+      if (clusterAggregator != null) {
+        // Slices stay open for the client side buffering time
+        long sliceStart = Math.max(streamingStartTime,
+          alignDown(currentTime - serverTimeShiftAdjustment, sliceInterval));
+        SortedMap<Long, Map<TimelineClusterMetric, Map<String, double[]>>> closed =
+          clusterSlices.headMap(sliceStart);
+        closedSlices.addAll(closed.values());
+        closed.clear();
+        clusterFlushedTime = Math.max(clusterFlushedTime, sliceStart);
+      }
+
+      hostTime = hostFlushedTime;
+      clusterTime = clusterFlushedTime;
+    }
+
+    boolean success = true;
+    if (hostAggregator != null) {
+      pendingHostAggregates.putAll(hostAggregates);
+      success &= saveHostAggregates(hostTime);
+    }
+    if (clusterAggregator != null) {
+      pendingClusterAggregates.putAll(aggregateClusterSlices(closedSlices));
+      success &= saveClusterAggregates(clusterTime);
+    }
+
+    long flushTime = clock.getTime() - start;
+    flushCount.incrementAndGet();
+    totalFlushTime.addAndGet(flushTime);
+    if (!success) {
+      failedFlushCount.incrementAndGet();
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Flushed " + hostAggregates.size() + " host windows and " +
+        closedSlices.size() + " cluster slices in " + flushTime + " ms, " +
+        "host lag = " + getHostAggregationLag() + " ms, cluster lag = " +
+        getClusterAggregationLag() + " ms");
+    }
+  }
+
+  private void addHostAggregate(TimelineMetric metric, double[] aggregates,
+                                long serverTime) {
+    long windowStart = alignDown(serverTime, hostInterval);
+    Map<TimelineMetric, MetricHostAggregate> window = hostWindows.get(windowStart);
+    if (window == null) {
+      window = new HashMap<TimelineMetric, MetricHostAggregate>();
+      hostWindows.put(windowStart, window);
+    }
+
+    TimelineMetric key = new TimelineMetric();
+    key.setMetricName(metric.getMetricName());
+    key.setAppId(metric.getAppId());
+    key.setInstanceId(metric.getInstanceId());
+    key.setHostName(metric.getHostName());
+    key.setTimestamp(windowStart);
+    key.setType(metric.getType());
+
+    MetricHostAggregate hostAggregate = window.get(key);
+    if (hostAggregate == null) {
+      hostAggregate = new MetricHostAggregate();
+      window.put(key, hostAggregate);
+    }
+    hostAggregate.updateAggregates(new MetricHostAggregate(aggregates[0],
+      (int) aggregates[3], 0.0, aggregates[1], aggregates[2]));
+    acceptedValueCount.addAndGet((long) aggregates[3]);
+  }
+
+  private void addClusterSlices(TimelineMetric metric, Map<Long, double[]> slices) {
+    for (Map.Entry<Long, double[]> slice : slices.entrySet()) {
+      long sliceStart = slice.getKey();
+      double[] sumAndCount = slice.getValue();
+      if (sliceStart < clusterFlushedTime || sliceStart < streamingStartTime) {
+        // Too late, the slice was saved or is aggregated from storage
+        droppedValueCount.addAndGet((long) sumAndCount[1]);
+        continue;
+      }
+
+      Map<TimelineClusterMetric, Map<String, double[]>> clusterMetrics =
+        clusterSlices.get(sliceStart);
+      if (clusterMetrics == null) {
+        clusterMetrics = new HashMap<TimelineClusterMetric, Map<String, double[]>>();
+        clusterSlices.put(sliceStart, clusterMetrics);
+      }
+
+      TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
+        metric.getMetricName(), metric.getAppId(), null, sliceStart,
+        metric.getType());
+      Map<String, double[]> hosts = clusterMetrics.get(clusterMetric);
+      if (hosts == null) {
+        hosts = new HashMap<String, double[]>();
+        clusterMetrics.put(clusterMetric, hosts);
+      }
+
+      double[] hostSumAndCount = hosts.get(metric.getHostName());
+      if (hostSumAndCount == null) {
+        hosts.put(metric.getHostName(), sumAndCount);
+      } else {
+        hostSumAndCount[0] += sumAndCount[0];
+        hostSumAndCount[1] += sumAndCount[1];
+      }
+      acceptedValueCount.addAndGet((long) sumAndCount[1]);
+    }
+  }
+
+  /**
+   * Sum and count the values of a metric by time slice. Values too far in
+   * the future to belong to an open slice are dropped.
+   */
+  private Map<Long, double[]> sliceMetricValues(Map<Long, Double> metricValues,
+                                                long currentTime) {
+    Map<Long, double[]> slices = new HashMap<Long, double[]>();
+    if (metricValues == null) {
+      return slices;
+    }
+
+    long maxTimestamp = currentTime + serverTimeShiftAdjustment;
+    if (metricValues instanceof MetricValueSeries) {
+      MetricValueSeries series = (MetricValueSeries) metricValues;
+      for (int i = 0; i < series.size(); i++) {
+        if (!series.isNullValue(i)) {
+          addToSlice(slices, series.getTimestamp(i), series.getValue(i), maxTimestamp);
+        }
+      }
+    } else {
+      for (Map.Entry<Long, Double> value : metricValues.entrySet()) {
+        if (value.getKey() != null && value.getValue() != null) {
+          addToSlice(slices, value.getKey(), value.getValue(), maxTimestamp);
+        }
+      }
+    }
+    return slices;
+  }
+
+  private void addToSlice(Map<Long, double[]> slices, long timestamp,
+                          double value, long maxTimestamp) {
+    if (timestamp >= maxTimestamp) {
+      droppedValueCount.incrementAndGet();
+      return;
+    }
+
+    long sliceStart = alignDown(timestamp, sliceInterval);
+    double[] sumAndCount = slices.get(sliceStart);
+    if (sumAndCount == null) {
+      slices.put(sliceStart, new double[] { value, 1 });
+    } else {
+      sumAndCount[0] += value;
+      sumAndCount[1]++;
+    }
+  }
+
+  /**
+   * Average the values of each host within a slice and aggregate the averages
+   * across hosts, along with the app level aggregates of host metrics.
+   */
+  private Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterSlices(
+      List<Map<TimelineClusterMetric, Map<String, double[]>>> slices) {
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    if (slices.isEmpty()) {
+      return aggregateClusterMetrics;
+    }
+
+    appAggregator.init();
+    for (Map<TimelineClusterMetric, Map<String, double[]>> slice : slices) {
+      for (Map.Entry<TimelineClusterMetric, Map<String, double[]>> clusterMetricEntry :
+          slice.entrySet()) {
+        TimelineClusterMetric clusterMetric = clusterMetricEntry.getKey();
+
+        for (Map.Entry<String, double[]> hostEntry : clusterMetricEntry.getValue().entrySet()) {
+          double avgValue = hostEntry.getValue()[0] / hostEntry.getValue()[1];
+
+          MetricClusterAggregate aggregate = aggregateClusterMetrics.get(clusterMetric);
+          if (aggregate == null) {
+            aggregate = new MetricClusterAggregate(avgValue, 1, null, avgValue, avgValue);
+            aggregateClusterMetrics.put(clusterMetric, aggregate);
+          } else {
+            aggregate.updateSum(avgValue);
+            aggregate.updateNumberOfHosts(1);
+            aggregate.updateMax(avgValue);
+            aggregate.updateMin(avgValue);
+          }
+          appAggregator.processTimelineClusterMetric(clusterMetric,
+            hostEntry.getKey(), avgValue);
+        }
+      }
+    }
+
+    aggregateClusterMetrics.putAll(appAggregator.getAggregateClusterMetrics());
+    appAggregator.cleanup();
+    return aggregateClusterMetrics;
+  }
+
+  private boolean saveHostAggregates(long flushedTime) {
+    if (!pendingHostAggregates.isEmpty()) {
+      try {
+        hBaseAccessor.saveHostAggregateRecords(pendingHostAggregates,
+          hostAggregator.outputTableName);
+        savedHostAggregateCount.addAndGet(pendingHostAggregates.size());
+        pendingHostAggregates.clear();
+      } catch (SQLException e) {
+        LOG.error("Failed to save " + pendingHostAggregates.size() +
+          " host aggregates, retrying on the next flush.", e);
+        return false;
+      }
+    }
+
+    saveCheckPoint(hostAggregator, flushedTime);
+    return true;
+  }
+
+  private boolean saveClusterAggregates(long flushedTime) {
+    if (!pendingClusterAggregates.isEmpty()) {
+      try {
+        hBaseAccessor.saveClusterAggregateRecords(pendingClusterAggregates);
+        savedClusterAggregateCount.addAndGet(pendingClusterAggregates.size());
+        pendingClusterAggregates.clear();
+      } catch (SQLException e) {
+        LOG.error("Failed to save " + pendingClusterAggregates.size() +
+          " cluster aggregates, retrying on the next flush.", e);
+        return false;
+      }
+    }
+
+    saveCheckPoint(clusterAggregator, flushedTime);
+    return true;
+  }
+
+  private void saveCheckPoint(AbstractTimelineAggregator aggregator, long time) {
+    // The checkpoint is moved by the recovery until it has caught up
+    if (recoveryTimes.containsKey(aggregator)) {
+      return;
+    }
+
+    try {
+      aggregator.saveCheckPoint(time);
+    } catch (IOException io) {
+      LOG.warn("Error saving checkpoint of streaming aggregation.", io);
+    }
+  }
+
+  /**
+   * Add the given aggregator to those which need to catch up if its
+   * checkpoint is before the given start time.
+   */
+  private void addRecovery(AbstractTimelineAggregator aggregator,
+                           long startTime) {
+    if (aggregator == null) {
+      return;
+    }
+
+    long checkpoint = aggregator.readCheckPoint();
+    if (checkpoint == -1 || checkpoint >= startTime) {
+      return;
+    }
+
+    if (startTime - checkpoint - checkpointDelayMillis >
+        aggregator.getCheckpointCutOffIntervalMillis()) {
+      LOG.warn("Last Checkpoint is too old, discarding last checkpoint. " +
+        "lastCheckPointTime = " + new Date(checkpoint));
+      return;
+    }
+
+    recoveryTimes.put(aggregator, checkpoint);
+  }
+
+  private void startThread(Runnable runnable, String name) {
+    Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+    threads.add(thread);
+  }
+
+  private static long alignDown(long time, long interval) {
+    return time - (time % interval);
+  }
+
+  private static long alignUp(long time, long interval) {
+    long aligned = alignDown(time, interval);
+    return aligned == time ? time : aligned + interval;
+  }
+
+  public long getAcceptedValueCount() {
+    return acceptedValueCount.get();
+  }
+
+  /**
+   * @return values which arrived after their time slice was saved
+   */
+  public long getDroppedValueCount() {
+    return droppedValueCount.get();
+  }
+
+  public long getFlushCount() {
+    return flushCount.get();
+  }
+
+  public long getFailedFlushCount() {
+    return failedFlushCount.get();
+  }
+
+  public long getSavedHostAggregateCount() {
+    return savedHostAggregateCount.get();
+  }
+
+  public long getSavedClusterAggregateCount() {
+    return savedClusterAggregateCount.get();
+  }
+
+  /**
+   * @return average time taken to flush, in milliseconds
+   */
+  public double getAverageFlushTime() {
+    long flushes = flushCount.get();
+    return flushes == 0 ? 0 : (double) totalFlushTime.get() / flushes;
+  }
+
+  /**
+   * @return time since the end of the last saved host window, in milliseconds
+   */
+  public synchronized long getHostAggregationLag() {
+    return hostAggregator == null ? 0 : clock.getTime() - hostFlushedTime;
+  }
+
+  /**
+   * @return time since the end of the last saved cluster time slice, in
+   * milliseconds
+   */
+  public synchronized long getClusterAggregationLag() {
+    return clusterAggregator == null ? 0 : clock.getTime() - clusterFlushedTime;
+  }
+
+  /**
+   * @return number of windows and time slices which were not saved yet
+   */
+  public synchronized int getOpenWindowCount() {
+    return hostWindows.size() + clusterSlices.size();
+  }
+
+  public boolean isRecovering() {
+    return !recoveryTimes.isEmpty();
+  }
+
+  private class Flusher implements Runnable {
+    @Override
+    public void run() {
+      while (shouldRun) {
+        try {
+          Thread.sleep(flushIntervalMillis);
+        } catch (InterruptedException e) {
+          LOG.info("Aggregate flusher interrupted, stopping.");
+          return;
+        }
+
+        try {
+          flush();
+        } catch (RuntimeException e) {
+          LOG.error("Exception during flushing aggregates.", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Catches up with the metrics received before the start of the streaming
+   * aggregation once they have been written, until it succeeds.
+   */
+  private class Recovery implements Runnable {
+    private final long startTime;
+
+    private Recovery(long startTime) {
+      this.startTime = startTime;
+    }
+
+    @Override
+    public void run() {
+      try {
+        // Wait for the metrics received before the start to be written
+        long recoveryTime = startTime + checkpointDelayMillis;
+        while (shouldRun && clock.getTime() < recoveryTime) {
+          Thread.sleep(Math.min(1000, recoveryTime - clock.getTime()));
+        }
+
+        while (shouldRun && !catchUp()) {
+          Thread.sleep(flushIntervalMillis);
+        }
+      } catch (InterruptedException e) {
+        LOG.info("Aggregation recovery interrupted, stopping.");
+      }
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Restricts a condition to the metric names within a range, so that
+ * aggregators can read a time window in partitions. METRIC_NAME leads the
+ * row key of every table, so each partition is a contiguous scan.
+ *
+ * The bounds are returned as the metric names of the condition since those
+ * are bound first by
+ * {@link PhoenixTransactSQL#prepareGetMetricsSqlStmt(java.sql.Connection, Condition)}.
+ */
+public class MetricNameRangeCondition implements Condition {
+  private final Condition adaptee;
+  // Inclusive, null for the first partition
+  private final String lowerBound;
+  // Exclusive, null for the last partition
+  private final String upperBound;
+
+  public MetricNameRangeCondition(Condition condition, String lowerBound,
+                                  String upperBound) {
+    this.adaptee = condition;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return adaptee.isEmpty();
+  }
+
+  @Override
+  public List<String> getMetricNames() {
+    List<String> bounds = new ArrayList<String>(2);
+    if (lowerBound != null) {
+      bounds.add(lowerBound);
+    }
+    if (upperBound != null) {
+      bounds.add(upperBound);
+    }
+    return bounds.isEmpty() ? null : bounds;
+  }
+
+  @Override
+  public boolean isPointInTime() {
+    return adaptee.isPointInTime();
+  }
+
+  @Override
+  public boolean isGrouped() {
+    return adaptee.isGrouped();
+  }
+
+  @Override
+  public void setStatement(String statement) {
+    adaptee.setStatement(statement);
+  }
+
+  @Override
+  public String getHostname() {
+    return adaptee.getHostname();
+  }
+
+  @Override
+  public Precision getPrecision() {
+    return adaptee.getPrecision();
+  }
+
+  @Override
+  public void setPrecision(Precision precision) {
+    adaptee.setPrecision(precision);
+  }
+
+  @Override
+  public String getAppId() {
+    return adaptee.getAppId();
+  }
+
+  @Override
+  public String getInstanceId() {
+    return adaptee.getInstanceId();
+  }
+
+  @Override
+  public StringBuilder getConditionClause() {
+    StringBuilder sb = new StringBuilder();
+    boolean appendConjunction = false;
+
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      lowerBound, " METRIC_NAME >= ?");
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      upperBound, " METRIC_NAME < ?");
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      getHostname(), " HOSTNAME = ?");
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      getAppId(), " APP_ID = ?");
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      getInstanceId(), " INSTANCE_ID = ?");
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      getStartTime(), " SERVER_TIME >= ?");
+    DefaultCondition.append(sb, appendConjunction, getEndTime(),
+      " SERVER_TIME < ?");
+
+    return sb;
+  }
+
+  @Override
+  public String getOrderByClause(boolean asc) {
+    return adaptee.getOrderByClause(asc);
+  }
+
+  @Override
+  public String getStatement() {
+    return adaptee.getStatement();
+  }
+
+  @Override
+  public Long getStartTime() {
+    return adaptee.getStartTime();
+  }
+
+  @Override
+  public Long getEndTime() {
+    return adaptee.getEndTime();
+  }
+
+  @Override
+  public Integer getLimit() {
+    return adaptee.getLimit();
+  }
+
+  @Override
+  public Integer getFetchSize() {
+    return adaptee.getFetchSize();
+  }
+
+  @Override
+  public void setFetchSize(Integer fetchSize) {
+    adaptee.setFetchSize(fetchSize);
+  }
+
+  @Override
+  public void addOrderByColumn(String column) {
+    adaptee.addOrderByColumn(column);
+  }
+
+  @Override
+  public void setNoLimit() {
+    adaptee.setNoLimit();
+  }
+
+  public String getLowerBound() {
+    return lowerBound;
+  }
+
+  public String getUpperBound() {
+    return upperBound;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricNameRangeCondition{" +
+      "lowerBound='" + lowerBound + '\'' +
+      ", upperBound='" + upperBound + '\'' +
+      ", adaptee=" + adaptee +
+      '}';
+  }
+}
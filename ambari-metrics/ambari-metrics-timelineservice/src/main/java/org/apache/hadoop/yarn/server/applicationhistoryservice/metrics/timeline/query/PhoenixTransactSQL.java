@@ -53,7 +53,8 @@ public class PhoenixTransactSQL {
     "METRIC_COUNT UNSIGNED_INT, " +
     "METRIC_MAX DOUBLE, " +
     "METRIC_MIN DOUBLE, " +
-    "METRICS VARCHAR CONSTRAINT pk " +
+    "METRICS VARCHAR, " +
+    "METRICS_BINARY VARBINARY CONSTRAINT pk " +
     "PRIMARY KEY (METRIC_NAME, HOSTNAME, SERVER_TIME, APP_ID, " +
     "INSTANCE_ID)) DATA_BLOCK_ENCODING='%s', IMMUTABLE_ROWS=true, " +
     "TTL=%s, COMPRESSION='%s'";
@@ -110,6 +111,13 @@ public class PhoenixTransactSQL {
    */
   public static final String ALTER_SQL = "ALTER TABLE %s SET TTL=%s";
 
+  /**
+   * Add the binary values column to metric records tables created before it
+   * existed.
+   */
+  public static final String ALTER_METRICS_TABLE_ADD_BINARY_SQL =
+    "ALTER TABLE %s ADD IF NOT EXISTS METRICS_BINARY VARBINARY";
+
   /**
    * Insert into metric records table.
    */
@@ -123,6 +131,21 @@ public class PhoenixTransactSQL {
     "METRICS) VALUES " +
     "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+  /**
+   * Insert into metric records table, with the values in either the JSON or
+   * the binary column.
+   */
+  public static final String UPSERT_METRICS_BINARY_SQL = "UPSERT INTO %s " +
+    "(METRIC_NAME, HOSTNAME, APP_ID, INSTANCE_ID, SERVER_TIME, START_TIME, " +
+    "UNITS, " +
+    "METRIC_SUM, " +
+    "METRIC_MAX, " +
+    "METRIC_MIN, " +
+    "METRIC_COUNT, " +
+    "METRICS, " +
+    "METRICS_BINARY) VALUES " +
+    "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
   public static final String UPSERT_CLUSTER_AGGREGATE_SQL = "UPSERT INTO " +
     "%s (METRIC_NAME, APP_ID, INSTANCE_ID, SERVER_TIME, " +
     "UNITS, " +
@@ -160,7 +183,8 @@ public class PhoenixTransactSQL {
     "METRIC_MAX, " +
     "METRIC_MIN, " +
     "METRIC_COUNT, " +
-    "METRICS " +
+    "METRICS, " +
+    "METRICS_BINARY " +
     "FROM %s";
 
   public static final String GET_METRIC_AGGREGATE_ONLY_SQL = "SELECT %s " +
@@ -192,6 +216,15 @@ public class PhoenixTransactSQL {
     "METRIC_MIN " +
     "FROM %s";
 
+  /**
+   * Retrieve the distinct metric names written within a time range, used to
+   * partition aggregation.
+   */
+  public static final String GET_METRIC_NAMES_SQL = "SELECT %s " +
+    "DISTINCT METRIC_NAME " +
+    "FROM %s WHERE SERVER_TIME >= ? AND SERVER_TIME < ? " +
+    "ORDER BY METRIC_NAME";
+
   public static final String METRICS_RECORD_TABLE_NAME = "METRIC_RECORD";
   public static final String METRICS_AGGREGATE_MINUTE_TABLE_NAME =
     "METRIC_RECORD_MINUTE";
@@ -221,6 +254,25 @@ public class PhoenixTransactSQL {
     return String.format("/*+ NATIVE_TIME_RANGE(%s) */", (startTime - delta));
   }
 
+  /**
+   * Precision of the table to query when none was requested, based on the
+   * time range. Cluster aggregates are not stored at minute precision.
+   */
+  public static Precision getDefaultPrecision(Long startTime, Long endTime,
+                                              boolean clusterAggregate) {
+    long end = endTime == null ? System.currentTimeMillis() : endTime;
+    long start = startTime == null ? 0 : startTime;
+    long timeRange = end - start;
+    if (timeRange > 7 * DAY) {
+      return Precision.DAYS;
+    } else if (timeRange < 7 * DAY && timeRange > DAY) {
+      return Precision.HOURS;
+    } else if (timeRange > 10 * HOUR && !clusterAggregate) {
+      return Precision.MINUTES;
+    }
+    return Precision.SECONDS;
+  }
+
   public static PreparedStatement prepareGetMetricsSqlStmt(
     Connection connection, Condition condition) throws SQLException {
 
@@ -235,44 +287,25 @@ public class PhoenixTransactSQL {
       String metricsTable;
       String query;
       if (condition.getPrecision() == null) {
-        long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
-        long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
-        Long timeRange = endTime - startTime;
-        if (timeRange > 7 * DAY) {
+        condition.setPrecision(getDefaultPrecision(condition.getStartTime(),
+          condition.getEndTime(), false));
+      }
+      switch (condition.getPrecision()) {
+        case DAYS:
           metricsTable = METRICS_AGGREGATE_DAILY_TABLE_NAME;
           query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.DAYS);
-        } else if (timeRange < 7 * DAY && timeRange > DAY) {
+          break;
+        case HOURS:
           metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
           query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.HOURS);
-        } else if (timeRange > 10 * HOUR) {
+          break;
+        case MINUTES:
           metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
           query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.MINUTES);
-        } else {
+          break;
+        default:
           metricsTable = METRICS_RECORD_TABLE_NAME;
           query = GET_METRIC_SQL;
-          condition.setPrecision(Precision.SECONDS);
-        }
-      } else {
-        switch (condition.getPrecision()) {
-          case DAYS:
-            metricsTable = METRICS_AGGREGATE_DAILY_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          case HOURS:
-            metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          case MINUTES:
-            metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          default:
-            metricsTable = METRICS_RECORD_TABLE_NAME;
-            query = GET_METRIC_SQL;
-        }
       }
 
       stmtStr = String.format(query,
@@ -455,36 +488,21 @@ public class PhoenixTransactSQL {
     String metricsAggregateTable;
     String queryStmt;
     if (condition.getPrecision() == null) {
-      long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
-      long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
-      Long timeRange = endTime - startTime;
-      if (timeRange > 7 * DAY) {
+      condition.setPrecision(getDefaultPrecision(condition.getStartTime(),
+        condition.getEndTime(), true));
+    }
+    switch (condition.getPrecision()) {
+      case DAYS:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME;
         queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-        condition.setPrecision(Precision.DAYS);
-      } else if (timeRange < 7 * DAY && timeRange > DAY) {
+        break;
+      case HOURS:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
         queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-        condition.setPrecision(Precision.HOURS);
-      } else {
+        break;
+      default:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
         queryStmt = GET_CLUSTER_AGGREGATE_SQL;
-        condition.setPrecision(Precision.SECONDS);
-      }
-    } else {
-      switch (condition.getPrecision()) {
-        case DAYS:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-          break;
-        case HOURS:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_TIME_SQL;
-          break;
-        default:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_SQL;
-      }
     }
 
     queryStmt = String.format(queryStmt,
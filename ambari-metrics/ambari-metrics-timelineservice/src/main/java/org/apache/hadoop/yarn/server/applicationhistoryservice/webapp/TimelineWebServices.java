@@ -29,10 +29,15 @@ import org.apache.hadoop.yarn.api.records.timeline.TimelineEntities;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEvents;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.HBaseTimelineMetricStore;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricQueryCache;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricsWriter;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricStreamingAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.EntityIdentifier;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.NameValuePair;
@@ -116,6 +121,254 @@ public class TimelineWebServices {
 
   }
 
+  @XmlRootElement(name = "queryCache")
+  @XmlAccessorType(XmlAccessType.NONE)
+  @Public
+  @Unstable
+  public static class QueryCacheInfo {
+
+    private int cachedWindows;
+    private long cachedDatapoints;
+    private long hits;
+    private long tailRefreshes;
+    private long misses;
+    private long bypassed;
+    private double hitRatio;
+    private double averageCachedQueryTime;
+    private double averageStoreQueryTime;
+
+    public QueryCacheInfo() {
+
+    }
+
+    public QueryCacheInfo(TimelineMetricQueryCache cache) {
+      cachedWindows = cache.getCachedWindowCount();
+      cachedDatapoints = cache.getCachedDatapointCount();
+      hits = cache.getHitCount();
+      tailRefreshes = cache.getTailRefreshCount();
+      misses = cache.getMissCount();
+      bypassed = cache.getBypassCount();
+      hitRatio = cache.getHitRatio();
+      averageCachedQueryTime = cache.getAverageCachedQueryTime();
+      averageStoreQueryTime = cache.getAverageStoreQueryTime();
+    }
+
+    @XmlElement(name = "cachedWindows")
+    public int getCachedWindows() {
+      return cachedWindows;
+    }
+
+    @XmlElement(name = "cachedDatapoints")
+    public long getCachedDatapoints() {
+      return cachedDatapoints;
+    }
+
+    @XmlElement(name = "hits")
+    public long getHits() {
+      return hits;
+    }
+
+    @XmlElement(name = "tailRefreshes")
+    public long getTailRefreshes() {
+      return tailRefreshes;
+    }
+
+    @XmlElement(name = "misses")
+    public long getMisses() {
+      return misses;
+    }
+
+    @XmlElement(name = "bypassed")
+    public long getBypassed() {
+      return bypassed;
+    }
+
+    @XmlElement(name = "hitRatio")
+    public double getHitRatio() {
+      return hitRatio;
+    }
+
+    @XmlElement(name = "averageCachedQueryTimeMs")
+    public double getAverageCachedQueryTime() {
+      return averageCachedQueryTime;
+    }
+
+    @XmlElement(name = "averageStoreQueryTimeMs")
+    public double getAverageStoreQueryTime() {
+      return averageStoreQueryTime;
+    }
+  }
+
+  @XmlRootElement(name = "metricsWriter")
+  @XmlAccessorType(XmlAccessType.NONE)
+  @Public
+  @Unstable
+  public static class MetricsWriterInfo {
+
+    private int queued;
+    private int queueCapacity;
+    private long accepted;
+    private long rejected;
+    private long written;
+    private long failed;
+    private long batches;
+    private double averageBatchWriteTime;
+    private double writeThroughput;
+
+    public MetricsWriterInfo() {
+
+    }
+
+    public MetricsWriterInfo(TimelineMetricsWriter writer) {
+      queued = writer.getQueueSize();
+      queueCapacity = writer.getQueueCapacity();
+      accepted = writer.getAcceptedCount();
+      rejected = writer.getRejectedCount();
+      written = writer.getWrittenCount();
+      failed = writer.getFailedCount();
+      batches = writer.getBatchCount();
+      averageBatchWriteTime = writer.getAverageBatchWriteTime();
+      writeThroughput = writer.getWriteThroughput();
+    }
+
+    @XmlElement(name = "queued")
+    public int getQueued() {
+      return queued;
+    }
+
+    @XmlElement(name = "queueCapacity")
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    @XmlElement(name = "accepted")
+    public long getAccepted() {
+      return accepted;
+    }
+
+    @XmlElement(name = "rejected")
+    public long getRejected() {
+      return rejected;
+    }
+
+    @XmlElement(name = "written")
+    public long getWritten() {
+      return written;
+    }
+
+    @XmlElement(name = "failed")
+    public long getFailed() {
+      return failed;
+    }
+
+    @XmlElement(name = "batches")
+    public long getBatches() {
+      return batches;
+    }
+
+    @XmlElement(name = "averageBatchWriteTimeMs")
+    public double getAverageBatchWriteTime() {
+      return averageBatchWriteTime;
+    }
+
+    @XmlElement(name = "writeThroughput")
+    public double getWriteThroughput() {
+      return writeThroughput;
+    }
+  }
+
+  @XmlRootElement(name = "streamingAggregator")
+  @XmlAccessorType(XmlAccessType.NONE)
+  @Public
+  @Unstable
+  public static class StreamingAggregatorInfo {
+
+    private long accepted;
+    private long dropped;
+    private long flushes;
+    private long failedFlushes;
+    private long savedHostAggregates;
+    private long savedClusterAggregates;
+    private double averageFlushTime;
+    private long hostAggregationLag;
+    private long clusterAggregationLag;
+    private int openWindows;
+    private boolean recovering;
+
+    public StreamingAggregatorInfo() {
+
+    }
+
+    public StreamingAggregatorInfo(TimelineMetricStreamingAggregator aggregator) {
+      accepted = aggregator.getAcceptedValueCount();
+      dropped = aggregator.getDroppedValueCount();
+      flushes = aggregator.getFlushCount();
+      failedFlushes = aggregator.getFailedFlushCount();
+      savedHostAggregates = aggregator.getSavedHostAggregateCount();
+      savedClusterAggregates = aggregator.getSavedClusterAggregateCount();
+      averageFlushTime = aggregator.getAverageFlushTime();
+      hostAggregationLag = aggregator.getHostAggregationLag();
+      clusterAggregationLag = aggregator.getClusterAggregationLag();
+      openWindows = aggregator.getOpenWindowCount();
+      recovering = aggregator.isRecovering();
+    }
+
+    @XmlElement(name = "accepted")
+    public long getAccepted() {
+      return accepted;
+    }
+
+    @XmlElement(name = "dropped")
+    public long getDropped() {
+      return dropped;
+    }
+
+    @XmlElement(name = "flushes")
+    public long getFlushes() {
+      return flushes;
+    }
+
+    @XmlElement(name = "failedFlushes")
+    public long getFailedFlushes() {
+      return failedFlushes;
+    }
+
+    @XmlElement(name = "savedHostAggregates")
+    public long getSavedHostAggregates() {
+      return savedHostAggregates;
+    }
+
+    @XmlElement(name = "savedClusterAggregates")
+    public long getSavedClusterAggregates() {
+      return savedClusterAggregates;
+    }
+
+    @XmlElement(name = "averageFlushTimeMs")
+    public double getAverageFlushTime() {
+      return averageFlushTime;
+    }
+
+    @XmlElement(name = "hostAggregationLagMs")
+    public long getHostAggregationLag() {
+      return hostAggregationLag;
+    }
+
+    @XmlElement(name = "clusterAggregationLagMs")
+    public long getClusterAggregationLag() {
+      return clusterAggregationLag;
+    }
+
+    @XmlElement(name = "openWindows")
+    public int getOpenWindows() {
+      return openWindows;
+    }
+
+    @XmlElement(name = "recovering")
+    public boolean isRecovering() {
+      return recovering;
+    }
+  }
+
   /**
    * Return the description of the timeline web services.
    */
@@ -329,6 +582,69 @@ public class TimelineWebServices {
     }
   }
 
+  /**
+   * Return the hit ratio and latency of the metric query cache.
+   * @return {@link QueryCacheInfo}
+   */
+  @GET
+  @Path("/metrics/cache/stats")
+  @Produces({ MediaType.APPLICATION_JSON /* , MediaType.APPLICATION_XML */})
+  public QueryCacheInfo getQueryCacheStats(
+    @Context HttpServletRequest req,
+    @Context HttpServletResponse res) {
+    init(res);
+    TimelineMetricQueryCache cache = null;
+    if (timelineMetricStore instanceof HBaseTimelineMetricStore) {
+      cache = ((HBaseTimelineMetricStore) timelineMetricStore).getQueryCache();
+    }
+    if (cache == null) {
+      throw new WebApplicationException(Response.Status.NOT_FOUND);
+    }
+    return new QueryCacheInfo(cache);
+  }
+
+  /**
+   * Return the queue depth and write rate of the metrics writer.
+   * @return {@link MetricsWriterInfo}
+   */
+  @GET
+  @Path("/metrics/writer/stats")
+  @Produces({ MediaType.APPLICATION_JSON /* , MediaType.APPLICATION_XML */})
+  public MetricsWriterInfo getMetricsWriterStats(
+    @Context HttpServletRequest req,
+    @Context HttpServletResponse res) {
+    init(res);
+    TimelineMetricsWriter writer = null;
+    if (timelineMetricStore instanceof HBaseTimelineMetricStore) {
+      writer = ((HBaseTimelineMetricStore) timelineMetricStore).getMetricsWriter();
+    }
+    if (writer == null) {
+      throw new WebApplicationException(Response.Status.NOT_FOUND);
+    }
+    return new MetricsWriterInfo(writer);
+  }
+
+  /**
+   * Return the lag and flush statistics of the streaming aggregator.
+   * @return {@link StreamingAggregatorInfo}
+   */
+  @GET
+  @Path("/metrics/aggregator/stats")
+  @Produces({ MediaType.APPLICATION_JSON /* , MediaType.APPLICATION_XML */})
+  public StreamingAggregatorInfo getStreamingAggregatorStats(
+    @Context HttpServletRequest req,
+    @Context HttpServletResponse res) {
+    init(res);
+    TimelineMetricStreamingAggregator aggregator = null;
+    if (timelineMetricStore instanceof HBaseTimelineMetricStore) {
+      aggregator = ((HBaseTimelineMetricStore) timelineMetricStore).getStreamingAggregator();
+    }
+    if (aggregator == null) {
+      throw new WebApplicationException(Response.Status.NOT_FOUND);
+    }
+    return new StreamingAggregatorInfo(aggregator);
+  }
+
   /**
    * Query for a set of different metrics satisfying the filter criteria.
    * All query params are optional. The default limit will apply if none
@@ -342,6 +658,10 @@ public class TimelineWebServices {
    * @param precision Precision [ seconds, minutes, hours ]
    * @param limit limit on total number of {@link TimelineMetric} records
    *              retrieved.
+   * @param maxPoints Maximum number of datapoints per {@link TimelineMetric},
+   *                  the precision is selected for it unless given.
+   * @param downsampling Method reducing the series exceeding maxPoints
+   *                     [ lttb, avg, min, max ], lttb by default.
    * @return {@link TimelineMetrics}
    */
   @GET
@@ -358,7 +678,9 @@ public class TimelineWebServices {
     @QueryParam("endTime") String endTime,
     @QueryParam("precision") String precision,
     @QueryParam("limit") String limit,
-    @QueryParam("grouped") String grouped
+    @QueryParam("grouped") String grouped,
+    @QueryParam("maxPoints") String maxPoints,
+    @QueryParam("downsampling") String downsampling
   ) {
     init(res);
     try {
@@ -367,18 +689,20 @@ public class TimelineWebServices {
           "appId: " + appId + ", instanceId: " + instanceId + ", " +
           "hostname: " + hostname + ", startTime: " + startTime + ", " +
           "endTime: " + endTime + ", " +
-          "precision: " + precision);
+          "precision: " + precision + ", " +
+          "maxPoints: " + maxPoints);
       }
 
       return timelineMetricStore.getTimelineMetrics(
         parseListStr(metricNames, ","), hostname, appId, instanceId,
         parseLongStr(startTime), parseLongStr(endTime),
         Precision.getPrecision(precision), parseIntStr(limit),
-        parseBoolean(grouped));
+        parseBoolean(grouped), parseIntStr(maxPoints),
+        parseDownsamplingMethod(downsampling));
 
     } catch (NumberFormatException ne) {
-      throw new BadRequestException("startTime and limit should be numeric " +
-        "values");
+      throw new BadRequestException("startTime, limit and maxPoints should " +
+        "be numeric values");
     } catch (Precision.PrecisionFormatException pfe) {
       throw new BadRequestException("precision should be seconds, minutes " +
         "or hours");
@@ -514,6 +838,19 @@ public class TimelineWebServices {
     return str == null ? null : Integer.parseInt(str.trim());
   }
 
+  private static TimelineMetricDownsampler.Method parseDownsamplingMethod(
+      String str) {
+    if (str == null) {
+      return null;
+    }
+    try {
+      return TimelineMetricDownsampler.Method.getMethod(str);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("downsampling should be lttb, avg, min " +
+        "or max");
+    }
+  }
+
   private static boolean parseBoolean(String booleanStr) {
     return booleanStr == null || Boolean.parseBoolean(booleanStr);
   }
@@ -27,8 +27,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.RESULTSET_FETCH_SIZE;
 
@@ -261,6 +265,38 @@ public class AbstractTimelineAggregatorTest {
 
   }
 
+  @Test
+  public void testComputePartitionBoundaries() throws Exception {
+    List<String> names = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
+
+    assertEquals(Collections.<String>emptyList(),
+      AbstractTimelineAggregator.computePartitionBoundaries(names, 1));
+    assertEquals(Arrays.asList("c", "e", "g"),
+      AbstractTimelineAggregator.computePartitionBoundaries(names, 4));
+    assertEquals(Arrays.asList("b"),
+      AbstractTimelineAggregator.computePartitionBoundaries(Arrays.asList("a", "b"), 4));
+    assertEquals(Collections.<String>emptyList(),
+      AbstractTimelineAggregator.computePartitionBoundaries(
+        Collections.<String>emptyList(), 4));
+  }
+
+  @Test
+  public void testStopEndsAggregatorThread() throws Exception {
+    clock.setTime(0);
+    Thread thread = new Thread(agg);
+    thread.start();
+
+    // the first run only saves the checkpoint, then sleeps for an interval
+    while (checkPoint.get() < 0) {
+      Thread.sleep(10);
+    }
+
+    agg.stop();
+    thread.join(10000);
+    assertFalse(thread.isAlive());
+    assertEquals(0, actualRuns);
+  }
+
   private static class TestClock implements Clock {
 
     private long time;
@@ -17,16 +17,34 @@
  */
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.easymock.Capture;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_MAX_POINTS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction.AVG;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.PostProcessingFunction.RATE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.DAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.HOUR;
 import static org.assertj.core.api.Assertions.*;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.fail;
 
 public class HBaseTimelineMetricStoreTest {
 
@@ -63,4 +81,177 @@ public class HBaseTimelineMetricStoreTest {
       .contains(Function.DEFAULT_VALUE_FUNCTION);
 
   }
+
+  @Test
+  public void testSelectPrecisionByTimeRange() throws Exception {
+    HBaseTimelineMetricStore store = createStore(new Configuration());
+
+    assertThat(store.selectPrecision(0, HOUR, false, 0))
+      .isEqualTo(Precision.SECONDS);
+    assertThat(store.selectPrecision(0, 12 * HOUR, false, 0))
+      .isEqualTo(Precision.MINUTES);
+    assertThat(store.selectPrecision(0, 2 * DAY, false, 0))
+      .isEqualTo(Precision.HOURS);
+    assertThat(store.selectPrecision(0, 10 * DAY, false, 0))
+      .isEqualTo(Precision.DAYS);
+
+    // Cluster aggregates are not stored at minute precision
+    assertThat(store.selectPrecision(0, HOUR, true, 0))
+      .isEqualTo(Precision.SECONDS);
+    assertThat(store.selectPrecision(0, 12 * HOUR, true, 0))
+      .isEqualTo(Precision.SECONDS);
+    assertThat(store.selectPrecision(0, 2 * DAY, true, 0))
+      .isEqualTo(Precision.HOURS);
+    assertThat(store.selectPrecision(0, 10 * DAY, true, 0))
+      .isEqualTo(Precision.DAYS);
+  }
+
+  @Test
+  public void testSelectPrecisionByMaxPoints() throws Exception {
+    HBaseTimelineMetricStore store = createStore(new Configuration());
+
+    // 10 second host datapoints
+    assertThat(store.selectPrecision(0, 10 * 60000, false, 100))
+      .isEqualTo(Precision.SECONDS);
+    // 5 minute host aggregates
+    assertThat(store.selectPrecision(0, HOUR, false, 100))
+      .isEqualTo(Precision.MINUTES);
+    assertThat(store.selectPrecision(0, 2 * DAY, false, 100))
+      .isEqualTo(Precision.HOURS);
+
+    // 15 second cluster aggregates
+    assertThat(store.selectPrecision(0, 20 * 60000, true, 100))
+      .isEqualTo(Precision.SECONDS);
+    // Minutes are skipped for cluster queries although they would fit
+    assertThat(store.selectPrecision(0, HOUR, true, 100))
+      .isEqualTo(Precision.HOURS);
+
+    // Days are used when no precision fits the budget
+    assertThat(store.selectPrecision(0, 200 * DAY, false, 100))
+      .isEqualTo(Precision.DAYS);
+    assertThat(store.selectPrecision(0, 200 * DAY, true, 100))
+      .isEqualTo(Precision.DAYS);
+  }
+
+  @Test
+  public void testQueryPrecisionWithoutConfiguredMaxPoints() throws Exception {
+    Configuration metricsConf = new Configuration();
+
+    assertThat(queryPrecision(metricsConf, "h1", HOUR, null))
+      .isEqualTo(Precision.SECONDS);
+    assertThat(queryPrecision(metricsConf, null, HOUR, null))
+      .isEqualTo(Precision.SECONDS);
+  }
+
+  @Test
+  public void testQueryPrecisionWithConfiguredMaxPoints() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(TIMELINE_METRICS_QUERY_MAX_POINTS, 100);
+
+    assertThat(queryPrecision(metricsConf, "h1", HOUR, null))
+      .isEqualTo(Precision.MINUTES);
+    assertThat(queryPrecision(metricsConf, null, HOUR, null))
+      .isEqualTo(Precision.HOURS);
+    assertThat(queryPrecision(metricsConf, "h1", 200 * DAY, null))
+      .isEqualTo(Precision.DAYS);
+  }
+
+  @Test
+  public void testMaxPointsOverridesConfiguredMaxPoints() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(TIMELINE_METRICS_QUERY_MAX_POINTS, 100);
+
+    assertThat(queryPrecision(metricsConf, "h1", HOUR, 1000))
+      .isEqualTo(Precision.SECONDS);
+    assertThat(queryPrecision(metricsConf, null, 2 * DAY, 10))
+      .isEqualTo(Precision.DAYS);
+  }
+
+  @Test
+  public void testNonPositiveMaxPointsIsRejected() throws Exception {
+    HBaseTimelineMetricStore store = createStore(new Configuration());
+
+    for (int maxPoints : new int[] { 0, -1 }) {
+      try {
+        store.getTimelineMetrics(Collections.singletonList(MEM_METRIC), "h1",
+          "HOST", null, 1000000L, 1000000L + HOUR, null, null, true, maxPoints,
+          null);
+        fail("maxPoints " + maxPoints + " should be rejected");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRatesAreComputedBeforeDownsampling() throws Exception {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(MEM_METRIC + "._rate");
+    metric.setAppId("HOST");
+    metric.setHostName("h1");
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(0L, 10.0);
+    values.put(10000L, 20.0);
+    values.put(20000L, 30.0);
+    values.put(30000L, 40.0);
+    metric.setMetricValues(values);
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+
+    PhoenixHBaseAccessor accessor = createNiceMock(PhoenixHBaseAccessor.class);
+    expect(accessor.getMetricRecords(anyObject(Condition.class),
+      (Map<String, List<Function>>) anyObject())).andReturn(metrics);
+    replay(accessor);
+    HBaseTimelineMetricStore store =
+      new HBaseTimelineMetricStore(accessor, new Configuration());
+
+    TimelineMetrics result = store.getTimelineMetrics(
+      Collections.singletonList(MEM_METRIC + "._rate"), "h1", "HOST", null,
+      0L, 40000L, Precision.SECONDS, null, true, 2,
+      TimelineMetricDownsampler.Method.MIN);
+
+    // Rates are 0, 0.002, 0.003 and 0.004, the minimum of each half is kept.
+    // Downsampling first would have kept 10 and 30, then a rate of 0.002.
+    Map<Long, Double> sampled = result.getMetrics().get(0).getMetricValues();
+    assertThat(sampled.keySet()).containsExactly(0L, 15001L);
+    assertThat(sampled.get(0L)).isEqualTo(0.0);
+    assertThat(sampled.get(15001L)).isEqualTo(0.003);
+  }
+
+  private static HBaseTimelineMetricStore createStore(Configuration metricsConf) {
+    PhoenixHBaseAccessor accessor = createNiceMock(PhoenixHBaseAccessor.class);
+    replay(accessor);
+    return new HBaseTimelineMetricStore(accessor, metricsConf);
+  }
+
+  /**
+   * @return the precision the store read the metrics of the range at
+   */
+  @SuppressWarnings("unchecked")
+  private static Precision queryPrecision(Configuration metricsConf,
+                                          String hostname, long timeRange,
+                                          Integer maxPoints)
+      throws Exception {
+    PhoenixHBaseAccessor accessor = createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Condition> condition = new Capture<Condition>();
+    if (hostname == null) {
+      expect(accessor.getAggregateMetricRecords(capture(condition),
+        (Map<String, List<Function>>) anyObject()))
+        .andReturn(new TimelineMetrics());
+    } else {
+      expect(accessor.getMetricRecords(capture(condition),
+        (Map<String, List<Function>>) anyObject()))
+        .andReturn(new TimelineMetrics());
+    }
+    replay(accessor);
+    HBaseTimelineMetricStore store =
+      new HBaseTimelineMetricStore(accessor, metricsConf);
+
+    store.getTimelineMetrics(Collections.singletonList(MEM_METRIC), hostname,
+      "HOST", null, 1000000L, 1000000L + timeRange, null, null, true,
+      maxPoints, null);
+
+    return condition.getValue().getPrecision();
+  }
 }
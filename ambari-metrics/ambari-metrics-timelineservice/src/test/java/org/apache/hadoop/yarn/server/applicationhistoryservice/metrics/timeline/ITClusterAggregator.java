@@ -48,9 +48,11 @@ import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.MetricTestHelper.createEmptyTimelineClusterMetric;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.MetricTestHelper.prepareSingleTimelineMetric;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_PARTITIONS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_IDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_CLUSTER_AGGREGATE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_METRIC_SQL;
@@ -560,6 +562,85 @@ public class ITClusterAggregator extends AbstractMiniHBaseClusterTest {
     Assert.assertEquals(9, recordCount);
   }
 
+  @Test
+  public void testPartitionedAggregationMatchesSinglePartition() throws Exception {
+    long startTime = System.currentTimeMillis();
+    long minute = 60 * 1000;
+    String[] metricNames = { "cpu_user", "disk_free", "load_one", "mem_free",
+      "proc_run" };
+    for (int i = 0; i < metricNames.length; i++) {
+      hdb.insertMetricRecords(prepareSingleTimelineMetric(startTime + 10 * i,
+        "local1", metricNames[i], i + 1));
+      hdb.insertMetricRecords(prepareSingleTimelineMetric(startTime + 10 * i,
+        "local2", metricNames[i], i + 2));
+    }
+    // local1 runs app1, so every host metric of local1 has an app aggregate
+    hdb.insertMetricRecords(prepareSingleTimelineMetric(startTime, "local1",
+      "app1", null, "app_metric_random", 1));
+    long endTime = startTime + minute;
+
+    Configuration conf = new Configuration();
+    conf.set(CLUSTER_AGGREGATOR_APP_IDS, "app1");
+    TimelineMetricAggregator single =
+      TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinute(hdb, conf);
+    assertTrue(single.doWork(startTime, endTime));
+    single.stop();
+    Map<TimelineClusterMetric, String> expected =
+      readClusterAggregates(startTime, endTime);
+
+    Connection conn = getConnection(getUrl());
+    Statement stmt = conn.createStatement();
+    stmt.execute("delete from METRIC_AGGREGATE");
+    conn.commit();
+    stmt.close();
+    conn.close();
+
+    conf.setInt(AGGREGATOR_PARTITIONS, 3);
+    TimelineMetricAggregator partitioned =
+      TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinute(hdb, conf);
+    try {
+      assertTrue(partitioned.doWork(startTime, endTime));
+    } finally {
+      partitioned.stop();
+    }
+    Map<TimelineClusterMetric, String> actual =
+      readClusterAggregates(startTime, endTime);
+
+    assertEquals(expected, actual);
+
+    // the app aggregates span partitions and are saved once all are done
+    int appAggregates = 0;
+    for (TimelineClusterMetric metric : actual.keySet()) {
+      if ("app1".equals(metric.getAppId())) {
+        appAggregates++;
+      }
+    }
+    assertTrue(appAggregates > 0);
+  }
+
+  private Map<TimelineClusterMetric, String> readClusterAggregates(
+      long startTime, long endTime) throws SQLException {
+    Condition condition = new DefaultCondition(null, null, null, null, startTime,
+      endTime, null, null, true);
+    condition.setStatement(String.format(GET_CLUSTER_AGGREGATE_SQL,
+      PhoenixTransactSQL.getNaiveTimeRangeHint(startTime, NATIVE_TIME_RANGE_DELTA),
+      METRICS_CLUSTER_AGGREGATE_TABLE_NAME));
+
+    TimelineMetricReadHelper readHelper = new TimelineMetricReadHelper(false);
+    PreparedStatement pstmt = PhoenixTransactSQL.prepareGetMetricsSqlStmt(conn, condition);
+    ResultSet rs = pstmt.executeQuery();
+
+    Map<TimelineClusterMetric, String> aggregates =
+      new HashMap<TimelineClusterMetric, String>();
+    while (rs.next()) {
+      aggregates.put(metricReader.fromResultSet(rs),
+        readHelper.getMetricClusterAggregateFromResultSet(rs).toString());
+    }
+    rs.close();
+    pstmt.close();
+    return aggregates;
+  }
+
   private ResultSet executeQuery(String query) throws SQLException {
     Connection conn = getConnection(getUrl());
     Statement stmt = conn.createStatement();
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class MetricValuesCodecTest {
+  private static final Log LOG = LogFactory.getLog(MetricValuesCodecTest.class);
+
+  @Test
+  public void testRoundTripRegularSeries() throws Exception {
+    Map<Long, Double> values = createSeries(1431000000000L, 10000, 60, 0.0);
+
+    byte[] encoded = MetricValuesCodec.encode(values);
+
+    assertThat(MetricValuesCodec.decode(encoded)).isEqualTo(values);
+    // constant interval and value: a few bits per datapoint
+    assertThat(encoded.length).isLessThan(60);
+  }
+
+  @Test
+  public void testRoundTripIrregularSeries() throws Exception {
+    Random random = new Random(42);
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    long timestamp = 1431000000000L;
+    for (int i = 0; i < 1000; i++) {
+      // mix of small jitter and large gaps in both directions of the delta
+      timestamp += random.nextInt(10) == 0 ?
+        random.nextInt(Integer.MAX_VALUE) * 16L : 9990 + random.nextInt(20);
+      values.put(timestamp, random.nextGaussian() * 1000);
+    }
+    values.put(timestamp + 1, Double.NaN);
+    values.put(timestamp + 2, Double.NEGATIVE_INFINITY);
+    values.put(timestamp + 3, -0.0);
+    values.put(timestamp + 4, Double.MIN_VALUE);
+    values.put(timestamp + 5, Double.MAX_VALUE);
+
+    assertThat(MetricValuesCodec.decode(MetricValuesCodec.encode(values)))
+      .isEqualTo(values);
+  }
+
+  @Test
+  public void testEmptyAndSingleValueSeries() throws Exception {
+    Map<Long, Double> empty = new TreeMap<Long, Double>();
+    assertThat(MetricValuesCodec.decode(MetricValuesCodec.encode(empty))).isEmpty();
+    assertThat(MetricValuesCodec.decodeLast(MetricValuesCodec.encode(empty))).isEmpty();
+
+    Map<Long, Double> single = new TreeMap<Long, Double>();
+    single.put(-5L, 3.5);
+    assertThat(MetricValuesCodec.decode(MetricValuesCodec.encode(single)))
+      .isEqualTo(single);
+  }
+
+  @Test
+  public void testDecodeLast() throws Exception {
+    Map<Long, Double> values = createSeries(1000L, 1000, 100, 1.5);
+
+    Map<Long, Double> last =
+      MetricValuesCodec.decodeLast(MetricValuesCodec.encode(values));
+
+    assertThat(last).hasSize(1);
+    assertThat(last.get(100000L)).isEqualTo(values.get(100000L));
+  }
+
+  @Test
+  public void testNullValuesAreNotEncoded() throws Exception {
+    Map<Long, Double> values = createSeries(1000L, 1000, 10, 1.0);
+    values.put(20000L, null);
+
+    assertThat(MetricValuesCodec.encode(values)).isNull();
+  }
+
+  @Test
+  public void testCorruptValuesAreRejected() throws Exception {
+    byte[] encoded = MetricValuesCodec.encode(createSeries(1000L, 1000, 10, 1.0));
+
+    byte[] truncated = new byte[encoded.length / 2];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+    try {
+      MetricValuesCodec.decode(truncated);
+      fail("Expected truncated values to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+
+    encoded[0] = (byte) (MetricValuesCodec.VERSION + 1);
+    try {
+      MetricValuesCodec.decode(encoded);
+      fail("Expected an unknown version to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Compares the size and the encode/decode throughput of the JSON and the
+   * binary forms for series shaped like the ones sent by the sinks: one
+   * datapoint every 10 seconds over a minute, and over an hour.
+   */
+  @Test
+  public void testCompareWithJson() throws Exception {
+    for (int datapoints : new int[] {6, 360}) {
+      Map<Long, Double> values = createSeries(1431000000000L, 10000,
+        datapoints, 0.25);
+      int iterations = 200000 / datapoints;
+
+      String json = TimelineUtils.dumpTimelineRecordtoJSON(values);
+      byte[] binary = MetricValuesCodec.encode(values);
+
+      // warm up
+      for (int i = 0; i < iterations; i++) {
+        TimelineUtils.dumpTimelineRecordtoJSON(values);
+        PhoenixHBaseAccessor.readMetricFromJSON(json);
+        MetricValuesCodec.encode(values);
+        MetricValuesCodec.decode(binary);
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        TimelineUtils.dumpTimelineRecordtoJSON(values);
+      }
+      long jsonEncode = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        PhoenixHBaseAccessor.readMetricFromJSON(json);
+      }
+      long jsonDecode = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        MetricValuesCodec.encode(values);
+      }
+      long binaryEncode = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        MetricValuesCodec.decode(binary);
+      }
+      long binaryDecode = System.nanoTime() - start;
+
+      long total = (long) iterations * datapoints;
+      LOG.info(datapoints + " datapoints per row: " +
+        "JSON " + (double) json.length() / datapoints + " bytes/datapoint, " +
+        "encode " + total * 1000000000L / jsonEncode + " datapoints/s, " +
+        "decode " + total * 1000000000L / jsonDecode + " datapoints/s; " +
+        "binary " + (double) binary.length / datapoints + " bytes/datapoint, " +
+        "encode " + total * 1000000000L / binaryEncode + " datapoints/s, " +
+        "decode " + total * 1000000000L / binaryDecode + " datapoints/s");
+
+      assertThat(binary.length).isLessThan(json.length());
+    }
+  }
+
+  /**
+   * Series with a fixed interval and a slowly varying value.
+   */
+  private static Map<Long, Double> createSeries(long start, long interval,
+                                                int count, double step) {
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    for (int i = 0; i < count; i++) {
+      values.put(start + i * interval, 100.0 + (i % 8) * step);
+    }
+    return values;
+  }
+}
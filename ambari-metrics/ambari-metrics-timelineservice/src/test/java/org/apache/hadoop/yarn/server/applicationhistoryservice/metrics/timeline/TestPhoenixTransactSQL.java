@@ -19,6 +19,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.MetricNameRangeCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitByMetricNamesCondition;
 import org.easymock.Capture;
@@ -67,6 +68,24 @@ public class TestPhoenixTransactSQL {
     Assert.assertEquals(expectedClause, preparedClause);
   }
 
+  @Test
+  public void testMetricNameRangeCondition() throws Exception {
+    Condition c = new DefaultCondition(null, null, null, null,
+      1407959718L, 1407959918L, null, null, false);
+
+    Condition condition = new MetricNameRangeCondition(c, "cpu_user", "mem_free");
+    String expectedClause = "METRIC_NAME >= ? AND METRIC_NAME < ? AND " +
+      "SERVER_TIME >= ? AND SERVER_TIME < ?";
+    Assert.assertEquals(expectedClause, condition.getConditionClause().toString());
+    Assert.assertEquals(Arrays.asList("cpu_user", "mem_free"), condition.getMetricNames());
+
+    // Open ended first partition
+    condition = new MetricNameRangeCondition(c, null, "cpu_user");
+    expectedClause = "METRIC_NAME < ? AND SERVER_TIME >= ? AND SERVER_TIME < ?";
+    Assert.assertEquals(expectedClause, condition.getConditionClause().toString());
+    Assert.assertEquals(Collections.singletonList("cpu_user"), condition.getMetricNames());
+  }
+
   @Test
   public void testLikeConditionClause() throws Exception {
     Condition condition = new DefaultCondition(
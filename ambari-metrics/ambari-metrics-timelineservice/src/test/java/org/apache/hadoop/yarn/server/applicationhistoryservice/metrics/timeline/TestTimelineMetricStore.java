@@ -18,6 +18,7 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import java.io.IOException;
@@ -27,11 +28,17 @@ import java.util.HashMap;
 import java.util.List;
 
 public class TestTimelineMetricStore implements TimelineMetricStore {
+  private volatile Integer maxPoints;
+  private volatile TimelineMetricDownsampler.Method downsamplingMethod;
+
   @Override
   public TimelineMetrics getTimelineMetrics(List<String> metricNames,
       String hostname, String applicationId, String instanceId, Long startTime,
-      Long endTime, Precision precision, Integer limit, boolean groupedByHost) throws SQLException,
-    IOException {
+      Long endTime, Precision precision, Integer limit, boolean groupedByHost,
+      Integer maxPoints, TimelineMetricDownsampler.Method downsamplingMethod)
+      throws SQLException, IOException {
+    this.maxPoints = maxPoints;
+    this.downsamplingMethod = downsamplingMethod;
     TimelineMetrics timelineMetrics = new TimelineMetrics();
     List<TimelineMetric> metricList = new ArrayList<TimelineMetric>();
     timelineMetrics.setMetrics(metricList);
@@ -78,4 +85,18 @@ public class TestTimelineMetricStore implements TimelineMetricStore {
 
     return new TimelinePutResponse();
   }
+
+  /**
+   * @return maxPoints of the last metrics query
+   */
+  public Integer getMaxPoints() {
+    return maxPoints;
+  }
+
+  /**
+   * @return downsampling method of the last metrics query
+   */
+  public TimelineMetricDownsampler.Method getDownsamplingMethod() {
+    return downsamplingMethod;
+  }
 }
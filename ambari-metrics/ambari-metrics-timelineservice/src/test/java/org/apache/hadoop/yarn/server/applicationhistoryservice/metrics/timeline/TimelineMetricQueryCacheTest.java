@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.util.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_MAX_DATAPOINTS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_RECENT_WINDOW;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_REFRESH_OVERLAP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimelineMetricQueryCacheTest {
+
+  private static final long MINUTE = 60000;
+  private static final long NOW = 100 * 3600000L;
+
+  private final TestClock clock = new TestClock();
+  private final RecordingLoader loader = new RecordingLoader();
+  private final TimelineMetricQueryCache.QueryKey key =
+    new TimelineMetricQueryCache.QueryKey(Collections.singletonList("cpu_user"),
+      "h1", "HOST", null, Precision.SECONDS);
+  private TimelineMetricQueryCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setLong(TIMELINE_METRICS_QUERY_CACHE_RECENT_WINDOW, 3600);
+    metricsConf.setLong(TIMELINE_METRICS_QUERY_CACHE_REFRESH_OVERLAP, 300);
+    cache = new TimelineMetricQueryCache(metricsConf, clock);
+    clock.setTime(NOW);
+  }
+
+  @Test
+  public void testSlidingWindowOnlyReadsTail() throws Exception {
+    TimelineMetrics metrics = query(NOW - 60 * MINUTE, NOW);
+    assertThat(loader.ranges).containsExactly(range(NOW - 60 * MINUTE, NOW));
+    assertThat(getValues(metrics)).hasSize(60);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+
+    clock.setTime(NOW + MINUTE);
+    metrics = query(NOW - 59 * MINUTE, NOW + MINUTE);
+
+    // Datapoints within the refresh overlap are read again
+    assertThat(loader.ranges).containsExactly(range(NOW - 60 * MINUTE, NOW),
+      range(NOW - 5 * MINUTE, NOW + MINUTE));
+    Map<Long, Double> values = getValues(metrics);
+    assertThat(values).hasSize(60);
+    assertThat(values.keySet().iterator().next()).isEqualTo(NOW - 59 * MINUTE);
+    assertThat(values.get(NOW)).isEqualTo((double) NOW);
+    assertThat(cache.getTailRefreshCount()).isEqualTo(1);
+    assertThat(cache.getHitRatio()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void testSettledWindowIsServedFromCache() throws Exception {
+    query(NOW - 60 * MINUTE, NOW);
+
+    TimelineMetrics metrics = query(NOW - 30 * MINUTE, NOW - 10 * MINUTE);
+    assertThat(loader.ranges).hasSize(1);
+    assertThat(getValues(metrics)).hasSize(20);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+
+    // Results are copies, callers may modify them
+    getValues(metrics).clear();
+    metrics = query(NOW - 30 * MINUTE, NOW - 10 * MINUTE);
+    assertThat(getValues(metrics)).hasSize(20);
+  }
+
+  @Test
+  public void testOldWindowsAreNotCached() throws Exception {
+    query(NOW - 180 * MINUTE, NOW - 120 * MINUTE);
+    query(NOW - 180 * MINUTE, NOW - 120 * MINUTE);
+
+    assertThat(loader.ranges).hasSize(2);
+    assertThat(cache.getBypassCount()).isEqualTo(2);
+    assertThat(cache.getCachedWindowCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testWindowsAreEvictedByDatapoints() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setLong(TIMELINE_METRICS_QUERY_CACHE_MAX_DATAPOINTS, 100);
+    cache = new TimelineMetricQueryCache(metricsConf, clock);
+    TimelineMetricQueryCache.QueryKey otherKey =
+      new TimelineMetricQueryCache.QueryKey(Collections.singletonList("cpu_user"),
+        "h2", "HOST", null, Precision.SECONDS);
+
+    query(NOW - 60 * MINUTE, NOW);
+    assertThat(cache.getCachedDatapointCount()).isEqualTo(60);
+
+    // Both windows do not fit, the least recently used one is evicted
+    cache.getTimelineMetrics(otherKey, NOW - 50 * MINUTE, NOW, 10000, loader);
+    assertThat(cache.getCachedWindowCount()).isEqualTo(1);
+    assertThat(cache.getCachedDatapointCount()).isEqualTo(50);
+
+    query(NOW - 30 * MINUTE, NOW - 10 * MINUTE);
+    assertThat(cache.getMissCount()).isEqualTo(3);
+    assertThat(cache.getCachedDatapointCount()).isEqualTo(70);
+
+    // A window larger than the limit is not kept at all
+    query(NOW - 120 * MINUTE, NOW);
+    assertThat(cache.getCachedWindowCount()).isEqualTo(0);
+    assertThat(cache.getCachedDatapointCount()).isEqualTo(0);
+  }
+
+  private TimelineMetrics query(long startTime, long endTime) throws Exception {
+    return cache.getTimelineMetrics(key, startTime, endTime, 10000, loader);
+  }
+
+  private static Map<Long, Double> getValues(TimelineMetrics metrics) {
+    assertThat(metrics.getMetrics()).hasSize(1);
+    return metrics.getMetrics().get(0).getMetricValues();
+  }
+
+  private static List<Long> range(long startTime, long endTime) {
+    List<Long> range = new ArrayList<Long>();
+    range.add(startTime);
+    range.add(endTime);
+    return range;
+  }
+
+  /**
+   * Returns a datapoint per minute valued with its timestamp.
+   */
+  private static class RecordingLoader implements TimelineMetricQueryCache.Loader {
+    private final List<List<Long>> ranges = new ArrayList<List<Long>>();
+
+    @Override
+    public TimelineMetrics load(long startTime, long endTime) {
+      ranges.add(range(startTime, endTime));
+
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("cpu_user");
+      metric.setAppId("HOST");
+      metric.setHostName("h1");
+      metric.setStartTime(startTime);
+      metric.setTimestamp(startTime);
+      Map<Long, Double> values = new TreeMap<Long, Double>();
+      for (long time = startTime; time < endTime; time += MINUTE) {
+        values.put(time, (double) time);
+      }
+      metric.setMetricValues(values);
+
+      TimelineMetrics metrics = new TimelineMetrics();
+      metrics.getMetrics().add(metric);
+      return metrics;
+    }
+  }
+
+  private static class TestClock implements Clock {
+    private long time;
+
+    public void setTime(long time) {
+      this.time = time;
+    }
+
+    @Override
+    public long getTime() {
+      return time;
+    }
+  }
+}
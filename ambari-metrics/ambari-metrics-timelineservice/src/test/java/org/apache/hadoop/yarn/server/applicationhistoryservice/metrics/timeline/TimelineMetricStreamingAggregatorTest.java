@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricHostAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricHostAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricStreamingAggregator;
+import org.apache.hadoop.yarn.util.Clock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_DISABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_AGGREGATION_STREAMING_FLUSH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_MINUTE_TABLE_NAME;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_RECORD_TABLE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+
+public class TimelineMetricStreamingAggregatorTest {
+
+  @Rule
+  public TemporaryFolder checkpointDir = new TemporaryFolder();
+
+  private final TestClock clock = new TestClock();
+  private final List<Map<TimelineMetric, MetricHostAggregate>> hostSaves =
+    Collections.synchronizedList(new ArrayList<Map<TimelineMetric, MetricHostAggregate>>());
+  private final List<Map<TimelineClusterMetric, MetricClusterAggregate>> clusterSaves =
+    Collections.synchronizedList(new ArrayList<Map<TimelineClusterMetric, MetricClusterAggregate>>());
+  private TimelineMetricStreamingAggregator aggregator;
+  private int failingHostSaves = 0;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.set(TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR,
+      checkpointDir.getRoot().getAbsolutePath());
+    metricsConf.setLong(HOST_AGGREGATOR_MINUTE_SLEEP_INTERVAL, 300);
+    metricsConf.setInt(CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL, 15);
+    metricsConf.set(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "90000");
+
+    PhoenixHBaseAccessor accessor = createAccessor();
+    aggregator = new TimelineMetricStreamingAggregator(accessor, metricsConf,
+      TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinute(accessor, metricsConf),
+      TimelineMetricAggregatorFactory.createTimelineClusterAggregatorMinute(accessor, metricsConf),
+      clock);
+  }
+
+  @Test
+  public void testHostAggregatesAreSavedWhenWindowCloses() throws Exception {
+    clock.setTime(1000000);
+    aggregator.putMetrics(createMetrics("h1", 990000, 1.0, 3.0));
+    aggregator.putMetrics(createMetrics("h1", 995000, 5.0));
+
+    // the window started at 900000 is still open
+    clock.setTime(1100000);
+    aggregator.flush();
+    assertThat(hostSaves).isEmpty();
+
+    clock.setTime(1200000);
+    aggregator.flush();
+
+    assertThat(hostSaves).hasSize(1);
+    Map<TimelineMetric, MetricHostAggregate> saved = hostSaves.get(0);
+    assertThat(saved).hasSize(1);
+    TimelineMetric key = saved.keySet().iterator().next();
+    MetricHostAggregate aggregate = saved.get(key);
+    assertThat(key.getHostName()).isEqualTo("h1");
+    assertThat(key.getTimestamp()).isEqualTo(900000);
+    assertThat(aggregate.getSum()).isEqualTo(9.0);
+    assertThat(aggregate.getMax()).isEqualTo(5.0);
+    assertThat(aggregate.getMin()).isEqualTo(1.0);
+    assertThat(aggregate.getNumberOfSamples()).isEqualTo(3);
+
+    assertThat(readCheckPoint("timeline-metrics-host-aggregator-checkpoint"))
+      .isEqualTo("1200000");
+    assertThat(aggregator.getSavedHostAggregateCount()).isEqualTo(1);
+    assertThat(aggregator.getHostAggregationLag()).isEqualTo(0);
+  }
+
+  @Test
+  public void testClusterAggregatesAverageEachHost() throws Exception {
+    clock.setTime(1000000);
+    aggregator.putMetrics(createMetrics("h1", 991000, 1.0, 3.0));
+    aggregator.putMetrics(createMetrics("h2", 995000, 6.0));
+
+    // slices stay open for the time shift adjustment
+    clock.setTime(1090000);
+    aggregator.flush();
+    assertThat(clusterSaves).isEmpty();
+
+    clock.setTime(1095000);
+    aggregator.flush();
+
+    assertThat(clusterSaves).hasSize(1);
+    Map<TimelineClusterMetric, MetricClusterAggregate> saved = clusterSaves.get(0);
+    assertThat(saved).hasSize(1);
+    TimelineClusterMetric key = saved.keySet().iterator().next();
+    MetricClusterAggregate aggregate = saved.get(key);
+    assertThat(key.getTimestamp()).isEqualTo(990000);
+    assertThat(aggregate.getNumberOfHosts()).isEqualTo(2);
+    assertThat(aggregate.getSum()).isEqualTo(8.0);
+    assertThat(aggregate.getMax()).isEqualTo(6.0);
+    assertThat(aggregate.getMin()).isEqualTo(2.0);
+
+    assertThat(readCheckPoint("timeline-metrics-cluster-aggregator-checkpoint"))
+      .isEqualTo("1005000");
+  }
+
+  @Test
+  public void testLateValuesAreDropped() throws Exception {
+    clock.setTime(1000000);
+    aggregator.putMetrics(createMetrics("h1", 991000, 1.0));
+
+    clock.setTime(1095000);
+    aggregator.flush();
+    assertThat(clusterSaves).hasSize(1);
+
+    aggregator.putMetrics(createMetrics("h2", 992000, 2.0));
+    assertThat(aggregator.getDroppedValueCount()).isEqualTo(1);
+
+    clock.setTime(1200000);
+    aggregator.flush();
+    assertThat(clusterSaves).hasSize(1);
+  }
+
+  @Test
+  public void testFailedSaveIsRetried() throws Exception {
+    failingHostSaves = 1;
+    clock.setTime(1000000);
+    aggregator.putMetrics(createMetrics("h1", 990000, 1.0, 3.0));
+
+    clock.setTime(1200000);
+    aggregator.flush();
+
+    // nothing was saved, so the checkpoint was not moved
+    assertThat(hostSaves).isEmpty();
+    assertThat(aggregator.getFailedFlushCount()).isEqualTo(1);
+    assertThat(new File(checkpointDir.getRoot(),
+      "timeline-metrics-host-aggregator-checkpoint")).doesNotExist();
+
+    clock.setTime(1210000);
+    aggregator.flush();
+
+    assertThat(hostSaves).hasSize(1);
+    MetricHostAggregate aggregate = hostSaves.get(0).values().iterator().next();
+    assertThat(aggregate.getSum()).isEqualTo(4.0);
+    assertThat(aggregate.getNumberOfSamples()).isEqualTo(2);
+    assertThat(aggregator.getFailedFlushCount()).isEqualTo(1);
+    assertThat(aggregator.getSavedHostAggregateCount()).isEqualTo(1);
+    assertThat(readCheckPoint("timeline-metrics-host-aggregator-checkpoint"))
+      .isEqualTo("1200000");
+  }
+
+  @Test
+  public void testCheckpointIsMovedOnlyAfterCatchUp() throws Exception {
+    FileUtils.writeStringToFile(new File(checkpointDir.getRoot(),
+      "timeline-metrics-host-aggregator-checkpoint"), "900000");
+
+    Configuration metricsConf = new Configuration();
+    // keep the recovery and flusher threads waiting, the test drives both
+    metricsConf.setInt(AGGREGATOR_CHECKPOINT_DELAY, 3600);
+    metricsConf.setInt(METRICS_AGGREGATION_STREAMING_FLUSH_INTERVAL, 3600);
+    ScriptedHostAggregator hostAggregator = new ScriptedHostAggregator(
+      createAccessor(), metricsConf, false, true);
+    TimelineMetricStreamingAggregator aggregator =
+      new TimelineMetricStreamingAggregator(createAccessor(), metricsConf,
+        hostAggregator, null, clock);
+
+    clock.setTime(1000000);
+    aggregator.start();
+    try {
+      assertThat(aggregator.isRecovering()).isTrue();
+
+      // the first catch up fails
+      assertThat(aggregator.catchUp()).isFalse();
+      assertThat(aggregator.isRecovering()).isTrue();
+      assertThat(readCheckPoint("timeline-metrics-host-aggregator-checkpoint"))
+        .isEqualTo("900000");
+
+      // streamed windows are saved, but the checkpoint stays behind the
+      // metrics which still need to be aggregated from storage
+      clock.setTime(1250000);
+      aggregator.putMetrics(createMetrics("h1", 1240000, 1.0));
+      clock.setTime(1500000);
+      aggregator.flush();
+      assertThat(hostSaves).hasSize(1);
+      assertThat(readCheckPoint("timeline-metrics-host-aggregator-checkpoint"))
+        .isEqualTo("900000");
+
+      // the retry succeeds and the aggregator takes the checkpoint over
+      assertThat(aggregator.catchUp()).isTrue();
+      assertThat(aggregator.isRecovering()).isFalse();
+      assertThat(readCheckPoint("timeline-metrics-host-aggregator-checkpoint"))
+        .isEqualTo("1200000");
+      assertThat(hostAggregator.intervals).containsExactly(
+        "900000-1200000", "900000-1200000");
+
+      aggregator.flush();
+      assertThat(readCheckPoint("timeline-metrics-host-aggregator-checkpoint"))
+        .isEqualTo("1500000");
+    } finally {
+      aggregator.stop();
+    }
+  }
+
+  private String readCheckPoint(String fileName) throws Exception {
+    return FileUtils.readFileToString(new File(checkpointDir.getRoot(), fileName));
+  }
+
+  @SuppressWarnings("unchecked")
+  private PhoenixHBaseAccessor createAccessor() throws Exception {
+    PhoenixHBaseAccessor accessor = createNiceMock(PhoenixHBaseAccessor.class);
+    accessor.saveHostAggregateRecords(anyObject(Map.class), anyObject(String.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        if (failingHostSaves > 0) {
+          failingHostSaves--;
+          throw new SQLException("Failed to save host aggregates");
+        }
+        hostSaves.add(new HashMap<TimelineMetric, MetricHostAggregate>(
+          (Map<TimelineMetric, MetricHostAggregate>) getCurrentArguments()[0]));
+        return null;
+      }
+    }).anyTimes();
+    accessor.saveClusterAggregateRecords(anyObject(Map.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        clusterSaves.add(new HashMap<TimelineClusterMetric, MetricClusterAggregate>(
+          (Map<TimelineClusterMetric, MetricClusterAggregate>) getCurrentArguments()[0]));
+        return null;
+      }
+    }).anyTimes();
+    replay(accessor);
+    return accessor;
+  }
+
+  private static TimelineMetrics createMetrics(String hostName, long startTime,
+                                               double... values) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("mem_free");
+    metric.setAppId("HOST");
+    metric.setHostName(hostName);
+    metric.setStartTime(startTime);
+    Map<Long, Double> metricValues = new TreeMap<Long, Double>();
+    for (int i = 0; i < values.length; i++) {
+      metricValues.put(startTime + i * 1000L, values[i]);
+    }
+    metric.setMetricValues(metricValues);
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(Collections.singletonList(metric));
+    return metrics;
+  }
+
+  /**
+   * A minute host aggregator which reads nothing from storage and returns
+   * the given results from successive calls to doWork.
+   */
+  private class ScriptedHostAggregator extends TimelineMetricHostAggregator {
+    private final List<Boolean> results = new ArrayList<Boolean>();
+    private final List<String> intervals = new ArrayList<String>();
+
+    private ScriptedHostAggregator(PhoenixHBaseAccessor accessor,
+                                   Configuration metricsConf,
+                                   Boolean... results) {
+      super(accessor, metricsConf,
+        new File(checkpointDir.getRoot(),
+          "timeline-metrics-host-aggregator-checkpoint").getAbsolutePath(),
+        300000L, 3, HOST_AGGREGATOR_MINUTE_DISABLED,
+        METRICS_RECORD_TABLE_NAME, METRICS_AGGREGATE_MINUTE_TABLE_NAME, 120000L);
+      Collections.addAll(this.results, results);
+    }
+
+    @Override
+    public boolean doWork(long startTime, long endTime) {
+      intervals.add(startTime + "-" + endTime);
+      return results.remove(0);
+    }
+  }
+
+  private static class TestClock implements Clock {
+    private long time;
+
+    public void setTime(long time) {
+      this.time = time;
+    }
+
+    @Override
+    public long getTime() {
+      return time;
+    }
+  }
+}
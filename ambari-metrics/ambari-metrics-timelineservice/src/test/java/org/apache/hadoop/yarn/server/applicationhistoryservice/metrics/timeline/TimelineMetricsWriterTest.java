@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.HostMetricsGenerator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.Metric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.MetricsGeneratorConfigurer;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util.TimeStampProvider;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+
+public class TimelineMetricsWriterTest {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsWriterTest.class);
+
+  @Test
+  public void testMetricsAreWrittenInBatches() throws Exception {
+    final List<Integer> batchSizes =
+      Collections.synchronizedList(new ArrayList<Integer>());
+    PhoenixHBaseAccessor accessor = createAccessor(batchSizes, null);
+
+    TimelineMetricsWriter writer =
+      new TimelineMetricsWriter(accessor, 1000, 1000, 100, 50, 1);
+    writer.start();
+    for (int i = 0; i < 10; i++) {
+      writer.putMetrics(createMetrics("host" + i, 25));
+    }
+    writer.stop();
+
+    int total = 0;
+    for (Integer size : batchSizes) {
+      assertThat(size).isLessThanOrEqualTo(100);
+      total += size;
+    }
+    assertThat(total).isEqualTo(250);
+    assertThat(batchSizes.size()).isLessThan(10);
+    assertThat(writer.getWrittenCount()).isEqualTo(250);
+    assertThat(writer.getBatchCount()).isEqualTo(batchSizes.size());
+    assertThat(writer.getQueueSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testPutMetricsFailsWhenQueueIsFull() throws Exception {
+    final List<Integer> batchSizes =
+      Collections.synchronizedList(new ArrayList<Integer>());
+    PhoenixHBaseAccessor accessor = createAccessor(batchSizes, null);
+
+    // the writers are not started, so nothing leaves the queue
+    TimelineMetricsWriter writer =
+      new TimelineMetricsWriter(accessor, 10, 100, 5, 0, 1);
+    writer.putMetrics(createMetrics("host1", 8));
+
+    try {
+      writer.putMetrics(createMetrics("host2", 5));
+      fail("Expected the queue to reject metrics");
+    } catch (IOException e) {
+      // none of the rejected metrics are queued
+      assertThat(writer.getQueueSize()).isEqualTo(8);
+      assertThat(writer.getRejectedCount()).isEqualTo(5);
+    }
+
+    try {
+      writer.putMetrics(createMetrics("host3", 11));
+      fail("Expected the queue to reject more metrics than it can hold");
+    } catch (IOException e) {
+      assertThat(writer.getQueueSize()).isEqualTo(8);
+      assertThat(writer.getRejectedCount()).isEqualTo(16);
+    }
+
+    writer.start();
+    writer.stop();
+
+    assertThat(writer.getAcceptedCount()).isEqualTo(8);
+    assertThat(writer.getWrittenCount()).isEqualTo(8);
+    assertThat(writer.getQueueSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testQueueRoomIsGivenBackOnceWritten() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> batchSizes =
+      Collections.synchronizedList(new ArrayList<Integer>());
+    PhoenixHBaseAccessor accessor = createAccessor(batchSizes, release);
+
+    TimelineMetricsWriter writer =
+      new TimelineMetricsWriter(accessor, 10, 5000, 10, 5000, 1);
+    writer.start();
+    try {
+      // fills the queue; the writer lingers until it has taken all of it as
+      // one batch and then blocks writing it
+      writer.putMetrics(createMetrics("host1", 10));
+      // only fits once the first batch has left the queue
+      writer.putMetrics(createMetrics("host2", 10));
+    } finally {
+      release.countDown();
+      writer.stop();
+    }
+
+    assertThat(writer.getRejectedCount()).isEqualTo(0);
+    assertThat(writer.getWrittenCount()).isEqualTo(20);
+    assertThat(batchSizes).containsExactly(10, 10);
+  }
+
+  /**
+   * Feeds the writer with metrics produced by the load simulator for a
+   * number of hosts and reports the ingest throughput.
+   */
+  @Test
+  public void testIngestThroughputUnderSimulatedLoad() throws Exception {
+    final List<Integer> batchSizes =
+      Collections.synchronizedList(new ArrayList<Integer>());
+    PhoenixHBaseAccessor accessor = createAccessor(batchSizes, null);
+
+    TimelineMetricsWriter writer =
+      new TimelineMetricsWriter(accessor, 100000, 5000, 10000, 100, 2);
+    writer.start();
+
+    int hosts = 100;
+    int expected = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < hosts; i++) {
+      ApplicationInstance instance =
+        new ApplicationInstance("host" + i, AppID.HOST, "");
+      HostMetricsGenerator generator =
+        MetricsGeneratorConfigurer.createMetricsForHost(instance,
+          new TimeStampProvider(start, 1000, 60000));
+
+      TimelineMetrics metrics = toTimelineMetrics(generator.createMetrics());
+      expected += metrics.getMetrics().size();
+      writer.putMetrics(metrics);
+    }
+    writer.stop();
+    long elapsed = System.currentTimeMillis() - start;
+
+    LOG.info("Wrote " + writer.getWrittenCount() + " metrics from " + hosts +
+      " hosts in " + writer.getBatchCount() + " batches, " + elapsed +
+      " ms, average batch write time = " + writer.getAverageBatchWriteTime() +
+      " ms, throughput = " + writer.getWriteThroughput() + " metrics/s");
+
+    assertThat(expected).isGreaterThan(0);
+    assertThat(writer.getWrittenCount()).isEqualTo(expected);
+    assertThat(writer.getRejectedCount()).isEqualTo(0);
+    assertThat(writer.getBatchCount()).isLessThan(hosts);
+  }
+
+  private PhoenixHBaseAccessor createAccessor(final List<Integer> batchSizes,
+                                              final CountDownLatch release)
+    throws Exception {
+    PhoenixHBaseAccessor accessor = createNiceMock(PhoenixHBaseAccessor.class);
+    Connection connection = createNiceMock(Connection.class);
+    expect(accessor.getConnection()).andReturn(connection).anyTimes();
+    accessor.insertMetricRecords(anyObject(Connection.class), anyObject(List.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        if (release != null) {
+          release.await(10, TimeUnit.SECONDS);
+        }
+        batchSizes.add(((List<?>) getCurrentArguments()[1]).size());
+        return null;
+      }
+    }).anyTimes();
+    replay(accessor, connection);
+    return accessor;
+  }
+
+  private static TimelineMetrics createMetrics(String hostName, int count) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    List<TimelineMetric> metricList = new ArrayList<TimelineMetric>();
+    for (int i = 0; i < count; i++) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("metric" + i);
+      metric.setAppId("HOST");
+      metric.setHostName(hostName);
+      metric.setStartTime(1000L);
+      Map<Long, Double> values = new TreeMap<Long, Double>();
+      values.put(1000L, (double) i);
+      metric.setMetricValues(values);
+      metricList.add(metric);
+    }
+    metrics.setMetrics(metricList);
+    return metrics;
+  }
+
+  private static TimelineMetrics toTimelineMetrics(AppMetrics appMetrics) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    List<TimelineMetric> metricList = new ArrayList<TimelineMetric>();
+    for (Metric metric : appMetrics.getMetrics()) {
+      TimelineMetric timelineMetric = new TimelineMetric();
+      timelineMetric.setMetricName(metric.getMetricname());
+      timelineMetric.setAppId(metric.getAppid());
+      timelineMetric.setInstanceId(metric.getInstanceid());
+      timelineMetric.setHostName(metric.getHostname());
+      timelineMetric.setStartTime(Long.parseLong(metric.getStarttime()));
+      Map<Long, Double> values = new TreeMap<Long, Double>();
+      for (Map.Entry<String, String> entry : metric.getMetrics().entrySet()) {
+        values.put(Long.parseLong(entry.getKey()), Double.parseDouble(entry.getValue()));
+      }
+      timelineMetric.setMetricValues(values);
+      metricList.add(timelineMetric);
+    }
+    metrics.setMetrics(metricList);
+    return metrics;
+  }
+}
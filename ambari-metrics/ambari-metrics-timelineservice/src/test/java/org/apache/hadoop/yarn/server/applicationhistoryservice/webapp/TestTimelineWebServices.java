@@ -24,6 +24,7 @@ import javax.ws.rs.core.MediaType;
 
 import junit.framework.Assert;
 
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntities;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
@@ -388,4 +389,40 @@ public class TestTimelineWebServices extends JerseyTest {
     assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
     verifyMetrics(response.getEntity(TimelineMetrics.class));
   }
+
+  @Test
+  public void testGetMetricsWithDownsampling() throws Exception {
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").queryParam("metricNames", "cpu_user")
+      .queryParam("maxPoints", "2").queryParam("downsampling", "avg")
+      .accept(MediaType.APPLICATION_JSON)
+      .get(ClientResponse.class);
+    assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
+    verifyMetrics(response.getEntity(TimelineMetrics.class));
+    TestTimelineMetricStore testMetricStore = (TestTimelineMetricStore) metricStore;
+    Assert.assertEquals(Integer.valueOf(2), testMetricStore.getMaxPoints());
+    Assert.assertEquals(TimelineMetricDownsampler.Method.AVG,
+      testMetricStore.getDownsamplingMethod());
+  }
+
+  @Test
+  public void testGetMetricsWithInvalidDownsampling() throws Exception {
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").queryParam("metricNames", "cpu_user")
+      .queryParam("maxPoints", "2").queryParam("downsampling", "median")
+      .accept(MediaType.APPLICATION_JSON)
+      .get(ClientResponse.class);
+    assertEquals(ClientResponse.Status.BAD_REQUEST.getStatusCode(),
+      response.getStatus());
+
+    response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").queryParam("metricNames", "cpu_user")
+      .queryParam("maxPoints", "many")
+      .accept(MediaType.APPLICATION_JSON)
+      .get(ClientResponse.class);
+    assertEquals(ClientResponse.Status.BAD_REQUEST.getStatusCode(),
+      response.getStatus());
+  }
 }
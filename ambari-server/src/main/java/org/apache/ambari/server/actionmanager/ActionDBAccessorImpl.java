@@ -30,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.agent.CommandReport;
 import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.orm.dao.ClusterDAO;
 import org.apache.ambari.server.orm.dao.ExecutionCommandDAO;
 import org.apache.ambari.server.orm.dao.HostDAO;
@@ -40,6 +41,7 @@ import org.apache.ambari.server.orm.dao.RoleSuccessCriteriaDAO;
 import org.apache.ambari.server.orm.dao.StageDAO;
 import org.apache.ambari.server.orm.entities.ClusterEntity;
 import org.apache.ambari.server.orm.entities.ExecutionCommandEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntity;
 import org.apache.ambari.server.orm.entities.HostEntity;
 import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
 import org.apache.ambari.server.orm.entities.RequestEntity;
@@ -101,6 +103,12 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Inject
   RequestScheduleDAO requestScheduleDAO;
 
+  @Inject
+  Configuration configuration;
+
+  @Inject
+  ExecutionCommandCodec executionCommandCodec;
+
   private Cache<Long, HostRoleCommand> hostRoleCommandCache;
   private long cacheLimit; //may be exceeded to store tasks from one request
 
@@ -233,6 +241,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Override
   @Transactional
   public void persistActions(Request request) throws AmbariException {
+    long startTime = System.currentTimeMillis();
+    long commandBytes = 0;
+    boolean compactCommands = configuration.isExecutionCommandCompactStorageEnabled();
 
     RequestEntity requestEntity = request.constructNewPersistenceEntity();
 
@@ -256,6 +267,12 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       stageEntity.setRequest(requestEntity);
       stageDAO.create(stageEntity);
 
+      // the parts shared by the commands of the stage are written once
+      ExecutionCommandCodec.StageFragments fragments = null;
+      if (compactCommands) {
+        fragments = new ExecutionCommandCodec.StageFragments();
+      }
+
       List<HostRoleCommand> orderedHostRoleCommands = stage.getOrderedHostRoleCommands();
 
       for (HostRoleCommand hostRoleCommand : orderedHostRoleCommands) {
@@ -291,7 +308,11 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
           LOG.warn("Exception in getting prefix for host and setting output and error log files.");
         }
 
-        ExecutionCommandEntity executionCommandEntity = hostRoleCommand.constructExecutionCommandEntity();
+        ExecutionCommandEntity executionCommandEntity = null == fragments
+            ? hostRoleCommand.constructExecutionCommandEntity()
+            : hostRoleCommand.constructExecutionCommandEntity(executionCommandCodec, fragments);
+
+        commandBytes += executionCommandEntity.getCommand().length;
         executionCommandEntity.setHostRoleCommand(hostRoleCommandEntity);
 
         executionCommandEntity.setTaskId(hostRoleCommandEntity.getTaskId());
@@ -302,6 +323,24 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
         hostDAO.merge(hostEntity);
       }
 
+      if (null != fragments) {
+        List<ExecutionCommandFragmentEntity> fragmentEntities = new ArrayList<ExecutionCommandFragmentEntity>();
+        for (Map.Entry<String, byte[]> fragment : fragments.getCompressedFragments().entrySet()) {
+          ExecutionCommandFragmentEntity fragmentEntity = new ExecutionCommandFragmentEntity();
+          fragmentEntity.setRequestId(stageEntity.getRequestId());
+          fragmentEntity.setStageId(stageEntity.getStageId());
+          fragmentEntity.setFragmentHash(fragment.getKey());
+          fragmentEntity.setContent(fragment.getValue());
+          fragmentEntity.setStage(stageEntity);
+          executionCommandDAO.createFragment(fragmentEntity);
+
+          commandBytes += fragment.getValue().length;
+          fragmentEntities.add(fragmentEntity);
+        }
+
+        stageEntity.setExecutionCommandFragments(fragmentEntities);
+      }
+
       for (RoleSuccessCriteriaEntity roleSuccessCriteriaEntity : stageEntity.getRoleSuccessCriterias()) {
         roleSuccessCriteriaDAO.create(roleSuccessCriteriaEntity);
       }
@@ -310,6 +349,12 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
     }
     requestEntity.setStages(stageEntities);
     requestDAO.merge(requestEntity);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Persisted request {} with {} stages in {}ms, {} bytes of execution commands",
+          requestEntity.getRequestId(), stageEntities.size(),
+          System.currentTimeMillis() - startTime, commandBytes);
+    }
   }
 
   @Override
@@ -364,6 +409,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   }
 
   @Override
+  @Transactional
   public void updateHostRoleStates(Collection<CommandReport> reports) {
     Map<Long, CommandReport> taskReports = new HashMap<Long, CommandReport>();
     for (CommandReport report : reports) {
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
@@ -57,6 +58,17 @@ public class ActionManager {
   private final RequestFactory requestFactory;
   private static TopologyManager topologyManager;
 
+  /**
+   * Coalesces command reports from many heartbeats into batched writes, or
+   * {@code null} if heartbeat batching is disabled.
+   */
+  private final CommandReportBatcher reportBatcher;
+
+  /**
+   * {@code true} to wake the scheduler up as soon as a task completes.
+   */
+  private final boolean eventDrivenScheduler;
+
 
   @Inject
   public ActionManager(@Named("schedulerSleeptime") long schedulerSleepTime,
@@ -72,15 +84,33 @@ public class ActionManager {
     requestCounter = new AtomicLong(
         db.getLastPersistedRequestIdWhenInitialized());
     this.requestFactory = requestFactory;
+
+    if (null != configuration && configuration.isHeartbeatBatchingEnabled()) {
+      reportBatcher = new CommandReportBatcher(db, configuration.getHeartbeatBatchQueueSize(),
+          configuration.getHeartbeatBatchSize(), configuration.getHeartbeatBatchLingerTime());
+    } else {
+      reportBatcher = null;
+    }
+
+    eventDrivenScheduler = null != configuration && configuration.isActionSchedulerEventDriven();
   }
 
   public void start() {
     LOG.info("Starting scheduler thread");
     scheduler.start();
+
+    if (null != reportBatcher) {
+      LOG.info("Starting command report batcher thread");
+      reportBatcher.start();
+    }
   }
 
   public void shutdown() {
     scheduler.stop();
+
+    if (null != reportBatcher) {
+      reportBatcher.stop();
+    }
   }
 
   public void sendActions(List<Stage> stages, ExecuteActionRequest actionRequest) throws AmbariException {
@@ -135,14 +165,17 @@ public class ActionManager {
    * @param commands a list of commands that correspond to reports list (it should be
    * a 1 to 1 matching). We use this list to avoid fetching commands from the DB
    * twice
+   * @throws AmbariException if batching is enabled and the batch containing
+   * the reports could not be persisted
    */
   public void processTaskResponse(String hostname, List<CommandReport> reports,
-                                  Collection<HostRoleCommand> commands) {
+                                  Collection<HostRoleCommand> commands) throws AmbariException {
     if (reports == null) {
       return;
     }
 
     List<CommandReport> reportsToProcess = new ArrayList<CommandReport>();
+    boolean taskCompleted = false;
     Iterator<HostRoleCommand> commandIterator = commands.iterator();
     //persist the action response into the db.
     for (CommandReport report : reports) {
@@ -163,9 +196,77 @@ public class ActionManager {
         continue;
       }
       reportsToProcess.add(report);
+      taskCompleted |= HostRoleStatus.valueOf(report.getStatus()).isCompletedState();
+    }
+
+    if (null != reportBatcher) {
+      reportBatcher.submit(reportsToProcess);
+    } else {
+      db.updateHostRoleStates(reportsToProcess);
+    }
+
+    // a completed task may allow the next stage to start; schedule it now
+    // rather than on the next polling interval
+    if (eventDrivenScheduler && taskCompleted) {
+      scheduler.awake();
     }
+  }
+
+  /**
+   * Gets the batcher used to coalesce command reports across heartbeats.
+   *
+   * @return the batcher, or {@code null} if heartbeat batching is disabled.
+   */
+  public CommandReportBatcher getCommandReportBatcher() {
+    return reportBatcher;
+  }
+
+  /**
+   * @return the number of action scheduler cycles run.
+   */
+  public long getSchedulerCycleCount() {
+    return scheduler.getCycleCount();
+  }
 
-    db.updateHostRoleStates(reportsToProcess);
+  /**
+   * @return the average duration of an action scheduler cycle, in
+   *         milliseconds.
+   */
+  public double getAverageSchedulerCycleTime() {
+    return scheduler.getAverageCycleTime();
+  }
+
+  /**
+   * @return the longest action scheduler cycle, in milliseconds.
+   */
+  public long getMaxSchedulerCycleTime() {
+    return scheduler.getMaxCycleTime();
+  }
+
+  /**
+   * @return the average time, in milliseconds, that a request was being
+   *         processed by the action scheduler.
+   */
+  public double getAverageRequestLatency() {
+    return scheduler.getAverageRequestLatency();
+  }
+
+  /**
+   * Gets the action scheduler statistics which are reported by the
+   * {@code AMBARI_SERVER} root service component.
+   *
+   * @return the statistics, keyed by name (never {@code null}).
+   */
+  public Map<String, Object> getSchedulerStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("event_driven", eventDrivenScheduler);
+    statistics.put("cycles", scheduler.getCycleCount());
+    statistics.put("cycle_avg_ms", scheduler.getAverageCycleTime());
+    statistics.put("cycle_max_ms", scheduler.getMaxCycleTime());
+    statistics.put("cycle_last_ms", scheduler.getLastCycleTime());
+    statistics.put("requests_in_progress", scheduler.getRequestsInProgressCount());
+    statistics.put("request_latency_avg_ms", scheduler.getAverageRequestLatency());
+    return statistics;
   }
 
   /**
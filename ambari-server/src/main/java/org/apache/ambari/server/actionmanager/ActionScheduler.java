@@ -30,6 +30,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.Role;
@@ -61,6 +62,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ArrayListMultimap;
@@ -73,6 +75,14 @@ import com.google.inject.persist.UnitOfWork;
  * This class encapsulates the action scheduler thread.
  * Action schedule frequently looks at action database and determines if
  * there is an action that can be scheduled.
+ * <p/>
+ * Besides its polling interval, the scheduler runs when a request is
+ * submitted and, with {@code server.action.scheduler.event.driven}, when a
+ * task completes. Each cycle still reloads the stages in progress from the
+ * database and processes them on the scheduler thread; stage state is not
+ * kept in memory and requests are not processed on a worker pool, since
+ * stages are read and updated through the {@link UnitOfWork} bound to this
+ * thread.
  */
 class ActionScheduler implements Runnable {
 
@@ -99,6 +109,27 @@ class ActionScheduler implements Runnable {
 
   private final Set<Long> requestsInProgress = new HashSet<Long>();
 
+  /**
+   * The time at which each request in {@link #requestsInProgress} was first
+   * picked up by the scheduler, used to compute request latency.
+   */
+  private final Map<Long, Long> requestStartTimes = new ConcurrentHashMap<Long, Long>();
+
+  /**
+   * Scheduler cycle and request latency statistics.
+   */
+  private final AtomicLong cycleCount = new AtomicLong();
+  private final AtomicLong totalCycleTime = new AtomicLong();
+  private volatile long maxCycleTime = 0;
+  private volatile long lastCycleTime = 0;
+  private final AtomicLong completedRequestCount = new AtomicLong();
+  private final AtomicLong totalRequestLatency = new AtomicLong();
+
+  /**
+   * The time source of the cycle and request latency statistics.
+   */
+  private Ticker ticker = Ticker.systemTicker();
+
   /**
    * Contains request ids that have been scheduled to be cancelled,
    * but are not cancelled yet
@@ -192,6 +223,7 @@ class ActionScheduler implements Runnable {
           }
           activeAwakeRequest = false;
         }
+
         doWork();
       } catch (InterruptedException ex) {
         LOG.warn("Scheduler thread is interrupted going to stop", ex);
@@ -199,14 +231,108 @@ class ActionScheduler implements Runnable {
       } catch (Exception ex) {
         LOG.warn("Exception received", ex);
         requestsInProgress.clear();
+        requestStartTimes.clear();
       } catch (Throwable t) {
         LOG.warn("ERROR", t);
         requestsInProgress.clear();
+        requestStartTimes.clear();
+      }
+    }
+  }
+
+  /**
+   * Records the duration of a single scheduler cycle.
+   *
+   * @param cycleTime
+   *          the duration of the cycle, in milliseconds.
+   */
+  private void recordCycleTime(long cycleTime) {
+    cycleCount.incrementAndGet();
+    totalCycleTime.addAndGet(cycleTime);
+    lastCycleTime = cycleTime;
+    if (cycleTime > maxCycleTime) {
+      maxCycleTime = cycleTime;
+    }
+  }
+
+  /**
+   * Removes the requests which are no longer running from
+   * {@link #requestsInProgress} and records how long they were in progress.
+   *
+   * @param runningRequestIds
+   *          the requests which are still running.
+   */
+  private void retainRunningRequests(Set<Long> runningRequestIds) {
+    long now = currentTimeMillis();
+    Iterator<Long> iterator = requestsInProgress.iterator();
+    while (iterator.hasNext()) {
+      Long requestId = iterator.next();
+      if (!runningRequestIds.contains(requestId)) {
+        iterator.remove();
+
+        Long startTime = requestStartTimes.remove(requestId);
+        if (null != startTime) {
+          completedRequestCount.incrementAndGet();
+          totalRequestLatency.addAndGet(now - startTime);
+        }
       }
     }
   }
 
+  /**
+   * @return the number of scheduler cycles run.
+   */
+  public long getCycleCount() {
+    return cycleCount.get();
+  }
+
+  /**
+   * @return the average duration of a scheduler cycle, in milliseconds.
+   */
+  public double getAverageCycleTime() {
+    long cycles = cycleCount.get();
+    return cycles == 0 ? 0 : (double) totalCycleTime.get() / cycles;
+  }
+
+  /**
+   * @return the longest scheduler cycle, in milliseconds.
+   */
+  public long getMaxCycleTime() {
+    return maxCycleTime;
+  }
+
+  /**
+   * @return the duration of the most recent scheduler cycle, in milliseconds.
+   */
+  public long getLastCycleTime() {
+    return lastCycleTime;
+  }
+
+  /**
+   * @return the number of requests currently being processed.
+   */
+  public int getRequestsInProgressCount() {
+    return requestStartTimes.size();
+  }
+
+  /**
+   * @return the average time, in milliseconds, between the scheduler picking
+   *         up a request and the request no longer having stages in progress.
+   */
+  public double getAverageRequestLatency() {
+    long requests = completedRequestCount.get();
+    return requests == 0 ? 0 : (double) totalRequestLatency.get() / requests;
+  }
+
+  /**
+   * @return the time of the {@link #ticker}, in milliseconds.
+   */
+  private long currentTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+  }
+
   public void doWork() throws AmbariException {
+    long cycleStart = currentTimeMillis();
     try {
       unitOfWork.begin();
 
@@ -223,6 +349,7 @@ class ActionScheduler implements Runnable {
         }
 
         actionQueue.updateListOfHostsWithPendingTask(null);
+        retainRunningRequests(Collections.<Long>emptySet());
         return;
       }
 
@@ -240,6 +367,7 @@ class ActionScheduler implements Runnable {
         }
 
         actionQueue.updateListOfHostsWithPendingTask(null);
+        retainRunningRequests(Collections.<Long>emptySet());
         return;
       }
 
@@ -279,6 +407,7 @@ class ActionScheduler implements Runnable {
           runningRequestIds.add(requestId);
           if (!requestsInProgress.contains(requestId)) {
             requestsInProgress.add(requestId);
+            requestStartTimes.put(requestId, currentTimeMillis());
             db.startRequest(requestId);
           }
         }
@@ -398,11 +527,12 @@ class ActionScheduler implements Runnable {
         }
       }
 
-      requestsInProgress.retainAll(runningRequestIds);
+      retainRunningRequests(runningRequestIds);
 
     } finally {
       LOG.debug("Scheduler finished work.");
       unitOfWork.end();
+      recordCycleTime(currentTimeMillis() - cycleStart);
     }
   }
 
@@ -991,6 +1121,14 @@ class ActionScheduler implements Runnable {
     taskTimeoutAdjustment = val;
   }
 
+  /**
+   * Sets the time source of the cycle and request latency statistics. Task
+   * timeouts are not affected.
+   */
+  void setTicker(Ticker ticker) {
+    this.ticker = ticker;
+  }
+
   ServerActionExecutor getServerActionExecutor() {
     return serverActionExecutor;
   }
@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.agent.CommandReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link CommandReportBatcher} coalesces the command reports received in
+ * heartbeats from many agents and persists them with a single call to
+ * {@link ActionDBAccessor#updateHostRoleStates(java.util.Collection)}.
+ * <p/>
+ * Heartbeat threads hand their reports to a bounded queue and block until the
+ * writer thread has flushed the batch which contains them; this keeps the
+ * heartbeat response consistent with the database while turning one
+ * transaction per heartbeat into one transaction per batch. If the queue is
+ * full, the reports are written directly on the calling thread so that a slow
+ * database applies back-pressure instead of accumulating unbounded work.
+ * <p/>
+ * A heartbeat which arrives while nothing else is waiting is written right
+ * away; the linger time only applies when other heartbeats are already queued.
+ * If a batch cannot be written, each of its heartbeats is retried on its own
+ * so that a single bad report only fails the heartbeat which sent it.
+ */
+public class CommandReportBatcher implements Runnable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(CommandReportBatcher.class);
+
+  private final ActionDBAccessor db;
+  private final BlockingQueue<PendingReports> queue;
+  private final int batchSize;
+  private final long lingerTime;
+
+  private volatile boolean shouldRun = true;
+  private Thread writerThread = null;
+
+  /**
+   * Statistics.
+   */
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong reportCount = new AtomicLong();
+  private final AtomicLong heartbeatCount = new AtomicLong();
+  private final AtomicLong directWriteCount = new AtomicLong();
+  private final AtomicLong retriedBatchCount = new AtomicLong();
+  private final AtomicLong failedHeartbeatCount = new AtomicLong();
+  private final AtomicLong totalFlushTime = new AtomicLong();
+  private final AtomicLong totalWaitTime = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param db
+   *          the accessor used to persist the reports.
+   * @param queueSize
+   *          the maximum number of heartbeats waiting to be written.
+   * @param batchSize
+   *          the maximum number of reports written in a single batch.
+   * @param lingerTime
+   *          the time, in milliseconds, to wait for more reports before
+   *          flushing a partially filled batch when other heartbeats are
+   *          already queued.
+   */
+  public CommandReportBatcher(ActionDBAccessor db, int queueSize, int batchSize,
+      long lingerTime) {
+    this.db = db;
+    queue = new ArrayBlockingQueue<PendingReports>(Math.max(1, queueSize));
+    this.batchSize = Math.max(1, batchSize);
+    this.lingerTime = Math.max(0, lingerTime);
+  }
+
+  public void start() {
+    writerThread = new Thread(this, "ambari-command-report-batcher");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  public void stop() {
+    shouldRun = false;
+    if (null != writerThread) {
+      writerThread.interrupt();
+    }
+  }
+
+  /**
+   * Persists the given reports as part of the next batch and waits for the
+   * batch to be written.
+   *
+   * @param reports
+   *          the reports to persist (not {@code null}).
+   * @throws AmbariException
+   *           if the batch containing the reports could not be written.
+   */
+  public void submit(List<CommandReport> reports) throws AmbariException {
+    if (reports.isEmpty()) {
+      return;
+    }
+
+    PendingReports pending = new PendingReports(reports);
+    if (!shouldRun || !queue.offer(pending)) {
+      directWriteCount.incrementAndGet();
+      db.updateHostRoleStates(reports);
+      return;
+    }
+
+    try {
+      while (!pending.latch.await(1, TimeUnit.SECONDS)) {
+        // the writer was stopped before it could pick up these reports
+        if (!shouldRun && queue.remove(pending)) {
+          directWriteCount.incrementAndGet();
+          db.updateHostRoleStates(reports);
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AmbariException("Interrupted while waiting for command reports to be persisted", e);
+    }
+
+    if (null != pending.failure) {
+      throw new AmbariException("Unable to persist command reports", pending.failure);
+    }
+  }
+
+  @Override
+  public void run() {
+    while (shouldRun) {
+      List<PendingReports> batch = new ArrayList<PendingReports>();
+      try {
+        PendingReports first = queue.take();
+        batch.add(first);
+
+        // only linger when other heartbeats are already waiting; a lone
+        // heartbeat on an idle server is written immediately
+        int reports = first.reports.size();
+        long deadline = System.nanoTime();
+        if (!queue.isEmpty()) {
+          deadline += TimeUnit.MILLISECONDS.toNanos(lingerTime);
+        }
+
+        while (reports < batchSize) {
+          PendingReports next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (null == next) {
+            break;
+          }
+          batch.add(next);
+          reports += next.reports.size();
+        }
+
+        flush(batch);
+      } catch (InterruptedException e) {
+        LOG.info("Command report batcher thread is interrupted going to stop");
+        shouldRun = false;
+        flush(batch);
+      }
+    }
+
+    // write whatever is left so that no heartbeat thread waits forever
+    List<PendingReports> remaining = new ArrayList<PendingReports>();
+    queue.drainTo(remaining);
+    flush(remaining);
+  }
+
+  /**
+   * Writes all of the reports in the batch and releases the waiting threads.
+   * If the batch cannot be written as a whole, the reports of each heartbeat
+   * are retried separately and only the heartbeats which still fail are
+   * reported as failed.
+   *
+   * @param batch
+   *          the heartbeats to write.
+   */
+  void flush(List<PendingReports> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    List<CommandReport> reports = new ArrayList<CommandReport>();
+    for (PendingReports pending : batch) {
+      reports.addAll(pending.reports);
+    }
+
+    long start = System.nanoTime();
+    Throwable failure = null;
+    try {
+      db.updateHostRoleStates(reports);
+    } catch (Throwable t) {
+      failure = t;
+    }
+
+    if (null != failure && batch.size() > 1) {
+      LOG.warn("Unable to persist a batch of {} command reports, retrying each of the {} heartbeats",
+          reports.size(), batch.size(), failure);
+
+      retriedBatchCount.incrementAndGet();
+      for (PendingReports pending : batch) {
+        try {
+          db.updateHostRoleStates(pending.reports);
+        } catch (Throwable t) {
+          LOG.warn("Unable to persist {} command reports", pending.reports.size(), t);
+          pending.failure = t;
+        }
+      }
+    } else if (null != failure) {
+      LOG.warn("Unable to persist {} command reports", reports.size(), failure);
+      batch.get(0).failure = failure;
+    }
+
+    long end = System.nanoTime();
+    batchCount.incrementAndGet();
+    reportCount.addAndGet(reports.size());
+    heartbeatCount.addAndGet(batch.size());
+    totalFlushTime.addAndGet(end - start);
+
+    for (PendingReports pending : batch) {
+      if (null != pending.failure) {
+        failedHeartbeatCount.incrementAndGet();
+      }
+
+      totalWaitTime.addAndGet(end - pending.enqueued);
+      pending.latch.countDown();
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Persisted {} command reports from {} heartbeats in {}ms", reports.size(),
+          batch.size(), TimeUnit.NANOSECONDS.toMillis(end - start));
+    }
+  }
+
+  /**
+   * @return the number of heartbeats currently waiting to be written.
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of batches written.
+   */
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  /**
+   * @return the number of command reports written in batches.
+   */
+  public long getReportCount() {
+    return reportCount.get();
+  }
+
+  /**
+   * @return the number of heartbeats written on the calling thread because the
+   *         queue was full.
+   */
+  public long getDirectWriteCount() {
+    return directWriteCount.get();
+  }
+
+  /**
+   * @return the number of batches which could not be written as a whole and
+   *         were retried one heartbeat at a time.
+   */
+  public long getRetriedBatchCount() {
+    return retriedBatchCount.get();
+  }
+
+  /**
+   * @return the number of heartbeats whose reports could not be written.
+   */
+  public long getFailedHeartbeatCount() {
+    return failedHeartbeatCount.get();
+  }
+
+  /**
+   * @return the average time, in milliseconds, spent writing a batch.
+   */
+  public double getAverageFlushTime() {
+    long batches = batchCount.get();
+    return batches == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalFlushTime.get()) / 1000 / batches;
+  }
+
+  /**
+   * @return the average time, in milliseconds, that a heartbeat waited for its
+   *         reports to be written.
+   */
+  public double getAverageWaitTime() {
+    long heartbeats = heartbeatCount.get();
+    return heartbeats == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalWaitTime.get()) / 1000 / heartbeats;
+  }
+
+  /**
+   * The reports of a single heartbeat along with the latch used to release the
+   * heartbeat thread once they are written.
+   */
+  static final class PendingReports {
+    private final List<CommandReport> reports;
+    private final long enqueued = System.nanoTime();
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile Throwable failure;
+
+    PendingReports(List<CommandReport> reports) {
+      this.reports = reports;
+    }
+  }
+}
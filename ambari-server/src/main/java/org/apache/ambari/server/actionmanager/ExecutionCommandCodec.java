@@ -0,0 +1,333 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ambari.server.orm.dao.ExecutionCommandDAO;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntity;
+import org.apache.ambari.server.utils.StageUtils;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The {@link ExecutionCommandCodec} converts execution commands to and from
+ * the compact form in which they are stored. The parts of a command which are
+ * usually the same for all of the commands of a stage, such as the
+ * configurations and the cluster host info, are taken out of the command and
+ * stored once per stage as fragments addressed by the hash of their content.
+ * The rest of the command keeps the hash of each fragment it refers to. Both
+ * the commands and the fragments are compressed.
+ * <p/>
+ * Commands written before this format was introduced are plain JSON and are
+ * returned as they are.
+ */
+@Singleton
+public class ExecutionCommandCodec {
+
+  /**
+   * The member of a stored command which maps each removed member to the
+   * hash of its fragment.
+   */
+  static final String FRAGMENTS_MEMBER = "_fragments";
+
+  /**
+   * The members of a command which are stored as fragments.
+   */
+  private static final String[] FRAGMENT_MEMBERS = { "configurations",
+      "configuration_attributes", "configurationTags", "clusterHostInfo",
+      "hostLevelParams" };
+
+  /**
+   * Members shorter than this are left in the command since a reference
+   * would not be much smaller.
+   */
+  static final int MIN_FRAGMENT_LENGTH = 256;
+
+  /**
+   * The maximum number of characters of fragments kept in memory. All of the
+   * commands of a stage usually share a handful of fragments, so this only
+   * needs to hold those of the stages being scheduled.
+   */
+  private static final int FRAGMENT_CACHE_WEIGHT = 16 * 1024 * 1024;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Inject
+  private ExecutionCommandDAO executionCommandDAO;
+
+  /**
+   * Fragments which were read, keyed by request, stage and hash. Fragments
+   * never change once written so they do not need to be invalidated.
+   */
+  private final Cache<String, String> fragmentCache = CacheBuilder.newBuilder()
+      .maximumWeight(FRAGMENT_CACHE_WEIGHT)
+      .weigher(new Weigher<String, String>() {
+        @Override
+        public int weigh(String key, String value) {
+          return value.length();
+        }
+      }).build();
+
+  /**
+   * Converts a command to its stored form, adding the fragments it refers to
+   * to those of its stage.
+   *
+   * @param wrapper
+   *          the command (not {@code null}).
+   * @param fragments
+   *          the fragments of the stage the command belongs to (not
+   *          {@code null}).
+   * @return the compressed command.
+   */
+  public byte[] encode(ExecutionCommandWrapper wrapper, StageFragments fragments) {
+    // serializing to a tree saves writing and parsing the JSON text
+    JsonObject command;
+    if (null == wrapper.jsonExecutionCommand && null != wrapper.executionCommand) {
+      command = StageUtils.getGson().toJsonTree(wrapper.executionCommand).getAsJsonObject();
+    } else {
+      command = new JsonParser().parse(wrapper.getJson()).getAsJsonObject();
+    }
+
+    JsonObject references = new JsonObject();
+    for (String member : FRAGMENT_MEMBERS) {
+      JsonElement element = command.get(member);
+      if (null == element || element.isJsonNull()) {
+        continue;
+      }
+
+      String content = element.toString();
+      if (content.length() < MIN_FRAGMENT_LENGTH) {
+        continue;
+      }
+
+      command.remove(member);
+      references.addProperty(member, fragments.add(content));
+    }
+
+    if (references.entrySet().size() > 0) {
+      command.add(FRAGMENTS_MEMBER, references);
+    }
+
+    return compress(command.toString());
+  }
+
+  /**
+   * Converts a stored command back to JSON, replacing the references to
+   * fragments with their content.
+   *
+   * @param storedCommand
+   *          the command as stored (not {@code null}).
+   * @param requestId
+   *          the request ID of the command's stage.
+   * @param stageId
+   *          the stage ID of the command.
+   * @return the JSON of the command.
+   */
+  public String decode(byte[] storedCommand, final long requestId, final long stageId) {
+    return decode(storedCommand, new FragmentSource() {
+      @Override
+      public String getFragment(String hash) {
+        return getStoredFragment(requestId, stageId, hash);
+      }
+    });
+  }
+
+  /**
+   * Converts a stored command back to JSON.
+   *
+   * @param storedCommand
+   *          the command as stored (not {@code null}).
+   * @param source
+   *          provides the content of the fragments (not {@code null}).
+   * @return the JSON of the command.
+   */
+  String decode(byte[] storedCommand, FragmentSource source) {
+    if (!isCompressed(storedCommand)) {
+      return new String(storedCommand);
+    }
+
+    String json = decompress(storedCommand);
+    JsonParser parser = new JsonParser();
+    JsonObject command = parser.parse(json).getAsJsonObject();
+
+    JsonElement references = command.remove(FRAGMENTS_MEMBER);
+    if (null == references) {
+      return json;
+    }
+
+    for (Map.Entry<String, JsonElement> reference : references.getAsJsonObject().entrySet()) {
+      String hash = reference.getValue().getAsString();
+      String content = source.getFragment(hash);
+      if (null == content) {
+        throw new RuntimeException("Invalid DB state, missing execution command fragment "
+            + hash + " for " + reference.getKey());
+      }
+
+      command.add(reference.getKey(), parser.parse(content));
+    }
+
+    return command.toString();
+  }
+
+  /**
+   * Gets whether a stored command is in the compressed form.
+   *
+   * @param storedCommand
+   *          the command as stored.
+   * @return {@code true} if the command starts with the GZIP header.
+   */
+  public static boolean isCompressed(byte[] storedCommand) {
+    return null != storedCommand && storedCommand.length > 2
+        && storedCommand[0] == (byte) (GZIPInputStream.GZIP_MAGIC)
+        && storedCommand[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+  }
+
+  /**
+   * Reads a fragment, keeping it for the other commands of the same stage.
+   */
+  private String getStoredFragment(final long requestId, final long stageId,
+      final String hash) {
+    String key = requestId + "-" + stageId + "-" + hash;
+    String content = fragmentCache.getIfPresent(key);
+    if (null != content) {
+      return content;
+    }
+
+    ExecutionCommandFragmentEntity fragment = executionCommandDAO.findFragmentByPK(
+        requestId, stageId, hash);
+
+    if (null == fragment) {
+      return null;
+    }
+
+    content = decompress(fragment.getContent());
+    fragmentCache.put(key, content);
+    return content;
+  }
+
+  static byte[] compress(String content) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length() / 4 + 32);
+      GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+      gzip.write(content.getBytes(UTF_8));
+      gzip.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to compress an execution command", e);
+    }
+  }
+
+  static String decompress(byte[] content) {
+    GZIPInputStream gzip = null;
+    try {
+      gzip = new GZIPInputStream(new ByteArrayInputStream(content));
+      return new String(IOUtils.toByteArray(gzip), UTF_8);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to decompress an execution command", e);
+    } finally {
+      IOUtils.closeQuietly(gzip);
+    }
+  }
+
+  /**
+   * Provides the content of fragments by hash.
+   */
+  interface FragmentSource {
+    /**
+     * @param hash
+     *          the hash of the fragment.
+     * @return the content, or {@code null} if there is no such fragment.
+     */
+    String getFragment(String hash);
+  }
+
+  /**
+   * The fragments of the commands of a single stage. Each distinct content is
+   * hashed and compressed only once no matter how many commands contain it.
+   * This class is not thread-safe.
+   */
+  public static class StageFragments implements FragmentSource {
+    private final Map<String, String> hashes = new HashMap<String, String>();
+    private final Map<String, byte[]> compressed = new LinkedHashMap<String, byte[]>();
+    private final Map<String, String> contents = new HashMap<String, String>();
+    private final MessageDigest digest;
+
+    public StageFragments() {
+      try {
+        digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Adds a fragment if it is not yet known.
+     *
+     * @param content
+     *          the content of the fragment.
+     * @return the hash of the fragment.
+     */
+    String add(String content) {
+      String hash = hashes.get(content);
+      if (null == hash) {
+        hash = Hex.encodeHexString(digest.digest(content.getBytes(UTF_8)));
+        hashes.put(content, hash);
+        contents.put(hash, content);
+        compressed.put(hash, compress(content));
+      }
+
+      return hash;
+    }
+
+    /**
+     * @return the compressed content of each fragment by hash, in the order
+     *         they were added.
+     */
+    public Map<String, byte[]> getCompressedFragments() {
+      return compressed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFragment(String hash) {
+      return contents.get(hash);
+    }
+  }
+}
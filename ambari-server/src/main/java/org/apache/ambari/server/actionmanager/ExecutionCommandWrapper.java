@@ -42,15 +42,47 @@ public class ExecutionCommandWrapper {
   String jsonExecutionCommand = null;
   ExecutionCommand executionCommand = null;
 
+  /**
+   * The command as read from the database; converted to JSON on first use.
+   */
+  private byte[] storedCommand = null;
+  private long requestId;
+  private long stageId;
+
   public ExecutionCommandWrapper(String jsonExecutionCommand) {
     this.jsonExecutionCommand = jsonExecutionCommand;
   }
 
+  /**
+   * Constructor for a command read from the database. Compressed commands
+   * are reassembled from the fragments of their stage the first time they are
+   * used.
+   *
+   * @param storedCommand
+   *          the command as stored (not {@code null}).
+   * @param requestId
+   *          the request ID of the command's stage.
+   * @param stageId
+   *          the stage ID of the command.
+   * @see ExecutionCommandCodec
+   */
+  public ExecutionCommandWrapper(byte[] storedCommand, long requestId, long stageId) {
+    if (ExecutionCommandCodec.isCompressed(storedCommand)) {
+      this.storedCommand = storedCommand;
+      this.requestId = requestId;
+      this.stageId = stageId;
+    } else {
+      jsonExecutionCommand = new String(storedCommand);
+    }
+  }
+
   public ExecutionCommandWrapper(ExecutionCommand executionCommand) {
     this.executionCommand = executionCommand;
   }
 
   public ExecutionCommand getExecutionCommand() {
+    reassemble();
+
     if (executionCommand != null) {
       return executionCommand;
     } else if (jsonExecutionCommand != null) {
@@ -126,6 +158,8 @@ public class ExecutionCommandWrapper {
   }
 
   public String getJson() {
+    reassemble();
+
     if (jsonExecutionCommand != null) {
       return jsonExecutionCommand;
     } else if (executionCommand != null) {
@@ -158,6 +192,8 @@ public class ExecutionCommandWrapper {
 
   @Override
   public int hashCode() {
+    reassemble();
+
     if (executionCommand != null) {
       return executionCommand.hashCode();
     } else if (jsonExecutionCommand != null) {
@@ -166,6 +202,24 @@ public class ExecutionCommandWrapper {
     throw new RuntimeException("Invalid Wrapper object");
   }
 
+  /**
+   * Converts a command read in its compressed form to JSON.
+   */
+  private synchronized void reassemble() {
+    if (storedCommand == null) {
+      return;
+    }
+
+    if (injector == null) {
+      throw new RuntimeException("Injector not found, execution command cannot be restored");
+    }
+
+    jsonExecutionCommand = injector.getInstance(ExecutionCommandCodec.class).decode(
+        storedCommand, requestId, stageId);
+
+    storedCommand = null;
+  }
+
   void invalidateJson() {
     if (executionCommand == null) {
       throw new RuntimeException("Invalid Wrapper object");
@@ -162,6 +162,17 @@ public class HostRoleCommand {
     return executionCommandEntity;
   }
 
+  /**
+   * Constructs the entity holding the command in its compact form, adding
+   * the fragments it refers to to those of its stage.
+   */
+  ExecutionCommandEntity constructExecutionCommandEntity(ExecutionCommandCodec codec,
+      ExecutionCommandCodec.StageFragments fragments) {
+    ExecutionCommandEntity executionCommandEntity = new ExecutionCommandEntity();
+    executionCommandEntity.setCommand(codec.encode(executionCommandWrapper, fragments));
+    return executionCommandEntity;
+  }
+
   public long getTaskId() {
     return taskId;
   }
@@ -315,9 +326,8 @@ public class HostRoleCommand {
       if (commandEntity == null) {
         throw new RuntimeException("Invalid DB state, broken one-to-one relation for taskId=" + taskId);
       }
-      executionCommandWrapper = new ExecutionCommandWrapper(new String(
-          commandEntity.getCommand()
-      ));
+      executionCommandWrapper = new ExecutionCommandWrapper(
+          commandEntity.getCommand(), requestId, stageId);
     }
 
     return executionCommandWrapper;
@@ -17,14 +17,18 @@
  */
 package org.apache.ambari.server.agent;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ambari.server.agent.AgentCommand.AgentCommandType;
@@ -33,22 +37,42 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.Singleton;
 
+/**
+ * The {@link ActionQueue} holds the commands waiting to be sent to each agent
+ * on its next heartbeat.
+ * <p/>
+ * The commands of a host are indexed by type and, for execution commands, by
+ * command ID so that the removals performed by the action scheduler and the
+ * alert framework do not need to scan the whole queue.
+ */
 @Singleton
 public class ActionQueue {
 
   private static Logger LOG = LoggerFactory.getLogger(ActionQueue.class);
 
-  private static HashSet<String> EMPTY_HOST_LIST = new HashSet<String>();
+  /**
+   * The order in which {@link #dequeueAll(String)} returns the commands of a
+   * host; commands of the same type are returned in the order they were
+   * enqueued and types not listed here are returned last.
+   */
+  private static final List<AgentCommandType> DRAIN_ORDER = Arrays.asList(
+      AgentCommandType.CANCEL_COMMAND,
+      AgentCommandType.EXECUTION_COMMAND,
+      AgentCommandType.BACKGROUND_EXECUTION_COMMAND,
+      AgentCommandType.REGISTRATION_COMMAND,
+      AgentCommandType.ALERT_DEFINITION_COMMAND,
+      AgentCommandType.ALERT_EXECUTION_COMMAND,
+      AgentCommandType.STATUS_COMMAND);
 
-  final ConcurrentMap<String, Queue<AgentCommand>> hostQueues;
+  final ConcurrentMap<String, HostQueue> hostQueues;
 
-  HashSet<String> hostsWithPendingTask = new HashSet<String>();
+  volatile Set<String> hostsWithPendingTask = Collections.emptySet();
 
   public ActionQueue() {
-    hostQueues = new ConcurrentHashMap<String, Queue<AgentCommand>>();
+    hostQueues = new ConcurrentHashMap<String, HostQueue>();
   }
 
-  private Queue<AgentCommand> getQueue(String hostname) {
+  private HostQueue getQueue(String hostname) {
     return hostQueues.get(hostname);
   }
 
@@ -58,11 +82,35 @@ public class ActionQueue {
    * @param cmd - command to add to queue
    */
   public void enqueue(String hostname, AgentCommand cmd) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    getOrCreateQueue(hostname).add(cmd);
+  }
+
+  /**
+   * Removes all of the commands of the specified types for the given host and
+   * adds the command in their place. Other writers of the same host's queue
+   * cannot observe the queue in between; writers of other hosts are not
+   * blocked.
+   *
+   * @param hostname
+   *          the host to replace commands for (not {@code null}).
+   * @param cmd
+   *          the command to add (not {@code null}).
+   * @param replacedTypes
+   *          the types of the commands to remove first.
+   * @return the commands removed, or an empty list if none (never {@code null}
+   *         ).
+   */
+  public List<AgentCommand> replace(String hostname, AgentCommand cmd,
+      AgentCommandType... replacedTypes) {
+    return getOrCreateQueue(hostname).replace(cmd, replacedTypes);
+  }
+
+  private HostQueue getOrCreateQueue(String hostname) {
+    HostQueue q = getQueue(hostname);
 
     if (q == null) {
       //try to add new queue to map if not found
-      q = hostQueues.putIfAbsent(hostname, new ConcurrentLinkedQueue<AgentCommand>());
+      q = hostQueues.putIfAbsent(hostname, new HostQueue());
       if (q == null) {
         //null means that new queue was added to map, get it
         q = getQueue(hostname);
@@ -70,7 +118,7 @@ public class ActionQueue {
       //otherwise we got existing queue (and put nothing!)
     }
 
-    q.add(cmd);
+    return q;
   }
 
   /**
@@ -79,7 +127,7 @@ public class ActionQueue {
    * @return
    */
   public AgentCommand dequeue(String hostname) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return null;
     }
@@ -103,24 +151,12 @@ public class ActionQueue {
       return Collections.emptyList();
     }
 
-    Queue<AgentCommand> queue = getQueue(hostname);
+    HostQueue queue = getQueue(hostname);
     if (null == queue) {
       return null;
     }
 
-    List<AgentCommand> removedCommands = new ArrayList<AgentCommand>(
-        queue.size());
-
-    Iterator<AgentCommand> iterator = queue.iterator();
-    while (iterator.hasNext()) {
-      AgentCommand command = iterator.next();
-      if (command.getCommandType() == commandType) {
-        removedCommands.add(command);
-        iterator.remove();
-      }
-    }
-
-    return removedCommands;
+    return queue.removeByType(commandType);
   }
 
   /**
@@ -131,53 +167,38 @@ public class ActionQueue {
    * @return
    */
   public AgentCommand dequeue(String hostname, String commandId) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return null;
     }
-    if (q.isEmpty()) {
-      return null;
-    } else {
-      AgentCommand c = null;
-      for (Iterator<AgentCommand> it = q.iterator(); it.hasNext();) {
-        AgentCommand ac = it.next();
-        if (ac instanceof ExecutionCommand && ((ExecutionCommand) ac)
-          .getCommandId().equals(commandId)) {
-          c = ac;
-          it.remove();
-          break;
-        }
-      }
-      return c;
-    }
+
+    return q.removeByCommandId(commandId);
   }
 
   public int size(String hostname) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return 0;
     }
-      return q.size();
+    return q.size();
   }
 
+  /**
+   * Dequeue's all commands for the given host. Cancel commands are returned
+   * first, followed by execution commands and then by status commands.
+   *
+   * @param hostname
+   *          the host to remove commands for.
+   * @return the commands removed, or {@code null} if nothing was ever queued
+   *         for the host.
+   */
   public List<AgentCommand> dequeueAll(String hostname) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return null;
     }
 
-    List<AgentCommand> l = new ArrayList<AgentCommand>();
-
-    AgentCommand command;
-    do {
-      //get commands from queue until empty
-      command = q.poll();
-      if (command != null) {
-        l.add(command);
-      }
-    } while (command != null);
-
-    return l;
+    return q.drain();
   }
 
   /**
@@ -187,9 +208,11 @@ public class ActionQueue {
    */
   public void updateListOfHostsWithPendingTask(HashSet<String> hosts) {
     if (hosts != null) {
-      hostsWithPendingTask = hosts;
-    } else if (hostsWithPendingTask.size() > 0) {
-      hostsWithPendingTask = EMPTY_HOST_LIST;
+      // the scheduler builds a new set on every cycle; readers only need a
+      // consistent view of the latest one
+      hostsWithPendingTask = Collections.unmodifiableSet(hosts);
+    } else if (!hostsWithPendingTask.isEmpty()) {
+      hostsWithPendingTask = Collections.emptySet();
     }
   }
 
@@ -199,11 +222,170 @@ public class ActionQueue {
    * @return
    */
   public boolean hasPendingTask(String hostName) {
-    HashSet<String> copyHostsWithTaskPending = hostsWithPendingTask;
-    if (copyHostsWithTaskPending != null) {
-      return copyHostsWithTaskPending.contains(hostName);
+    return hostsWithPendingTask.contains(hostName);
+  }
+
+  /**
+   * The commands queued for a single host. Commands are kept per type in
+   * enqueue order and are keyed by a sequence number, which preserves the
+   * overall FIFO order for {@link #poll()} and gives constant time removal by
+   * command ID.
+   */
+  static final class HostQueue {
+    private final Map<AgentCommandType, LinkedHashMap<Long, AgentCommand>> commandsByType =
+        new HashMap<AgentCommandType, LinkedHashMap<Long, AgentCommand>>();
+
+    private final Map<String, Deque<Long>> sequencesByCommandId = new HashMap<String, Deque<Long>>();
+
+    private long nextSequence = 0;
+    private int size = 0;
+
+    synchronized void add(AgentCommand command) {
+      long sequence = nextSequence++;
+      AgentCommandType type = command.getCommandType();
+
+      LinkedHashMap<Long, AgentCommand> commands = commandsByType.get(type);
+      if (null == commands) {
+        commands = new LinkedHashMap<Long, AgentCommand>();
+        commandsByType.put(type, commands);
+      }
+
+      commands.put(sequence, command);
+      size++;
+
+      String commandId = getCommandId(command);
+      if (null != commandId) {
+        Deque<Long> sequences = sequencesByCommandId.get(commandId);
+        if (null == sequences) {
+          sequences = new ArrayDeque<Long>(1);
+          sequencesByCommandId.put(commandId, sequences);
+        }
+        sequences.addLast(sequence);
+      }
     }
 
-    return false;
+    /**
+     * Removes the oldest command regardless of its type.
+     */
+    synchronized AgentCommand poll() {
+      LinkedHashMap<Long, AgentCommand> oldestCommands = null;
+      Long oldestSequence = null;
+      for (LinkedHashMap<Long, AgentCommand> commands : commandsByType.values()) {
+        if (commands.isEmpty()) {
+          continue;
+        }
+
+        Long head = commands.keySet().iterator().next();
+        if (null == oldestSequence || head < oldestSequence) {
+          oldestCommands = commands;
+          oldestSequence = head;
+        }
+      }
+
+      if (null == oldestCommands) {
+        return null;
+      }
+
+      AgentCommand command = oldestCommands.remove(oldestSequence);
+      size--;
+      unindex(oldestSequence, command);
+      return command;
+    }
+
+    synchronized List<AgentCommand> removeByType(AgentCommandType type) {
+      LinkedHashMap<Long, AgentCommand> commands = commandsByType.remove(type);
+      if (null == commands) {
+        return new ArrayList<AgentCommand>(0);
+      }
+
+      List<AgentCommand> removed = new ArrayList<AgentCommand>(commands.size());
+      for (Map.Entry<Long, AgentCommand> entry : commands.entrySet()) {
+        unindex(entry.getKey(), entry.getValue());
+        removed.add(entry.getValue());
+      }
+
+      size -= removed.size();
+      return removed;
+    }
+
+    synchronized List<AgentCommand> replace(AgentCommand command,
+        AgentCommandType... replacedTypes) {
+      List<AgentCommand> removed = new ArrayList<AgentCommand>();
+      for (AgentCommandType type : replacedTypes) {
+        removed.addAll(removeByType(type));
+      }
+
+      add(command);
+      return removed;
+    }
+
+    synchronized AgentCommand removeByCommandId(String commandId) {
+      Deque<Long> sequences = sequencesByCommandId.get(commandId);
+      if (null == sequences) {
+        return null;
+      }
+
+      Long sequence = sequences.pollFirst();
+      if (sequences.isEmpty()) {
+        sequencesByCommandId.remove(commandId);
+      }
+
+      // only execution commands are indexed by ID
+      for (LinkedHashMap<Long, AgentCommand> commands : commandsByType.values()) {
+        AgentCommand command = commands.remove(sequence);
+        if (null != command) {
+          size--;
+          return command;
+        }
+      }
+
+      return null;
+    }
+
+    synchronized List<AgentCommand> drain() {
+      List<AgentCommand> drained = new ArrayList<AgentCommand>(size);
+      for (AgentCommandType type : DRAIN_ORDER) {
+        LinkedHashMap<Long, AgentCommand> commands = commandsByType.remove(type);
+        if (null != commands) {
+          drained.addAll(commands.values());
+        }
+      }
+
+      for (LinkedHashMap<Long, AgentCommand> commands : commandsByType.values()) {
+        drained.addAll(commands.values());
+      }
+
+      commandsByType.clear();
+      sequencesByCommandId.clear();
+      size = 0;
+      return drained;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    private void unindex(Long sequence, AgentCommand command) {
+      String commandId = getCommandId(command);
+      if (null == commandId) {
+        return;
+      }
+
+      Deque<Long> sequences = sequencesByCommandId.get(commandId);
+      if (null != sequences) {
+        sequences.remove(sequence);
+        if (sequences.isEmpty()) {
+          sequencesByCommandId.remove(commandId);
+        }
+      }
+    }
+
+    private static String getCommandId(AgentCommand command) {
+      if (command instanceof ExecutionCommand) {
+        return ((ExecutionCommand) command).getCommandId();
+      }
+
+      return null;
+    }
   }
 }
@@ -23,19 +23,22 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
- * Captures various agent requests that it sends as part of requests
+ * Captures various agent requests that it sends as part of requests.  The
+ * requests are read by the heartbeat monitor shard threads while heartbeats
+ * update them, so the per host state is kept in concurrent maps.
  */
 
 @Singleton
 public class AgentRequests {
   private static Log LOG = LogFactory.getLog(HeartbeatMonitor.class);
-  private final Map<String, Map<String, Boolean>> requiresExecCmdDetails = new HashMap<String, Map<String, Boolean>>();
-  private final Object _lock = new Object();
+  private final ConcurrentMap<String, Map<String, Boolean>> requiresExecCmdDetails =
+      new ConcurrentHashMap<String, Map<String, Boolean>>();
 
   /**
    * Creates a holder for agent requests
@@ -67,15 +70,16 @@ public class AgentRequests {
   }
 
   private Map<String, Boolean> getPerHostRequiresExecCmdDetails(String host) {
-    if (!requiresExecCmdDetails.containsKey(host)) {
-      synchronized (_lock) {
-        if (!requiresExecCmdDetails.containsKey(host)) {
-          requiresExecCmdDetails.put(host, new HashMap<String, Boolean>());
-        }
+    Map<String, Boolean> perHostRequiresExecCmdDetails = requiresExecCmdDetails.get(host);
+    if (perHostRequiresExecCmdDetails == null) {
+      Map<String, Boolean> newPerHostRequiresExecCmdDetails = new ConcurrentHashMap<String, Boolean>();
+      perHostRequiresExecCmdDetails = requiresExecCmdDetails.putIfAbsent(host, newPerHostRequiresExecCmdDetails);
+      if (perHostRequiresExecCmdDetails == null) {
+        perHostRequiresExecCmdDetails = newPerHostRequiresExecCmdDetails;
       }
     }
 
-    return requiresExecCmdDetails.get(host);
+    return perHostRequiresExecCmdDetails;
   }
 
   @Override
@@ -25,10 +25,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.regex.Pattern;
 
 import org.apache.ambari.server.AmbariException;
@@ -39,6 +42,7 @@ import org.apache.ambari.server.ServiceComponentHostNotFoundException;
 import org.apache.ambari.server.ServiceComponentNotFoundException;
 import org.apache.ambari.server.ServiceNotFoundException;
 import org.apache.ambari.server.actionmanager.ActionManager;
+import org.apache.ambari.server.actionmanager.CommandReportBatcher;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
@@ -178,6 +182,24 @@ public class HeartBeatHandler {
 
   private Map<String, HeartBeatResponse> hostResponses = new ConcurrentHashMap<String, HeartBeatResponse>();
 
+  /**
+   * The stages of heartbeat processing whose latencies are tracked.
+   */
+  public enum HeartbeatStage {
+    COMMAND_REPORTS,
+    STATUS_REPORTS,
+    HOST_STATUS,
+    ALERTS,
+    COMMANDS
+  }
+
+  /**
+   * Total nanoseconds spent and number of invocations, indexed by
+   * {@link HeartbeatStage#ordinal()}.
+   */
+  private final AtomicLongArray stageLatencies = new AtomicLongArray(HeartbeatStage.values().length);
+  private final AtomicLongArray stageCounts = new AtomicLongArray(HeartbeatStage.values().length);
+
   @Inject
   public HeartBeatHandler(Clusters fsm, ActionQueue aq, ActionManager am,
                           Injector injector) {
@@ -264,6 +286,7 @@ public class HeartBeatHandler {
         hostObject.handleEvent(new HostUnhealthyHeartbeatEvent(hostname, now,
             null));
       }
+      heartbeatMonitor.heartbeatReceived(hostname, now);
     } catch (InvalidStateTransitionException ex) {
       LOG.warn("Asking agent to re-register due to " + ex.getMessage(), ex);
       hostObject.setState(HostState.INIT);
@@ -271,27 +294,115 @@ public class HeartBeatHandler {
     }
 
     // Examine heartbeat for command reports
+    long stageStart = System.nanoTime();
     processCommandReports(heartbeat, hostname, clusterFsm, now);
+    stageStart = recordStageLatency(HeartbeatStage.COMMAND_REPORTS, stageStart);
 
     // Examine heartbeat for component live status reports
     processStatusReports(heartbeat, hostname, clusterFsm);
+    stageStart = recordStageLatency(HeartbeatStage.STATUS_REPORTS, stageStart);
 
     // Calculate host status
     // NOTE: This step must be after processing command/status reports
     processHostStatus(heartbeat, hostname);
+    stageStart = recordStageLatency(HeartbeatStage.HOST_STATUS, stageStart);
 
     // Example heartbeat for alerts from the host or its components
     processAlerts(heartbeat, hostname);
+    stageStart = recordStageLatency(HeartbeatStage.ALERTS, stageStart);
 
     // Send commands if node is active
     if (hostObject.getState().equals(HostState.HEALTHY)) {
       sendCommands(hostname, response);
       annotateResponse(hostname, response);
     }
+    recordStageLatency(HeartbeatStage.COMMANDS, stageStart);
 
     return response;
   }
 
+  /**
+   * Adds the time elapsed since {@code stageStart} to the totals of the given
+   * heartbeat processing stage.
+   *
+   * @param stage
+   *          the stage which just completed.
+   * @param stageStart
+   *          the {@link System#nanoTime()} when the stage started.
+   * @return the {@link System#nanoTime()} when the stage completed.
+   */
+  private long recordStageLatency(HeartbeatStage stage, long stageStart) {
+    long stageEnd = System.nanoTime();
+    stageLatencies.addAndGet(stage.ordinal(), stageEnd - stageStart);
+    stageCounts.incrementAndGet(stage.ordinal());
+    return stageEnd;
+  }
+
+  /**
+   * Gets the average time spent in the given stage of heartbeat processing.
+   *
+   * @param stage
+   *          the stage (not {@code null}).
+   * @return the average latency of the stage, in milliseconds.
+   */
+  public double getAverageStageLatency(HeartbeatStage stage) {
+    long count = stageCounts.get(stage.ordinal());
+    if (count == 0) {
+      return 0;
+    }
+
+    return (double) TimeUnit.NANOSECONDS.toMicros(stageLatencies.get(stage.ordinal())) / 1000 / count;
+  }
+
+  /**
+   * Gets the number of heartbeats whose command reports are waiting to be
+   * persisted by the {@link CommandReportBatcher}.
+   *
+   * @return the queue depth, or {@code 0} if heartbeat batching is disabled.
+   */
+  public int getCommandReportQueueDepth() {
+    CommandReportBatcher batcher = actionManager.getCommandReportBatcher();
+    return null == batcher ? 0 : batcher.getQueueDepth();
+  }
+
+  /**
+   * Gets the heartbeat processing statistics which are reported by the
+   * {@code AMBARI_SERVER} root service component.
+   *
+   * @return the statistics, keyed by name (never {@code null}).
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    for (HeartbeatStage stage : HeartbeatStage.values()) {
+      statistics.put(stage.name().toLowerCase() + "_avg_ms", getAverageStageLatency(stage));
+    }
+
+    statistics.put("command_report_queue_depth", getCommandReportQueueDepth());
+
+    CommandReportBatcher batcher = actionManager.getCommandReportBatcher();
+    if (null != batcher) {
+      statistics.put("command_report_batches", batcher.getBatchCount());
+      statistics.put("command_reports", batcher.getReportCount());
+      statistics.put("command_report_direct_writes", batcher.getDirectWriteCount());
+      statistics.put("command_report_retried_batches", batcher.getRetriedBatchCount());
+      statistics.put("command_report_failed_heartbeats", batcher.getFailedHeartbeatCount());
+      statistics.put("command_report_flush_avg_ms", batcher.getAverageFlushTime());
+      statistics.put("command_report_wait_avg_ms", batcher.getAverageWaitTime());
+    }
+
+    if (null != heartbeatMonitor) {
+      statistics.put("monitor_cycles", heartbeatMonitor.getCycleCount());
+      statistics.put("monitor_cycle_avg_ms", heartbeatMonitor.getAverageCycleDuration());
+      statistics.put("lost_heartbeats", heartbeatMonitor.getExpiredCount());
+      statistics.put("lost_heartbeat_lag_avg_ms", heartbeatMonitor.getAverageExpiryLag());
+      statistics.put("lost_heartbeat_lag_max_ms", heartbeatMonitor.getMaxExpiryLag());
+      statistics.put("status_command_template_hits", heartbeatMonitor.getTemplateHitCount());
+      statistics.put("status_command_template_misses", heartbeatMonitor.getTemplateMissCount());
+    }
+
+    return statistics;
+  }
+
   /**
    * Extracts all of the {@link Alert}s from the heartbeat and fires
    * {@link AlertEvent}s for each one. If there is a problem looking up the
@@ -28,10 +28,21 @@ import static org.apache.ambari.server.agent.ExecutionCommand.KeyNames.STACK_VER
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.inject.Inject;
 import org.apache.ambari.server.AmbariException;
@@ -79,6 +90,46 @@ public class HeartbeatMonitor implements Runnable {
   private final Configuration configuration;
   private final AgentRequests agentRequests;
 
+  /**
+   * The number of buckets of the heartbeat deadline wheel, each of which
+   * covers one wakeup interval.
+   */
+  private static final int HEARTBEAT_WHEEL_SIZE = 64;
+
+  /**
+   * The deadlines by which each host must heartbeat again.
+   */
+  private final HeartbeatTimerWheel heartbeatDeadlines;
+
+  /**
+   * The number of shards the hosts are split into when checking them and
+   * generating their status commands; each shard is processed by its own
+   * thread.
+   */
+  private final int shardCount;
+  private volatile ExecutorService shardExecutor = null;
+
+  /**
+   * Status command templates, built once per component and set of effective
+   * {@code *-env} configuration tags and discarded whenever the desired
+   * configurations change.
+   */
+  private final ConcurrentMap<StatusCommandTemplateKey, StatusCommandTemplate> statusCommandTemplates =
+      new ConcurrentHashMap<StatusCommandTemplateKey, StatusCommandTemplate>();
+  private volatile long templatesConfigurationVersion = -1;
+
+  /**
+   * Statistics.
+   */
+  private final AtomicLong cycleCount = new AtomicLong();
+  private final AtomicLong totalCycleDuration = new AtomicLong();
+  private volatile long lastCycleDuration = 0;
+  private final AtomicLong templateHits = new AtomicLong();
+  private final AtomicLong templateMisses = new AtomicLong();
+  private final AtomicLong expiredCount = new AtomicLong();
+  private final AtomicLong totalExpiryLag = new AtomicLong();
+  private volatile long maxExpiryLag = 0;
+
   public HeartbeatMonitor(Clusters clusters, ActionQueue aq, ActionManager am,
                           int threadWakeupInterval, Injector injector) {
     this.clusters = clusters;
@@ -91,6 +142,9 @@ public class HeartbeatMonitor implements Runnable {
             AmbariManagementController.class);
     configuration = injector.getInstance(Configuration.class);
     agentRequests = new AgentRequests();
+    shardCount = Math.max(1, configuration.getHeartbeatMonitorShardCount());
+    heartbeatDeadlines = new HeartbeatTimerWheel(threadWakeupInterval,
+        HEARTBEAT_WHEEL_SIZE, System.currentTimeMillis());
   }
 
   public void shutdown() {
@@ -98,6 +152,10 @@ public class HeartbeatMonitor implements Runnable {
   }
 
   public void start() {
+    if (shardCount > 1) {
+      shardExecutor = Executors.newFixedThreadPool(shardCount, new ShardThreadFactory());
+    }
+
     monitorThread = new Thread(this, "ambari-hearbeat-monitor");
     monitorThread.start();
   }
@@ -118,7 +176,18 @@ public class HeartbeatMonitor implements Runnable {
   public void run() {
     while (shouldRun) {
       try {
+        long start = System.currentTimeMillis();
         doWork();
+        long duration = System.currentTimeMillis() - start;
+
+        lastCycleDuration = duration;
+        cycleCount.incrementAndGet();
+        totalCycleDuration.addAndGet(duration);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Heartbeat monitor cycle took " + duration + " milliseconds, " +
+            statusCommandTemplates.size() + " status command templates cached");
+        }
+
         LOG.trace("Putting monitor to sleep for " + threadWakeupInterval + " " +
           "milliseconds");
         Thread.sleep(threadWakeupInterval);
@@ -131,75 +200,172 @@ public class HeartbeatMonitor implements Runnable {
         LOG.warn("ERROR", t);
       }
     }
+
+    ExecutorService executor = shardExecutor;
+    if (null != executor) {
+      executor.shutdownNow();
+    }
   }
 
-  //Go through all the nodes, check for last heartbeat or any waiting state
-  //If heartbeat is lost, update node clusters state, purge the action queue
-  //notify action manager for node failure.
+  //Go through the hosts whose heartbeat deadline has passed and, if the
+  //heartbeat is lost, update node clusters state, purge the action queue and
+  //notify action manager for node failure. Then check every node for any
+  //waiting state and generate its status commands, one shard per thread.
   private void doWork() throws InvalidStateTransitionException, AmbariException {
-    List<Host> allHosts = clusters.getHosts();
     long now = System.currentTimeMillis();
+    for (Map.Entry<String, Long> expired : heartbeatDeadlines.expire(now).entrySet()) {
+      handleExpiredHeartbeat(expired.getKey(), expired.getValue(), now);
+    }
+
+    List<Host> allHosts = clusters.getHosts();
+    ExecutorService executor = shardExecutor;
+    if (null == executor || shardCount == 1 || allHosts.size() <= 1) {
+      processHosts(allHosts, now);
+      return;
+    }
+
+    List<List<Host>> shards = new ArrayList<List<Host>>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new ArrayList<Host>());
+    }
     for (Host hostObj : allHosts) {
-      String host = hostObj.getHostName();
-      HostState hostState = hostObj.getState();
-      String hostname = hostObj.getHostName();
+      shards.get((hostObj.getHostName().hashCode() & Integer.MAX_VALUE) % shardCount).add(hostObj);
+    }
 
-      long lastHeartbeat = 0;
-      try {
-        lastHeartbeat = clusters.getHost(host).getLastHeartbeatTime();
-      } catch (AmbariException e) {
-        LOG.warn("Exception in getting host object; Is it fatal?", e);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(shardCount);
+    for (final List<Host> shard : shards) {
+      if (shard.isEmpty()) {
+        continue;
       }
-      if (lastHeartbeat + 2 * threadWakeupInterval < now) {
-        LOG.warn("Heartbeat lost from host " + host);
-        //Heartbeat is expired
-        hostObj.handleEvent(new HostHeartbeatLostEvent(host));
-
-        // mark all components that are not clients with unknown status
-        for (Cluster cluster : clusters.getClustersForHost(hostObj.getHostName())) {
-          for (ServiceComponentHost sch : cluster.getServiceComponentHosts(hostObj.getHostName())) {
-            Service s = cluster.getService(sch.getServiceName());
-            ServiceComponent sc = s.getServiceComponent(sch.getServiceComponentName());
-            if (!sc.isClientComponent() &&
-              !sch.getState().equals(State.INIT) &&
-              !sch.getState().equals(State.INSTALLING) &&
-              !sch.getState().equals(State.INSTALL_FAILED) &&
-              !sch.getState().equals(State.UNINSTALLED) &&
-              !sch.getState().equals(State.DISABLED)) {
-              LOG.warn("Setting component state to UNKNOWN for component " + sc.getName() + " on " + host);
-              sch.setState(State.UNKNOWN);
-            }
-          }
+      final long shardTime = now;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          processHosts(shard, shardTime);
+          return null;
         }
+      });
+    }
 
-        //Purge action queue
-        actionQueue.dequeueAll(host);
-        //notify action manager
-        actionManager.handleLostHost(host);
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          LOG.warn("Unable to process a heartbeat monitor shard", e.getCause());
+        }
       }
-      if (hostState == HostState.WAITING_FOR_HOST_STATUS_UPDATES) {
-        long timeSpentInState = hostObj.getTimeInState();
-        if (timeSpentInState + 5 * threadWakeupInterval < now) {
-          //Go back to init, the agent will be asked to register again in the next heartbeat
-          LOG.warn("timeSpentInState + 5*threadWakeupInterval < now, Go back to init");
-          hostObj.setState(HostState.INIT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      shouldRun = false;
+    }
+  }
+
+  /**
+   * Handles a host whose heartbeat deadline has passed. The host's last
+   * heartbeat time is checked again, since heartbeats which are not reported
+   * to {@link #heartbeatReceived(String, long)} do not move the deadline.
+   */
+  private void handleExpiredHeartbeat(String host, long deadline, long now)
+      throws InvalidStateTransitionException, AmbariException {
+    Host hostObj;
+    try {
+      hostObj = clusters.getHost(host);
+    } catch (AmbariException e) {
+      LOG.warn("Exception in getting host object; Is it fatal?", e);
+      return;
+    }
+
+    long lastHeartbeat = hostObj.getLastHeartbeatTime();
+    if (lastHeartbeat + 2 * threadWakeupInterval >= now) {
+      heartbeatDeadlines.schedule(host, lastHeartbeat + 2 * threadWakeupInterval);
+      return;
+    }
+
+    long lag = now - deadline;
+    expiredCount.incrementAndGet();
+    totalExpiryLag.addAndGet(lag);
+    if (lag > maxExpiryLag) {
+      maxExpiryLag = lag;
+    }
+
+    LOG.warn("Heartbeat lost from host " + host);
+    //Heartbeat is expired
+    hostObj.handleEvent(new HostHeartbeatLostEvent(host));
+
+    // mark all components that are not clients with unknown status
+    for (Cluster cluster : clusters.getClustersForHost(hostObj.getHostName())) {
+      for (ServiceComponentHost sch : cluster.getServiceComponentHosts(hostObj.getHostName())) {
+        Service s = cluster.getService(sch.getServiceName());
+        ServiceComponent sc = s.getServiceComponent(sch.getServiceComponentName());
+        if (!sc.isClientComponent() &&
+          !sch.getState().equals(State.INIT) &&
+          !sch.getState().equals(State.INSTALLING) &&
+          !sch.getState().equals(State.INSTALL_FAILED) &&
+          !sch.getState().equals(State.UNINSTALLED) &&
+          !sch.getState().equals(State.DISABLED)) {
+          LOG.warn("Setting component state to UNKNOWN for component " + sc.getName() + " on " + host);
+          sch.setState(State.UNKNOWN);
         }
       }
+    }
 
-      // Get status of service components
-      List<StatusCommand> cmds = generateStatusCommands(hostname);
-      LOG.trace("Generated " + cmds.size() + " status commands for host: " +
-        hostname);
-      if (cmds.isEmpty()) {
-        // Nothing to do
-      } else {
+    //Purge action queue
+    actionQueue.dequeueAll(host);
+    //notify action manager
+    actionManager.handleLostHost(host);
+  }
+
+  /**
+   * Checks the given hosts for any waiting state and enqueues their status
+   * commands. Hosts which are not yet tracked, such as new hosts or hosts
+   * whose heartbeat was lost, get a deadline based on their last heartbeat;
+   * a lost host is therefore handled again on every cycle until it
+   * heartbeats.
+   */
+  private void processHosts(List<Host> hosts, long now) {
+    for (Host hostObj : hosts) {
+      String hostname = hostObj.getHostName();
+      try {
+        if (!heartbeatDeadlines.contains(hostname)) {
+          heartbeatDeadlines.schedule(hostname,
+              hostObj.getLastHeartbeatTime() + 2 * threadWakeupInterval);
+        }
+
+        if (hostObj.getState() == HostState.WAITING_FOR_HOST_STATUS_UPDATES) {
+          long timeSpentInState = hostObj.getTimeInState();
+          if (timeSpentInState + 5 * threadWakeupInterval < now) {
+            //Go back to init, the agent will be asked to register again in the next heartbeat
+            LOG.warn("timeSpentInState + 5*threadWakeupInterval < now, Go back to init");
+            hostObj.setState(HostState.INIT);
+          }
+        }
+
+        // Get status of service components
+        List<StatusCommand> cmds = generateStatusCommands(hostname);
+        LOG.trace("Generated " + cmds.size() + " status commands for host: " +
+          hostname);
         for (StatusCommand command : cmds) {
           actionQueue.enqueue(hostname, command);
         }
+      } catch (AmbariException e) {
+        LOG.warn("Unable to generate status commands for host " + hostname, e);
       }
     }
   }
 
+  /**
+   * Moves the deadline by which the given host must heartbeat again.
+   *
+   * @param hostname
+   *          the host which sent a heartbeat.
+   * @param heartbeatTime
+   *          the time the heartbeat was received.
+   */
+  public void heartbeatReceived(String hostname, long heartbeatTime) {
+    heartbeatDeadlines.schedule(hostname, heartbeatTime + 2 * threadWakeupInterval);
+  }
+
   /**
    * @param hostname
    * @return list of commands to get status of service components on a concrete host
@@ -207,7 +373,17 @@ public class HeartbeatMonitor implements Runnable {
   public List<StatusCommand> generateStatusCommands(String hostname) throws AmbariException {
     List<StatusCommand> cmds = new ArrayList<StatusCommand>();
 
+    // read the version before any configuration so that a template built from
+    // configurations which change concurrently is never reused
+    long configurationVersion = configHelper.getConfigurationVersion();
+    if (configurationVersion != templatesConfigurationVersion) {
+      statusCommandTemplates.clear();
+      templatesConfigurationVersion = configurationVersion;
+    }
+
     for (Cluster cl : clusters.getClustersForHost(hostname)) {
+      Map<String, Map<String, String>> envConfigTags = null;
+
       for (ServiceComponentHost sch : cl.getServiceComponentHosts(hostname)) {
         switch (sch.getState()) {
           case INIT:
@@ -215,7 +391,13 @@ public class HeartbeatMonitor implements Runnable {
             //don't send commands until component is installed at least
             continue;
           default:
-            StatusCommand statusCmd = createStatusCommand(hostname, cl, sch);
+            if (envConfigTags == null) {
+              envConfigTags = getEnvConfigTags(cl, hostname);
+            }
+
+            StatusCommandTemplate template = getStatusCommandTemplate(cl, sch,
+                envConfigTags, configurationVersion);
+            StatusCommand statusCmd = createStatusCommand(hostname, cl, sch, template);
             cmds.add(statusCmd);
         }
 
@@ -225,14 +407,58 @@ public class HeartbeatMonitor implements Runnable {
   }
 
   /**
-   * Generates status command and fills all appropriate fields.
-   * @throws AmbariException
+   * Gets the effective desired tags of the {@code *-env} configurations for
+   * the given host. These are the only tags which affect the configurations
+   * sent with status commands.
    */
-  private StatusCommand createStatusCommand(String hostname, Cluster cluster,
-                               ServiceComponentHost sch) throws AmbariException {
-    String serviceName = sch.getServiceName();
-    String componentName = sch.getServiceComponentName();
+  private Map<String, Map<String, String>> getEnvConfigTags(Cluster cluster,
+      String hostname) throws AmbariException {
+    Map<String, Map<String, String>> envConfigTags = new TreeMap<String, Map<String, String>>();
+
+    Map<String, Map<String, String>> allConfigTags = configHelper
+        .getEffectiveDesiredTags(cluster, hostname);
+
+    for (Map.Entry<String, Map<String, String>> entry : allConfigTags.entrySet()) {
+      if (entry.getKey().endsWith("-env")) {
+        envConfigTags.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return envConfigTags;
+  }
+
+  /**
+   * Gets the cached template for the given component, building it if the
+   * component has no template for the current configuration version.
+   */
+  private StatusCommandTemplate getStatusCommandTemplate(Cluster cluster,
+      ServiceComponentHost sch, Map<String, Map<String, String>> envConfigTags,
+      long configurationVersion) throws AmbariException {
     StackId stackId = cluster.getDesiredStackVersion();
+    StatusCommandTemplateKey key = new StatusCommandTemplateKey(cluster.getClusterId(),
+        stackId, sch.getServiceName(), sch.getServiceComponentName(), envConfigTags);
+
+    StatusCommandTemplate template = statusCommandTemplates.get(key);
+    if (template != null && template.configurationVersion == configurationVersion) {
+      templateHits.incrementAndGet();
+      return template;
+    }
+
+    templateMisses.incrementAndGet();
+    template = createStatusCommandTemplate(cluster, stackId, sch.getServiceName(),
+        sch.getServiceComponentName(), envConfigTags, configurationVersion);
+    statusCommandTemplates.put(key, template);
+    return template;
+  }
+
+  /**
+   * Builds the parts of a status command which are the same for every host
+   * with the same component and the same {@code *-env} configurations.
+   * @throws AmbariException
+   */
+  private StatusCommandTemplate createStatusCommandTemplate(Cluster cluster,
+      StackId stackId, String serviceName, String componentName,
+      Map<String, Map<String, String>> envConfigTags, long configurationVersion)
+      throws AmbariException {
     ServiceInfo serviceInfo = ambariMetaInfo.getService(stackId.getStackName(),
         stackId.getStackVersion(), serviceName);
     ComponentInfo componentInfo = ambariMetaInfo.getComponent(
@@ -249,10 +475,6 @@ public class HeartbeatMonitor implements Runnable {
     //Config clusterConfig = cluster.getDesiredConfigByType(GLOBAL);
     Collection<Config> clusterConfigs = cluster.getAllConfigs();
 
-    // Apply global properties for this host from all config groups
-    Map<String, Map<String, String>> allConfigTags = configHelper
-        .getEffectiveDesiredTags(cluster, hostname);
-
     for(Config clusterConfig: clusterConfigs) {
       if(!clusterConfig.getType().endsWith("-env")) {
         continue;
@@ -265,10 +487,8 @@ public class HeartbeatMonitor implements Runnable {
         Map<String, Map<String, String>> configTags = new HashMap<String,
                 Map<String, String>>();
 
-        for (Map.Entry<String, Map<String, String>> entry : allConfigTags.entrySet()) {
-          if (entry.getKey().equals(clusterConfig.getType())) {
-            configTags.put(clusterConfig.getType(), entry.getValue());
-          }
+        if (envConfigTags.containsKey(clusterConfig.getType())) {
+          configTags.put(clusterConfig.getType(), envConfigTags.get(clusterConfig.getType()));
         }
 
         Map<String, Map<String, String>> properties = configHelper
@@ -280,7 +500,7 @@ public class HeartbeatMonitor implements Runnable {
           }
         }
 
-        configurations.put(clusterConfig.getType(), props);
+        configurations.put(clusterConfig.getType(), Collections.unmodifiableMap(props));
 
         Map<String, Map<String, String>> attrs = new TreeMap<String, Map<String, String>>();
         configHelper.cloneAttributesMap(clusterConfig.getPropertiesAttributes(), attrs);
@@ -290,28 +510,12 @@ public class HeartbeatMonitor implements Runnable {
         for (Map<String, Map<String, String>> attributesMap : attributes.values()) {
           configHelper.cloneAttributesMap(attributesMap, attrs);
         }
-        configurationAttributes.put(clusterConfig.getType(), attrs);
+        configurationAttributes.put(clusterConfig.getType(), Collections.unmodifiableMap(attrs));
       }
     }
 
-    StatusCommand statusCmd = new StatusCommand();
-    statusCmd.setClusterName(cluster.getClusterName());
-    statusCmd.setServiceName(serviceName);
-    statusCmd.setComponentName(componentName);
-    statusCmd.setConfigurations(configurations);
-    statusCmd.setConfigurationAttributes(configurationAttributes);
-    statusCmd.setHostname(hostname);
-
-    // If Agent wants the command and the States differ
-    statusCmd.setDesiredState(sch.getDesiredState());
-    statusCmd.setHasStaleConfigs(configHelper.isStaleConfigs(sch));
-    if (getAgentRequests().shouldSendExecutionDetails(hostname, componentName)) {
-      LOG.info(componentName + " is at " + sch.getState() + " adding more payload per agent ask");
-      statusCmd.setPayloadLevel(StatusCommand.StatusCommandPayload.EXECUTION_COMMAND);
-    }
-
     // Fill command params
-    Map<String, String> commandParams = statusCmd.getCommandParams();
+    Map<String, String> commandParams = new HashMap<String, String>();
 
     String commandTimeout = configuration.getDefaultAgentTaskTimeout(false);
     CommandScriptDefinition script = componentInfo.getCommandScript();
@@ -333,11 +537,45 @@ public class HeartbeatMonitor implements Runnable {
        serviceInfo.getServicePackageFolder());
     commandParams.put(HOOKS_FOLDER, stackInfo.getStackHooksFolder());
     // Fill host level params
-    Map<String, String> hostLevelParams = statusCmd.getHostLevelParams();
+    Map<String, String> hostLevelParams = new HashMap<String, String>();
     hostLevelParams.put(JDK_LOCATION, ambariManagementController.getJdkResourceUrl());
     hostLevelParams.put(STACK_NAME, stackId.getStackName());
     hostLevelParams.put(STACK_VERSION, stackId.getStackVersion());
 
+    return new StatusCommandTemplate(configurationVersion,
+        Collections.unmodifiableMap(configurations),
+        Collections.unmodifiableMap(configurationAttributes), commandParams,
+        hostLevelParams);
+  }
+
+  /**
+   * Generates status command from the component's template and fills the
+   * host specific fields.
+   * @throws AmbariException
+   */
+  private StatusCommand createStatusCommand(String hostname, Cluster cluster,
+      ServiceComponentHost sch, StatusCommandTemplate template) throws AmbariException {
+    String componentName = sch.getServiceComponentName();
+
+    StatusCommand statusCmd = new StatusCommand();
+    statusCmd.setClusterName(cluster.getClusterName());
+    statusCmd.setServiceName(sch.getServiceName());
+    statusCmd.setComponentName(componentName);
+    statusCmd.setConfigurations(template.configurations);
+    statusCmd.setConfigurationAttributes(template.configurationAttributes);
+    statusCmd.setHostname(hostname);
+
+    // If Agent wants the command and the States differ
+    statusCmd.setDesiredState(sch.getDesiredState());
+    statusCmd.setHasStaleConfigs(configHelper.isStaleConfigs(sch));
+    if (getAgentRequests().shouldSendExecutionDetails(hostname, componentName)) {
+      LOG.info(componentName + " is at " + sch.getState() + " adding more payload per agent ask");
+      statusCmd.setPayloadLevel(StatusCommand.StatusCommandPayload.EXECUTION_COMMAND);
+    }
+
+    // the parameters may be changed by the caller, so each command gets a copy
+    statusCmd.getCommandParams().putAll(template.commandParams);
+    statusCmd.getHostLevelParams().putAll(template.hostLevelParams);
 
     if (statusCmd.getPayloadLevel() == StatusCommand.StatusCommandPayload.EXECUTION_COMMAND) {
       ExecutionCommand ec = ambariManagementController.getExecutionCommand(cluster, sch, RoleCommand.START);
@@ -347,4 +585,153 @@ public class HeartbeatMonitor implements Runnable {
 
     return statusCmd;
   }
+
+  /**
+   * @return the number of monitor cycles completed.
+   */
+  public long getCycleCount() {
+    return cycleCount.get();
+  }
+
+  /**
+   * @return the duration, in milliseconds, of the last monitor cycle.
+   */
+  public long getLastCycleDuration() {
+    return lastCycleDuration;
+  }
+
+  /**
+   * @return the average duration, in milliseconds, of a monitor cycle.
+   */
+  public double getAverageCycleDuration() {
+    long cycles = cycleCount.get();
+    return cycles == 0 ? 0 : (double) totalCycleDuration.get() / cycles;
+  }
+
+  /**
+   * @return the number of hosts whose heartbeat was found to be lost.
+   */
+  public long getExpiredCount() {
+    return expiredCount.get();
+  }
+
+  /**
+   * @return the average time, in milliseconds, between a host's heartbeat
+   *         deadline and the detection of the lost heartbeat.
+   */
+  public double getAverageExpiryLag() {
+    long expired = expiredCount.get();
+    return expired == 0 ? 0 : (double) totalExpiryLag.get() / expired;
+  }
+
+  /**
+   * @return the longest time, in milliseconds, between a host's heartbeat
+   *         deadline and the detection of the lost heartbeat.
+   */
+  public long getMaxExpiryLag() {
+    return maxExpiryLag;
+  }
+
+  /**
+   * @return the number of status commands created from a cached template.
+   */
+  public long getTemplateHitCount() {
+    return templateHits.get();
+  }
+
+  /**
+   * @return the number of status command templates built.
+   */
+  public long getTemplateMissCount() {
+    return templateMisses.get();
+  }
+
+  /**
+   * Creates the daemon threads which process the heartbeat monitor shards.
+   */
+  private static final class ShardThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger s_threadIdPool = new AtomicInteger(1);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "ambari-heartbeat-monitor-shard-" + s_threadIdPool.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Identifies the status commands which share a template.
+   */
+  private static final class StatusCommandTemplateKey {
+    private final long clusterId;
+    private final StackId stackId;
+    private final String serviceName;
+    private final String componentName;
+    private final Map<String, Map<String, String>> envConfigTags;
+
+    private StatusCommandTemplateKey(long clusterId, StackId stackId,
+        String serviceName, String componentName,
+        Map<String, Map<String, String>> envConfigTags) {
+      this.clusterId = clusterId;
+      this.stackId = stackId;
+      this.serviceName = serviceName;
+      this.componentName = componentName;
+      this.envConfigTags = envConfigTags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      StatusCommandTemplateKey that = (StatusCommandTemplateKey) o;
+      return clusterId == that.clusterId && stackId.equals(that.stackId)
+          && serviceName.equals(that.serviceName)
+          && componentName.equals(that.componentName)
+          && envConfigTags.equals(that.envConfigTags);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) (clusterId ^ (clusterId >>> 32));
+      result = 31 * result + stackId.hashCode();
+      result = 31 * result + serviceName.hashCode();
+      result = 31 * result + componentName.hashCode();
+      result = 31 * result + envConfigTags.hashCode();
+      return result;
+    }
+  }
+
+  /**
+   * The parts of a status command which do not depend on the host. The
+   * configurations are immutable and shared by all commands created from the
+   * template.
+   */
+  private static final class StatusCommandTemplate {
+    private final long configurationVersion;
+    private final Map<String, Map<String, String>> configurations;
+    private final Map<String, Map<String, Map<String, String>>> configurationAttributes;
+    private final Map<String, String> commandParams;
+    private final Map<String, String> hostLevelParams;
+
+    private StatusCommandTemplate(long configurationVersion,
+        Map<String, Map<String, String>> configurations,
+        Map<String, Map<String, Map<String, String>>> configurationAttributes,
+        Map<String, String> commandParams, Map<String, String> hostLevelParams) {
+      this.configurationVersion = configurationVersion;
+      this.configurations = configurations;
+      this.configurationAttributes = configurationAttributes;
+      this.commandParams = commandParams;
+      this.hostLevelParams = hostLevelParams;
+    }
+  }
 }
@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link HeartbeatTimerWheel} tracks the time by which each host must
+ * heartbeat again in a hashed timer wheel. Each bucket of the wheel holds the
+ * hosts whose deadline falls within one tick; finding the expired hosts only
+ * visits the buckets of the ticks which elapsed since the last call, so its
+ * cost depends on the number of hosts that are due rather than on the number
+ * of hosts in the cluster.
+ * <p/>
+ * Deadlines may be moved at any time from other threads. A host which is
+ * rescheduled is added to the bucket of its new deadline and its entry in the
+ * old bucket is discarded the next time that bucket is visited.
+ */
+public class HeartbeatTimerWheel {
+
+  private final long tickDuration;
+  private final Set<String>[] buckets;
+
+  /**
+   * The current deadline of every tracked host.
+   */
+  private final ConcurrentMap<String, Long> deadlines = new ConcurrentHashMap<String, Long>();
+
+  /**
+   * The last tick whose bucket was visited; only the thread expiring hosts
+   * writes it.
+   */
+  private volatile long lastTick;
+
+  /**
+   * Constructor.
+   *
+   * @param tickDuration
+   *          the time, in milliseconds, covered by each bucket.
+   * @param wheelSize
+   *          the number of buckets.
+   * @param now
+   *          the current time, in milliseconds.
+   */
+  @SuppressWarnings("unchecked")
+  public HeartbeatTimerWheel(long tickDuration, int wheelSize, long now) {
+    this.tickDuration = Math.max(1, tickDuration);
+    buckets = new Set[Math.max(1, wheelSize)];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+    lastTick = now / this.tickDuration;
+  }
+
+  /**
+   * Sets the time by which the given host must heartbeat, replacing any
+   * previous deadline.
+   *
+   * @param hostname
+   *          the host.
+   * @param deadline
+   *          the deadline, in milliseconds.
+   */
+  public void schedule(String hostname, long deadline) {
+    deadlines.put(hostname, deadline);
+
+    // a deadline which has already passed is picked up on the next expiry
+    long tick = Math.max(deadline / tickDuration, lastTick);
+    buckets[bucketIndex(tick)].add(hostname);
+  }
+
+  /**
+   * Stops tracking the given host.
+   *
+   * @param hostname
+   *          the host.
+   */
+  public void cancel(String hostname) {
+    deadlines.remove(hostname);
+  }
+
+  /**
+   * @param hostname
+   *          the host.
+   * @return {@code true} if the host has a deadline which has not yet been
+   *         returned by {@link #expire(long)}.
+   */
+  public boolean contains(String hostname) {
+    return deadlines.containsKey(hostname);
+  }
+
+  /**
+   * @return the number of tracked hosts.
+   */
+  public int size() {
+    return deadlines.size();
+  }
+
+  /**
+   * Removes and returns the hosts whose deadline is at or before the given
+   * time. This method must not be called concurrently with itself.
+   *
+   * @param now
+   *          the current time, in milliseconds.
+   * @return the expired hosts and their deadlines, in the order they expired.
+   */
+  public Map<String, Long> expire(long now) {
+    Map<String, Long> expired = new LinkedHashMap<String, Long>();
+
+    long currentTick = now / tickDuration;
+    long firstTick = Math.max(lastTick, currentTick - buckets.length + 1);
+
+    // the bucket of the last tick is visited again since it may still hold
+    // deadlines later in that tick
+    for (long tick = firstTick; tick <= currentTick; tick++) {
+      int index = bucketIndex(tick);
+      Iterator<String> iterator = buckets[index].iterator();
+      while (iterator.hasNext()) {
+        String hostname = iterator.next();
+        Long deadline = deadlines.get(hostname);
+
+        // still due in this bucket, either later in this tick or in a later
+        // rotation of the wheel
+        if (null != deadline && deadline > now && bucketIndex(deadline / tickDuration) == index) {
+          continue;
+        }
+
+        iterator.remove();
+        if (null != deadline && deadline <= now && deadlines.remove(hostname, deadline)) {
+          expired.put(hostname, deadline);
+          continue;
+        }
+
+        // the host was cancelled or rescheduled; if it was rescheduled while
+        // it was being removed, make sure it is in the bucket of its deadline
+        Long current = deadlines.get(hostname);
+        if (null != current) {
+          buckets[bucketIndex(Math.max(current / tickDuration, currentTick))].add(hostname);
+        }
+      }
+    }
+
+    lastTick = Math.max(lastTick, currentTick);
+    return expired;
+  }
+
+  private int bucketIndex(long tick) {
+    return (int) (tick % buckets.length);
+  }
+}
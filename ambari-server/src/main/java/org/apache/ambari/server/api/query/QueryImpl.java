@@ -21,6 +21,7 @@ package org.apache.ambari.server.api.query;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -35,6 +36,8 @@ import org.apache.ambari.server.api.resources.SubResourceDefinition;
 import org.apache.ambari.server.api.services.BaseRequest;
 import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.services.ResultImpl;
+import org.apache.ambari.server.api.services.StreamingResultImpl;
+import org.apache.ambari.server.api.services.serializers.JsonSerializer;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
 import org.apache.ambari.server.controller.internal.QueryResponseImpl;
@@ -214,6 +217,14 @@ public class QueryImpl implements Query, ResourceInstance {
              NoSuchResourceException,
              NoSuchParentResourceException {
 
+    // a page of the resources can't be taken from a precomputed result
+    if (pageRequest == null) {
+      Result result = renderer.getPrecomputedResult(this);
+      if (result != null) {
+        return result;
+      }
+    }
+
     queryForResources();
     return getResult(null);
   }
@@ -727,9 +738,14 @@ public class QueryImpl implements Query, ResourceInstance {
   private Result getResult(Resource parentResource)
       throws UnsupportedPropertyException, SystemException, NoSuchResourceException, NoSuchParentResourceException {
 
-    Result result = new ResultImpl(true);
+    // the top level resources of a streamed result are only built while the
+    // result is serialized
+    boolean streaming = parentResource == null && isStreamable();
+
+    Result result = streaming ? new StreamingResultImpl(true) : new ResultImpl(true);
     Resource.Type resourceType = getResourceDefinition().getType();
-    TreeNode<Resource> tree = result.getResultTree();
+    TreeNode<Resource> tree = streaming ?
+        ((StreamingResultImpl) result).getResultTreeRoot() : result.getResultTree();
 
     if (isCollectionResource()) {
       tree.setProperty("isCollection", "true");
@@ -764,27 +780,48 @@ public class QueryImpl implements Query, ResourceInstance {
         tree.setProperty("count", pageResponse.getTotalResourceCount().toString());
       }
 
-      int count = 1;
-      for (Resource resource : iterResource) {
-
-        // add a child node for the resource and provide a unique name.  The name is never used.
-        TreeNode<Resource> node = tree.addChild(
-            resource, resource.getType() + ":" + count++);
-
-        for (Map.Entry<String, QueryImpl> entry : requestedSubResources.entrySet()) {
-          String    subResCategory = entry.getKey();
-          QueryImpl subResource    = entry.getValue();
-
-          TreeNode<Resource> childResult = subResource.getResult(resource).getResultTree();
-          childResult.setName(subResCategory);
-          childResult.setProperty("isCollection", "false");
-          node.addChild(childResult);
+      if (streaming) {
+        ((StreamingResultImpl) result).setStreamedChildren(
+            new ResourceNodeIterator(tree, iterResource.iterator()));
+      } else {
+        int count = 1;
+        for (Resource resource : iterResource) {
+          tree.addChild(createResourceNode(tree, resource, count++));
         }
       }
     }
     return renderer.finalizeResult(result);
   }
 
+  // Create the result node for a resource, including its sub-resources.
+  private TreeNode<Resource> createResourceNode(TreeNode<Resource> parent, Resource resource, int count)
+      throws UnsupportedPropertyException, SystemException, NoSuchResourceException, NoSuchParentResourceException {
+
+    // provide a unique name for the node.  The name is never used.
+    TreeNode<Resource> node = new TreeNodeImpl<Resource>(parent, resource, resource.getType() + ":" + count);
+
+    for (Map.Entry<String, QueryImpl> entry : requestedSubResources.entrySet()) {
+      String    subResCategory = entry.getKey();
+      QueryImpl subResource    = entry.getValue();
+
+      TreeNode<Resource> childResult = subResource.getResult(resource).getResultTree();
+      childResult.setName(subResCategory);
+      childResult.setProperty("isCollection", "false");
+      node.addChild(childResult);
+    }
+    return node;
+  }
+
+  // Indicates whether or not the top level resources of the result are built
+  // while the result is serialized.  Building the sub-resources of a resource
+  // can fail, and by the time a streamed node is built the response status has
+  // already been sent, so results with sub-resources are always built before
+  // the response is written.
+  private boolean isStreamable() {
+    return JsonSerializer.isStreamingEnabled() && isCollectionResource() && renderer.isStreamable() &&
+        requestedSubResources.isEmpty();
+  }
+
   // Indicates whether or not this query has sub-resource elements
   // in its predicate.
   private boolean hasSubResourcePredicate() {
@@ -1012,6 +1049,47 @@ public class QueryImpl implements Query, ResourceInstance {
         resource.getSingularName();
   }
 
+  // ----- inner class : ResourceNodeIterator --------------------------------
+
+  /**
+   * Builds the result node of each resource as it is iterated.  The nodes are
+   * not added to the parent.
+   */
+  private class ResourceNodeIterator implements Iterator<TreeNode<Resource>> {
+    private final TreeNode<Resource> parent;
+    private final Iterator<Resource> resources;
+    private int count = 1;
+
+    private ResourceNodeIterator(TreeNode<Resource> parent, Iterator<Resource> resources) {
+      this.parent    = parent;
+      this.resources = resources;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return resources.hasNext();
+    }
+
+    @Override
+    public TreeNode<Resource> next() {
+      Resource resource = resources.next();
+      try {
+        return createResourceNode(parent, resource, count++);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        // not expected since streamed results have no sub-resources
+        throw new IllegalStateException("Unable to build the result node of " + resource.getType() +
+            " resource: " + e.getMessage(), e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   // ----- inner class : QueryResult -----------------------------------------
 
   /**
@@ -25,12 +25,14 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.ambari.server.api.query.Query;
 import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.services.ResultImpl;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.controller.internal.AlertResourceProvider;
 import org.apache.ambari.server.controller.internal.ResourceImpl;
 import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex.IndexedAlert;
 import org.apache.ambari.server.state.AlertState;
 import org.apache.ambari.server.state.MaintenanceState;
 import org.codehaus.jackson.annotate.JsonProperty;
@@ -107,9 +109,10 @@ import org.codehaus.jackson.annotate.JsonProperty;
  * The nature of a {@link Renderer} is that it manipulates the dataset returned
  * by a query. In the case of alert data, the query could potentially return
  * thousands of results if there are thousands of nodes in the cluster. This
- * could present a performance issue that can only be addressed by altering the
- * incoming query and modifying it to instruct the backend to return a JPA SUM
- * instead of a collection of entities.
+ * could present a performance issue, so queries which can be answered from the
+ * alert summary index are grouped from the indexed alerts as described by
+ * {@link AlertSummaryRenderer}. The {@code latest_text} of an indexed alert is
+ * the one received with its last state change.
  */
 public class AlertSummaryGroupedRenderer extends AlertSummaryRenderer {
 
@@ -134,75 +137,66 @@ public class AlertSummaryGroupedRenderer extends AlertSummaryRenderer {
       Long definitionId = (Long) resource.getPropertyValue(AlertResourceProvider.ALERT_DEFINITION_ID);
       String definitionName = (String) resource.getPropertyValue(AlertResourceProvider.ALERT_DEFINITION_NAME);
       AlertState state = (AlertState) resource.getPropertyValue(AlertResourceProvider.ALERT_STATE);
-      Long originalTimestampObject = (Long) resource.getPropertyValue(AlertResourceProvider.ALERT_ORIGINAL_TIMESTAMP);
+      Long originalTimestamp = (Long) resource.getPropertyValue(AlertResourceProvider.ALERT_ORIGINAL_TIMESTAMP);
       MaintenanceState maintenanceState = (MaintenanceState) resource.getPropertyValue(AlertResourceProvider.ALERT_MAINTENANCE_STATE);
       String alertText = (String) resource.getPropertyValue(AlertResourceProvider.ALERT_TEXT);
 
-      // NPE sanity
-      if (null == state) {
-        state = AlertState.UNKNOWN;
-      }
+      AlertDefinitionSummary groupSummaryInfo = getGroupSummary(summaries,
+          definitionId, definitionName);
 
-      // NPE sanity
-      long originalTimestamp = 0;
-      if (null != originalTimestampObject) {
-        originalTimestamp = originalTimestampObject.longValue();
-      }
+      addAlert(groupSummaryInfo.State, state, originalTimestamp,
+          isMaintenanceModeEnabled(maintenanceState), alertText);
+    }
 
-      // NPE sanity
-      boolean isMaintenanceModeEnabled = false;
-      if (null != maintenanceState && maintenanceState != MaintenanceState.OFF) {
-        isMaintenanceModeEnabled = true;
-      }
+    return createGroupedResult(summaries);
+  }
 
-      // create the group summary info if it doesn't exist yet
-      AlertDefinitionSummary groupSummaryInfo = summaries.get(definitionName);
-      if (null == groupSummaryInfo) {
-        groupSummaryInfo = new AlertDefinitionSummary();
-        groupSummaryInfo.Id = definitionId;
-        groupSummaryInfo.Name = definitionName;
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * This will group the indexed alerts of the scope of the query.
+   */
+  @Override
+  public Result getPrecomputedResult(Query query) {
+    List<IndexedAlert> alerts = getIndexedAlerts(query);
+    if (null == alerts) {
+      return null;
+    }
 
-        summaries.put(definitionName, groupSummaryInfo);
-      }
+    Map<String, AlertDefinitionSummary> summaries = new HashMap<String, AlertDefinitionSummary>();
+    for (IndexedAlert alert : alerts) {
+      AlertDefinitionSummary groupSummaryInfo = getGroupSummary(summaries,
+          alert.getDefinitionId(), alert.getDefinitionName());
 
-      // set and increment the correct values based on state
-      final AlertStateValues alertStateValues;
-      switch (state) {
-        case CRITICAL: {
-          alertStateValues = groupSummaryInfo.State.Critical;
-          break;
-        }
-        case OK: {
-          alertStateValues = groupSummaryInfo.State.Ok;
-          break;
-        }
-        case WARNING: {
-          alertStateValues = groupSummaryInfo.State.Warning;
-          break;
-        }
-        default:
-        case UNKNOWN: {
-          alertStateValues = groupSummaryInfo.State.Unknown;
-          break;
-        }
-      }
+      addAlert(groupSummaryInfo.State, alert.getState(),
+          alert.getOriginalTimestamp(), alert.isMaintenance(), alert.getText());
+    }
 
-      // update the maintenance count if in MM is enabled, otherwise the
-      // regular count
-      if (isMaintenanceModeEnabled) {
-        alertStateValues.MaintenanceCount++;
-      } else {
-        alertStateValues.Count++;
-      }
+    return createGroupedResult(summaries);
+  }
 
-      // check to see if this alerts time is sooner; if so, keep track of it
-      // and of its text
-      if (originalTimestamp > alertStateValues.Timestamp) {
-        alertStateValues.Timestamp = originalTimestamp;
-        alertStateValues.AlertText = alertText;
-      }
+  /**
+   * Gets the summary of a definition, creating it if it doesn't exist yet.
+   */
+  private AlertDefinitionSummary getGroupSummary(
+      Map<String, AlertDefinitionSummary> summaries, Long definitionId,
+      String definitionName) {
+    AlertDefinitionSummary groupSummaryInfo = summaries.get(definitionName);
+    if (null == groupSummaryInfo) {
+      groupSummaryInfo = new AlertDefinitionSummary();
+      groupSummaryInfo.Id = definitionId;
+      groupSummaryInfo.Name = definitionName;
+
+      summaries.put(definitionName, groupSummaryInfo);
     }
 
+    return groupSummaryInfo;
+  }
+
+  /**
+   * Creates the result holding the summary of each definition.
+   */
+  private Result createGroupedResult(Map<String, AlertDefinitionSummary> summaries) {
     Set<Entry<String, AlertDefinitionSummary>> entrySet = summaries.entrySet();
     List<AlertDefinitionSummary> groupedResources = new ArrayList<AlertDefinitionSummary>(
         entrySet.size());
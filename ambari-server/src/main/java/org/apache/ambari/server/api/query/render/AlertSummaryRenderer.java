@@ -18,8 +18,14 @@
 
 package org.apache.ambari.server.api.query.render;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.StaticallyInject;
+import org.apache.ambari.server.api.query.Query;
 import org.apache.ambari.server.api.query.QueryInfo;
 import org.apache.ambari.server.api.services.Request;
 import org.apache.ambari.server.api.services.Result;
@@ -30,10 +36,18 @@ import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
 import org.apache.ambari.server.controller.internal.AlertResourceProvider;
 import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.predicate.AndPredicate;
+import org.apache.ambari.server.controller.predicate.EqualsPredicate;
+import org.apache.ambari.server.controller.spi.Predicate;
 import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex.IndexedAlert;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
 import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.MaintenanceState;
 
+import com.google.inject.Inject;
+
 /**
  * The {@link AlertSummaryRenderer} is used to format the results of queries to
  * the alerts endpoint. Each item returned from the query represents an
@@ -73,12 +87,26 @@ import org.apache.ambari.server.state.MaintenanceState;
  * The nature of a {@link Renderer} is that it manipulates the dataset returned
  * by a query. In the case of alert data, the query could potentially return
  * thousands of results if there are thousands of nodes in the cluster. This
- * could present a performance issue that can only be addressed by altering the
- * incoming query and modifying it to instruct the backend to return a JPA SUM
- * instead of a collection of entities.
+ * could present a performance issue. When the alert summary index is enabled,
+ * queries scoped by cluster, service and host are therefore summarized from the
+ * indexed alerts without querying the backend; other queries, or queries made
+ * before the cluster is indexed, are summarized from the returned resources.
  */
+@StaticallyInject
 public class AlertSummaryRenderer extends BaseRenderer implements Renderer {
 
+  /**
+   * Used to read the indexed alerts.
+   */
+  @Inject
+  private static AlertsDAO s_alertsDAO;
+
+  /**
+   * Used to look up the cluster ID of a query.
+   */
+  @Inject
+  private static Clusters s_clusters;
+
   /**
    * {@inheritDoc}
    */
@@ -133,58 +161,153 @@ public class AlertSummaryRenderer extends BaseRenderer implements Renderer {
     for (TreeNode<Resource> node : resultTree.getChildren()) {
       Resource resource = node.getObject();
       AlertState state = (AlertState) resource.getPropertyValue(AlertResourceProvider.ALERT_STATE);
-      Long originalTimestampObject = (Long) resource.getPropertyValue(AlertResourceProvider.ALERT_ORIGINAL_TIMESTAMP);
+      Long originalTimestamp = (Long) resource.getPropertyValue(AlertResourceProvider.ALERT_ORIGINAL_TIMESTAMP);
       MaintenanceState maintenanceState = (MaintenanceState) resource.getPropertyValue(AlertResourceProvider.ALERT_MAINTENANCE_STATE);
 
-      // NPE sanity
-      if (null == state) {
-        state = AlertState.UNKNOWN;
-      }
+      addAlert(alertSummary, state, originalTimestamp,
+          isMaintenanceModeEnabled(maintenanceState), null);
+    }
 
-      // NPE sanity
-      long originalTimestamp = 0;
-      if (null != originalTimestampObject) {
-        originalTimestamp = originalTimestampObject.longValue();
-      }
+    return createSummaryResult(alertSummary);
+  }
 
-      // NPE sanity
-      boolean isMaintenanceModeEnabled = false;
-      if (null != maintenanceState && maintenanceState != MaintenanceState.OFF) {
-        isMaintenanceModeEnabled = true;
-      }
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * This will summarize the indexed alerts of the scope of the query.
+   */
+  @Override
+  public Result getPrecomputedResult(Query query) {
+    List<IndexedAlert> alerts = getIndexedAlerts(query);
+    if (null == alerts) {
+      return null;
+    }
 
-      final AlertStateValues alertStateValues;
-      switch (state) {
-        case CRITICAL: {
-          alertStateValues = alertSummary.Critical;
-          break;
-        }
-        case OK: {
-          alertStateValues = alertSummary.Ok;
-          break;
-        }
-        case WARNING: {
-          alertStateValues = alertSummary.Warning;
-          break;
-        }
-        default:
-        case UNKNOWN: {
-          alertStateValues = alertSummary.Unknown;
-          break;
-        }
-      }
+    AlertStateSummary alertSummary = new AlertStateSummary();
+    for (IndexedAlert alert : alerts) {
+      addAlert(alertSummary, alert.getState(), alert.getOriginalTimestamp(),
+          alert.isMaintenance(), null);
+    }
 
-      if (isMaintenanceModeEnabled) {
-        alertStateValues.MaintenanceCount++;
-      } else {
-        alertStateValues.Count++;
-      }
+    return createSummaryResult(alertSummary);
+  }
+
+  /**
+   * Gets the indexed alerts of the scope of a query. Only queries whose
+   * predicate is a cluster and optionally a service and a host can be
+   * answered from the index.
+   *
+   * @param query
+   *          the query.
+   * @return the alerts, or {@code null} if the query can't be answered from
+   *         the index and must be executed.
+   */
+  protected List<IndexedAlert> getIndexedAlerts(Query query) {
+    if (null == s_alertsDAO || null == s_clusters) {
+      return null;
+    }
+
+    Map<String, String> scope = new HashMap<String, String>();
+    String clusterName = null;
+    if (addScope(query.getPredicate(), scope)) {
+      clusterName = scope.get(AlertResourceProvider.ALERT_CLUSTER_NAME);
+    }
+
+    if (null == clusterName) {
+      return null;
+    }
+
+    long clusterId;
+    try {
+      clusterId = s_clusters.getCluster(clusterName).getClusterId();
+    } catch (AmbariException e) {
+      // let the query report the missing cluster
+      return null;
+    }
 
-      if (originalTimestamp > alertStateValues.Timestamp) {
-        alertStateValues.Timestamp = originalTimestamp;
+    return s_alertsDAO.findCurrentIndexed(clusterId,
+        scope.get(AlertResourceProvider.ALERT_SERVICE),
+        scope.get(AlertResourceProvider.ALERT_HOST));
+  }
+
+  /**
+   * Adds a single alert to the values of its state.
+   *
+   * @param alertSummary
+   *          the summary to add to.
+   * @param state
+   *          the alert state, or {@code null} for {@link AlertState#UNKNOWN}.
+   * @param originalTimestampObject
+   *          the time of the last state change, or {@code null}.
+   * @param isMaintenanceModeEnabled
+   *          {@code true} if the alert is in maintenance.
+   * @param alertText
+   *          the text kept with the most recent state change, or {@code null}
+   *          if the text is not summarized.
+   */
+  protected void addAlert(AlertStateSummary alertSummary, AlertState state,
+      Long originalTimestampObject, boolean isMaintenanceModeEnabled, String alertText) {
+    // NPE sanity
+    if (null == state) {
+      state = AlertState.UNKNOWN;
+    }
+
+    // NPE sanity
+    long originalTimestamp = 0;
+    if (null != originalTimestampObject) {
+      originalTimestamp = originalTimestampObject.longValue();
+    }
+
+    final AlertStateValues alertStateValues;
+    switch (state) {
+      case CRITICAL: {
+        alertStateValues = alertSummary.Critical;
+        break;
+      }
+      case OK: {
+        alertStateValues = alertSummary.Ok;
+        break;
+      }
+      case WARNING: {
+        alertStateValues = alertSummary.Warning;
+        break;
+      }
+      default:
+      case UNKNOWN: {
+        alertStateValues = alertSummary.Unknown;
+        break;
       }
     }
 
+    // update the maintenance count if in MM is enabled, otherwise the
+    // regular count
+    if (isMaintenanceModeEnabled) {
+      alertStateValues.MaintenanceCount++;
+    } else {
+      alertStateValues.Count++;
+    }
+
+    // check to see if this alerts time is sooner; if so, keep track of it
+    // and of its text
+    if (originalTimestamp > alertStateValues.Timestamp) {
+      alertStateValues.Timestamp = originalTimestamp;
+      alertStateValues.AlertText = alertText;
+    }
+  }
+
+  /**
+   * @return {@code true} if the maintenance state is set and not
+   *         {@link MaintenanceState#OFF}.
+   */
+  protected boolean isMaintenanceModeEnabled(MaintenanceState maintenanceState) {
+    // NPE sanity
+    return null != maintenanceState && maintenanceState != MaintenanceState.OFF;
+  }
+
+  /**
+   * Creates the result holding a summary.
+   */
+  private Result createSummaryResult(AlertStateSummary alertSummary) {
     Result summary = new ResultImpl(true);
     Resource resource = new ResourceImpl(Resource.Type.Alert);
     TreeNode<Resource> summaryTree = summary.getResultTree();
@@ -207,4 +330,43 @@ public class AlertSummaryRenderer extends BaseRenderer implements Renderer {
     properties.add(AlertResourceProvider.ALERT_ORIGINAL_TIMESTAMP);
     properties.add(AlertResourceProvider.ALERT_MAINTENANCE_STATE);
   }
+
+  /**
+   * Adds the equality terms of a predicate on the cluster, service and host
+   * of the alerts to a scope.
+   *
+   * @param predicate
+   *          the predicate of the query.
+   * @param scope
+   *          the values of the terms keyed by property ID.
+   * @return {@code false} if the predicate has any other kind of term.
+   */
+  private static boolean addScope(Predicate predicate, Map<String, String> scope) {
+    if (predicate instanceof AndPredicate) {
+      for (Predicate term : ((AndPredicate) predicate).getPredicates()) {
+        if (!addScope(term, scope)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    if (!(predicate instanceof EqualsPredicate)) {
+      return false;
+    }
+
+    EqualsPredicate<?> equals = (EqualsPredicate<?>) predicate;
+    String propertyId = equals.getPropertyId();
+    if (null == equals.getValue()
+        || !(AlertResourceProvider.ALERT_CLUSTER_NAME.equals(propertyId)
+            || AlertResourceProvider.ALERT_SERVICE.equals(propertyId)
+            || AlertResourceProvider.ALERT_HOST.equals(propertyId))) {
+      return false;
+    }
+
+    String value = equals.getValue().toString();
+    String previous = scope.put(propertyId, value);
+    return null == previous || previous.equals(value);
+  }
 }
@@ -18,9 +18,11 @@
 
 package org.apache.ambari.server.api.query.render;
 
+import org.apache.ambari.server.api.query.Query;
 import org.apache.ambari.server.api.query.QueryInfo;
 import org.apache.ambari.server.api.resources.ResourceDefinition;
 import org.apache.ambari.server.api.resources.SubResourceDefinition;
+import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.Schema;
@@ -46,6 +48,16 @@ public abstract class BaseRenderer implements Renderer {
     m_schemaFactory = schemaFactory;
   }
 
+  @Override
+  public Result getPrecomputedResult(Query query) {
+    return null;
+  }
+
+  @Override
+  public boolean isStreamable() {
+    return false;
+  }
+
   /**
    * Obtain a schema instance based on resource type.
    *
@@ -65,4 +65,10 @@ public class DefaultRenderer extends BaseRenderer implements Renderer {
   public Result finalizeResult(Result queryResult) {
     return queryResult;
   }
+
+  @Override
+  public boolean isStreamable() {
+    // the native rendering neither changes nor depends on the complete tree
+    return true;
+  }
 }
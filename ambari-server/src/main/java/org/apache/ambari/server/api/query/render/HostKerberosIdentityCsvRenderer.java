@@ -80,4 +80,9 @@ public class HostKerberosIdentityCsvRenderer extends DefaultRenderer {
 
     return queryResult;
   }
+
+  @Override
+  public boolean isStreamable() {
+    return false;
+  }
 }
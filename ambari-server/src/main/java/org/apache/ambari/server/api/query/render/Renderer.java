@@ -19,6 +19,7 @@
 package org.apache.ambari.server.api.query.render;
 
 
+import org.apache.ambari.server.api.query.Query;
 import org.apache.ambari.server.api.query.QueryInfo;
 import org.apache.ambari.server.api.services.Request;
 import org.apache.ambari.server.api.services.Result;
@@ -69,6 +70,17 @@ public interface Renderer {
    */
   public Result finalizeResult(Result queryResult);
 
+  /**
+   * Obtain the finalized result of a query without querying the backend for
+   * its resources.  This allows a renderer whose result is maintained
+   * elsewhere, for example a summary, to avoid building every resource.
+   *
+   * @param query  the query to render
+   *
+   * @return the finalized result or null if the query must be executed
+   */
+  public Result getPrecomputedResult(Query query);
+
   /**
    * Obtain the associated post processor.
    * Post Processors existed prior to renderer's to allow the native result
@@ -80,4 +92,14 @@ public interface Renderer {
    * @return associated post processor
    */
   public ResultPostProcessor getResultPostProcessor(Request request);
+
+  /**
+   * Determine whether the top level resources of a collection may be built
+   * while the result is serialized.  This requires that
+   * {@link #finalizeResult(Result)} and the associated post processor do not
+   * depend on the complete result tree.
+   *
+   * @return true if the result may be streamed
+   */
+  public boolean isStreamable();
 }
@@ -196,13 +196,21 @@ public abstract class BaseRequest implements Request {
           long start = Long.parseLong(temporalData[0].trim());
           long end   = -1;
           long step  = -1;
+          Integer maxPoints = null;
           if (temporalData.length >= 2) {
             end = Long.parseLong(temporalData[1].trim());
-            if (temporalData.length == 3) {
+            if (temporalData.length >= 3) {
               step = Long.parseLong(temporalData[2].trim());
+              if (temporalData.length == 4) {
+                maxPoints = Integer.parseInt(temporalData[3].trim());
+                // No limit for a non positive number of points
+                if (maxPoints <= 0) {
+                  maxPoints = null;
+                }
+              }
             }
           }
-          temporalInfo = new TemporalInfoImpl(start, end, step);
+          temporalInfo = new TemporalInfoImpl(start, end, step, maxPoints);
         }
         mapProperties.put(field, temporalInfo);
       }
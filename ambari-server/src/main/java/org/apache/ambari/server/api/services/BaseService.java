@@ -30,10 +30,14 @@ import org.apache.ambari.server.api.services.serializers.ResultSerializer;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.eclipse.jetty.util.ajax.JSON;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -110,8 +114,15 @@ public abstract class BaseService {
 
     ResultSerializer serializer = mediaType == null ? getResultSerializer() : getResultSerializer(mediaType);
 
-    Response.ResponseBuilder builder = Response.status(result.getStatus().getStatusCode()).entity(
-        serializer.serialize(result));
+    Object entity;
+    if (mediaType == null && serializer instanceof JsonSerializer && !result.getStatus().isErrorState() &&
+        (JsonSerializer.isStreamingEnabled() || result instanceof StreamingResultImpl)) {
+      entity = createStreamingEntity((JsonSerializer) serializer, result);
+    } else {
+      entity = serializer.serialize(result);
+    }
+
+    Response.ResponseBuilder builder = Response.status(result.getStatus().getStatusCode()).entity(entity);
 
     if (mediaType != null) {
       builder.type(mediaType);
@@ -120,6 +131,25 @@ public abstract class BaseService {
     return builder.build();
   }
 
+  /**
+   * Create a response entity which writes the given result directly to the
+   * response stream when the response is committed, rather than building the
+   * complete JSON document in memory first.
+   *
+   * @param serializer  the JSON serializer
+   * @param result      the result to write
+   *
+   * @return the streaming response entity
+   */
+  private StreamingOutput createStreamingEntity(final JsonSerializer serializer, final Result result) {
+    return new StreamingOutput() {
+      @Override
+      public void write(OutputStream output) throws IOException, WebApplicationException {
+        serializer.serialize(result, output);
+      }
+    };
+  }
+
   /**
    * Obtain the factory from which to create Request instances.
    *
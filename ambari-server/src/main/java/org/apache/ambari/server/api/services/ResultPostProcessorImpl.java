@@ -28,6 +28,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -72,7 +73,46 @@ public class ResultPostProcessorImpl implements ResultPostProcessor {
         throw new RuntimeException("Unable to decode URI: " + e, e);
       }
     }
-    processNode(result.getResultTree(), href);
+    if (result instanceof StreamingResultImpl) {
+      processStreamedResult((StreamingResultImpl) result, href);
+    } else {
+      processNode(result.getResultTree(), href);
+    }
+  }
+
+  /**
+   * Process the root of a streamed result, and each of the streamed children
+   * as it is built.
+   *
+   * @param result  the streamed result
+   * @param href    the current href
+   */
+  private void processStreamedResult(StreamingResultImpl result, String href) {
+    TreeNode<Resource> root = result.getResultTreeRoot();
+    processNode(root, href);
+
+    // the root of a query result has no resource, so its children share its href
+    final String childHref = href;
+    final Iterator<TreeNode<Resource>> children = result.getStreamedChildren();
+
+    result.setStreamedChildren(new Iterator<TreeNode<Resource>>() {
+      @Override
+      public boolean hasNext() {
+        return children.hasNext();
+      }
+
+      @Override
+      public TreeNode<Resource> next() {
+        TreeNode<Resource> child = children.next();
+        processNode(child, childHref);
+        return child;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    });
   }
 
   /**
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.api.services;
+
+import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.controller.spi.Resource;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+
+/**
+ * Result whose top level child nodes are built while they are iterated, so
+ * that they can be serialized and released one at a time instead of holding
+ * the complete result tree in memory.
+ * <p/>
+ * The streamed children can only be iterated once. Callers of
+ * {@link #getResultTree()} get the complete tree; any children which have not
+ * been iterated yet are built and added to the tree at that point.
+ */
+public class StreamingResultImpl extends ResultImpl {
+
+  /**
+   * Builds the top level child nodes which have not been iterated yet.
+   */
+  private Iterator<TreeNode<Resource>> m_children = Collections.<TreeNode<Resource>>emptyList().iterator();
+
+
+  /**
+   * Constructor.
+   *
+   * @param synchronous true if request was handled synchronously, false otherwise
+   */
+  public StreamingResultImpl(boolean synchronous) {
+    super(synchronous);
+  }
+
+  /**
+   * Obtain the complete result tree, building all of the streamed children
+   * which have not been iterated yet.
+   *
+   * @return the complete result tree
+   */
+  @Override
+  public TreeNode<Resource> getResultTree() {
+    TreeNode<Resource> tree = super.getResultTree();
+    while (m_children.hasNext()) {
+      tree.addChild(m_children.next());
+    }
+    return tree;
+  }
+
+  /**
+   * Obtain the root of the result tree without building the streamed
+   * children.
+   *
+   * @return the root of the result tree
+   */
+  public TreeNode<Resource> getResultTreeRoot() {
+    return super.getResultTree();
+  }
+
+  /**
+   * Obtain the top level child nodes which have not been iterated yet.  Each
+   * node is built by the call to {@link Iterator#next()} and is not referenced
+   * by the result afterwards.  The parent of each node is the tree root,
+   * however the nodes are not added to its children.
+   *
+   * @return the streamed children
+   */
+  public Iterator<TreeNode<Resource>> getStreamedChildren() {
+    return m_children;
+  }
+
+  /**
+   * Set the top level child nodes to stream, for example to decorate the
+   * nodes as they are built.
+   *
+   * @param children  the streamed children
+   */
+  public void setStreamedChildren(Iterator<TreeNode<Resource>> children) {
+    m_children = children;
+  }
+}
@@ -18,18 +18,25 @@
 
 package org.apache.ambari.server.api.services.serializers;
 
+import org.apache.ambari.server.StaticallyInject;
 import org.apache.ambari.server.api.services.ResultStatus;
 import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.StreamingResultImpl;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.api.util.TreeNode;
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.util.DefaultPrettyPrinter;
 
+import com.google.inject.Inject;
+
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -37,8 +44,15 @@ import java.util.Map;
  * JSON serializer.
  * Responsible for representing a result as JSON.
  */
+@StaticallyInject
 public class JsonSerializer implements ResultSerializer {
 
+  /**
+   * Configuration, used to determine whether results are streamed.
+   */
+  @Inject
+  private static Configuration s_configuration;
+
   /**
    * Factory used to create JSON generator.
    */
@@ -72,15 +86,53 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
+  /**
+   * Serialize the given result directly to the given stream, without
+   * building the serialized form in memory. The children of a
+   * {@link StreamingResultImpl} are written as they are built and are not
+   * retained. The stream is flushed but not closed.
+   *
+   * @param result  internal result
+   * @param out     the stream to write to
+   *
+   * @throws IOException if the result can not be written to the stream
+   */
+  public void serialize(Result result, OutputStream out) throws IOException {
+    m_generator = m_factory.createJsonGenerator(out, JsonEncoding.UTF8);
+    m_generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    setPrettyPrinter();
+
+    if (result.getStatus().isErrorState()) {
+      writeError(result.getStatus());
+    } else if (result instanceof StreamingResultImpl) {
+      StreamingResultImpl streamingResult = (StreamingResultImpl) result;
+      TreeNode<Resource> root = streamingResult.getResultTreeRoot();
+      // the number of streamed children is not known up front, so the root
+      // is always written as an array
+      processNode(root, streamingResult.getStreamedChildren(), root.getObject() == null);
+    } else {
+      processNode(result.getResultTree());
+    }
+
+    m_generator.close();
+    out.flush();
+  }
+
+  /**
+   * Determine whether successful JSON results should be written directly to
+   * the response stream using {@link #serialize(Result, OutputStream)}.
+   *
+   * @return true if streaming is enabled
+   */
+  public static boolean isStreamingEnabled() {
+    return s_configuration != null && s_configuration.isApiResponseStreamingEnabled();
+  }
+
   @Override
   public Object serializeError(ResultStatus error) {
     try {
       ByteArrayOutputStream bytesOut = init();
-      //m_mapper.writeValue(m_generator, error);
-      m_generator.writeStartObject();
-      m_generator.writeNumberField("status", error.getStatus().getStatus());
-      m_generator.writeStringField("message", error.getMessage());
-      m_generator.writeEndObject();
+      writeError(error);
       m_generator.close();
       return bytesOut.toString("UTF-8");
 
@@ -90,18 +142,33 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
+  private void writeError(ResultStatus error) throws IOException {
+    m_generator.writeStartObject();
+    m_generator.writeNumberField("status", error.getStatus().getStatus());
+    m_generator.writeStringField("message", error.getMessage());
+    m_generator.writeEndObject();
+  }
+
   private ByteArrayOutputStream init() throws IOException {
     ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
     m_generator = createJsonGenerator(bytesOut);
+    setPrettyPrinter();
+
+    return bytesOut;
+  }
 
+  private void setPrettyPrinter() {
     DefaultPrettyPrinter p = new DefaultPrettyPrinter();
     p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
     m_generator.setPrettyPrinter(p);
-
-    return bytesOut;
   }
 
   private void processNode(TreeNode<Resource> node) throws IOException {
+    processNode(node, node.getChildren().iterator(), isArray(node));
+  }
+
+  private void processNode(TreeNode<Resource> node, Iterator<TreeNode<Resource>> children,
+                           boolean isArray) throws IOException {
     if (isObject(node)) {
       m_generator.writeStartObject();
 
@@ -114,18 +181,18 @@ public class JsonSerializer implements ResultSerializer {
       }
     }
 
-    if (isArray(node)) {
+    if (isArray) {
       if (node.getName() != null)
         m_generator.writeArrayFieldStart(node.getName());
       else
         m_generator.writeStartArray();
     }
 
-    for (TreeNode<Resource> child : node.getChildren()) {
-      processNode(child);
+    while (children.hasNext()) {
+      processNode(children.next());
     }
 
-    if (isArray(node)) {
+    if (isArray) {
       m_generator.writeEndArray();
     }
 
@@ -28,6 +28,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.events.publishers.PartitionedEventBus.OverflowPolicy;
 import org.apache.ambari.server.orm.JPATableGenerationStrategy;
 import org.apache.ambari.server.orm.PersistenceType;
 import org.apache.ambari.server.security.ClientSecurityType;
@@ -245,6 +246,8 @@ public class Configuration {
   public static final String KDC_CONNECTION_CHECK_TIMEOUT_DEFAULT = "10000";
   public static final String KERBEROS_KEYTAB_CACHE_DIR_KEY = "kerberos.keytab.cache.dir";
   public static final String KERBEROS_KEYTAB_CACHE_DIR_DEFAULT = "/var/lib/ambari-server/data/cache";
+  public static final String KERBEROS_OPERATION_THREADS_KEY = "kerberos.operation.threads";
+  public static final String KERBEROS_OPERATION_THREADS_DEFAULT = "4";
 
   /**
    * Recovery related configuration
@@ -374,6 +377,91 @@ public class Configuration {
   private static final String IS_COMMAND_RETRY_ENABLED_DEFAULT = "false";
   private static final String COMMAND_RETRY_COUNT_KEY = "command.retry.count";
   private static final String COMMAND_RETRY_COUNT_DEFAULT = "3";
+
+  /**
+   * Heartbeat command report batching. When enabled, command reports from
+   * many agents are coalesced and written with a single database update.
+   */
+  private static final String AGENT_HEARTBEAT_BATCH_ENABLED_KEY = "agent.heartbeat.batch.enabled";
+  private static final String AGENT_HEARTBEAT_BATCH_ENABLED_DEFAULT = "false";
+  private static final String AGENT_HEARTBEAT_BATCH_SIZE_KEY = "agent.heartbeat.batch.size";
+  private static final String AGENT_HEARTBEAT_BATCH_SIZE_DEFAULT = "200";
+  private static final String AGENT_HEARTBEAT_BATCH_LINGER_KEY = "agent.heartbeat.batch.linger.ms";
+  private static final String AGENT_HEARTBEAT_BATCH_LINGER_DEFAULT = "50";
+  private static final String AGENT_HEARTBEAT_BATCH_QUEUE_SIZE_KEY = "agent.heartbeat.batch.queue.size";
+  private static final String AGENT_HEARTBEAT_BATCH_QUEUE_SIZE_DEFAULT = "1000";
+
+  /**
+   * Whether the action scheduler is woken up as soon as an agent reports a
+   * completed task instead of waiting for its next polling interval.
+   */
+  private static final String ACTION_SCHEDULER_EVENT_DRIVEN_KEY = "server.action.scheduler.event.driven";
+  private static final String ACTION_SCHEDULER_EVENT_DRIVEN_DEFAULT = "false";
+
+  /**
+   * Shared cache of the responses returned by the JMX, Ganglia and Metrics
+   * Collector sources to the metrics property providers.
+   */
+  private static final String METRICS_RESPONSE_CACHE_ENABLED_KEY = "server.metrics.response.cache.enabled";
+  private static final String METRICS_RESPONSE_CACHE_ENABLED_DEFAULT = "false";
+  private static final String METRICS_RESPONSE_CACHE_TTL_KEY = "server.metrics.response.cache.ttl.ms";
+  private static final String METRICS_RESPONSE_CACHE_TTL_DEFAULT = "5000";
+  private static final String METRICS_RESPONSE_CACHE_MAX_SIZE_KEY = "server.metrics.response.cache.max.size.mb";
+  private static final String METRICS_RESPONSE_CACHE_MAX_SIZE_DEFAULT = "64";
+  private static final String API_RESPONSE_STREAMING_ENABLED_KEY = "api.response.streaming.enabled";
+  private static final String API_RESPONSE_STREAMING_ENABLED_DEFAULT = "false";
+  private static final String AGENT_HEARTBEAT_MONITOR_SHARDS_KEY = "agent.heartbeat.monitor.shards";
+  private static final String AGENT_HEARTBEAT_MONITOR_SHARDS_DEFAULT = "4";
+  private static final String ALERTS_WRITE_BEHIND_ENABLED_KEY = "alerts.current.write.behind.enabled";
+  private static final String ALERTS_WRITE_BEHIND_ENABLED_DEFAULT = "false";
+  private static final String ALERTS_WRITE_BEHIND_INTERVAL_KEY = "alerts.current.write.behind.interval.ms";
+  private static final String ALERTS_WRITE_BEHIND_INTERVAL_DEFAULT = "5000";
+  private static final String ALERTS_EVENT_PUBLISHER_LANES_KEY = "alerts.event.publisher.lanes";
+  private static final String ALERTS_EVENT_PUBLISHER_LANES_DEFAULT = "4";
+  private static final String ALERTS_EVENT_PUBLISHER_QUEUE_SIZE_KEY = "alerts.event.publisher.lane.queue.size";
+  private static final String ALERTS_EVENT_PUBLISHER_QUEUE_SIZE_DEFAULT = "2000";
+  private static final String ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_KEY = "alerts.event.publisher.overflow.policy";
+  private static final String ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_DEFAULT = "BLOCK";
+  private static final String ALERTS_SUMMARY_INDEX_ENABLED_KEY = "alerts.summary.index.enabled";
+  private static final String ALERTS_SUMMARY_INDEX_ENABLED_DEFAULT = "false";
+  private static final String ALERTS_SUMMARY_INDEX_REFRESH_INTERVAL_KEY = "alerts.summary.index.refresh.interval.ms";
+  private static final String ALERTS_SUMMARY_INDEX_REFRESH_INTERVAL_DEFAULT = "300000";
+  private static final String ALERTS_NOTICE_DISPATCH_THREADS_KEY = "alerts.notice.dispatch.threads";
+  private static final String ALERTS_NOTICE_DISPATCH_THREADS_DEFAULT = "4";
+  private static final String ALERTS_NOTICE_DISPATCH_TARGET_CONCURRENCY_KEY = "alerts.notice.dispatch.target.concurrency";
+  private static final String ALERTS_NOTICE_DISPATCH_TARGET_CONCURRENCY_DEFAULT = "1";
+  private static final String ALERTS_NOTICE_DISPATCH_TARGET_QUEUE_SIZE_KEY = "alerts.notice.dispatch.target.queue.size";
+  private static final String ALERTS_NOTICE_DISPATCH_TARGET_QUEUE_SIZE_DEFAULT = "1000";
+  private static final String ALERTS_NOTICE_DISPATCH_TARGET_RATE_KEY = "alerts.notice.dispatch.target.rate";
+  private static final String ALERTS_NOTICE_DISPATCH_TARGET_RATE_DEFAULT = "0";
+  private static final String ALERTS_NOTICE_STATE_BATCH_SIZE_KEY = "alerts.notice.state.batch.size";
+  private static final String ALERTS_NOTICE_STATE_BATCH_SIZE_DEFAULT = "100";
+
+  /**
+   * Retention of request and alert history
+   */
+  private static final String HISTORY_PURGE_INTERVAL_KEY = "history.purge.interval.minutes";
+  private static final String HISTORY_PURGE_INTERVAL_DEFAULT = "60";
+  private static final String HISTORY_PURGE_REQUEST_RETENTION_DAYS_KEY = "history.purge.request.retention.days";
+  private static final String HISTORY_PURGE_REQUEST_RETENTION_DAYS_DEFAULT = "0";
+  private static final String HISTORY_PURGE_REQUEST_RETENTION_COUNT_KEY = "history.purge.request.retention.count";
+  private static final String HISTORY_PURGE_REQUEST_RETENTION_COUNT_DEFAULT = "0";
+  private static final String HISTORY_PURGE_REQUEST_BATCH_SIZE_KEY = "history.purge.request.batch.size";
+  private static final String HISTORY_PURGE_REQUEST_BATCH_SIZE_DEFAULT = "10";
+  private static final String HISTORY_PURGE_ALERT_RETENTION_DAYS_KEY = "history.purge.alert.retention.days";
+  private static final String HISTORY_PURGE_ALERT_RETENTION_DAYS_DEFAULT = "0";
+  private static final String HISTORY_PURGE_ALERT_BATCH_SIZE_KEY = "history.purge.alert.batch.size";
+  private static final String HISTORY_PURGE_ALERT_BATCH_SIZE_DEFAULT = "500";
+  private static final String HISTORY_PURGE_CHUNK_DELAY_KEY = "history.purge.chunk.delay.ms";
+  private static final String HISTORY_PURGE_CHUNK_DELAY_DEFAULT = "100";
+
+  /**
+   * Whether execution commands are stored compressed, with the parts shared
+   * by the commands of a stage stored once per stage.
+   */
+  public static final String EXECUTION_COMMAND_COMPACT_STORAGE_KEY = "execution.command.storage.compact";
+  private static final String EXECUTION_COMMAND_COMPACT_STORAGE_DEFAULT = "true";
+
   /**
    * The full path to the XML file that describes the different alert templates.
    */
@@ -1506,6 +1594,18 @@ public class Configuration {
     return new File(fileName);
   }
 
+  /**
+   * Gets the number of Kerberos identities which are processed at the same
+   * time, each with its own connection to the KDC. A value of 1 processes
+   * identities one at a time.
+   *
+   * @return the number of threads (default {@value #KERBEROS_OPERATION_THREADS_DEFAULT}).
+   */
+  public int getKerberosOperationThreads() {
+    return Integer.parseInt(properties.getProperty(
+        KERBEROS_OPERATION_THREADS_KEY, KERBEROS_OPERATION_THREADS_DEFAULT));
+  }
+
   /**
    * Gets the type of database by examining the {@link #getDatabaseUrl()} JDBC
    * URL.
@@ -1638,6 +1738,385 @@ public class Configuration {
         DEFAULT_JDBC_POOL_IDLE_TEST_INTERVAL));
   }
 
+  /**
+   * Gets whether command reports received in agent heartbeats should be
+   * coalesced across hosts and persisted in batches.
+   *
+   * @return {@code true} if heartbeat command report batching is enabled
+   *         (default {@code false}).
+   */
+  public boolean isHeartbeatBatchingEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        AGENT_HEARTBEAT_BATCH_ENABLED_KEY, AGENT_HEARTBEAT_BATCH_ENABLED_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum number of command reports written in a single batch.
+   *
+   * @return the batch size (default {@value #AGENT_HEARTBEAT_BATCH_SIZE_DEFAULT}).
+   */
+  public int getHeartbeatBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_BATCH_SIZE_KEY, AGENT_HEARTBEAT_BATCH_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the amount of time, in milliseconds, that the batch writer waits for
+   * additional heartbeats before flushing a partially filled batch.
+   *
+   * @return the linger time (default {@value #AGENT_HEARTBEAT_BATCH_LINGER_DEFAULT}).
+   */
+  public long getHeartbeatBatchLingerTime() {
+    return Long.parseLong(properties.getProperty(
+        AGENT_HEARTBEAT_BATCH_LINGER_KEY, AGENT_HEARTBEAT_BATCH_LINGER_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum number of heartbeats whose command reports may be waiting
+   * to be written. Heartbeats arriving while the queue is full are written
+   * directly by the calling thread.
+   *
+   * @return the queue size (default {@value #AGENT_HEARTBEAT_BATCH_QUEUE_SIZE_DEFAULT}).
+   */
+  public int getHeartbeatBatchQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_BATCH_QUEUE_SIZE_KEY, AGENT_HEARTBEAT_BATCH_QUEUE_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets whether the action scheduler runs as soon as a task completes, in
+   * addition to its regular polling interval. The scheduler always runs as
+   * soon as a request is submitted.
+   *
+   * @return {@code true} if the scheduler is event driven (default
+   *         {@code false}).
+   */
+  public boolean isActionSchedulerEventDriven() {
+    return Boolean.parseBoolean(properties.getProperty(
+        ACTION_SCHEDULER_EVENT_DRIVEN_KEY, ACTION_SCHEDULER_EVENT_DRIVEN_DEFAULT));
+  }
+
+  /**
+   * Gets whether responses from the metrics sources are cached and shared
+   * between the metrics property providers.
+   *
+   * @return {@code true} if the metrics response cache is enabled (default
+   *         {@code false}).
+   */
+  public boolean isMetricsResponseCacheEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        METRICS_RESPONSE_CACHE_ENABLED_KEY, METRICS_RESPONSE_CACHE_ENABLED_DEFAULT));
+  }
+
+  /**
+   * Gets the amount of time, in milliseconds, that a metrics response is
+   * served from the cache.
+   *
+   * @return the time to live (default {@value #METRICS_RESPONSE_CACHE_TTL_DEFAULT}).
+   */
+  public long getMetricsResponseCacheTTL() {
+    return Long.parseLong(properties.getProperty(
+        METRICS_RESPONSE_CACHE_TTL_KEY, METRICS_RESPONSE_CACHE_TTL_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum total size, in megabytes, of the cached metrics
+   * responses.
+   *
+   * @return the maximum size (default {@value #METRICS_RESPONSE_CACHE_MAX_SIZE_DEFAULT}).
+   */
+  public long getMetricsResponseCacheMaxSize() {
+    return Long.parseLong(properties.getProperty(
+        METRICS_RESPONSE_CACHE_MAX_SIZE_KEY, METRICS_RESPONSE_CACHE_MAX_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets whether JSON API responses are written directly to the response
+   * stream as they are serialized, instead of being built as a string first.
+   *
+   * @return {@code true} to stream responses (default
+   *         {@value #API_RESPONSE_STREAMING_ENABLED_DEFAULT}).
+   */
+  public boolean isApiResponseStreamingEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        API_RESPONSE_STREAMING_ENABLED_KEY, API_RESPONSE_STREAMING_ENABLED_DEFAULT));
+  }
+
+  /**
+   * Gets the number of shards, each processed by its own thread, that the
+   * heartbeat monitor splits the hosts into when generating status commands.
+   *
+   * @return the shard count (default
+   *         {@value #AGENT_HEARTBEAT_MONITOR_SHARDS_DEFAULT}).
+   */
+  public int getHeartbeatMonitorShardCount() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_MONITOR_SHARDS_KEY, AGENT_HEARTBEAT_MONITOR_SHARDS_DEFAULT));
+  }
+
+  /**
+   * Gets whether the state of current alerts is kept in memory so that alerts
+   * whose state did not change only update their latest timestamp and text in
+   * periodic batches instead of on every received alert.
+   *
+   * @return {@code true} if alert write-behind is enabled (default
+   *         {@value #ALERTS_WRITE_BEHIND_ENABLED_DEFAULT}).
+   */
+  public boolean isAlertWriteBehindEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        ALERTS_WRITE_BEHIND_ENABLED_KEY, ALERTS_WRITE_BEHIND_ENABLED_DEFAULT));
+  }
+
+  /**
+   * Gets the interval, in milliseconds, at which the latest timestamp and text
+   * of unchanged current alerts are written when alert write-behind is
+   * enabled.
+   *
+   * @return the write interval (default
+   *         {@value #ALERTS_WRITE_BEHIND_INTERVAL_DEFAULT}).
+   */
+  public long getAlertWriteBehindInterval() {
+    return Long.parseLong(properties.getProperty(
+        ALERTS_WRITE_BEHIND_INTERVAL_KEY, ALERTS_WRITE_BEHIND_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Gets the number of single-threaded lanes used to dispatch alert events.
+   * Events for the same alert are always dispatched on the same lane.
+   *
+   * @return the number of lanes (default
+   *         {@value #ALERTS_EVENT_PUBLISHER_LANES_DEFAULT}).
+   */
+  public int getAlertEventPublisherLaneCount() {
+    return Integer.parseInt(properties.getProperty(
+        ALERTS_EVENT_PUBLISHER_LANES_KEY, ALERTS_EVENT_PUBLISHER_LANES_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum number of alert events waiting on each lane.
+   *
+   * @return the size of each lane's queue (default
+   *         {@value #ALERTS_EVENT_PUBLISHER_QUEUE_SIZE_DEFAULT}).
+   */
+  public int getAlertEventPublisherQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        ALERTS_EVENT_PUBLISHER_QUEUE_SIZE_KEY,
+        ALERTS_EVENT_PUBLISHER_QUEUE_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets what is done with an alert event published while its lane is full.
+   *
+   * @return the overflow policy (default
+   *         {@value #ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_DEFAULT}).
+   */
+  public OverflowPolicy getAlertEventPublisherOverflowPolicy() {
+    String policy = properties.getProperty(
+        ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_KEY,
+        ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_DEFAULT);
+
+    try {
+      return OverflowPolicy.valueOf(policy.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unknown {} value {}, using {}", ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_KEY,
+          policy, ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_DEFAULT);
+      return OverflowPolicy.valueOf(ALERTS_EVENT_PUBLISHER_OVERFLOW_POLICY_DEFAULT);
+    }
+  }
+
+  /**
+   * Gets whether the alert summaries of clusters, services and hosts are
+   * served from counts kept in memory instead of being aggregated by the
+   * database on every request.
+   *
+   * @return {@code true} if the alert summary index is enabled (default
+   *         {@value #ALERTS_SUMMARY_INDEX_ENABLED_DEFAULT}).
+   */
+  public boolean isAlertSummaryIndexEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        ALERTS_SUMMARY_INDEX_ENABLED_KEY, ALERTS_SUMMARY_INDEX_ENABLED_DEFAULT));
+  }
+
+  /**
+   * Gets the time, in milliseconds, after which the in-memory alert counts of
+   * a cluster are read from the database again.
+   *
+   * @return the refresh interval (default
+   *         {@value #ALERTS_SUMMARY_INDEX_REFRESH_INTERVAL_DEFAULT}).
+   */
+  public long getAlertSummaryIndexRefreshInterval() {
+    return Long.parseLong(properties.getProperty(
+        ALERTS_SUMMARY_INDEX_REFRESH_INTERVAL_KEY,
+        ALERTS_SUMMARY_INDEX_REFRESH_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Gets the number of threads shared by all alert targets to deliver alert
+   * notifications.
+   *
+   * @return the number of threads (default
+   *         {@value #ALERTS_NOTICE_DISPATCH_THREADS_DEFAULT}).
+   */
+  public int getAlertNoticeDispatchThreads() {
+    return Integer.parseInt(properties.getProperty(
+        ALERTS_NOTICE_DISPATCH_THREADS_KEY,
+        ALERTS_NOTICE_DISPATCH_THREADS_DEFAULT));
+  }
+
+  /**
+   * Gets the number of notifications which may be delivered to a single alert
+   * target at the same time.
+   *
+   * @return the concurrency of each target (default
+   *         {@value #ALERTS_NOTICE_DISPATCH_TARGET_CONCURRENCY_DEFAULT}).
+   */
+  public int getAlertNoticeDispatchTargetConcurrency() {
+    return Integer.parseInt(properties.getProperty(
+        ALERTS_NOTICE_DISPATCH_TARGET_CONCURRENCY_KEY,
+        ALERTS_NOTICE_DISPATCH_TARGET_CONCURRENCY_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum number of notifications waiting to be delivered to a
+   * single alert target. Notices which do not fit stay pending until the next
+   * dispatch cycle.
+   *
+   * @return the size of each target's queue (default
+   *         {@value #ALERTS_NOTICE_DISPATCH_TARGET_QUEUE_SIZE_DEFAULT}).
+   */
+  public int getAlertNoticeDispatchTargetQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        ALERTS_NOTICE_DISPATCH_TARGET_QUEUE_SIZE_KEY,
+        ALERTS_NOTICE_DISPATCH_TARGET_QUEUE_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum number of notifications delivered to a single alert
+   * target per second.
+   *
+   * @return the rate of each target, or {@code 0} for no limit (default
+   *         {@value #ALERTS_NOTICE_DISPATCH_TARGET_RATE_DEFAULT}).
+   */
+  public double getAlertNoticeDispatchTargetRate() {
+    return Double.parseDouble(properties.getProperty(
+        ALERTS_NOTICE_DISPATCH_TARGET_RATE_KEY,
+        ALERTS_NOTICE_DISPATCH_TARGET_RATE_DEFAULT));
+  }
+
+  /**
+   * Gets the number of delivered or failed alert notices whose state is
+   * written to the database in a single transaction.
+   *
+   * @return the batch size (default
+   *         {@value #ALERTS_NOTICE_STATE_BATCH_SIZE_DEFAULT}).
+   */
+  public int getAlertNoticeStateBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        ALERTS_NOTICE_STATE_BATCH_SIZE_KEY,
+        ALERTS_NOTICE_STATE_BATCH_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the interval between runs of the request and alert history purge.
+   *
+   * @return the interval in minutes (default
+   *         {@value #HISTORY_PURGE_INTERVAL_DEFAULT}).
+   */
+  public int getHistoryPurgeInterval() {
+    return Integer.parseInt(properties.getProperty(
+        HISTORY_PURGE_INTERVAL_KEY, HISTORY_PURGE_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Gets the number of days after which completed requests, along with their
+   * stages, tasks and execution commands, are purged.
+   *
+   * @return the number of days, or {@code 0} to keep requests regardless of
+   *         age (default {@value #HISTORY_PURGE_REQUEST_RETENTION_DAYS_DEFAULT}).
+   */
+  public int getHistoryPurgeRequestRetentionDays() {
+    return Integer.parseInt(properties.getProperty(
+        HISTORY_PURGE_REQUEST_RETENTION_DAYS_KEY,
+        HISTORY_PURGE_REQUEST_RETENTION_DAYS_DEFAULT));
+  }
+
+  /**
+   * Gets the number of most recent requests which are kept; older completed
+   * requests are purged.
+   *
+   * @return the number of requests, or {@code 0} to keep requests regardless
+   *         of count (default
+   *         {@value #HISTORY_PURGE_REQUEST_RETENTION_COUNT_DEFAULT}).
+   */
+  public int getHistoryPurgeRequestRetentionCount() {
+    return Integer.parseInt(properties.getProperty(
+        HISTORY_PURGE_REQUEST_RETENTION_COUNT_KEY,
+        HISTORY_PURGE_REQUEST_RETENTION_COUNT_DEFAULT));
+  }
+
+  /**
+   * Gets the number of requests purged in a single transaction.
+   *
+   * @return the batch size (default
+   *         {@value #HISTORY_PURGE_REQUEST_BATCH_SIZE_DEFAULT}).
+   */
+  public int getHistoryPurgeRequestBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        HISTORY_PURGE_REQUEST_BATCH_SIZE_KEY,
+        HISTORY_PURGE_REQUEST_BATCH_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the number of days after which alert history, along with its
+   * notices, is purged. The history of current alerts is always kept.
+   *
+   * @return the number of days, or {@code 0} to keep alert history (default
+   *         {@value #HISTORY_PURGE_ALERT_RETENTION_DAYS_DEFAULT}).
+   */
+  public int getHistoryPurgeAlertRetentionDays() {
+    return Integer.parseInt(properties.getProperty(
+        HISTORY_PURGE_ALERT_RETENTION_DAYS_KEY,
+        HISTORY_PURGE_ALERT_RETENTION_DAYS_DEFAULT));
+  }
+
+  /**
+   * Gets the number of alert history entries purged in a single transaction.
+   *
+   * @return the batch size (default
+   *         {@value #HISTORY_PURGE_ALERT_BATCH_SIZE_DEFAULT}).
+   */
+  public int getHistoryPurgeAlertBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        HISTORY_PURGE_ALERT_BATCH_SIZE_KEY,
+        HISTORY_PURGE_ALERT_BATCH_SIZE_DEFAULT));
+  }
+
+  /**
+   * Gets the pause between two purge transactions, which leaves room for
+   * other work on the same tables.
+   *
+   * @return the pause in milliseconds (default
+   *         {@value #HISTORY_PURGE_CHUNK_DELAY_DEFAULT}).
+   */
+  public long getHistoryPurgeChunkDelay() {
+    return Long.parseLong(properties.getProperty(
+        HISTORY_PURGE_CHUNK_DELAY_KEY, HISTORY_PURGE_CHUNK_DELAY_DEFAULT));
+  }
+
+  /**
+   * Gets whether new execution commands are written compressed with their
+   * shared parts stored once per stage. Commands written either way can
+   * always be read.
+   *
+   * @return {@code true} to write compact commands (default
+   *         {@value #EXECUTION_COMMAND_COMPACT_STORAGE_DEFAULT}).
+   */
+  public boolean isExecutionCommandCompactStorageEnabled() {
+    return Boolean.parseBoolean(properties.getProperty(
+        EXECUTION_COMMAND_COMPACT_STORAGE_KEY,
+        EXECUTION_COMMAND_COMPACT_STORAGE_DEFAULT));
+  }
+
   /**
    * Sets a property on the configuration.
    *
@@ -44,6 +44,8 @@ import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.ResourceProvider;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.spi.UnsupportedPropertyException;
+import org.apache.ambari.server.controller.utilities.CachingStreamProvider;
+import org.apache.ambari.server.controller.utilities.MetricsResponseCache;
 import org.apache.ambari.server.controller.utilities.PredicateBuilder;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.apache.ambari.server.controller.utilities.StreamProvider;
@@ -100,6 +102,12 @@ public abstract class AbstractProviderModule implements ProviderModule,
   private volatile Map<String, String> clusterJmxProtocolMap = new HashMap<String, String>();
   private volatile String clusterMetricServerPort = null;
 
+  /**
+   * The cache of metrics responses shared by all of the provider modules;
+   * {@code null} until the module is initialized.
+   */
+  private static MetricsResponseCache metricsResponseCache = null;
+
   static {
     serviceConfigTypes.put(Service.Type.HDFS, "hdfs-site");
     serviceConfigTypes.put(Service.Type.MAPREDUCE, "mapred-site");
@@ -202,6 +210,15 @@ public abstract class AbstractProviderModule implements ProviderModule,
     }
   }
 
+  /**
+   * Initialize the provider modules with the metrics response cache.
+   *
+   * @param responseCache  the metrics response cache
+   */
+  public static void init(MetricsResponseCache responseCache) {
+    metricsResponseCache = responseCache;
+  }
+
 
   // ----- ProviderModule ----------------------------------------------------
 
@@ -529,10 +546,15 @@ public abstract class AbstractProviderModule implements ProviderModule,
     List<PropertyProvider> providers = new LinkedList<PropertyProvider>();
 
     ComponentSSLConfiguration configuration = ComponentSSLConfiguration.instance();
-    URLStreamProvider streamProvider = new URLStreamProvider(
+    StreamProvider streamProvider = new URLStreamProvider(
         PROPERTY_REQUEST_CONNECT_TIMEOUT, PROPERTY_REQUEST_READ_TIMEOUT,
         configuration);
 
+    MetricsResponseCache responseCache = metricsResponseCache;
+    if (responseCache != null && responseCache.isEnabled()) {
+      streamProvider = new CachingStreamProvider(streamProvider, responseCache);
+    }
+
     if (type.isInternalType()) {
       switch (type.getInternalType()) {
         case Cluster:
@@ -24,10 +24,14 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.StaticallyInject;
+import org.apache.ambari.server.actionmanager.ActionManager;
+import org.apache.ambari.server.agent.HeartBeatHandler;
 import org.apache.ambari.server.controller.AmbariManagementController;
 import org.apache.ambari.server.controller.RootServiceComponentRequest;
 import org.apache.ambari.server.controller.RootServiceComponentResponse;
 import org.apache.ambari.server.controller.RootServiceResponseFactory.Components;
+import org.apache.ambari.server.controller.jmx.JMXPropertyProvider;
 import org.apache.ambari.server.controller.spi.NoSuchParentResourceException;
 import org.apache.ambari.server.controller.spi.NoSuchResourceException;
 import org.apache.ambari.server.controller.spi.Predicate;
@@ -36,8 +40,16 @@ import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.Resource.Type;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.spi.UnsupportedPropertyException;
+import org.apache.ambari.server.controller.utilities.MetricsResponseCache;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.apache.ambari.server.events.publishers.AlertEventPublisher;
+import org.apache.ambari.server.state.services.AlertNoticeDispatchService;
+import org.apache.ambari.server.state.services.HistoryPurgeService;
 
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+@StaticallyInject
 public class RootServiceComponentResourceProvider extends
     ReadOnlyResourceProvider {
   
@@ -56,6 +68,65 @@ public class RootServiceComponentResourceProvider extends
   public static final String PROPERTIES_SERVER_CLOCK = PropertyHelper
       .getPropertyId("RootServiceComponents", "server_clock");
   
+  public static final String ALERT_EVENT_DISPATCH_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "alert_event_dispatch");
+
+  public static final String ALERT_NOTICE_DISPATCH_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "alert_notice_dispatch");
+
+  public static final String HISTORY_PURGE_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "history_purge");
+
+  public static final String HEARTBEAT_PROCESSING_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "heartbeat_processing");
+
+  public static final String ACTION_SCHEDULER_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "action_scheduler");
+
+  public static final String JMX_REQUESTS_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "jmx_requests");
+
+  public static final String METRICS_RESPONSE_CACHE_PROPERTY_ID = PropertyHelper
+      .getPropertyId("RootServiceComponents", "metrics_response_cache");
+
+  /**
+   * Used to report the state of the alert event lanes of the server.
+   */
+  @Inject
+  private static AlertEventPublisher alertEventPublisher;
+
+  /**
+   * Used to report the state of the alert notification queues of the server.
+   */
+  @Inject
+  private static AlertNoticeDispatchService alertNoticeDispatchService;
+
+  /**
+   * Used to report what has been purged from the request and alert history.
+   */
+  @Inject
+  private static HistoryPurgeService historyPurgeService;
+
+  /**
+   * Used to report heartbeat stage latencies and command report batching;
+   * resolved lazily so that the handler is not created along with the
+   * provider.
+   */
+  @Inject
+  private static Provider<HeartBeatHandler> heartBeatHandlerProvider;
+
+  /**
+   * Used to report the action scheduler cycle and request latencies.
+   */
+  @Inject
+  private static Provider<ActionManager> actionManagerProvider;
+
+  /**
+   * Used to report the hits and misses of the metrics response cache.
+   */
+  @Inject
+  private static MetricsResponseCache metricsResponseCache;
+
   private Set<String> pkPropertyIds = new HashSet<String>(
       Arrays.asList(new String[] { SERVICE_NAME_PROPERTY_ID, COMPONENT_NAME_PROPERTY_ID }));
 
@@ -109,6 +180,39 @@ public class RootServiceComponentResourceProvider extends
       if(response.getComponentName().equals(Components.AMBARI_SERVER.name())){
         setResourceProperty(resource, PROPERTIES_SERVER_CLOCK,
             System.currentTimeMillis() / 1000L, requestedIds);
+
+        if (null != alertEventPublisher) {
+          setResourceProperty(resource, ALERT_EVENT_DISPATCH_PROPERTY_ID,
+              alertEventPublisher.getStatistics(), requestedIds);
+        }
+
+        if (null != alertNoticeDispatchService) {
+          setResourceProperty(resource, ALERT_NOTICE_DISPATCH_PROPERTY_ID,
+              alertNoticeDispatchService.getStatistics(), requestedIds);
+        }
+
+        if (null != historyPurgeService) {
+          setResourceProperty(resource, HISTORY_PURGE_PROPERTY_ID,
+              historyPurgeService.getStatistics(), requestedIds);
+        }
+
+        if (null != heartBeatHandlerProvider) {
+          setResourceProperty(resource, HEARTBEAT_PROCESSING_PROPERTY_ID,
+              heartBeatHandlerProvider.get().getStatistics(), requestedIds);
+        }
+
+        if (null != actionManagerProvider) {
+          setResourceProperty(resource, ACTION_SCHEDULER_PROPERTY_ID,
+              actionManagerProvider.get().getSchedulerStatistics(), requestedIds);
+        }
+
+        setResourceProperty(resource, JMX_REQUESTS_PROPERTY_ID,
+            JMXPropertyProvider.getStatistics(), requestedIds);
+
+        if (null != metricsResponseCache) {
+          setResourceProperty(resource, METRICS_RESPONSE_CACHE_PROPERTY_ID,
+              metricsResponseCache.getStatistics(), requestedIds);
+        }
       }      
 
       resources.add(resource);
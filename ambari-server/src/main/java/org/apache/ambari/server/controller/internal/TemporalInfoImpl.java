@@ -27,11 +27,17 @@ public class TemporalInfoImpl implements TemporalInfo {
   private long m_startTime;
   private long m_endTime;
   private long m_step;
+  private Integer m_maxPoints;
 
   public TemporalInfoImpl(long startTime, long endTime, long step) {
+    this(startTime, endTime, step, null);
+  }
+
+  public TemporalInfoImpl(long startTime, long endTime, long step, Integer maxPoints) {
     m_startTime = startTime;
     m_endTime = endTime;
     m_step = step;
+    m_maxPoints = maxPoints;
   }
 
   @Override
@@ -49,6 +55,11 @@ public class TemporalInfoImpl implements TemporalInfo {
     return m_step;
   }
 
+  @Override
+  public Integer getMaxPoints() {
+    return m_maxPoints;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -57,7 +68,8 @@ public class TemporalInfoImpl implements TemporalInfo {
     TemporalInfoImpl that = (TemporalInfoImpl) o;
     return m_endTime == that.m_endTime &&
            m_startTime == that.m_startTime &&
-           m_step == that.m_step;
+           m_step == that.m_step &&
+           (m_maxPoints == null ? that.m_maxPoints == null : m_maxPoints.equals(that.m_maxPoints));
 
   }
 
@@ -66,6 +78,7 @@ public class TemporalInfoImpl implements TemporalInfo {
     int result = (int) (m_startTime ^ (m_startTime >>> 32));
     result = 31 * result + (int) (m_endTime ^ (m_endTime >>> 32));
     result = 31 * result + (int) (m_step ^ (m_step >>> 32));
+    result = 31 * result + (m_maxPoints != null ? m_maxPoints.hashCode() : 0);
     return result;
   }
 }
@@ -26,6 +26,9 @@ import org.apache.ambari.server.controller.spi.Request;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.utilities.StreamProvider;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.ObjectReader;
@@ -37,10 +40,20 @@ import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,10 +65,31 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
   private static final String NAME_KEY = "name";
   private static final String PORT_KEY = "tag.port";
   private static final String DOT_REPLACEMENT_CHAR = "#";
+  private static final String BEANS_KEY = "beans";
 
-  private final static ObjectReader jmxObjectReader;
+  private final static JsonFactory jmxJsonFactory;
+  private final static TypeReference<HashMap<String, Object>> beanTypeReference;
   private final static ObjectReader stormObjectReader;
 
+  /**
+   * Latency and in-flight statistics for each JMX endpoint, keyed by host and
+   * port.
+   */
+  private static final ConcurrentMap<String, EndpointStatistics> endpointStatistics =
+      new ConcurrentHashMap<String, EndpointStatistics>();
+
+  /**
+   * The number of fetches that were served by a request for the same URL
+   * which was already in flight.
+   */
+  private static final AtomicLong coalescedRequestCount = new AtomicLong();
+
+  /**
+   * The number of fetches which were given up on because the request they
+   * shared was still in flight after the populate timeout.
+   */
+  private static final AtomicLong abandonedWaitCount = new AtomicLong();
+
   private static final Map<String, String> DEFAULT_JMX_PORTS = new HashMap<String, String>();
 
   static {
@@ -73,12 +107,13 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
 
     ObjectMapper jmxObjectMapper = new ObjectMapper();
     jmxObjectMapper.configure(DeserializationConfig.Feature.USE_ANNOTATIONS, false);
-    jmxObjectReader = jmxObjectMapper.reader(JMXMetricHolder.class);
+    jmxJsonFactory = jmxObjectMapper.getJsonFactory();
 
     TypeReference<HashMap<String,Object>> typeRef
             = new TypeReference<
             HashMap<String,Object>
             >() {};
+    beanTypeReference = typeRef;
     stormObjectReader = jmxObjectMapper.reader(typeRef);
   }
 
@@ -100,6 +135,14 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
 
   private final String statePropertyId;
 
+  /**
+   * The JMX fetches currently in flight, keyed by URL. Resources which need
+   * the same URL while it is being fetched wait for that fetch instead of
+   * issuing their own.
+   */
+  private final ConcurrentMap<String, FutureTask<Map<String, Map<String, Object>>>> inFlightFetches =
+      new ConcurrentHashMap<String, FutureTask<Map<String, Map<String, Object>>>>();
+
   // ----- Constructors ------------------------------------------------------
 
   /**
@@ -203,51 +246,145 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
       return resource;
     }
 
-    InputStream in = null;
+    for (String hostName : hostNames) {
+      Map<String, Map<String, Object>> categories = getCategories(protocol, hostName, port);
 
-    try {
-      try {
-        for (String hostName : hostNames) {
-          try {
-            in = streamProvider.readFrom(getSpec(protocol, hostName, port, "/jmx"));
-            // if the ticket becomes invalid (timeout) then bail out
-            if (!ticket.isValid()) {
-              return resource;
-            }
+      // if the ticket becomes invalid (timeout) then bail out
+      if (!ticket.isValid()) {
+        return resource;
+      }
 
-            getHadoopMetricValue(in, ids, resource, request, ticket);
+      if (categories != null) {
+        getHadoopMetricValue(categories, ids, resource, request, ticket);
+      }
+    }
+    return resource;
+  }
 
-          } catch (IOException e) {
-            logException(e);
+  /**
+   * Get the JMX beans of the given host keyed by category. Identical URLs which
+   * are requested concurrently, for example by several resources of the same
+   * request, share a single HTTP call, so at most one request per JMX endpoint
+   * is in flight at a time. A thread sharing another thread's call waits for
+   * it no longer than the populate timeout.
+   *
+   * @param protocol  the JMX protocol
+   * @param hostName  the host name
+   * @param port      the JMX port
+   *
+   * @return the beans keyed by category; null if they could not be retrieved
+   */
+  private Map<String, Map<String, Object>> getCategories(String protocol, final String hostName,
+                                                         final String port) {
+    final String spec = getSpec(protocol, hostName, port, "/jmx");
+
+    FutureTask<Map<String, Map<String, Object>>> fetch =
+        new FutureTask<Map<String, Map<String, Object>>>(new Callable<Map<String, Map<String, Object>>>() {
+          @Override
+          public Map<String, Map<String, Object>> call() throws Exception {
+            return fetchCategories(spec, hostName, port);
           }
-        }
+        });
+
+    FutureTask<Map<String, Map<String, Object>>> inFlight = inFlightFetches.putIfAbsent(spec, fetch);
+    if (inFlight == null) {
+      try {
+        fetch.run();
       } finally {
-        if (in != null) {
-          in.close();
-        }
+        inFlightFetches.remove(spec, fetch);
       }
-    } catch (IOException e) {
+    } else {
+      coalescedRequestCount.incrementAndGet();
+      fetch = inFlight;
+    }
+
+    try {
+      return fetch.get(populateTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       logException(e);
+    } catch (ExecutionException e) {
+      logException(e.getCause());
+    } catch (TimeoutException e) {
+      abandonedWaitCount.incrementAndGet();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Gave up waiting for the JMX request to " + spec + " after "
+            + populateTimeout + " ms");
+      }
     }
-    return resource;
+    return null;
   }
 
   /**
-   * Hadoop-specific metrics fetching
+   * Read the JMX beans from the given URL, recording the endpoint statistics.
    */
-  private void getHadoopMetricValue(InputStream in, Set<String> ids,
-                       Resource resource, Request request, Ticket ticket) throws IOException {
-    JMXMetricHolder metricHolder = jmxObjectReader.readValue(in);
+  private Map<String, Map<String, Object>> fetchCategories(String spec, String hostName, String port)
+      throws IOException {
+
+    EndpointStatistics statistics = getEndpointStatistics(hostName + ":" + port);
+    statistics.inFlight.incrementAndGet();
+    long start = System.currentTimeMillis();
+    boolean success = false;
+
+    try {
+      InputStream in = streamProvider.readFrom(spec);
+      if (in == null) {
+        throw new IOException("No JMX response from " + spec);
+      }
+
+      try {
+        Map<String, Map<String, Object>> categories = readCategories(in);
+        success = true;
+        return categories;
+      } finally {
+        in.close();
+      }
+    } finally {
+      statistics.record(System.currentTimeMillis() - start, success);
+    }
+  }
 
+  /**
+   * Stream the beans of a JMX response, keeping each bean by its category
+   * without materializing the whole document first.
+   */
+  static Map<String, Map<String, Object>> readCategories(InputStream in) throws IOException {
     Map<String, Map<String, Object>> categories = new HashMap<String, Map<String, Object>>();
-    String componentName = (String) resource.getPropertyValue(componentNamePropertyId);
 
-    for (Map<String, Object> bean : metricHolder.getBeans()) {
-      String category = getCategory(bean);
-      if (category != null) {
-        categories.put(category, bean);
+    JsonParser parser = jmxJsonFactory.createJsonParser(in);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return categories;
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+
+        if (BEANS_KEY.equals(fieldName) && token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Map<String, Object> bean = parser.readValueAs(beanTypeReference);
+            String category = getCategory(bean);
+            if (category != null) {
+              categories.put(category, bean);
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
       }
+    } finally {
+      parser.close();
     }
+    return categories;
+  }
+
+  /**
+   * Hadoop-specific metrics fetching
+   */
+  private void getHadoopMetricValue(Map<String, Map<String, Object>> categories, Set<String> ids,
+                       Resource resource, Request request, Ticket ticket) {
+    String componentName = (String) resource.getPropertyValue(componentNamePropertyId);
 
     for (String propertyId : ids) {
       Map<String, PropertyInfo> propertyInfoMap = getPropertyInfoMap(componentName, propertyId);
@@ -362,7 +499,7 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
             Collections.singleton((String) resource.getPropertyValue(hostNamePropertyId));
   }
 
-  private String getCategory(Map<String, Object> bean) {
+  private static String getCategory(Map<String, Object> bean) {
     if (bean.containsKey(NAME_KEY)) {
       String name = (String) bean.get(NAME_KEY);
 
@@ -374,4 +511,130 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
     }
     return null;
   }
+
+  private static EndpointStatistics getEndpointStatistics(String endpoint) {
+    EndpointStatistics statistics = endpointStatistics.get(endpoint);
+    if (statistics == null) {
+      EndpointStatistics newStatistics = new EndpointStatistics();
+      statistics = endpointStatistics.putIfAbsent(endpoint, newStatistics);
+      if (statistics == null) {
+        statistics = newStatistics;
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Get the statistics of every JMX endpoint contacted so far.
+   *
+   * @return the statistics keyed by host and port
+   */
+  public static Map<String, EndpointStatistics> getEndpointStatistics() {
+    return Collections.<String, EndpointStatistics>unmodifiableMap(endpointStatistics);
+  }
+
+  /**
+   * Get the number of JMX fetches that were served by an identical request
+   * already in flight.
+   *
+   * @return the number of coalesced fetches
+   */
+  public static long getCoalescedRequestCount() {
+    return coalescedRequestCount.get();
+  }
+
+  /**
+   * Get the number of JMX fetches which were given up on after the populate
+   * timeout while waiting for an identical request in flight.
+   *
+   * @return the number of abandoned waits
+   */
+  public static long getAbandonedWaitCount() {
+    return abandonedWaitCount.get();
+  }
+
+  /**
+   * Get the JMX request statistics, for reporting.
+   *
+   * @return the coalesced and abandoned fetch counts and the statistics of
+   *         each endpoint keyed by host and port
+   */
+  public static Map<String, Object> getStatistics() {
+    Map<String, Object> endpoints = new TreeMap<String, Object>();
+    for (Map.Entry<String, EndpointStatistics> entry : endpointStatistics.entrySet()) {
+      EndpointStatistics statistics = entry.getValue();
+      Map<String, Object> endpoint = new LinkedHashMap<String, Object>();
+      endpoint.put("in_flight", statistics.getInFlightCount());
+      endpoint.put("requests", statistics.getRequestCount());
+      endpoint.put("failures", statistics.getFailureCount());
+      endpoint.put("avg_latency_ms", statistics.getAverageLatency());
+      endpoint.put("last_latency_ms", statistics.getLastLatency());
+      endpoints.put(entry.getKey(), endpoint);
+    }
+
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("coalesced_requests", getCoalescedRequestCount());
+    statistics.put("abandoned_waits", getAbandonedWaitCount());
+    statistics.put("endpoints", endpoints);
+    return statistics;
+  }
+
+  // ----- inner class : EndpointStatistics ----------------------------------
+
+  /**
+   * Request statistics for a single JMX endpoint.
+   */
+  public static class EndpointStatistics {
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private volatile long lastLatency = 0;
+
+    private void record(long latency, boolean success) {
+      inFlight.decrementAndGet();
+      requests.incrementAndGet();
+      totalLatency.addAndGet(latency);
+      lastLatency = latency;
+      if (!success) {
+        failures.incrementAndGet();
+      }
+    }
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    public long getInFlightCount() {
+      return inFlight.get();
+    }
+
+    /**
+     * @return the number of completed requests
+     */
+    public long getRequestCount() {
+      return requests.get();
+    }
+
+    /**
+     * @return the number of failed requests
+     */
+    public long getFailureCount() {
+      return failures.get();
+    }
+
+    /**
+     * @return the average request latency in milliseconds
+     */
+    public double getAverageLatency() {
+      long count = requests.get();
+      return count == 0 ? 0 : (double) totalLatency.get() / count;
+    }
+
+    /**
+     * @return the latency of the most recent request in milliseconds
+     */
+    public long getLastLatency() {
+      return lastLatency;
+    }
+  }
 }
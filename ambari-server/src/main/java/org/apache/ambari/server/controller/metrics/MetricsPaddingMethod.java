@@ -66,6 +66,13 @@ public class MetricsPaddingMethod {
 
     long intervalStartTime = longToMillis(temporalInfo.getStartTime());
     long intervalEndTime = longToMillis(temporalInfo.getEndTime());
+
+    // Downsampled data is not evenly spaced, keep the padding within budget
+    Integer maxPoints = temporalInfo.getMaxPoints();
+    if (maxPoints != null && maxPoints > 0) {
+      dataInterval = Math.max(dataInterval,
+        (intervalEndTime - intervalStartTime) / maxPoints);
+    }
     long dataStartTime = longToMillis(values.firstKey());
     long dataEndTime = longToMillis(values.lastKey());
 
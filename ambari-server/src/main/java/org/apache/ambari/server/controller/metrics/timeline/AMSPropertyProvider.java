@@ -33,6 +33,7 @@ import org.apache.ambari.server.controller.utilities.StreamProvider;
 import org.apache.ambari.server.state.StackId;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.http.client.utils.URIBuilder;
 import org.codehaus.jackson.map.AnnotationIntrospector;
@@ -266,6 +267,11 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
               if (metric.getMetricName() != null
                   && metric.getMetricValues() != null
                   && checkMetricName(patterns, metric.getMetricName())) {
+                // Collectors ignoring maxPoints return every datapoint
+                if (temporalInfo != null && temporalInfo.getMaxPoints() != null) {
+                  TimelineMetricDownsampler.downsample(metric,
+                    temporalInfo.getMaxPoints(), TimelineMetricDownsampler.Method.LTTB);
+                }
                 // Pad zeros or nulls if needed
                 metricsPaddingMethod.applyPaddingStrategy(metric, temporalInfo);
                 populateResource(resource, metric);
@@ -353,6 +359,11 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
         if (endTime != -1) {
           uriBuilder.setParameter("endTime", String.valueOf(endTime));
         }
+
+        Integer maxPoints = temporalInfo.getMaxPoints();
+        if (maxPoints != null) {
+          uriBuilder.setParameter("maxPoints", String.valueOf(maxPoints));
+        }
       }
     }
 
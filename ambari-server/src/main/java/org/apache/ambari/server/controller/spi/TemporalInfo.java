@@ -45,4 +45,12 @@ public interface TemporalInfo {
    * @return the step time in seconds
    */
   Long getStep();
+
+  /**
+   * Get the requested maximum number of data points of the temporal
+   * data.  Longer series are downsampled by the metrics source.
+   *
+   * @return the maximum number of data points, or null for all of them
+   */
+  Integer getMaxPoints();
 }
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * A stream provider which serves responses from a {@link MetricsResponseCache}
+ * and only calls the underlying provider on a cache miss.
+ * <p/>
+ * Only point-in-time requests are cached. Temporal requests carry a window
+ * which slides with the current time, so the same request is rarely made
+ * twice, and JMX requests are already shared between concurrent callers by
+ * the JMX property provider; both are read directly from the underlying
+ * provider.
+ */
+public class CachingStreamProvider implements StreamProvider {
+
+  /**
+   * The parameters which mark a Metrics Collector or Ganglia request as
+   * temporal.
+   */
+  private static final Set<String> TEMPORAL_PARAMETERS = Collections.unmodifiableSet(
+      new HashSet<String>(Arrays.asList("startTime", "endTime", "s")));
+
+  /**
+   * The path of the JMX servlet.
+   */
+  private static final String JMX_PATH = "/jmx";
+
+  private final StreamProvider streamProvider;
+
+  private final MetricsResponseCache cache;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a caching stream provider.
+   *
+   * @param streamProvider  the provider used on a cache miss
+   * @param cache           the response cache
+   */
+  public CachingStreamProvider(StreamProvider streamProvider, MetricsResponseCache cache) {
+    this.streamProvider = streamProvider;
+    this.cache          = cache;
+  }
+
+
+  // ----- StreamProvider ----------------------------------------------------
+
+  @Override
+  public InputStream readFrom(final String spec) throws IOException {
+    Callable<InputStream> source = new Callable<InputStream>() {
+      @Override
+      public InputStream call() throws Exception {
+        return streamProvider.readFrom(spec);
+      }
+    };
+    return isCacheable(spec, null) ? cache.get(spec, source) : cache.bypass(source);
+  }
+
+  @Override
+  public InputStream readFrom(final String spec, final String requestMethod, final String params)
+      throws IOException {
+    Callable<InputStream> source = new Callable<InputStream>() {
+      @Override
+      public InputStream call() throws Exception {
+        return streamProvider.readFrom(spec, requestMethod, params);
+      }
+    };
+    return isCacheable(spec, params) ?
+        cache.get(requestMethod + " " + spec + "?" + params, source) : cache.bypass(source);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  /**
+   * Determine whether or not the response to the given request may be cached.
+   *
+   * @param spec    the request URL
+   * @param params  the request parameters; may be {@code null}
+   *
+   * @return true if the request is a point-in-time, non-JMX request
+   */
+  static boolean isCacheable(String spec, String params) {
+    int queryStart = spec.indexOf('?');
+    String path  = queryStart == -1 ? spec : spec.substring(0, queryStart);
+    String query = queryStart == -1 ? null : spec.substring(queryStart + 1);
+
+    if (path.endsWith(JMX_PATH)) {
+      return false;
+    }
+    return !hasTemporalParameter(query) && !hasTemporalParameter(params);
+  }
+
+  private static boolean hasTemporalParameter(String query) {
+    if (query == null) {
+      return false;
+    }
+    for (String parameter : query.split("&")) {
+      int nameEnd = parameter.indexOf('=');
+      String name = nameEnd == -1 ? parameter : parameter.substring(0, nameEnd);
+      if (TEMPORAL_PARAMETERS.contains(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Cache of the responses returned by the metrics sources (JMX, Ganglia and
+ * the Metrics Collector), shared by all of the metrics property providers.
+ * <p/>
+ * Responses are keyed by the full request (URL, method and parameters), so
+ * only point-in-time requests are cached; see {@link CachingStreamProvider}
+ * for the requests which bypass the cache. Entries expire after a fixed time
+ * to live and are evicted once the total size of the cached responses exceeds
+ * the configured maximum. Concurrent requests for a response which is not
+ * cached share a single call to the source.
+ */
+@Singleton
+public class MetricsResponseCache {
+
+  /**
+   * The cached responses; {@code null} if the cache is disabled.
+   */
+  private volatile Cache<String, byte[]> cache = null;
+
+  /**
+   * The number of requests which were not eligible for caching.
+   */
+  private final AtomicLong bypassCount = new AtomicLong();
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a disabled cache.
+   */
+  public MetricsResponseCache() {
+  }
+
+  /**
+   * Create a cache from the given configuration.
+   *
+   * @param configuration  the configuration
+   */
+  @Inject
+  public MetricsResponseCache(Configuration configuration) {
+    init(configuration);
+  }
+
+
+  // ----- MetricsResponseCache ----------------------------------------------
+
+  /**
+   * Initialize with the given configuration.
+   *
+   * @param configuration  the configuration
+   */
+  public void init(Configuration configuration) {
+    if (configuration.isMetricsResponseCacheEnabled()) {
+      init(configuration.getMetricsResponseCacheTTL(),
+          configuration.getMetricsResponseCacheMaxSize() * 1024 * 1024);
+    } else {
+      cache = null;
+    }
+  }
+
+  /**
+   * Initialize the cache.
+   *
+   * @param ttl      the time, in milliseconds, that a response is cached
+   * @param maxSize  the maximum total size, in bytes, of the cached responses
+   */
+  public void init(long ttl, long maxSize) {
+    cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .maximumWeight(maxSize)
+        .weigher(new Weigher<String, byte[]>() {
+          @Override
+          public int weigh(String key, byte[] value) {
+            return key.length() + value.length;
+          }
+        })
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Determine whether or not responses are cached.
+   *
+   * @return true if the cache is enabled
+   */
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * Get the response for the given key, reading it from the given source if
+   * it is not cached.
+   *
+   * @param key     the key identifying the request
+   * @param source  the source of the response
+   *
+   * @return a stream over the response
+   *
+   * @throws IOException if the response can not be read from the source
+   */
+  public InputStream get(String key, final Callable<InputStream> source) throws IOException {
+    Cache<String, byte[]> responses = cache;
+    if (responses == null) {
+      return read(source);
+    }
+
+    try {
+      byte[] response = responses.get(key, new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          InputStream in = source.call();
+          if (in == null) {
+            throw new IOException("No response from the metrics source");
+          }
+
+          try {
+            return IOUtils.toByteArray(in);
+          } finally {
+            in.close();
+          }
+        }
+      });
+      return new ByteArrayInputStream(response);
+    } catch (ExecutionException e) {
+      throw toIOException(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw toIOException(e.getCause());
+    }
+  }
+
+  /**
+   * Read the response for a request which is not eligible for caching
+   * directly from the given source.
+   *
+   * @param source  the source of the response
+   *
+   * @return a stream over the response
+   *
+   * @throws IOException if the response can not be read from the source
+   */
+  public InputStream bypass(Callable<InputStream> source) throws IOException {
+    bypassCount.incrementAndGet();
+    return read(source);
+  }
+
+  /**
+   * Remove all of the cached responses.
+   */
+  public void invalidateAll() {
+    Cache<String, byte[]> responses = cache;
+    if (responses != null) {
+      responses.invalidateAll();
+    }
+  }
+
+
+  // ----- statistics --------------------------------------------------------
+
+  /**
+   * @return the number of requests served from the cache
+   */
+  public long getHitCount() {
+    Cache<String, byte[]> responses = cache;
+    return responses == null ? 0 : responses.stats().hitCount();
+  }
+
+  /**
+   * @return the number of requests which had to be read from the source,
+   *         including those which waited on a concurrent identical request
+   */
+  public long getMissCount() {
+    Cache<String, byte[]> responses = cache;
+    return responses == null ? 0 : responses.stats().missCount();
+  }
+
+  /**
+   * @return the number of responses evicted because of the size limit
+   */
+  public long getEvictionCount() {
+    Cache<String, byte[]> responses = cache;
+    return responses == null ? 0 : responses.stats().evictionCount();
+  }
+
+  /**
+   * @return the number of cached responses
+   */
+  public long getSize() {
+    Cache<String, byte[]> responses = cache;
+    return responses == null ? 0 : responses.size();
+  }
+
+  /**
+   * @return the number of requests which were not eligible for caching
+   */
+  public long getBypassCount() {
+    return bypassCount.get();
+  }
+
+  /**
+   * Gets the state of the cache.
+   *
+   * @return whether the cache is enabled, the hit, miss, eviction and bypass
+   *         counts and the number of cached responses
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("enabled", isEnabled());
+    statistics.put("hits", getHitCount());
+    statistics.put("misses", getMissCount());
+    statistics.put("evictions", getEvictionCount());
+    statistics.put("bypassed", getBypassCount());
+    statistics.put("size", getSize());
+    return statistics;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static InputStream read(Callable<InputStream> source) throws IOException {
+    try {
+      return source.call();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static IOException toIOException(Throwable throwable) {
+    if (throwable instanceof IOException) {
+      return (IOException) throwable;
+    }
+    return new IOException(throwable);
+  }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.ambari.server.EagerSingleton;
 import org.apache.ambari.server.events.MaintenanceModeEvent;
 import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex;
 import org.apache.ambari.server.orm.dao.AlertsDAO;
 import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
 import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
@@ -57,6 +58,12 @@ public class AlertMaintenanceModeListener {
   @Inject
   private AlertsDAO m_alertsDao = null;
 
+  /**
+   * Used for moving alerts into and out of the maintenance count.
+   */
+  @Inject
+  private AlertSummaryIndex m_summaryIndex = null;
+
   /**
    * Constructor.
    *
@@ -161,5 +168,9 @@ public class AlertMaintenanceModeListener {
 
     currentAlert.setMaintenanceState(maintenanceState);
     m_alertsDao.merge(currentAlert);
+
+    if (null != m_summaryIndex) {
+      m_summaryIndex.onMaintenanceChanged(currentAlert);
+    }
   }
 }
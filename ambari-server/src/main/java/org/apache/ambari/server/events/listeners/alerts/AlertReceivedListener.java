@@ -19,9 +19,14 @@ package org.apache.ambari.server.events.listeners.alerts;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.EagerSingleton;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.RootServiceResponseFactory.Services;
 import org.apache.ambari.server.events.AlertEvent;
 import org.apache.ambari.server.events.AlertReceivedEvent;
@@ -29,6 +34,7 @@ import org.apache.ambari.server.events.AlertStateChangeEvent;
 import org.apache.ambari.server.events.InitialAlertEvent;
 import org.apache.ambari.server.events.publishers.AlertEventPublisher;
 import org.apache.ambari.server.orm.dao.AlertDefinitionDAO;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex;
 import org.apache.ambari.server.orm.dao.AlertsDAO;
 import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
 import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
@@ -55,6 +61,14 @@ import com.google.inject.Singleton;
  * The {@link AlertReceivedListener} class handles {@link AlertReceivedEvent}
  * and updates the appropriate DAOs. It may also fire new
  * {@link AlertStateChangeEvent} when an {@link AlertState} change is detected.
+ * <p/>
+ * When alert write-behind is enabled, alerts whose state did not change are
+ * served from the state kept in memory by the {@link AlertsDAO} and their
+ * latest timestamp and text are written periodically. State changes are
+ * always persisted before the {@link AlertStateChangeEvent} is published.
+ * Nothing but the latest timestamp and text of unchanged alerts is held only
+ * in memory, so a restart loses at most one interval of those, and the state
+ * is read again from the database as alerts are received.
  */
 @Singleton
 @EagerSingleton
@@ -70,6 +84,12 @@ public class AlertReceivedListener {
   @Inject
   private AlertDefinitionDAO m_definitionDao;
 
+  /**
+   * Keeps the text of alerts received without a state change current.
+   */
+  @Inject
+  private AlertSummaryIndex m_summaryIndex;
+
   /**
    * Used for looking up whether an alert has a valid service/component/host
    */
@@ -81,15 +101,78 @@ public class AlertReceivedListener {
    */
   private AlertEventPublisher m_alertEventPublisher;
 
+  /**
+   * {@code true} if unchanged alerts only update the state kept in memory.
+   */
+  private final boolean m_writeBehindEnabled;
+
+  /**
+   * Periodically writes the unchanged alerts, or {@code null} if write-behind
+   * is disabled.
+   */
+  private final ScheduledExecutorService m_writeBehindExecutor;
+
   /**
    * Constructor.
    *
    * @param publisher
+   * @param configuration
    */
   @Inject
-  public AlertReceivedListener(AlertEventPublisher publisher) {
+  public AlertReceivedListener(AlertEventPublisher publisher,
+      Configuration configuration) {
     m_alertEventPublisher = publisher;
     m_alertEventPublisher.register(this);
+
+    m_writeBehindEnabled = configuration.isAlertWriteBehindEnabled();
+    if (m_writeBehindEnabled) {
+      long interval = configuration.getAlertWriteBehindInterval();
+      m_writeBehindExecutor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "alert-write-behind");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+      m_writeBehindExecutor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          flushLatestUpdates();
+        }
+      }, interval, interval, TimeUnit.MILLISECONDS);
+    } else {
+      m_writeBehindExecutor = null;
+    }
+  }
+
+  /**
+   * Stops the periodic write of unchanged alerts.
+   */
+  public void stop() {
+    if (null != m_writeBehindExecutor) {
+      m_writeBehindExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Writes the latest timestamp and text of the unchanged alerts received
+   * since the last write.
+   */
+  void flushLatestUpdates() {
+    try {
+      long start = System.currentTimeMillis();
+      int updated = m_alertsDao.flushLatestUpdates();
+
+      if (LOG.isDebugEnabled() && updated > 0) {
+        LOG.debug("Wrote the latest timestamp of {} unchanged alerts in {}ms",
+            updated, System.currentTimeMillis() - start);
+      }
+    } catch (Exception exception) {
+      LOG.warn("Unable to write the latest timestamp of unchanged alerts", exception);
+    }
   }
 
   /**
@@ -135,9 +218,20 @@ public class AlertReceivedListener {
       return;
     }
 
+    boolean noHost = StringUtils.isBlank(alert.getHostName()) || definition.isHostIgnored();
+
+    // the state is unchanged and known, so only the timestamp and text need
+    // to be written later
+    if (m_writeBehindEnabled
+        && m_alertsDao.updateLatestIfUnchanged(clusterId, alert.getName(),
+            noHost ? null : alert.getHostName(), alert.getState(),
+            alert.getTimestamp(), alert.getText())) {
+      return;
+    }
+
     AlertCurrentEntity current = null;
 
-    if (StringUtils.isBlank(alert.getHostName()) || definition.isHostIgnored()) {
+    if (noHost) {
       current = m_alertsDao.findCurrentByNameNoHost(clusterId, alert.getName());
     } else {
       current = m_alertsDao.findCurrentByHostAndName(clusterId, alert.getHostName(),
@@ -163,6 +257,7 @@ public class AlertReceivedListener {
       current.setLatestTimestamp(alert.getTimestamp());
       current.setLatestText(alert.getText());
       current = m_alertsDao.merge(current);
+      m_summaryIndex.onTextChanged(clusterId, current.getAlertId(), alert.getText());
     } else {
       if (LOG.isDebugEnabled()) {
         LOG.debug(
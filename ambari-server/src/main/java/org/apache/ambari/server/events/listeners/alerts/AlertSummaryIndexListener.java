@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.listeners.alerts;
+
+import org.apache.ambari.server.EagerSingleton;
+import org.apache.ambari.server.events.AlertStateChangeEvent;
+import org.apache.ambari.server.events.InitialAlertEvent;
+import org.apache.ambari.server.events.publishers.AlertEventPublisher;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The {@link AlertSummaryIndexListener} keeps the {@link AlertSummaryIndex} up
+ * to date as alerts are received for the first time and as they change state.
+ * Both events are published after the current alert has been written.
+ */
+@Singleton
+@EagerSingleton
+public class AlertSummaryIndexListener {
+
+  /**
+   * The in-memory alert counts.
+   */
+  @Inject
+  private AlertSummaryIndex m_summaryIndex;
+
+  /**
+   * Constructor.
+   *
+   * @param publisher
+   *          the publisher to register this listener with (not {@code null}).
+   */
+  @Inject
+  public AlertSummaryIndexListener(AlertEventPublisher publisher) {
+    publisher.register(this);
+  }
+
+  /**
+   * Counts an alert which was received for the first time.
+   *
+   * @param event
+   *          the event being handled.
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onInitialAlertEvent(InitialAlertEvent event) {
+    m_summaryIndex.onStateChanged(event.getCurrentAlert());
+  }
+
+  /**
+   * Moves an alert to the count of its new state.
+   *
+   * @param event
+   *          the event being handled.
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onAlertStateChangeEvent(AlertStateChangeEvent event) {
+    m_summaryIndex.onStateChanged(event.getCurrentAlert());
+  }
+}
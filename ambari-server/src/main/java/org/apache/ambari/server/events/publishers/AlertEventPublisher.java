@@ -17,22 +17,22 @@
  */
 package org.apache.ambari.server.events.publishers;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
+import java.util.Map;
 
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.events.AlertEvent;
+import org.apache.ambari.server.state.Alert;
 
-import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.base.Function;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
  * The {@link AlertEventPublisher} is used to wrap a customized instance of an
- * {@link AsyncEventBus} that is only used for alerts. In general, Ambari should
+ * {@link PartitionedEventBus} that is only used for alerts. In general, Ambari should
  * have its own application-wide event bus for application events (session
  * information, state changes, etc), but since alerts can contain many events
  * being published concurrently, it makes sense to encapsulate a specific alert
@@ -48,16 +48,20 @@ public final class AlertEventPublisher {
 
   /**
    * Constructor.
+   *
+   * @param configuration
+   *          the configuration used to size the lanes of the bus.
    */
-  public AlertEventPublisher() {
-    // create a fixed executor that is unbounded for now and will run rejected
-    // requests in the calling thread to prevent loss of alert handling
-    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L,
-        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
-        new AlertEventBusThreadFactory(),
-        new ThreadPoolExecutor.CallerRunsPolicy());
-
-    m_eventBus = new AsyncEventBus(executor);
+  @Inject
+  public AlertEventPublisher(Configuration configuration) {
+    // events for the same alert are dispatched in order on one lane; a full
+    // lane applies the configured overflow policy instead of growing without
+    // bound
+    m_eventBus = new PartitionedEventBus("alert-event-bus",
+        configuration.getAlertEventPublisherLaneCount(),
+        configuration.getAlertEventPublisherQueueSize(),
+        configuration.getAlertEventPublisherOverflowPolicy(),
+        new AlertPartitionKeyFunction());
   }
 
   /**
@@ -82,27 +86,44 @@ public final class AlertEventPublisher {
   }
 
   /**
-   * A custom {@link ThreadFactory} for the threads that will handle published
-   * {@link AlertEvent}. Threads created will have slightly reduced priority
-   * since {@link AlertEvent} instances are not critical to the system.
+   * Gets the queue depths, overflow counts and latencies of the alert event
+   * lanes.
+   *
+   * @return the statistics, or {@code null} if the bus is not partitioned.
    */
-  private static final class AlertEventBusThreadFactory implements
-      ThreadFactory {
+  public Map<String, Object> getStatistics() {
+    EventBus eventBus = m_eventBus;
+    if (eventBus instanceof PartitionedEventBus) {
+      return ((PartitionedEventBus) eventBus).getStatistics();
+    }
 
-    private static final AtomicInteger s_threadIdPool = new AtomicInteger(1);
+    return null;
+  }
+
+  /**
+   * Partitions {@link AlertEvent}s by cluster, alert definition and host so
+   * that the events of any single alert are processed in order.
+   */
+  private static final class AlertPartitionKeyFunction implements
+      Function<Object, Object> {
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Thread newThread(Runnable r) {
-      Thread thread = new Thread(r, "alert-event-bus-"
-          + s_threadIdPool.getAndIncrement());
+    public Object apply(Object event) {
+      if (!(event instanceof AlertEvent)) {
+        return null;
+      }
 
-      thread.setDaemon(false);
-      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      AlertEvent alertEvent = (AlertEvent) event;
+      Alert alert = alertEvent.getAlert();
+      if (null == alert) {
+        return alertEvent.getClusterId();
+      }
 
-      return thread;
+      return Arrays.asList(alertEvent.getClusterId(), alert.getName(),
+          alert.getHostName());
     }
   }
 }
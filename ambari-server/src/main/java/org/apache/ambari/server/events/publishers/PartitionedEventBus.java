@@ -0,0 +1,383 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.eventbus.EventBus;
+
+/**
+ * The {@link PartitionedEventBus} is an {@link EventBus} which dispatches
+ * events on a fixed number of lanes. Each lane is a single thread with a
+ * bounded queue and every event is assigned to a lane by the hash of its
+ * partition key, so events with the same key are always delivered in the order
+ * in which they were posted while events with different keys are delivered
+ * concurrently.
+ * <p/>
+ * Subscribers are shared by all of the lanes; those which are not annotated
+ * with {@link com.google.common.eventbus.AllowConcurrentEvents} are still
+ * invoked by one lane at a time.
+ */
+public class PartitionedEventBus extends EventBus {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedEventBus.class);
+
+  /**
+   * The action taken when an event is posted to a lane whose queue is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * The posting thread waits until the lane has room for the event. This
+     * preserves the ordering of events. An event posted by a subscriber, that
+     * is from one of the lane threads, is delivered on that thread instead
+     * since waiting could deadlock the lane which would have to make room.
+     */
+    BLOCK,
+
+    /**
+     * The event is delivered on the posting thread. Events with the same key
+     * which are still queued may be delivered after it.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The event is dropped.
+     */
+    DISCARD
+  }
+
+  private final Function<Object, Object> m_partitionKeyFunction;
+  private final OverflowPolicy m_overflowPolicy;
+  private final ThreadPoolExecutor[] m_lanes;
+
+  /**
+   * The lane whose thread is the current thread, or {@code null} if the
+   * current thread is not a lane thread of this bus.
+   */
+  private final ThreadLocal<ThreadPoolExecutor> m_currentLane = new ThreadLocal<ThreadPoolExecutor>();
+
+  /**
+   * Statistics.
+   */
+  private final AtomicLong m_postedCount = new AtomicLong();
+  private final AtomicLong m_dispatchedCount = new AtomicLong();
+  private final AtomicLong m_overflowCount = new AtomicLong();
+  private final AtomicLong m_discardedCount = new AtomicLong();
+  private final AtomicLong m_totalQueueTime = new AtomicLong();
+  private final AtomicLong m_maxQueueTime = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param identifier
+   *          the name of the bus, used to name the lane threads.
+   * @param laneCount
+   *          the number of lanes.
+   * @param queueSize
+   *          the maximum number of events waiting on each lane.
+   * @param overflowPolicy
+   *          the action taken when a lane is full, or {@code null} for
+   *          {@link OverflowPolicy#BLOCK}.
+   * @param partitionKeyFunction
+   *          returns the key of an event; events with equal keys are
+   *          dispatched on the same lane. A {@code null} key is allowed.
+   */
+  public PartitionedEventBus(String identifier, int laneCount, int queueSize,
+      OverflowPolicy overflowPolicy, Function<Object, Object> partitionKeyFunction) {
+    super(identifier);
+
+    m_partitionKeyFunction = partitionKeyFunction;
+    m_overflowPolicy = null == overflowPolicy ? OverflowPolicy.BLOCK : overflowPolicy;
+    m_lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+
+    RejectedExecutionHandler overflowHandler = new OverflowHandler();
+    for (int i = 0; i < m_lanes.length; i++) {
+      m_lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+          new LaneThreadFactory(identifier + "-" + i, i), overflowHandler);
+    }
+  }
+
+  /**
+   * Queues the event on the lane of its partition key. The event is delivered
+   * to the subscribers by that lane's thread.
+   *
+   * @param event
+   *          the event to post.
+   */
+  @Override
+  public void post(Object event) {
+    m_postedCount.incrementAndGet();
+    m_lanes[getLane(event)].execute(new DispatchTask(event));
+  }
+
+  /**
+   * Stops the lanes after the events which are already queued have been
+   * delivered. Events posted afterward are discarded.
+   */
+  public void shutdown() {
+    for (ThreadPoolExecutor lane : m_lanes) {
+      lane.shutdown();
+    }
+  }
+
+  /**
+   * Gets the lane that the event is dispatched on.
+   *
+   * @param event
+   *          the event.
+   * @return the index of the lane.
+   */
+  int getLane(Object event) {
+    Object key = m_partitionKeyFunction.apply(event);
+    if (null == key) {
+      return 0;
+    }
+
+    // spread the high bits since keys built from a few small values tend to
+    // differ only in the low ones
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return (hash & Integer.MAX_VALUE) % m_lanes.length;
+  }
+
+  /**
+   * @return the number of lanes.
+   */
+  public int getLaneCount() {
+    return m_lanes.length;
+  }
+
+  /**
+   * @return the number of events waiting on each lane.
+   */
+  public List<Integer> getLaneQueueDepths() {
+    List<Integer> depths = new ArrayList<Integer>(m_lanes.length);
+    for (ThreadPoolExecutor lane : m_lanes) {
+      depths.add(lane.getQueue().size());
+    }
+
+    return depths;
+  }
+
+  /**
+   * @return the number of events waiting on all of the lanes.
+   */
+  public int getQueueDepth() {
+    int depth = 0;
+    for (ThreadPoolExecutor lane : m_lanes) {
+      depth += lane.getQueue().size();
+    }
+
+    return depth;
+  }
+
+  /**
+   * @return the number of events posted.
+   */
+  public long getPostedCount() {
+    return m_postedCount.get();
+  }
+
+  /**
+   * @return the number of events delivered to the subscribers.
+   */
+  public long getDispatchedCount() {
+    return m_dispatchedCount.get();
+  }
+
+  /**
+   * @return the number of events posted while their lane was full.
+   */
+  public long getOverflowCount() {
+    return m_overflowCount.get();
+  }
+
+  /**
+   * @return the number of events dropped, either because of the
+   *         {@link OverflowPolicy#DISCARD} policy or because the bus was shut
+   *         down.
+   */
+  public long getDiscardedCount() {
+    return m_discardedCount.get();
+  }
+
+  /**
+   * @return the average time, in milliseconds, that an event waited on its
+   *         lane before being delivered.
+   */
+  public double getAverageQueueTime() {
+    long dispatched = m_dispatchedCount.get();
+    return dispatched == 0 ? 0
+        : (double) TimeUnit.NANOSECONDS.toMicros(m_totalQueueTime.get()) / 1000 / dispatched;
+  }
+
+  /**
+   * @return the longest time, in milliseconds, that an event waited on its
+   *         lane before being delivered.
+   */
+  public double getMaxQueueTime() {
+    return (double) TimeUnit.NANOSECONDS.toMicros(m_maxQueueTime.get()) / 1000;
+  }
+
+  /**
+   * Gets all of the statistics of this bus keyed by name.
+   *
+   * @return the statistics (never {@code null}).
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("lanes", getLaneCount());
+    statistics.put("overflow_policy", m_overflowPolicy.name());
+    statistics.put("queue_depth", getQueueDepth());
+    statistics.put("lane_queue_depths", getLaneQueueDepths());
+    statistics.put("posted", getPostedCount());
+    statistics.put("dispatched", getDispatchedCount());
+    statistics.put("overflowed", getOverflowCount());
+    statistics.put("discarded", getDiscardedCount());
+    statistics.put("average_queue_time_ms", getAverageQueueTime());
+    statistics.put("max_queue_time_ms", getMaxQueueTime());
+    return statistics;
+  }
+
+  /**
+   * Delivers a single event to the subscribers and records how long it was
+   * queued.
+   */
+  private final class DispatchTask implements Runnable {
+    private final Object m_event;
+    private final long m_posted = System.nanoTime();
+
+    private DispatchTask(Object event) {
+      m_event = event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      long queueTime = System.nanoTime() - m_posted;
+      m_totalQueueTime.addAndGet(queueTime);
+
+      long max = m_maxQueueTime.get();
+      while (queueTime > max && !m_maxQueueTime.compareAndSet(max, queueTime)) {
+        max = m_maxQueueTime.get();
+      }
+
+      m_dispatchedCount.incrementAndGet();
+      PartitionedEventBus.super.post(m_event);
+    }
+  }
+
+  /**
+   * Applies the {@link OverflowPolicy} to events which could not be queued on
+   * their lane.
+   */
+  private final class OverflowHandler implements RejectedExecutionHandler {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor lane) {
+      if (lane.isShutdown()) {
+        m_discardedCount.incrementAndGet();
+        return;
+      }
+
+      m_overflowCount.incrementAndGet();
+
+      switch (m_overflowPolicy) {
+        case BLOCK:
+          // a lane thread can't wait for room on a lane, including its own,
+          // since it may be the one which would make that room
+          if (null != m_currentLane.get()) {
+            task.run();
+            break;
+          }
+
+          try {
+            lane.getQueue().put(task);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            m_discardedCount.incrementAndGet();
+            LOG.warn("Interrupted while waiting to queue an event; the event was discarded");
+          }
+          break;
+        case CALLER_RUNS:
+          task.run();
+          break;
+        case DISCARD:
+          m_discardedCount.incrementAndGet();
+          LOG.debug("Discarding an event since its lane is full");
+          break;
+      }
+    }
+  }
+
+  /**
+   * A {@link ThreadFactory} for the single thread of a lane. Threads have
+   * slightly reduced priority since the events dispatched on them are not
+   * critical to the system.
+   */
+  private final class LaneThreadFactory implements ThreadFactory {
+    private final String m_name;
+    private final int m_lane;
+
+    private LaneThreadFactory(String name, int lane) {
+      m_name = name;
+      m_lane = lane;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(final Runnable r) {
+      Runnable laneRunnable = new Runnable() {
+        @Override
+        public void run() {
+          m_currentLane.set(m_lanes[m_lane]);
+          r.run();
+        }
+      };
+
+      Thread thread = new Thread(laneRunnable, m_name);
+      thread.setDaemon(false);
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.notifications;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * The {@link TargetDispatchQueue} holds the notifications waiting to be
+ * delivered to a single alert target. Notifications are run on a shared
+ * {@link Executor}, but no more than the configured number of a single target
+ * are run at the same time and, optionally, no more than the configured
+ * number per second. This keeps a slow or unreachable target from occupying
+ * all of the dispatch threads and a burst of notifications from flooding a
+ * target.
+ * <p/>
+ * The queue is bounded; callers are expected to check
+ * {@link #getRemainingCapacity()} and keep work which does not fit for later.
+ */
+public class TargetDispatchQueue {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(TargetDispatchQueue.class);
+
+  private final String m_name;
+  private final Executor m_executor;
+  private final int m_concurrency;
+  private final int m_capacity;
+  private final RateLimiter m_rateLimiter;
+
+  /**
+   * The waiting notifications. Guarded by {@code this}.
+   */
+  private final Queue<QueuedTask> m_queue = new ArrayDeque<QueuedTask>();
+
+  /**
+   * The number of notifications being run. Guarded by {@code this}.
+   */
+  private int m_active = 0;
+
+  /**
+   * Statistics.
+   */
+  private final AtomicLong m_deliveredCount = new AtomicLong();
+  private final AtomicLong m_rejectedCount = new AtomicLong();
+  private final AtomicLong m_totalLatency = new AtomicLong();
+  private final AtomicLong m_maxLatency = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param name
+   *          the name of the target, used for logging and statistics.
+   * @param executor
+   *          the executor which runs the notifications (not {@code null}).
+   * @param concurrency
+   *          the maximum number of notifications run at the same time.
+   * @param capacity
+   *          the maximum number of waiting notifications.
+   * @param rate
+   *          the maximum number of notifications started per second, or
+   *          {@code 0} for no limit.
+   */
+  public TargetDispatchQueue(String name, Executor executor, int concurrency,
+      int capacity, double rate) {
+    m_name = name;
+    m_executor = executor;
+    m_concurrency = Math.max(1, concurrency);
+    m_capacity = Math.max(1, capacity);
+    m_rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+  }
+
+  /**
+   * Queues a notification for delivery.
+   *
+   * @param runnable
+   *          the notification to run (not {@code null}).
+   * @return {@code true} if the notification was queued, {@code false} if the
+   *         queue is full.
+   */
+  public boolean offer(Runnable runnable) {
+    synchronized (this) {
+      if (m_queue.size() >= m_capacity) {
+        m_rejectedCount.incrementAndGet();
+        return false;
+      }
+
+      m_queue.add(new QueuedTask(runnable));
+    }
+
+    schedule();
+    return true;
+  }
+
+  /**
+   * @return the number of notifications which can still be queued.
+   */
+  public synchronized int getRemainingCapacity() {
+    return m_capacity - m_queue.size();
+  }
+
+  /**
+   * @return the number of notifications waiting to be run.
+   */
+  public synchronized int getBacklog() {
+    return m_queue.size();
+  }
+
+  /**
+   * @return the number of notifications being run.
+   */
+  public synchronized int getActiveCount() {
+    return m_active;
+  }
+
+  /**
+   * @return {@code true} if nothing is waiting or being run.
+   */
+  public synchronized boolean isIdle() {
+    return m_queue.isEmpty() && m_active == 0;
+  }
+
+  /**
+   * @return the number of notifications which were run.
+   */
+  public long getDeliveredCount() {
+    return m_deliveredCount.get();
+  }
+
+  /**
+   * @return the number of notifications refused because the queue was full.
+   */
+  public long getRejectedCount() {
+    return m_rejectedCount.get();
+  }
+
+  /**
+   * @return the average time, in milliseconds, from queuing a notification
+   *         until it finished running.
+   */
+  public double getAverageLatency() {
+    long delivered = m_deliveredCount.get();
+    return delivered == 0 ? 0
+        : (double) TimeUnit.NANOSECONDS.toMicros(m_totalLatency.get()) / 1000 / delivered;
+  }
+
+  /**
+   * @return the longest time, in milliseconds, from queuing a notification
+   *         until it finished running.
+   */
+  public double getMaxLatency() {
+    return (double) TimeUnit.NANOSECONDS.toMicros(m_maxLatency.get()) / 1000;
+  }
+
+  /**
+   * Gets all of the statistics of this queue keyed by name.
+   *
+   * @return the statistics (never {@code null}).
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("name", m_name);
+    statistics.put("backlog", getBacklog());
+    statistics.put("active", getActiveCount());
+    statistics.put("delivered", getDeliveredCount());
+    statistics.put("rejected", getRejectedCount());
+    statistics.put("average_latency_ms", getAverageLatency());
+    statistics.put("max_latency_ms", getMaxLatency());
+    return statistics;
+  }
+
+  /**
+   * Starts workers until either the concurrency limit is reached or there is
+   * nothing left to run.
+   */
+  private void schedule() {
+    while (true) {
+      synchronized (this) {
+        if (m_active >= m_concurrency || m_queue.isEmpty()) {
+          return;
+        }
+
+        m_active++;
+      }
+
+      try {
+        m_executor.execute(new Worker());
+      } catch (RejectedExecutionException exception) {
+        synchronized (this) {
+          m_active--;
+        }
+
+        LOG.warn("Unable to start delivering notifications to {}", m_name,
+            exception);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs the oldest waiting notification of the target. Each worker runs a
+   * single notification and then schedules the next one, which places it
+   * behind the work of other targets on a shared executor.
+   */
+  private final class Worker implements Runnable {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      QueuedTask task;
+      synchronized (TargetDispatchQueue.this) {
+        task = m_queue.poll();
+      }
+
+      try {
+        if (null != task) {
+          if (null != m_rateLimiter) {
+            m_rateLimiter.acquire();
+          }
+
+          run(task);
+        }
+      } finally {
+        synchronized (TargetDispatchQueue.this) {
+          m_active--;
+        }
+
+        schedule();
+      }
+    }
+
+    private void run(QueuedTask task) {
+      try {
+        task.m_runnable.run();
+      } catch (RuntimeException exception) {
+        LOG.error("Unable to deliver a notification to {}", m_name, exception);
+      } finally {
+        long latency = System.nanoTime() - task.m_queued;
+        m_totalLatency.addAndGet(latency);
+
+        long max = m_maxLatency.get();
+        while (latency > max && !m_maxLatency.compareAndSet(max, latency)) {
+          max = m_maxLatency.get();
+        }
+
+        m_deliveredCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * A notification along with the time it was queued.
+   */
+  private static final class QueuedTask {
+    private final Runnable m_runnable;
+    private final long m_queued = System.nanoTime();
+
+    private QueuedTask(Runnable runnable) {
+      m_runnable = runnable;
+    }
+  }
+}
@@ -17,10 +17,17 @@
  */
 package org.apache.ambari.server.notifications.dispatchers;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Timer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.mail.AuthenticationFailedException;
 import javax.mail.Authenticator;
@@ -47,14 +54,13 @@ import com.google.inject.Singleton;
 
 /**
  * The {@link EmailDispatcher} class is used to dispatch {@link Notification}
- * via JavaMail. This class currently does not attempt to reuse an existing
- * {@link Session} or {@link Transport} since each {@link Notification} could
- * have a different target server with different properties.
- * <p/>
- * In the future, this class could keep various {@link Transport} instances open
- * on a {@link Timer}, but those instances would need to be hashed so that the
- * proper instance is retrieved from the properties of the incoming
- * {@link Notification}.
+ * via JavaMail. Connected {@link Transport} instances are kept in a pool keyed
+ * by the SMTP properties and credentials of the {@link Notification} so that
+ * notifications to the same server do not each have to connect and
+ * authenticate. A connection which has been idle for longer than
+ * {@link #IDLE_TIMEOUT} is closed instead of being reused, since SMTP servers
+ * drop idle clients, and a connection which fails is never returned to the
+ * pool.
  */
 @Singleton
 public class EmailDispatcher implements NotificationDispatcher {
@@ -64,6 +70,23 @@ public class EmailDispatcher implements NotificationDispatcher {
    */
   private static final Logger LOG = LoggerFactory.getLogger(EmailDispatcher.class);
 
+  /**
+   * The time, in milliseconds, after which an idle connection is closed.
+   */
+  static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+  /**
+   * The maximum number of idle connections kept for each server.
+   */
+  static final int MAX_IDLE_CONNECTIONS = 4;
+
+  /**
+   * The idle connections keyed by the properties and credentials they were
+   * created with.
+   */
+  private final ConcurrentMap<List<Object>, ConcurrentLinkedQueue<PooledTransport>> m_pool =
+      new ConcurrentHashMap<List<Object>, ConcurrentLinkedQueue<PooledTransport>>();
+
   /**
    * {@inheritDoc}
    */
@@ -114,19 +137,18 @@ public class EmailDispatcher implements NotificationDispatcher {
       return;
     }
 
-    // create a simple email authentication for username/password
-    final Session session;
-    EmailAuthenticator authenticator = null;
-
-    if (null != notification.Credentials) {
-      authenticator = new EmailAuthenticator(notification.Credentials);
-    }
+    List<Object> key = Arrays.<Object> asList(
+        new TreeMap<String, String>(notification.DispatchProperties),
+        null == notification.Credentials ? null : notification.Credentials.UserName,
+        null == notification.Credentials ? null : notification.Credentials.Password);
 
-    session = Session.getInstance(properties, authenticator);
+    PooledTransport pooled = null;
 
     try {
+      pooled = borrowTransport(key, properties, notification.Credentials);
+
       // !!! at some point in the future we can worry about multipart
-      MimeMessage message = new MimeMessage(session);
+      MimeMessage message = new MimeMessage(pooled.m_session);
 
       for (Recipient recipient : notification.Recipients) {
         InternetAddress address = new InternetAddress(recipient.Identifier);
@@ -135,8 +157,11 @@ public class EmailDispatcher implements NotificationDispatcher {
 
       message.setSubject(notification.Subject);
       message.setText(notification.Body, "UTF-8", "html");
+      message.saveChanges();
 
-      Transport.send(message);
+      pooled.m_transport.sendMessage(message, message.getAllRecipients());
+      returnTransport(key, pooled);
+      pooled = null;
 
       if (LOG.isDebugEnabled()) {
         LOG.debug("Successfully dispatched email to {}",
@@ -155,14 +180,130 @@ public class EmailDispatcher implements NotificationDispatcher {
         notification.Callback.onFailure(notification.CallbackIds);
       }
     } finally {
-      try {
-        session.getTransport().close();
-      } catch (MessagingException me) {
-        LOG.warn("Dispatcher unable to close SMTP transport", me);
+      // the connection is in an unknown state after a failure
+      if (null != pooled) {
+        close(pooled.m_transport);
       }
     }
   }
 
+  /**
+   * Gets a connected {@link Transport} from the pool, closing any which have
+   * been idle for too long, or connects a new one.
+   *
+   * @param key
+   *          the pool key.
+   * @param properties
+   *          the JavaMail properties.
+   * @param credentials
+   *          the credentials, or {@code null} if none.
+   * @return the connected transport (never {@code null}).
+   * @throws MessagingException
+   *           if a new connection could not be made.
+   */
+  private PooledTransport borrowTransport(List<Object> key, Properties properties,
+      DispatchCredentials credentials) throws MessagingException {
+    ConcurrentLinkedQueue<PooledTransport> idle = m_pool.get(key);
+    if (null != idle) {
+      long now = System.currentTimeMillis();
+      PooledTransport pooled;
+      while (null != (pooled = idle.poll())) {
+        if (now - pooled.m_lastUsed < IDLE_TIMEOUT && pooled.m_transport.isConnected()) {
+          return pooled;
+        }
+
+        close(pooled.m_transport);
+      }
+    }
+
+    // create a simple email authentication for username/password
+    EmailAuthenticator authenticator = null;
+    if (null != credentials) {
+      authenticator = new EmailAuthenticator(credentials);
+    }
+
+    Session session = Session.getInstance(properties, authenticator);
+    return new PooledTransport(session, connect(session));
+  }
+
+  /**
+   * Connects a new {@link Transport} for the session.
+   *
+   * @param session
+   *          the session holding the SMTP properties.
+   * @return the connected transport.
+   * @throws MessagingException
+   *           if the transport could not connect.
+   */
+  protected Transport connect(Session session) throws MessagingException {
+    Transport transport = session.getTransport();
+    transport.connect();
+    return transport;
+  }
+
+  /**
+   * Returns a connection to the pool after a successful send, closing it
+   * instead if enough are already idle.
+   *
+   * @param key
+   *          the pool key.
+   * @param pooled
+   *          the connection.
+   */
+  private void returnTransport(List<Object> key, PooledTransport pooled) {
+    ConcurrentLinkedQueue<PooledTransport> idle = m_pool.get(key);
+    if (null == idle) {
+      idle = new ConcurrentLinkedQueue<PooledTransport>();
+      ConcurrentLinkedQueue<PooledTransport> existing = m_pool.putIfAbsent(key, idle);
+      if (null != existing) {
+        idle = existing;
+      }
+    }
+
+    if (idle.size() >= MAX_IDLE_CONNECTIONS) {
+      close(pooled.m_transport);
+      return;
+    }
+
+    pooled.m_lastUsed = System.currentTimeMillis();
+    idle.add(pooled);
+  }
+
+  /**
+   * Closes all idle connections.
+   */
+  public void closeIdleTransports() {
+    for (Iterator<ConcurrentLinkedQueue<PooledTransport>> iterator = m_pool.values().iterator(); iterator.hasNext();) {
+      ConcurrentLinkedQueue<PooledTransport> idle = iterator.next();
+      iterator.remove();
+
+      PooledTransport pooled;
+      while (null != (pooled = idle.poll())) {
+        close(pooled.m_transport);
+      }
+    }
+  }
+
+  /**
+   * @return the number of idle connections in the pool.
+   */
+  int getIdleTransportCount() {
+    int count = 0;
+    for (ConcurrentLinkedQueue<PooledTransport> idle : m_pool.values()) {
+      count += idle.size();
+    }
+
+    return count;
+  }
+
+  private static void close(Transport transport) {
+    try {
+      transport.close();
+    } catch (MessagingException me) {
+      LOG.warn("Dispatcher unable to close SMTP transport", me);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -205,6 +346,21 @@ public class EmailDispatcher implements NotificationDispatcher {
     return session.getTransport();
   }
 
+  /**
+   * A connected {@link Transport} along with its {@link Session} and the last
+   * time it was used.
+   */
+  private static final class PooledTransport {
+    private final Session m_session;
+    private final Transport m_transport;
+    private volatile long m_lastUsed = System.currentTimeMillis();
+
+    private PooledTransport(Session session, Transport transport) {
+      m_session = session;
+      m_transport = transport;
+    }
+  }
+
   /**
    * The {@link EmailAuthenticator} class is used to provide a username and
    * password combination to an SMTP server.
@@ -56,6 +56,8 @@ import com.google.inject.Singleton;
 
 /**
  * The {@link SNMPDispatcher} class is used to dispatch {@link Notification} via SNMP.
+ * A single {@link Snmp} session, and with it a single UDP socket, is shared by
+ * all dispatches; it is only replaced after it fails to send.
  */
 @Singleton
 public class SNMPDispatcher implements NotificationDispatcher {
@@ -82,6 +84,10 @@ public class SNMPDispatcher implements NotificationDispatcher {
   public static final String SECURITY_PRIV_PASSPHRASE_PROPERTY = "ambari.dispatch.snmp.security.priv.passphrase";
   public static final String SECURITY_LEVEL_PROPERTY = "ambari.dispatch.snmp.security.level";
 
+  /**
+   * The shared session, or {@code null} if it must be created. Guarded by
+   * {@code this}.
+   */
   private Snmp snmp;
 
   public SNMPDispatcher(Snmp snmp) {
@@ -115,7 +121,6 @@ public class SNMPDispatcher implements NotificationDispatcher {
   public void dispatch(Notification notification) {
     LOG.info("Sending SNMP trap: {}", notification.Subject);
     try {
-      snmp = new Snmp(new DefaultUdpTransportMapping());
       SnmpVersion snmpVersion = getSnmpVersion(notification.DispatchProperties);
       sendTraps(notification, snmpVersion);
       successCallback(notification);
@@ -196,11 +201,44 @@ public class SNMPDispatcher implements NotificationDispatcher {
   protected void sendTraps(Notification notification, SnmpVersion snmpVersion) throws InvalidSnmpConfigurationException, IOException {
     PDU trap = prepareTrap(notification, snmpVersion);
     String udpPort = getDispatchProperty(notification.DispatchProperties, PORT_PROPERTY);
+    Snmp session = getSnmp();
     for (Recipient recipient : getNotificationRecipients(notification)) {
       String address = recipient.Identifier;
       Target target = createTrapTarget(notification, snmpVersion);
       target.setAddress(new UdpAddress(address + "/" + udpPort));
-      snmp.send(trap, target);
+      try {
+        session.send(trap, target);
+      } catch (IOException ex) {
+        closeSnmp(session);
+        throw ex;
+      }
+    }
+  }
+
+  /**
+   * Gets the shared session, creating it if needed.
+   * @return the session
+   * @throws IOException if the UDP socket could not be opened
+   */
+  protected synchronized Snmp getSnmp() throws IOException {
+    if (snmp == null) {
+      snmp = new Snmp(new DefaultUdpTransportMapping());
+    }
+    return snmp;
+  }
+
+  /**
+   * Closes a session which failed so that the next dispatch creates a new one.
+   * @param session the session which failed
+   */
+  private synchronized void closeSnmp(Snmp session) {
+    if (snmp == session) {
+      snmp = null;
+    }
+    try {
+      session.close();
+    } catch (IOException ex) {
+      LOG.warn("Unable to close SNMP session", ex);
     }
   }
 
@@ -220,17 +258,22 @@ public class SNMPDispatcher implements NotificationDispatcher {
       return communityTarget;
     } else {
       OctetString userName = new OctetString(getDispatchProperty(notification.DispatchProperties, SECURITY_USERNAME_PROPERTY));
-      if (snmp.getUSM() == null) {
-        // provide User-based Security Model (USM) with user specified
-        USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
-        // authPassphraseProperty and privPassphraseProperty can be null for NoAuthNoPriv security level
-        String authPassphraseProperty = notification.DispatchProperties.get(SECURITY_AUTH_PASSPHRASE_PROPERTY);
-        String privPassphraseProperty = notification.DispatchProperties.get(SECURITY_PRIV_PASSPHRASE_PROPERTY);
-        OctetString authPassphrase = authPassphraseProperty != null ? new OctetString(authPassphraseProperty) : null;
-        OctetString privPassphrase = privPassphraseProperty != null ? new OctetString(privPassphraseProperty) : null;
-        UsmUser usmUser = new UsmUser(userName, AuthMD5.ID, authPassphrase, PrivDES.ID, privPassphrase);
+      // authPassphraseProperty and privPassphraseProperty can be null for NoAuthNoPriv security level
+      String authPassphraseProperty = notification.DispatchProperties.get(SECURITY_AUTH_PASSPHRASE_PROPERTY);
+      String privPassphraseProperty = notification.DispatchProperties.get(SECURITY_PRIV_PASSPHRASE_PROPERTY);
+      OctetString authPassphrase = authPassphraseProperty != null ? new OctetString(authPassphraseProperty) : null;
+      OctetString privPassphrase = privPassphraseProperty != null ? new OctetString(privPassphraseProperty) : null;
+      UsmUser usmUser = new UsmUser(userName, AuthMD5.ID, authPassphrase, PrivDES.ID, privPassphrase);
+      // the session is shared, so the USM is created once and every target's
+      // user is added to it
+      synchronized (this) {
+        USM usm = snmp != null ? snmp.getUSM() : null;
+        if (usm == null) {
+          // provide User-based Security Model (USM) with user specified
+          usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+          SecurityModels.getInstance().addSecurityModel(usm);
+        }
         usm.addUser(userName, usmUser);
-        SecurityModels.getInstance().addSecurityModel(usm);
       }
       UserTarget userTarget = new UserTarget();
       userTarget.setSecurityName(userName);
@@ -17,7 +17,11 @@
  */
 package org.apache.ambari.server.orm.dao;
 
+import static org.apache.ambari.server.orm.dao.DaoUtils.ORACLE_LIST_LIMIT;
+
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
@@ -49,6 +53,7 @@ import org.apache.ambari.server.state.Service;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -188,6 +193,23 @@ public class AlertDispatchDAO {
     return daoUtils.selectList(query);
   }
 
+  /**
+   * Gets all {@link AlertNoticeEntity} instances that are
+   * {@link NotificationState#DISPATCHED} and whose final state has not been
+   * written.
+   *
+   * @return the notices that were dispatched without a final state, or an
+   *         empty list (never {@code null}).
+   */
+  @RequiresSession
+  public List<AlertNoticeEntity> findDispatchedNotices() {
+    TypedQuery<AlertNoticeEntity> query = entityManagerProvider.get().createNamedQuery(
+        "AlertNoticeEntity.findByState", AlertNoticeEntity.class);
+
+    query.setParameter("notifyState", NotificationState.DISPATCHED);
+    return daoUtils.selectList(query);
+  }
+
   /**
    * Gets an alert group with the specified name across all clusters. Alert
    * group names are unique within a cluster.
@@ -621,6 +643,59 @@ public class AlertDispatchDAO {
     entityManagerProvider.get().persist(alertNotice);
   }
 
+  /**
+   * Merges the specified notifications in a single transaction.
+   *
+   * @param alertNotices
+   *          the notifications to merge (not {@code null}).
+   * @return the updated notifications with merged content, in the same order
+   *         (never {@code null}).
+   */
+  @Transactional
+  public List<AlertNoticeEntity> mergeNotices(List<AlertNoticeEntity> alertNotices) {
+    EntityManager entityManager = entityManagerProvider.get();
+    List<AlertNoticeEntity> merged = new ArrayList<AlertNoticeEntity>(alertNotices.size());
+    for (AlertNoticeEntity alertNotice : alertNotices) {
+      merged.add(entityManager.merge(alertNotice));
+    }
+
+    return merged;
+  }
+
+  /**
+   * Sets the state of the notifications with the specified UUIDs in a single
+   * transaction. The notifications are read in chunks so that the number of
+   * UUIDs in each query stays within the limits of all supported databases.
+   *
+   * @param uuids
+   *          the UUIDs of the notifications to update (not {@code null}).
+   * @param state
+   *          the new state (not {@code null}).
+   * @return the number of notifications which were found and updated.
+   */
+  @Transactional
+  public int setNoticeStates(Collection<String> uuids, NotificationState state) {
+    if (uuids.isEmpty()) {
+      return 0;
+    }
+
+    EntityManager entityManager = entityManagerProvider.get();
+    TypedQuery<AlertNoticeEntity> query = entityManager.createNamedQuery(
+        "AlertNoticeEntity.findByUuids", AlertNoticeEntity.class);
+
+    int updated = 0;
+    for (List<String> chunk : Lists.partition(new ArrayList<String>(uuids), ORACLE_LIST_LIMIT)) {
+      query.setParameter("uuids", chunk);
+      for (AlertNoticeEntity notice : daoUtils.selectList(query)) {
+        notice.setNotifyState(state);
+        entityManager.merge(notice);
+        updated++;
+      }
+    }
+
+    return updated;
+  }
+
   /**
    * Refresh the state of the notification from the database.
    *
@@ -0,0 +1,628 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
+import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.MaintenanceState;
+import org.apache.commons.lang.StringUtils;
+
+import com.google.inject.Singleton;
+
+/**
+ * The {@link AlertSummaryIndex} keeps the number of current alerts in each
+ * state per cluster, service and host, along with the number of hosts whose
+ * most severe alert is in each state. The counts are the same as those
+ * computed by the summary queries of {@link AlertsDAO}, but they are adjusted
+ * as alerts are created, change state or enter and leave maintenance instead
+ * of being aggregated on every request.
+ * <p/>
+ * A cluster is loaded from the database the first time it is summarized.
+ * Changes received while a cluster is loading are replayed once the load
+ * finishes. Removals of current alerts discard the whole index and every
+ * cluster is reloaded once it is older than the refresh interval, which bounds
+ * how long a change made outside of the index could be missed.
+ * <p/>
+ * Each indexed alert also keeps its definition, original timestamp and latest
+ * text so that the alert summary renderers can be served from the index. The
+ * text is refreshed by {@link #onTextChanged(long, Long, String)} every time an
+ * alert is received, including when its state is unchanged. The alerts of a
+ * service or a host are looked up without visiting the rest of the cluster.
+ */
+@Singleton
+public class AlertSummaryIndex {
+
+  /**
+   * The positions of the counts in each count array.
+   */
+  private static final int OK = 0;
+  private static final int WARNING = 1;
+  private static final int CRITICAL = 2;
+  private static final int UNKNOWN = 3;
+  private static final int MAINTENANCE = 4;
+  private static final int NONE = -1;
+
+  /**
+   * The indexed clusters by ID.
+   */
+  private final ConcurrentMap<Long, ClusterSummary> clusters =
+      new ConcurrentHashMap<Long, ClusterSummary>();
+
+  /**
+   * Records a current alert which was created or whose state changed. The
+   * maintenance state of an alert which is already indexed is kept since it
+   * is only changed by {@link #onMaintenanceChanged(AlertCurrentEntity)}.
+   *
+   * @param alert
+   *          the current alert whose history entry holds the new state (not
+   *          {@code null}).
+   */
+  public void onStateChanged(AlertCurrentEntity alert) {
+    IndexedAlert entry = createEntry(alert);
+    if (null != entry) {
+      ClusterSummary summary = clusters.get(entry.clusterId);
+      if (null != summary) {
+        summary.update(new Update(alert.getAlertId(), entry, null));
+      }
+    }
+  }
+
+  /**
+   * Records the new maintenance state of a current alert.
+   *
+   * @param alert
+   *          the current alert (not {@code null}).
+   */
+  public void onMaintenanceChanged(AlertCurrentEntity alert) {
+    IndexedAlert entry = createEntry(alert);
+    if (null != entry) {
+      ClusterSummary summary = clusters.get(entry.clusterId);
+      if (null != summary) {
+        summary.update(new Update(alert.getAlertId(), null,
+            Boolean.valueOf(entry.maintenance)));
+      }
+    }
+  }
+
+  /**
+   * Records the text of a current alert which was received without a state
+   * change. Alerts which are not indexed are ignored.
+   *
+   * @param clusterId
+   *          the cluster ID.
+   * @param alertId
+   *          the ID of the current alert (not {@code null}).
+   * @param text
+   *          the text which was received.
+   */
+  public void onTextChanged(long clusterId, Long alertId, String text) {
+    ClusterSummary summary = clusters.get(clusterId);
+    if (null != summary) {
+      summary.update(new Update(alertId, text));
+    }
+  }
+
+  /**
+   * Discards all indexed clusters; they are loaded again when next
+   * summarized.
+   */
+  public void invalidate() {
+    clusters.clear();
+  }
+
+  /**
+   * Gets the summary of a cluster, loading it if it is not yet indexed or is
+   * older than the refresh interval.
+   *
+   * @param clusterId
+   *          the cluster ID.
+   * @param loader
+   *          reads all of the current alerts of the cluster.
+   * @param refreshInterval
+   *          the time, in milliseconds, after which a loaded cluster is read
+   *          again.
+   * @return the summary, or {@code null} if the cluster is being loaded by
+   *         another thread or was invalidated while loading.
+   */
+  ClusterSummary getClusterSummary(long clusterId, Loader loader, long refreshInterval) {
+    ClusterSummary summary = clusters.get(clusterId);
+    ClusterSummary created = new ClusterSummary();
+
+    if (null == summary) {
+      summary = clusters.putIfAbsent(clusterId, created);
+      if (null != summary) {
+        return summary.isLoaded() ? summary : null;
+      }
+    } else if (!summary.isLoaded()) {
+      return null;
+    } else if (System.currentTimeMillis() - summary.loadTime < refreshInterval
+        || !clusters.replace(clusterId, summary, created)) {
+      return summary;
+    }
+
+    try {
+      created.load(loader.load(clusterId));
+    } catch (RuntimeException e) {
+      clusters.remove(clusterId, created);
+      throw e;
+    }
+
+    return clusters.get(clusterId) == created ? created : null;
+  }
+
+  /**
+   * Creates the entry indexed for a current alert.
+   *
+   * @param alert
+   *          the current alert.
+   * @return the entry or {@code null} if the alert is missing the data needed
+   *         to index it.
+   */
+  public static IndexedAlert createEntry(AlertCurrentEntity alert) {
+    AlertHistoryEntity history = alert.getAlertHistory();
+    if (null == alert.getAlertId() || null == history || null == history.getClusterId()) {
+      return null;
+    }
+
+    boolean maintenance = null != alert.getMaintenanceState()
+        && alert.getMaintenanceState() != MaintenanceState.OFF;
+
+    AlertDefinitionEntity definition = history.getAlertDefinition();
+    Long definitionId = null == definition ? null : definition.getDefinitionId();
+    String definitionName = null == definition ? null : definition.getDefinitionName();
+
+    return new IndexedAlert(history.getClusterId(), history.getServiceName(),
+        history.getHostName(), history.getAlertState(), maintenance,
+        definitionId, definitionName, alert.getOriginalTimestamp(),
+        alert.getLatestText());
+  }
+
+  private static AlertSummaryDTO toSummary(int[] counts) {
+    if (null == counts) {
+      return new AlertSummaryDTO(0, 0, 0, 0, 0);
+    }
+
+    return new AlertSummaryDTO(counts[OK], counts[WARNING], counts[CRITICAL],
+        counts[UNKNOWN], counts[MAINTENANCE]);
+  }
+
+  /**
+   * Reads the current alerts of a cluster.
+   */
+  interface Loader {
+    /**
+     * @param clusterId
+     *          the cluster ID.
+     * @return all of the current alerts of the cluster.
+     */
+    List<AlertCurrentEntity> load(long clusterId);
+  }
+
+  /**
+   * The indexed state of a single current alert.
+   */
+  public static final class IndexedAlert {
+    private final long clusterId;
+    private final String serviceName;
+    private final String hostName;
+    private final AlertState state;
+    private final boolean maintenance;
+    private final Long definitionId;
+    private final String definitionName;
+    private final Long originalTimestamp;
+    private final String text;
+
+    private IndexedAlert(long clusterId, String serviceName, String hostName,
+        AlertState state, boolean maintenance, Long definitionId,
+        String definitionName, Long originalTimestamp, String text) {
+      this.clusterId = clusterId;
+      this.serviceName = serviceName;
+      this.hostName = hostName;
+      this.state = state;
+      this.maintenance = maintenance;
+      this.definitionId = definitionId;
+      this.definitionName = definitionName;
+      this.originalTimestamp = originalTimestamp;
+      this.text = text;
+    }
+
+    /**
+     * @return a copy of this alert with another maintenance state.
+     */
+    private IndexedAlert withMaintenance(boolean maintenance) {
+      return new IndexedAlert(clusterId, serviceName, hostName, state,
+          maintenance, definitionId, definitionName, originalTimestamp, text);
+    }
+
+    /**
+     * @return a copy of this alert with another text.
+     */
+    private IndexedAlert withText(String text) {
+      return new IndexedAlert(clusterId, serviceName, hostName, state,
+          maintenance, definitionId, definitionName, originalTimestamp, text);
+    }
+
+    public String getServiceName() {
+      return serviceName;
+    }
+
+    public String getHostName() {
+      return hostName;
+    }
+
+    public AlertState getState() {
+      return state;
+    }
+
+    /**
+     * @return {@code true} if the alert is in maintenance.
+     */
+    public boolean isMaintenance() {
+      return maintenance;
+    }
+
+    public Long getDefinitionId() {
+      return definitionId;
+    }
+
+    public String getDefinitionName() {
+      return definitionName;
+    }
+
+    public Long getOriginalTimestamp() {
+      return originalTimestamp;
+    }
+
+    /**
+     * @return the text received with the alert most recently.
+     */
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * @return the count which this alert contributes to.
+     */
+    private int getPosition() {
+      if (maintenance) {
+        return MAINTENANCE;
+      }
+
+      if (null == state) {
+        return NONE;
+      }
+
+      switch (state) {
+        case OK:
+          return OK;
+        case WARNING:
+          return WARNING;
+        case CRITICAL:
+          return CRITICAL;
+        case UNKNOWN:
+          return UNKNOWN;
+        default:
+          return NONE;
+      }
+    }
+  }
+
+  /**
+   * A change to a single alert: either its state, its maintenance state or
+   * its text. Each only replaces its own part of an existing entry so that
+   * changes which race each other do not undo one another.
+   */
+  private static final class Update {
+    private final Long alertId;
+    private final IndexedAlert entry;
+    private final Boolean maintenance;
+    private final boolean textChanged;
+    private final String text;
+
+    private Update(Long alertId, IndexedAlert entry, Boolean maintenance) {
+      this.alertId = alertId;
+      this.entry = entry;
+      this.maintenance = maintenance;
+      textChanged = false;
+      text = null;
+    }
+
+    private Update(Long alertId, String text) {
+      this.alertId = alertId;
+      entry = null;
+      maintenance = null;
+      textChanged = true;
+      this.text = text;
+    }
+  }
+
+  /**
+   * The counts of a single cluster. All access is synchronized on the
+   * instance.
+   */
+  static final class ClusterSummary {
+    private final Map<Long, IndexedAlert> entries = new HashMap<Long, IndexedAlert>();
+
+    /**
+     * The entries of each service and of each host, so that the alerts of a
+     * single service or host are found without visiting the whole cluster.
+     */
+    private final Map<String, Map<Long, IndexedAlert>> serviceEntries =
+        new HashMap<String, Map<Long, IndexedAlert>>();
+    private final Map<String, Map<Long, IndexedAlert>> hostEntries =
+        new HashMap<String, Map<Long, IndexedAlert>>();
+
+    private final int[] counts = new int[5];
+    private final Map<String, int[]> serviceCounts = new HashMap<String, int[]>();
+
+    /**
+     * The counts of each host; the last position holds the total number of
+     * alerts of the host.
+     */
+    private final Map<String, int[]> hostCounts = new HashMap<String, int[]>();
+
+    /**
+     * The number of hosts whose most severe alert is in each state; only the
+     * first four positions are used.
+     */
+    private final int[] hostStateCounts = new int[4];
+
+    /**
+     * Updates received while loading, replayed in order afterward.
+     */
+    private List<Update> pendingUpdates = new ArrayList<Update>();
+
+    private volatile long loadTime;
+
+    synchronized boolean isLoaded() {
+      return null == pendingUpdates;
+    }
+
+    /**
+     * Indexes the alerts read from the database and then replays any updates
+     * which were received while they were being read.
+     */
+    synchronized void load(List<AlertCurrentEntity> alerts) {
+      for (AlertCurrentEntity alert : alerts) {
+        IndexedAlert entry = createEntry(alert);
+        if (null != entry) {
+          put(alert.getAlertId(), entry);
+        }
+      }
+
+      for (Update update : pendingUpdates) {
+        apply(update);
+      }
+
+      pendingUpdates = null;
+      loadTime = System.currentTimeMillis();
+    }
+
+    synchronized void update(Update update) {
+      if (null != pendingUpdates) {
+        pendingUpdates.add(update);
+        return;
+      }
+
+      apply(update);
+    }
+
+    synchronized AlertSummaryDTO getSummary(String serviceName, String hostName) {
+      if (null == serviceName && null == hostName) {
+        return toSummary(counts);
+      }
+
+      if (null == hostName) {
+        return toSummary(serviceCounts.get(serviceName));
+      }
+
+      if (null == serviceName) {
+        return toSummary(hostCounts.get(hostName));
+      }
+
+      // filtering on both only visits the alerts of the host
+      int[] matched = new int[5];
+      for (IndexedAlert entry : getAlerts(serviceName, hostName)) {
+        int position = entry.getPosition();
+        if (position != NONE) {
+          matched[position]++;
+        }
+      }
+
+      return toSummary(matched);
+    }
+
+    /**
+     * Gets the indexed alerts of a service, a host or both.
+     *
+     * @param serviceName
+     *          the service name, or {@code null} to not filter on service.
+     * @param hostName
+     *          the host name, or {@code null} to not filter on host.
+     * @return the alerts (never {@code null}).
+     */
+    synchronized List<IndexedAlert> getAlerts(String serviceName, String hostName) {
+      if (null == serviceName && null == hostName) {
+        return new ArrayList<IndexedAlert>(entries.values());
+      }
+
+      Map<Long, IndexedAlert> scoped = null == hostName ? serviceEntries.get(serviceName)
+          : hostEntries.get(hostName);
+
+      List<IndexedAlert> alerts = new ArrayList<IndexedAlert>();
+      if (null == scoped) {
+        return alerts;
+      }
+
+      for (IndexedAlert entry : scoped.values()) {
+        if (null == serviceName || serviceName.equals(entry.serviceName)) {
+          alerts.add(entry);
+        }
+      }
+
+      return alerts;
+    }
+
+    synchronized AlertHostSummaryDTO getHostSummary() {
+      return new AlertHostSummaryDTO(hostStateCounts[OK],
+          hostStateCounts[UNKNOWN], hostStateCounts[WARNING],
+          hostStateCounts[CRITICAL]);
+    }
+
+    private void apply(Update update) {
+      IndexedAlert previous = entries.get(update.alertId);
+
+      if (update.textChanged) {
+        if (null != previous && !StringUtils.equals(previous.text, update.text)) {
+          put(update.alertId, previous.withText(update.text));
+        }
+
+        return;
+      }
+
+      if (null != update.entry) {
+        IndexedAlert entry = update.entry;
+        if (null != previous && previous.maintenance != entry.maintenance) {
+          entry = entry.withMaintenance(previous.maintenance);
+        }
+
+        put(update.alertId, entry);
+        return;
+      }
+
+      if (null != previous && previous.maintenance != update.maintenance.booleanValue()) {
+        put(update.alertId, previous.withMaintenance(update.maintenance.booleanValue()));
+      }
+    }
+
+    private void put(Long alertId, IndexedAlert entry) {
+      IndexedAlert previous = entries.put(alertId, entry);
+      if (null != previous) {
+        adjust(previous, -1);
+        unindex(serviceEntries, previous.serviceName, alertId);
+        unindex(hostEntries, previous.hostName, alertId);
+      }
+
+      adjust(entry, 1);
+      index(serviceEntries, entry.serviceName, alertId, entry);
+      index(hostEntries, entry.hostName, alertId, entry);
+    }
+
+    private static void index(Map<String, Map<Long, IndexedAlert>> scopes,
+        String scope, Long alertId, IndexedAlert entry) {
+      if (null == scope) {
+        return;
+      }
+
+      Map<Long, IndexedAlert> scoped = scopes.get(scope);
+      if (null == scoped) {
+        scoped = new HashMap<Long, IndexedAlert>();
+        scopes.put(scope, scoped);
+      }
+
+      scoped.put(alertId, entry);
+    }
+
+    private static void unindex(Map<String, Map<Long, IndexedAlert>> scopes,
+        String scope, Long alertId) {
+      if (null == scope) {
+        return;
+      }
+
+      Map<Long, IndexedAlert> scoped = scopes.get(scope);
+      if (null != scoped) {
+        scoped.remove(alertId);
+        if (scoped.isEmpty()) {
+          scopes.remove(scope);
+        }
+      }
+    }
+
+    private void adjust(IndexedAlert entry, int delta) {
+      int position = entry.getPosition();
+
+      if (null != entry.hostName) {
+        int[] host = hostCounts.get(entry.hostName);
+        if (null == host) {
+          host = new int[6];
+          hostCounts.put(entry.hostName, host);
+        }
+
+        if (host[5] > 0) {
+          hostStateCounts[getHostState(host)]--;
+        }
+
+        if (position != NONE) {
+          host[position] += delta;
+        }
+
+        host[5] += delta;
+        if (host[5] > 0) {
+          hostStateCounts[getHostState(host)]++;
+        } else {
+          hostCounts.remove(entry.hostName);
+        }
+      }
+
+      if (position == NONE) {
+        return;
+      }
+
+      counts[position] += delta;
+
+      if (null != entry.serviceName) {
+        int[] service = serviceCounts.get(entry.serviceName);
+        if (null == service) {
+          service = new int[5];
+          serviceCounts.put(entry.serviceName, service);
+        }
+
+        service[position] += delta;
+      }
+    }
+
+    /**
+     * Gets the most severe state of a host's alerts which are not in
+     * maintenance, in the same order as the host summary query.
+     */
+    private static int getHostState(int[] host) {
+      if (host[CRITICAL] > 0) {
+        return CRITICAL;
+      }
+
+      if (host[WARNING] > 0) {
+        return WARNING;
+      }
+
+      if (host[UNKNOWN] > 0) {
+        return UNKNOWN;
+      }
+
+      return OK;
+    }
+  }
+}
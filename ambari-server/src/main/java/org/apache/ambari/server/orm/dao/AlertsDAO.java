@@ -21,8 +21,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Order;
@@ -30,6 +34,7 @@ import javax.persistence.metamodel.SingularAttribute;
 
 import org.apache.ambari.server.api.query.JpaPredicateVisitor;
 import org.apache.ambari.server.api.query.JpaSortBuilder;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.AlertCurrentRequest;
 import org.apache.ambari.server.controller.AlertHistoryRequest;
 import org.apache.ambari.server.controller.spi.Predicate;
@@ -39,6 +44,8 @@ import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
 import org.apache.ambari.server.orm.entities.AlertCurrentEntity_;
 import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
 import org.apache.ambari.server.orm.entities.AlertHistoryEntity_;
+import org.apache.ambari.server.orm.entities.AlertNoticeEntity;
+import org.apache.ambari.server.orm.entities.AlertTargetEntity;
 import org.apache.ambari.server.state.AlertState;
 import org.apache.ambari.server.state.MaintenanceState;
 import org.apache.ambari.server.state.alert.Scope;
@@ -88,6 +95,35 @@ public class AlertsDAO {
   @Inject
   private DaoUtils daoUtils;
 
+  /**
+   * Used to determine whether the state of current alerts is kept in memory.
+   */
+  @Inject
+  private Configuration configuration;
+
+  /**
+   * The state of the current alerts which have been read or written since
+   * startup, keyed by cluster, definition name and host. It is only populated
+   * when alert write-behind is enabled and is discarded whenever current
+   * alerts are removed, so it never holds a state which is not in the
+   * database.
+   */
+  private final ConcurrentMap<CurrentAlertKey, CurrentAlertState> currentAlertStates =
+      new ConcurrentHashMap<CurrentAlertKey, CurrentAlertState>();
+
+  /**
+   * The current alerts whose latest timestamp and text have been received but
+   * not yet written, keyed by alert ID.
+   */
+  private final ConcurrentMap<Long, CurrentAlertState> pendingLatestUpdates =
+      new ConcurrentHashMap<Long, CurrentAlertState>();
+
+  /**
+   * The in-memory alert counts used by the summary methods when enabled.
+   */
+  @Inject
+  private AlertSummaryIndex summaryIndex;
+
   /**
    * Gets an alert with the specified ID.
    *
@@ -394,6 +430,11 @@ public class AlertsDAO {
    */
   @RequiresSession
   public AlertSummaryDTO findCurrentCounts(long clusterId, String serviceName, String hostName) {
+    AlertSummaryIndex.ClusterSummary indexed = getIndexedSummary(clusterId);
+    if (null != indexed) {
+      return indexed.getSummary(serviceName, hostName);
+    }
+
     String sql = String.format(ALERT_COUNT_SQL_TEMPLATE,
         AlertSummaryDTO.class.getName());
 
@@ -428,6 +469,32 @@ public class AlertsDAO {
     return daoUtils.selectSingle(query);
   }
 
+  /**
+   * Retrieves the current alerts of a particular scope from the in-memory
+   * summary index, so that they can be summarized without reading them from
+   * the database.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param serviceName
+   *          the service name. Use {@code null} to not filter on service.
+   * @param hostName
+   *          the host name. Use {@code null} to not filter on host.
+   * @return the indexed alerts, or {@code null} if the summary index is
+   *         disabled or the cluster is not indexed yet, in which case the
+   *         alerts must be queried.
+   */
+  @RequiresSession
+  public List<AlertSummaryIndex.IndexedAlert> findCurrentIndexed(long clusterId,
+      String serviceName, String hostName) {
+    AlertSummaryIndex.ClusterSummary indexed = getIndexedSummary(clusterId);
+    if (null == indexed) {
+      return null;
+    }
+
+    return indexed.getAlerts(serviceName, hostName);
+  }
+
   /**
    * Retrieve the summary alert information for all hosts. This is different
    * from {@link #findCurrentCounts(long, String, String)} since this will
@@ -440,6 +507,11 @@ public class AlertsDAO {
    */
   @RequiresSession
   public AlertHostSummaryDTO findCurrentHostCounts(long clusterId) {
+    AlertSummaryIndex.ClusterSummary indexed = getIndexedSummary(clusterId);
+    if (null != indexed) {
+      return indexed.getHostSummary();
+    }
+
     // use Number here since some databases like MySQL return Long and some
     // return Integer and we don't want a class cast exception
     TypedQuery<Number> query = entityManagerProvider.get().createQuery(
@@ -518,7 +590,7 @@ public class AlertsDAO {
     query.setParameter("definitionName", alertName);
 
     query = setQueryRefreshHint(query);
-    return daoUtils.selectOne(query);
+    return cacheCurrentState(daoUtils.selectOne(query));
   }
 
   /**
@@ -545,6 +617,79 @@ public class AlertsDAO {
     historyQuery.executeUpdate();
 
     entityManager.clear();
+    invalidateCurrentAlerts();
+  }
+
+  /**
+   * Gets the IDs of the alert history entries which may be purged, oldest
+   * first. Entries which are still referenced by a current alert are never
+   * returned.
+   *
+   * @param beforeDate
+   *          the time, in milliseconds, before which entries are purged.
+   * @param limit
+   *          the maximum number of IDs to return.
+   * @return the history IDs (never {@code null}).
+   */
+  @RequiresSession
+  public List<Long> findPurgeableHistoryIds(long beforeDate, int limit) {
+    TypedQuery<Long> query = entityManagerProvider.get().createNamedQuery(
+        "AlertHistoryEntity.findPurgeableIds", Long.class);
+
+    query.setParameter("beforeDate", beforeDate);
+    query.setMaxResults(limit);
+
+    return daoUtils.selectList(query);
+  }
+
+  /**
+   * Removes alert history entries along with the notices created for them in
+   * a single transaction. The rows are removed with bulk deletes; the callers
+   * are expected to pass a small number of entries, such as those returned by
+   * {@link #findPurgeableHistoryIds(long, int)}.
+   *
+   * @param historyIds
+   *          the IDs of the history entries to remove (not {@code null}).
+   * @return the number of rows removed and the size of the alert text (never
+   *         {@code null}).
+   */
+  @Transactional
+  public PurgeResultDTO purgeHistory(List<Long> historyIds) {
+    PurgeResultDTO result = new PurgeResultDTO();
+    if (historyIds.isEmpty()) {
+      return result;
+    }
+
+    EntityManager entityManager = entityManagerProvider.get();
+
+    TypedQuery<Number> lengthQuery = entityManager.createNamedQuery(
+        "AlertHistoryEntity.findTextLengthByIds", Number.class);
+
+    lengthQuery.setParameter("historyIds", historyIds);
+    Number length = daoUtils.selectSingle(lengthQuery);
+    if (null != length) {
+      result.addBytes(length.longValue());
+    }
+
+    Query noticeQuery = entityManager.createNamedQuery(
+        "AlertNoticeEntity.removeByHistoryIds");
+
+    noticeQuery.setParameter("historyIds", historyIds);
+    result.addRows("alert_notice", noticeQuery.executeUpdate());
+
+    Query historyQuery = entityManager.createNamedQuery(
+        "AlertHistoryEntity.removeByIds");
+
+    historyQuery.setParameter("historyIds", historyIds);
+    result.addRows("alert_history", historyQuery.executeUpdate());
+
+    // targets hold on to their notices
+    Cache cache = entityManager.getEntityManagerFactory().getCache();
+    cache.evict(AlertNoticeEntity.class);
+    cache.evict(AlertHistoryEntity.class);
+    cache.evict(AlertTargetEntity.class);
+
+    return result;
   }
 
   /**
@@ -559,7 +704,9 @@ public class AlertsDAO {
         "AlertCurrentEntity.removeByHistoryId", AlertCurrentEntity.class);
 
     query.setParameter("historyId", historyId);
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    invalidateCurrentAlerts();
+    return removed;
   }
 
   /**
@@ -572,7 +719,9 @@ public class AlertsDAO {
     TypedQuery<AlertCurrentEntity> query = entityManagerProvider.get().createNamedQuery(
         "AlertCurrentEntity.removeDisabled", AlertCurrentEntity.class);
 
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    invalidateCurrentAlerts();
+    return removed;
   }
 
   /**
@@ -591,7 +740,9 @@ public class AlertsDAO {
         "AlertCurrentEntity.removeByService", AlertCurrentEntity.class);
 
     query.setParameter("serviceName", serviceName);
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    invalidateCurrentAlerts();
+    return removed;
   }
 
   /**
@@ -610,7 +761,9 @@ public class AlertsDAO {
         "AlertCurrentEntity.removeByHost", AlertCurrentEntity.class);
 
     query.setParameter("hostName", hostName);
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    invalidateCurrentAlerts();
+    return removed;
   }
 
   /**
@@ -639,7 +792,9 @@ public class AlertsDAO {
     query.setParameter("componentName", componentName);
     query.setParameter("hostName", hostName);
 
-    return query.executeUpdate();
+    int removed = query.executeUpdate();
+    invalidateCurrentAlerts();
+    return removed;
   }
 
   /**
@@ -699,6 +854,7 @@ public class AlertsDAO {
   @Transactional
   public void create(AlertCurrentEntity alert) {
     entityManagerProvider.get().persist(alert);
+    cacheCurrentState(alert);
   }
 
   /**
@@ -721,7 +877,7 @@ public class AlertsDAO {
    */
   @Transactional
   public AlertCurrentEntity merge(AlertCurrentEntity alert) {
-    return entityManagerProvider.get().merge(alert);
+    return cacheCurrentState(entityManagerProvider.get().merge(alert));
   }
 
   /**
@@ -733,6 +889,160 @@ public class AlertsDAO {
   @Transactional
   public void remove(AlertCurrentEntity alert) {
     entityManagerProvider.get().remove(merge(alert));
+    invalidateCurrentAlerts();
+  }
+
+  /**
+   * Records the latest timestamp and text of a current alert whose state has
+   * not changed, without accessing the database. The values are written by
+   * the next call to {@link #flushLatestUpdates()}.
+   * <p/>
+   * This only succeeds if alert write-behind is enabled and the alert has
+   * been read or written since it was last invalidated; otherwise the caller
+   * must read and merge the current alert as usual.
+   *
+   * @param clusterId
+   *          the cluster ID.
+   * @param alertName
+   *          the name of the alert definition.
+   * @param hostName
+   *          the host of the alert, or {@code null} for alerts without a host.
+   * @param state
+   *          the state which was received.
+   * @param timestamp
+   *          the time the alert was received.
+   * @param text
+   *          the text which was received.
+   * @return {@code true} if the update was recorded, {@code false} if the
+   *         current alert is not known or its state is different.
+   */
+  public boolean updateLatestIfUnchanged(long clusterId, String alertName,
+      String hostName, AlertState state, long timestamp, String text) {
+    CurrentAlertState currentState = currentAlertStates.get(
+        new CurrentAlertKey(clusterId, alertName, hostName));
+
+    if (null == currentState || currentState.alertState != state) {
+      return false;
+    }
+
+    // the values must be set before the alert is queued; see flushLatestUpdates()
+    currentState.latestTimestamp = timestamp;
+    currentState.latestText = text;
+    pendingLatestUpdates.put(currentState.alertId, currentState);
+
+    if (null != summaryIndex) {
+      summaryIndex.onTextChanged(clusterId, currentState.alertId, text);
+    }
+
+    return true;
+  }
+
+  /**
+   * Writes the latest timestamp and text of every current alert recorded by
+   * {@link #updateLatestIfUnchanged} in a single transaction. A value is never
+   * written over a later timestamp, so a state change merged in the meantime
+   * is not affected.
+   *
+   * @return the number of current alerts updated.
+   */
+  @Transactional
+  public int flushLatestUpdates() {
+    if (pendingLatestUpdates.isEmpty()) {
+      return 0;
+    }
+
+    EntityManager entityManager = entityManagerProvider.get();
+    int updated = 0;
+
+    for (Long alertId : pendingLatestUpdates.keySet()) {
+      // dequeue before reading the values so that an update racing with this
+      // flush is either read here or queued again
+      CurrentAlertState currentState = pendingLatestUpdates.remove(alertId);
+      if (null == currentState) {
+        continue;
+      }
+
+      TypedQuery<AlertCurrentEntity> query = entityManager.createNamedQuery(
+          "AlertCurrentEntity.updateLatest", AlertCurrentEntity.class);
+
+      query.setParameter("alertId", alertId);
+      query.setParameter("latestTimestamp", Long.valueOf(currentState.latestTimestamp));
+      query.setParameter("latestText", currentState.latestText);
+      updated += query.executeUpdate();
+    }
+
+    return updated;
+  }
+
+  /**
+   * @return the number of current alerts whose latest timestamp and text are
+   *         waiting to be written.
+   */
+  public int getPendingLatestUpdateCount() {
+    return pendingLatestUpdates.size();
+  }
+
+  /**
+   * Remembers the state of the specified current alert if alert write-behind
+   * is enabled.
+   *
+   * @param alert
+   *          the current alert, or {@code null}.
+   * @return the specified alert.
+   */
+  private AlertCurrentEntity cacheCurrentState(AlertCurrentEntity alert) {
+    if (null == alert || null == alert.getAlertId()
+        || !configuration.isAlertWriteBehindEnabled()) {
+      return alert;
+    }
+
+    AlertHistoryEntity history = alert.getAlertHistory();
+    if (null == history || null == history.getClusterId()
+        || null == history.getAlertDefinition()) {
+      return alert;
+    }
+
+    CurrentAlertKey key = new CurrentAlertKey(history.getClusterId(),
+        history.getAlertDefinition().getDefinitionName(), history.getHostName());
+
+    currentAlertStates.put(key, new CurrentAlertState(alert.getAlertId(),
+        history.getAlertState(), alert.getLatestTimestamp(), alert.getLatestText()));
+
+    return alert;
+  }
+
+  /**
+   * Gets the in-memory alert counts of a cluster, loading them from the
+   * current alerts of the cluster if needed.
+   *
+   * @param clusterId
+   *          the cluster ID.
+   * @return the counts, or {@code null} if the summary index is disabled or
+   *         the counts are not available yet, in which case they must be
+   *         queried.
+   */
+  private AlertSummaryIndex.ClusterSummary getIndexedSummary(long clusterId) {
+    if (null == summaryIndex || !configuration.isAlertSummaryIndexEnabled()) {
+      return null;
+    }
+
+    return summaryIndex.getClusterSummary(clusterId, new AlertSummaryIndex.Loader() {
+      @Override
+      public List<AlertCurrentEntity> load(long clusterId) {
+        return findCurrentByCluster(clusterId);
+      }
+    }, configuration.getAlertSummaryIndexRefreshInterval());
+  }
+
+  /**
+   * Discards the in-memory state of current alerts after alerts have been
+   * removed.
+   */
+  private void invalidateCurrentAlerts() {
+    currentAlertStates.clear();
+    if (null != summaryIndex) {
+      summaryIndex.invalidate();
+    }
   }
 
   /**
@@ -779,7 +1089,7 @@ public class AlertsDAO {
     query.setParameter("definitionName", alertName);
 
     query = setQueryRefreshHint(query);
-    return daoUtils.selectOne(query);
+    return cacheCurrentState(daoUtils.selectOne(query));
   }
 
   /**
@@ -801,6 +1111,62 @@ public class AlertsDAO {
     return query;
   }
 
+  /**
+   * Identifies a current alert by cluster, definition name and host.
+   */
+  private static final class CurrentAlertKey {
+    private final long clusterId;
+    private final String alertName;
+    private final String hostName;
+
+    private CurrentAlertKey(long clusterId, String alertName, String hostName) {
+      this.clusterId = clusterId;
+      this.alertName = alertName;
+      this.hostName = hostName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      CurrentAlertKey that = (CurrentAlertKey) o;
+      return clusterId == that.clusterId && alertName.equals(that.alertName)
+          && (hostName == null ? that.hostName == null : hostName.equals(that.hostName));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) (clusterId ^ (clusterId >>> 32));
+      result = 31 * result + alertName.hashCode();
+      result = 31 * result + (hostName != null ? hostName.hashCode() : 0);
+      return result;
+    }
+  }
+
+  /**
+   * The state of a current alert along with the latest timestamp and text
+   * received for it.
+   */
+  private static final class CurrentAlertState {
+    private final long alertId;
+    private final AlertState alertState;
+    private volatile long latestTimestamp;
+    private volatile String latestText;
+
+    private CurrentAlertState(long alertId, AlertState alertState,
+        Long latestTimestamp, String latestText) {
+      this.alertId = alertId;
+      this.alertState = alertState;
+      this.latestTimestamp = null == latestTimestamp ? 0 : latestTimestamp;
+      this.latestText = latestText;
+    }
+  }
+
   /**
    * The {@link HistoryPredicateVisitor} is used to convert an Ambari
    * {@link Predicate} into a JPA {@link javax.persistence.criteria.Predicate}.
@@ -24,6 +24,8 @@ import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
 import org.apache.ambari.server.orm.RequiresSession;
 import org.apache.ambari.server.orm.entities.ExecutionCommandEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntityPK;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -51,6 +53,33 @@ public class ExecutionCommandDAO {
     entityManagerProvider.get().persist(executionCommand);
   }
 
+  /**
+   * Gets a fragment shared by the execution commands of a stage.
+   *
+   * @param requestId
+   *          the request ID of the stage.
+   * @param stageId
+   *          the stage ID.
+   * @param fragmentHash
+   *          the hash of the fragment's content.
+   * @return the fragment, or {@code null} if there is none.
+   */
+  @RequiresSession
+  public ExecutionCommandFragmentEntity findFragmentByPK(long requestId, long stageId,
+      String fragmentHash) {
+    ExecutionCommandFragmentEntityPK pk = new ExecutionCommandFragmentEntityPK();
+    pk.setRequestId(requestId);
+    pk.setStageId(stageId);
+    pk.setFragmentHash(fragmentHash);
+
+    return entityManagerProvider.get().find(ExecutionCommandFragmentEntity.class, pk);
+  }
+
+  @Transactional
+  public void createFragment(ExecutionCommandFragmentEntity fragment) {
+    entityManagerProvider.get().persist(fragment);
+  }
+
   @Transactional
   public ExecutionCommandEntity merge(ExecutionCommandEntity executionCommand) {
     return entityManagerProvider.get().merge(executionCommand);
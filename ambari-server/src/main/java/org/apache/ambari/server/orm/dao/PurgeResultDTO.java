@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link PurgeResultDTO} is used to return what was removed by a single
+ * purge of historical data: the number of rows removed from each table and the
+ * size of the large values (output, commands and text) which were stored in
+ * them.
+ */
+public class PurgeResultDTO {
+
+  /**
+   * The number of rows removed, by table.
+   */
+  private final Map<String, Integer> m_rows = new LinkedHashMap<String, Integer>();
+
+  /**
+   * The number of bytes of large values stored in the removed rows.
+   */
+  private long m_bytes = 0;
+
+  /**
+   * Adds removed rows of a table.
+   *
+   * @param table
+   *          the name of the table.
+   * @param count
+   *          the number of rows removed.
+   */
+  public void addRows(String table, int count) {
+    Integer previous = m_rows.get(table);
+    m_rows.put(table, null == previous ? count : previous + count);
+  }
+
+  /**
+   * Adds to the size of the removed values.
+   *
+   * @param bytes
+   *          the number of bytes.
+   */
+  public void addBytes(long bytes) {
+    m_bytes += bytes;
+  }
+
+  /**
+   * @return the number of rows removed, by table (never {@code null}).
+   */
+  public Map<String, Integer> getRows() {
+    return Collections.unmodifiableMap(m_rows);
+  }
+
+  /**
+   * @return the number of rows removed from all tables.
+   */
+  public int getTotalRows() {
+    int total = 0;
+    for (Integer count : m_rows.values()) {
+      total += count;
+    }
+
+    return total;
+  }
+
+  /**
+   * @return the number of bytes of large values stored in the removed rows.
+   */
+  public long getBytes() {
+    return m_bytes;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return getTotalRows() + " rows " + m_rows + ", " + m_bytes + " bytes";
+  }
+}
@@ -19,17 +19,28 @@
 package org.apache.ambari.server.orm.dao;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.orm.RequiresSession;
+import org.apache.ambari.server.orm.entities.ExecutionCommandEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntity;
+import org.apache.ambari.server.orm.entities.HostEntity;
+import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
 import org.apache.ambari.server.orm.entities.RequestEntity;
+import org.apache.ambari.server.orm.entities.RequestOperationLevelEntity;
 import org.apache.ambari.server.orm.entities.RequestResourceFilterEntity;
+import org.apache.ambari.server.orm.entities.RoleSuccessCriteriaEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
+import org.apache.ambari.server.orm.entities.StageEntityPK;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
 
@@ -45,6 +56,18 @@ public class RequestDAO {
    */
   private final static String REQUEST_IDS_SORTED_SQL = "SELECT request.requestId FROM RequestEntity request ORDER BY request.requestId {0}";
 
+  /**
+   * JPQL to retrieve the IDs of requests which are old enough to be purged and
+   * whose tasks have all completed. Requests of upgrades and requests whose
+   * tasks are referenced by a topology are kept.
+   */
+  private final static String PURGEABLE_REQUEST_IDS_JPQL = "SELECT request.requestId FROM RequestEntity request " +
+      "WHERE (request.createTime < ?1 OR request.requestId <= ?2) " +
+      "AND NOT EXISTS (SELECT task.taskId FROM HostRoleCommandEntity task WHERE task.requestId = request.requestId AND task.status NOT IN ?3) " +
+      "AND NOT EXISTS (SELECT upgrade.upgradeId FROM UpgradeEntity upgrade WHERE upgrade.requestId = request.requestId) " +
+      "AND NOT EXISTS (SELECT logicalTask.id FROM TopologyLogicalTaskEntity logicalTask WHERE logicalTask.hostRoleCommandEntity.requestId = request.requestId) " +
+      "ORDER BY request.requestId ASC";
+
   @Inject
   Provider<EntityManager> entityManagerProvider;
 
@@ -130,6 +153,205 @@ public class RequestDAO {
     return daoUtils.selectSingle(query, requestId);
   }
 
+  /**
+   * Gets the ID of the newest request which is not among the specified number
+   * of most recent requests.
+   *
+   * @param count
+   *          the number of most recent requests.
+   * @return the request ID, or {@code null} if there are no more requests than
+   *         {@code count}.
+   */
+  @RequiresSession
+  public Long findNewestRequestIdBeyond(int count) {
+    String sql = MessageFormat.format(REQUEST_IDS_SORTED_SQL, "DESC");
+    TypedQuery<Long> query = entityManagerProvider.get().createQuery(sql, Long.class);
+
+    query.setFirstResult(count);
+    query.setMaxResults(1);
+
+    List<Long> requestIds = daoUtils.selectList(query);
+    return requestIds.isEmpty() ? null : requestIds.get(0);
+  }
+
+  /**
+   * Gets the IDs of the completed requests which may be purged, oldest first.
+   * A request qualifies if it was created before the specified time or if its
+   * ID is not greater than the specified ID.
+   *
+   * @param createdBefore
+   *          the time, in milliseconds, before which requests are purged; or
+   *          {@code 0} for none.
+   * @param maxRequestId
+   *          the ID at or below which requests are purged; or {@code -1} for
+   *          none.
+   * @param limit
+   *          the maximum number of IDs to return.
+   * @return the request IDs (never {@code null}).
+   */
+  @RequiresSession
+  public List<Long> findPurgeableRequestIds(long createdBefore, long maxRequestId, int limit) {
+    TypedQuery<Long> query = entityManagerProvider.get().createQuery(
+        PURGEABLE_REQUEST_IDS_JPQL, Long.class);
+
+    query.setMaxResults(limit);
+
+    return daoUtils.selectList(query, createdBefore, maxRequestId,
+        HostRoleStatus.getCompletedStates());
+  }
+
+  /**
+   * Removes requests along with their stages, tasks, execution commands and
+   * their fragments, success criteria, resource filters and operation levels
+   * in a single transaction. The rows are removed with bulk deletes so that
+   * none of them is read into memory. The callers are expected to pass a small number of
+   * completed requests, such as those returned by
+   * {@link #findPurgeableRequestIds(long, long, int)}.
+   *
+   * @param requestIds
+   *          the IDs of the requests to remove (not {@code null}).
+   * @return the number of rows removed and the size of their large values
+   *         (never {@code null}).
+   */
+  @Transactional
+  public PurgeResultDTO purge(List<Long> requestIds) {
+    PurgeResultDTO result = new PurgeResultDTO();
+    if (requestIds.isEmpty()) {
+      return result;
+    }
+
+    EntityManager entityManager = entityManagerProvider.get();
+
+    // measure the large values before they are removed, in the database
+    result.addBytes(sumLengths(entityManager.createQuery(
+        "SELECT SUM(LENGTH(command.command)) FROM ExecutionCommandEntity command WHERE command.taskId IN " +
+        "(SELECT task.taskId FROM HostRoleCommandEntity task WHERE task.requestId IN ?1)"), requestIds));
+
+    result.addBytes(sumLengths(entityManager.createQuery(
+        "SELECT SUM(LENGTH(fragment.content)) FROM ExecutionCommandFragmentEntity fragment " +
+        "WHERE fragment.requestId IN ?1"), requestIds));
+
+    result.addBytes(sumLengths(entityManager.createQuery(
+        "SELECT SUM(LENGTH(task.stdOut)), SUM(LENGTH(task.stdError)), SUM(LENGTH(task.structuredOut)), " +
+        "SUM(LENGTH(task.event)) FROM HostRoleCommandEntity task WHERE task.requestId IN ?1"), requestIds));
+
+    result.addBytes(sumLengths(entityManager.createQuery(
+        "SELECT SUM(LENGTH(stage.clusterHostInfo)), SUM(LENGTH(stage.commandParamsStage)), " +
+        "SUM(LENGTH(stage.hostParamsStage)) FROM StageEntity stage WHERE stage.requestId IN ?1"), requestIds));
+
+    result.addBytes(sumLengths(entityManager.createQuery(
+        "SELECT SUM(LENGTH(request.inputs)) FROM RequestEntity request " +
+        "WHERE request.requestId IN ?1"), requestIds));
+
+    // the cached entities of the removed rows are evicted afterwards
+    List<Long> taskIds = daoUtils.selectList(entityManager.createQuery(
+        "SELECT task.taskId FROM HostRoleCommandEntity task WHERE task.requestId IN ?1",
+        Long.class), requestIds);
+
+    List<Long> hostIds = daoUtils.selectList(entityManager.createQuery(
+        "SELECT DISTINCT task.hostId FROM HostRoleCommandEntity task WHERE task.requestId IN ?1",
+        Long.class), requestIds);
+
+    List<StageEntityPK> stagePKs = new ArrayList<StageEntityPK>();
+    Query stageQuery = entityManager.createQuery(
+        "SELECT stage.requestId, stage.stageId FROM StageEntity stage WHERE stage.requestId IN ?1");
+    daoUtils.setParameters(stageQuery, requestIds);
+    for (Object row : stageQuery.getResultList()) {
+      StageEntityPK stagePK = new StageEntityPK();
+      stagePK.setRequestId((Long) ((Object[]) row)[0]);
+      stagePK.setStageId((Long) ((Object[]) row)[1]);
+      stagePKs.add(stagePK);
+    }
+
+    // remove the rows, children first
+    result.addRows("execution_command", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM ExecutionCommandEntity command WHERE command.taskId IN " +
+        "(SELECT task.taskId FROM HostRoleCommandEntity task WHERE task.requestId IN ?1)"), requestIds));
+
+    result.addRows("host_role_command", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM HostRoleCommandEntity task WHERE task.requestId IN ?1"), requestIds));
+
+    result.addRows("role_success_criteria", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RoleSuccessCriteriaEntity criteria WHERE criteria.requestId IN ?1"), requestIds));
+
+    result.addRows("execution_command_fragment", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM ExecutionCommandFragmentEntity fragment WHERE fragment.requestId IN ?1"), requestIds));
+
+    result.addRows("stage", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM StageEntity stage WHERE stage.requestId IN ?1"), requestIds));
+
+    result.addRows("requestresourcefilter", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RequestResourceFilterEntity filter WHERE filter.requestId IN ?1"), requestIds));
+
+    result.addRows("requestoperationlevel", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RequestOperationLevelEntity level WHERE level.requestId IN ?1"), requestIds));
+
+    result.addRows("request", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RequestEntity request WHERE request.requestId IN ?1"), requestIds));
+
+    // only the removed rows are evicted so that the entities still in use
+    // are not read again; hosts hold on to their tasks, so those of the
+    // removed tasks must be read again as well
+    Cache cache = entityManager.getEntityManagerFactory().getCache();
+    for (Long taskId : taskIds) {
+      cache.evict(ExecutionCommandEntity.class, taskId);
+      cache.evict(HostRoleCommandEntity.class, taskId);
+    }
+
+    for (StageEntityPK stagePK : stagePKs) {
+      cache.evict(StageEntity.class, stagePK);
+    }
+
+    for (Long requestId : requestIds) {
+      cache.evict(RequestEntity.class, requestId);
+    }
+
+    for (Long hostId : hostIds) {
+      if (null != hostId) {
+        cache.evict(HostEntity.class, hostId);
+      }
+    }
+
+    // these are only ever read along with their request
+    cache.evict(RoleSuccessCriteriaEntity.class);
+    cache.evict(ExecutionCommandFragmentEntity.class);
+    cache.evict(RequestResourceFilterEntity.class);
+    cache.evict(RequestOperationLevelEntity.class);
+
+    return result;
+  }
+
+  /**
+   * Sums the values of a query returning one or more sums of lengths. The
+   * lengths are computed by the database so that none of the values is read
+   * into memory.
+   *
+   * @param query
+   *          the query to run.
+   * @param parameters
+   *          the parameters of the query.
+   * @return the total number of bytes.
+   */
+  private long sumLengths(Query query, Object... parameters) {
+    daoUtils.setParameters(query, parameters);
+    Object row = query.getSingleResult();
+
+    long bytes = 0;
+    if (row instanceof Object[]) {
+      for (Object value : (Object[]) row) {
+        bytes += getLength(value);
+      }
+    } else {
+      bytes += getLength(row);
+    }
+
+    return bytes;
+  }
+
+  private static long getLength(Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
   @Transactional
   public void create(RequestEntity requestEntity) {
     entityManagerProvider.get().persist(requestEntity);
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.entities;
+
+import java.util.Arrays;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinColumns;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * The {@link ExecutionCommandFragmentEntity} holds a part of the execution
+ * commands of a stage, such as the configurations or the cluster host info,
+ * which is the same for many of its commands. Fragments are addressed by the
+ * hash of their content within a stage and are stored compressed; the
+ * commands refer to them by that hash instead of repeating them.
+ */
+@IdClass(org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntityPK.class)
+@Table(name = "execution_command_fragment")
+@Entity
+public class ExecutionCommandFragmentEntity {
+
+  @Id
+  @Column(name = "request_id", insertable = false, updatable = false, nullable = false)
+  private Long requestId;
+
+  @Id
+  @Column(name = "stage_id", insertable = false, updatable = false, nullable = false)
+  private Long stageId;
+
+  @Id
+  @Column(name = "fragment_hash", nullable = false, length = 64)
+  private String fragmentHash;
+
+  @Basic
+  @Lob
+  @Column(name = "content")
+  private byte[] content;
+
+  @ManyToOne
+  @JoinColumns({@JoinColumn(name = "request_id", referencedColumnName = "request_id", nullable = false), @JoinColumn(name = "stage_id", referencedColumnName = "stage_id", nullable = false)})
+  private StageEntity stage;
+
+  public Long getRequestId() {
+    return requestId;
+  }
+
+  public void setRequestId(Long requestId) {
+    this.requestId = requestId;
+  }
+
+  public Long getStageId() {
+    return stageId;
+  }
+
+  public void setStageId(Long stageId) {
+    this.stageId = stageId;
+  }
+
+  public String getFragmentHash() {
+    return fragmentHash;
+  }
+
+  public void setFragmentHash(String fragmentHash) {
+    this.fragmentHash = fragmentHash;
+  }
+
+  /**
+   * @return the compressed content of the fragment.
+   */
+  public byte[] getContent() {
+    return content;
+  }
+
+  public void setContent(byte[] content) {
+    this.content = content;
+  }
+
+  public StageEntity getStage() {
+    return stage;
+  }
+
+  public void setStage(StageEntity stage) {
+    this.stage = stage;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    ExecutionCommandFragmentEntity that = (ExecutionCommandFragmentEntity) o;
+
+    if (requestId != null ? !requestId.equals(that.requestId) : that.requestId != null) return false;
+    if (stageId != null ? !stageId.equals(that.stageId) : that.stageId != null) return false;
+    if (fragmentHash != null ? !fragmentHash.equals(that.fragmentHash) : that.fragmentHash != null) return false;
+    if (content != null ? !Arrays.equals(content, that.content) : that.content != null) return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = requestId != null ? requestId.hashCode() : 0;
+    result = 31 * result + (stageId != null ? stageId.hashCode() : 0);
+    result = 31 * result + (fragmentHash != null ? fragmentHash.hashCode() : 0);
+    return result;
+  }
+}
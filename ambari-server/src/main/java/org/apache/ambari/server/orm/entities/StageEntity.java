@@ -88,6 +88,9 @@ public class StageEntity {
   @OneToMany(mappedBy = "stage", cascade = CascadeType.REMOVE)
   private Collection<RoleSuccessCriteriaEntity> roleSuccessCriterias;
 
+  @OneToMany(mappedBy = "stage", cascade = CascadeType.REMOVE, fetch = FetchType.LAZY)
+  private Collection<ExecutionCommandFragmentEntity> executionCommandFragments;
+
   public Long getClusterId() {
     return clusterId;
   }
@@ -226,6 +229,14 @@ public class StageEntity {
     this.roleSuccessCriterias = roleSuccessCriterias;
   }
 
+  public Collection<ExecutionCommandFragmentEntity> getExecutionCommandFragments() {
+    return executionCommandFragments;
+  }
+
+  public void setExecutionCommandFragments(Collection<ExecutionCommandFragmentEntity> executionCommandFragments) {
+    this.executionCommandFragments = executionCommandFragments;
+  }
+
   public RequestEntity getRequest() {
     return request;
   }
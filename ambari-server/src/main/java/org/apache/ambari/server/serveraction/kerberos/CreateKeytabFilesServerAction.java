@@ -18,6 +18,7 @@
 
 package org.apache.ambari.server.serveraction.kerberos;
 
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
@@ -35,11 +36,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 /**
  * CreateKeytabFilesServerAction is a ServerAction implementation that creates keytab files as
@@ -82,7 +84,13 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
    * A map of data used to track what has been processed in order to optimize the creation of keytabs
    * such as knowing when to create a cached keytab file or use a cached keytab file.
    */
-  Map<String, Set<String>> visitedIdentities = new HashMap<String, Set<String>>();
+  Map<String, Set<String>> visitedIdentities = new ConcurrentHashMap<String, Set<String>>();
+
+  /**
+   * Locks guarding the keytab files being written, since several principals may be merged into the
+   * same keytab file by different threads when identities are processed concurrently.
+   */
+  private final Striped<Lock> keytabFileLocks = Striped.lock(64);
 
   /**
    * Called to execute this action.  Upon invocation, calls
@@ -103,6 +111,16 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
     return processIdentities(requestSharedDataContext);
   }
 
+  /**
+   * Keytab files may be created for different principals at the same time; the records of a
+   * single principal are processed in order so that the keytab cache is used as before.
+   *
+   * @return true
+   */
+  @Override
+  protected boolean isConcurrentProcessingSupported() {
+    return true;
+  }
 
   /**
    * For each identity, create a keytab and append to a new or existing keytab file.
@@ -213,6 +231,8 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
                     LOG.error(message);
                     commandReport = createCommandReport(1, HostRoleStatus.FAILED, "{}", actionLog.getStdOut(), actionLog.getStdErr());
                   } else {
+                    Lock lock = keytabFileLocks.get(destinationKeytabFile.getAbsolutePath());
+                    lock.lock();
                     try {
                       operationHandler.createKeytabFile(new File(cachedKeytabPath), destinationKeytabFile);
                     } catch (KerberosOperationException e) {
@@ -220,6 +240,8 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
                       actionLog.writeStdErr(message);
                       LOG.error(message, e);
                       commandReport = createCommandReport(1, HostRoleStatus.FAILED, "{}", actionLog.getStdOut(), actionLog.getStdErr());
+                    } finally {
+                      lock.unlock();
                     }
                   }
                 }
@@ -286,6 +308,8 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
                 }
 
                 if (keytab != null) {
+                  Lock lock = keytabFileLocks.get(destinationKeytabFile.getAbsolutePath());
+                  lock.lock();
                   try {
                     if (operationHandler.createKeytabFile(keytab, destinationKeytabFile)) {
                       ensureAmbariOnlyAccess(destinationKeytabFile);
@@ -303,6 +327,8 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
                     actionLog.writeStdErr(message);
                     LOG.error(message, e);
                     commandReport = createCommandReport(1, HostRoleStatus.FAILED, "{}", actionLog.getStdOut(), actionLog.getStdErr());
+                  } finally {
+                    lock.unlock();
                   }
                 }
               }
@@ -79,6 +79,17 @@ public class CreatePrincipalsServerAction extends KerberosServerAction {
     return processIdentities(requestSharedDataContext);
   }
 
+  /**
+   * Different principals may be created at the same time; the records of a single
+   * principal are processed in order.
+   *
+   * @return true
+   */
+  @Override
+  protected boolean isConcurrentProcessingSupported() {
+    return true;
+  }
+
 
   /**
    * For each identity, generate a unique password create a new or update an existing principal in
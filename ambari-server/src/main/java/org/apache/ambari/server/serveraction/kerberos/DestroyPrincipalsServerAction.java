@@ -64,6 +64,17 @@ public class DestroyPrincipalsServerAction extends KerberosServerAction {
     return processIdentities(requestSharedDataContext);
   }
 
+  /**
+   * Different principals may be removed at the same time; the records of a single principal are
+   * processed in order.
+   *
+   * @return true
+   */
+  @Override
+  protected boolean isConcurrentProcessingSupported() {
+    return true;
+  }
+
 
   /**
    * For each identity, remove the principal from the configured KDC.
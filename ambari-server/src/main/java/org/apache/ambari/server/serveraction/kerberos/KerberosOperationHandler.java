@@ -702,12 +702,27 @@ public abstract class KerberosOperationHandler {
    */
   protected ShellCommandUtil.Result executeCommand(String[] command)
       throws KerberosOperationException {
+    return executeCommand(command, null);
+  }
+
+  /**
+   * Executes a shell command, writing the given input to its STDIN.
+   * <p/>
+   * See {@link org.apache.ambari.server.utils.ShellCommandUtil#runCommand(String[], String)}
+   *
+   * @param command an array of String value representing the command and its arguments
+   * @param input   a String containing the data to write to the command's STDIN; or null for none
+   * @return a ShellCommandUtil.Result declaring the result of the operation
+   * @throws KerberosOperationException
+   */
+  protected ShellCommandUtil.Result executeCommand(String[] command, String input)
+      throws KerberosOperationException {
 
     if ((command == null) || (command.length == 0)) {
       return null;
     } else {
       try {
-        return ShellCommandUtil.runCommand(command);
+        return ShellCommandUtil.runCommand(command, input);
       } catch (IOException e) {
         String message = String.format("Failed to execute the command: %s", e.getLocalizedMessage());
         LOG.error(message, e);
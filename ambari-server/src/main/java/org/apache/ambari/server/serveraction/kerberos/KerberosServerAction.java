@@ -18,11 +18,13 @@
 
 package org.apache.ambari.server.serveraction.kerberos;
 
+import com.google.gson.Gson;
 import com.google.inject.Inject;
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.agent.CommandReport;
 import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.serveraction.AbstractServerAction;
 import org.apache.ambari.server.state.Cluster;
 import org.apache.ambari.server.state.Clusters;
@@ -33,8 +35,20 @@ import static org.apache.ambari.server.serveraction.kerberos.KerberosIdentityDat
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * KerberosServerAction is an abstract class to be implemented by Kerberos-related
@@ -103,6 +117,22 @@ public abstract class KerberosServerAction extends AbstractServerAction {
 
   private static final Logger LOG = LoggerFactory.getLogger(KerberosServerAction.class);
 
+  /**
+   * The number of records which may wait for each worker when identities are processed
+   * concurrently
+   */
+  private static final int WORKER_QUEUE_SIZE = 100;
+
+  /**
+   * The interval, in milliseconds, at which the progress of processing identities is logged
+   */
+  private static final long PROGRESS_INTERVAL = 30000L;
+
+  /**
+   * Marks the end of the records handed to a worker
+   */
+  private static final Map<String, String> END_OF_RECORDS = new LinkedHashMap<String, String>();
+
   /**
    * The Cluster that this ServerAction implementation is executing on
    */
@@ -123,6 +153,13 @@ public abstract class KerberosServerAction extends AbstractServerAction {
   @Inject
   private KerberosIdentityDataFileReaderFactory kerberosIdentityDataFileReaderFactory;
 
+  /**
+   * The Ambari server configuration, used to determine how many identities may be processed at
+   * the same time
+   */
+  @Inject
+  private Configuration configuration;
+
   /**
    * Given a (command parameter) Map and a property name, attempts to safely retrieve the requested
    * data.
@@ -199,18 +236,7 @@ public abstract class KerberosServerAction extends AbstractServerAction {
    * @return A Map of principals-to-password
    */
   protected static Map<String, String> getPrincipalPasswordMap(Map<String, Object> requestSharedDataContext) {
-    if (requestSharedDataContext == null) {
-      return null;
-    } else {
-      Object map = requestSharedDataContext.get(PRINCIPAL_PASSWORD_MAP);
-
-      if (map == null) {
-        map = new HashMap<String, String>();
-        requestSharedDataContext.put(PRINCIPAL_PASSWORD_MAP, map);
-      }
-
-      return (Map<String, String>) map;
-    }
+    return (Map<String, String>) getSharedMap(requestSharedDataContext, PRINCIPAL_PASSWORD_MAP);
   }
 
   /**
@@ -225,17 +251,34 @@ public abstract class KerberosServerAction extends AbstractServerAction {
    * @return A Map of principals-to-key_numbers
    */
   protected static Map<String, Integer> getPrincipalKeyNumberMap(Map<String, Object> requestSharedDataContext) {
+    return (Map<String, Integer>) getSharedMap(requestSharedDataContext, PRINCIPAL_KEY_NUMBER_MAP);
+  }
+
+  /**
+   * Gets a Map stored in the shared data context, creating and storing one if not found.
+   * <p/>
+   * Created Maps are safe to use from the several threads which may process identities at the
+   * same time.
+   *
+   * @param requestSharedDataContext a Map to be used a shared data among all ServerActions related
+   *                                 to a given request
+   * @param name                     the name the Map is stored under
+   * @return the Map; or null if requestSharedDataContext is null
+   */
+  private static Map<?, ?> getSharedMap(Map<String, Object> requestSharedDataContext, String name) {
     if (requestSharedDataContext == null) {
       return null;
     } else {
-      Object map = requestSharedDataContext.get(PRINCIPAL_KEY_NUMBER_MAP);
+      synchronized (requestSharedDataContext) {
+        Object map = requestSharedDataContext.get(name);
 
-      if (map == null) {
-        map = new HashMap<String, String>();
-        requestSharedDataContext.put(PRINCIPAL_KEY_NUMBER_MAP, map);
-      }
+        if (map == null) {
+          map = new ConcurrentHashMap<Object, Object>();
+          requestSharedDataContext.put(name, map);
+        }
 
-      return (Map<String, Integer>) map;
+        return (Map<?, ?>) map;
+      }
     }
   }
 
@@ -317,6 +360,15 @@ public abstract class KerberosServerAction extends AbstractServerAction {
    * {@link KerberosIdentityDataFileReader} to parse
    * the relative identity.dat file and iterate through its "records".  Each "record" is process using
    * {@link #processRecord(Map, String, KerberosOperationHandler, Map, Map)}.
+   * <p/>
+   * If the implementing class supports it (see {@link #isConcurrentProcessingSupported()}) and more
+   * than one thread is configured, records are handed to a bounded set of workers, each with its
+   * own opened KerberosOperationHandler.  Records with the same concurrency key (see
+   * {@link #getConcurrencyKey(Map, String)}) are always processed by the same worker, in the order
+   * they were read.
+   * <p/>
+   * The number of processed identities and the rate at which they were processed is logged while
+   * processing and set as the structured output of the successful CommandReport.
    *
    * @param requestSharedDataContext a Map to be used a shared data among all ServerActions related
    *                                 to a given request
@@ -327,6 +379,7 @@ public abstract class KerberosServerAction extends AbstractServerAction {
       throws AmbariException {
     CommandReport commandReport = null;
     Map<String, String> commandParameters = getCommandParameters();
+    IdentityProgress progress = new IdentityProgress(getOperationThreadCount());
 
     actionLog.writeStdOut("Processing identities...");
     LOG.info("Processing identities...");
@@ -388,14 +441,21 @@ public abstract class KerberosServerAction extends AbstractServerAction {
             KerberosIdentityDataFileReader reader = null;
             try {
               reader = kerberosIdentityDataFileReaderFactory.createKerberosIdentityDataFileReader(identityDataFile);
-              for (Map<String, String> record : reader) {
-                // Process the current record
-                commandReport = processRecord(record, defaultRealm, handler, kerberosConfiguration, requestSharedDataContext);
-
-                // If the principal processor returns a CommandReport, than it is time to stop since
-                // an error condition has probably occurred, else all is assumed to be well.
-                if (commandReport != null) {
-                  break;
+
+              if (progress.threads > 1) {
+                commandReport = processRecordsConcurrently(reader, handler, kdcType, administratorCredential,
+                    defaultRealm, kerberosConfiguration, requestSharedDataContext, progress);
+              } else {
+                for (Map<String, String> record : reader) {
+                  // Process the current record
+                  commandReport = processRecord(record, defaultRealm, handler, kerberosConfiguration, requestSharedDataContext);
+                  progress.recordProcessed();
+
+                  // If the principal processor returns a CommandReport, than it is time to stop since
+                  // an error condition has probably occurred, else all is assumed to be well.
+                  if (commandReport != null) {
+                    break;
+                  }
                 }
               }
             } catch (AmbariException e) {
@@ -432,16 +492,202 @@ public abstract class KerberosServerAction extends AbstractServerAction {
       }
     }
 
-    actionLog.writeStdOut("Processing identities completed.");
-    LOG.info("Processing identities completed.");
+    String message = String.format("Processing identities completed: %s", progress);
+    actionLog.writeStdOut(message);
+    LOG.info(message);
 
     // If commandReport is null, we can assume this operation was a success, so return a successful
     // CommandReport; else return the previously created CommandReport.
     return (commandReport == null)
-        ? createCommandReport(0, HostRoleStatus.COMPLETED, "{}", actionLog.getStdOut(), actionLog.getStdErr())
+        ? createCommandReport(0, HostRoleStatus.COMPLETED, progress.toJson(), actionLog.getStdOut(), actionLog.getStdErr())
         : commandReport;
   }
 
+  /**
+   * Indicates whether the implementing class may process several identity records at the same
+   * time, from different threads.
+   * <p/>
+   * Implementations returning true must be safe to call concurrently for records with different
+   * concurrency keys (see {@link #getConcurrencyKey(Map, String)}).
+   *
+   * @return true if identity records may be processed concurrently; false otherwise (default)
+   */
+  protected boolean isConcurrentProcessingSupported() {
+    return false;
+  }
+
+  /**
+   * Gets the key used to determine which worker processes an identity record when identities are
+   * processed concurrently.  Records with the same key are processed by the same worker, in the
+   * order they were read.
+   * <p/>
+   * By default, records are grouped by their evaluated principal.
+   *
+   * @param identityRecord     a Map containing the data for the current identity record
+   * @param evaluatedPrincipal a String indicating the relevant principal
+   * @return a String declaring the concurrency key
+   */
+  protected String getConcurrencyKey(Map<String, String> identityRecord, String evaluatedPrincipal) {
+    return evaluatedPrincipal;
+  }
+
+  /**
+   * Gets the number of threads to use to process identities.
+   *
+   * @return the number of threads; 1 if identities are to be processed sequentially
+   */
+  private int getOperationThreadCount() {
+    if (!isConcurrentProcessingSupported() || (configuration == null)) {
+      return 1;
+    }
+
+    return Math.max(1, configuration.getKerberosOperationThreads());
+  }
+
+  /**
+   * Processes the identity records using a bounded set of worker threads.
+   * <p/>
+   * The first worker uses the already opened operation handler; each of the others creates and
+   * opens its own, so that KDC sessions and connections are not shared between threads.  Once a
+   * record fails, the remaining records are skipped.
+   *
+   * @param records                  the identity records to process
+   * @param handler                  the already opened KerberosOperationHandler
+   * @param kdcType                  the relevant KDCType
+   * @param administratorCredential  the KDC administrator credentials
+   * @param defaultRealm             a String declaring the default Kerberos realm
+   * @param kerberosConfiguration    a Map of configuration properties from kerberos-env
+   * @param requestSharedDataContext a Map to be used a shared data among all ServerActions related
+   *                                 to a given request
+   * @param progress                 the progress to update as records are processed
+   * @return a CommandReport, indicating an error condition; or null, indicating a success condition
+   * @throws AmbariException if an error occurs while processing an identity record
+   */
+  private CommandReport processRecordsConcurrently(Iterable<Map<String, String>> records,
+                                                   KerberosOperationHandler handler,
+                                                   KDCType kdcType,
+                                                   KerberosCredential administratorCredential,
+                                                   final String defaultRealm,
+                                                   final Map<String, String> kerberosConfiguration,
+                                                   final Map<String, Object> requestSharedDataContext,
+                                                   final IdentityProgress progress)
+      throws AmbariException {
+
+    final int threads = progress.threads;
+    final AtomicReference<CommandReport> failedReport = new AtomicReference<CommandReport>();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    List<KerberosOperationHandler> handlers = new ArrayList<KerberosOperationHandler>(threads);
+    List<BlockingQueue<Map<String, String>>> queues = new ArrayList<BlockingQueue<Map<String, String>>>(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new IdentityThreadFactory());
+
+    try {
+      handlers.add(handler);
+      for (int i = 1; i < threads; i++) {
+        KerberosOperationHandler workerHandler = kerberosOperationHandlerFactory.getKerberosOperationHandler(kdcType);
+
+        try {
+          workerHandler.open(administratorCredential, defaultRealm, kerberosConfiguration);
+        } catch (KerberosOperationException e) {
+          String message = String.format("Failed to process the identities, could not properly open the KDC operation handler: %s",
+              e.getMessage());
+          actionLog.writeStdErr(message);
+          LOG.error(message);
+          throw new AmbariException(message, e);
+        }
+
+        handlers.add(workerHandler);
+      }
+
+      for (int i = 0; i < threads; i++) {
+        final KerberosOperationHandler workerHandler = handlers.get(i);
+        final BlockingQueue<Map<String, String>> queue =
+            new LinkedBlockingQueue<Map<String, String>>(WORKER_QUEUE_SIZE);
+
+        queues.add(queue);
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              Map<String, String> record;
+              while ((record = queue.take()) != END_OF_RECORDS) {
+                // Once a record has failed, drain the remaining records without processing them
+                if ((failedReport.get() != null) || (failure.get() != null)) {
+                  continue;
+                }
+
+                try {
+                  CommandReport report = processRecord(record, defaultRealm, workerHandler,
+                      kerberosConfiguration, requestSharedDataContext);
+                  progress.recordProcessed();
+
+                  if (report != null) {
+                    failedReport.compareAndSet(null, report);
+                  }
+                } catch (AmbariException e) {
+                  failure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                  failure.compareAndSet(null, e);
+                } catch (Error e) {
+                  failure.compareAndSet(null, e);
+                }
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+      }
+
+      // Hand each record to the worker owning its concurrency key
+      for (Map<String, String> record : records) {
+        if ((failedReport.get() != null) || (failure.get() != null)) {
+          break;
+        }
+
+        String evaluatedPrincipal = evaluatePrincipal(record, defaultRealm);
+        if (evaluatedPrincipal != null) {
+          String key = getConcurrencyKey(record, evaluatedPrincipal);
+          int index = (key == null) ? 0 : (key.hashCode() & Integer.MAX_VALUE) % threads;
+          queues.get(index).put(record);
+        }
+      }
+
+      for (BlockingQueue<Map<String, String>> queue : queues) {
+        queue.put(END_OF_RECORDS);
+      }
+
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AmbariException("Interrupted while processing the identities", e);
+    } finally {
+      executor.shutdownNow();
+
+      // The additional KerberosOperationHandlers need to be closed, if any fails to close ignore
+      // the exception since there is little we can or care to do about it now.
+      for (int i = 1; i < handlers.size(); i++) {
+        try {
+          handlers.get(i).close();
+        } catch (KerberosOperationException e) {
+          // Ignore this...
+        }
+      }
+    }
+
+    Throwable exception = failure.get();
+    if (exception instanceof AmbariException) {
+      throw (AmbariException) exception;
+    } else if (exception instanceof Error) {
+      throw (Error) exception;
+    } else if (exception != null) {
+      throw (RuntimeException) exception;
+    }
+
+    return failedReport.get();
+  }
+
   /**
    * Processes an identity as necessary.
    * <p/>
@@ -492,19 +738,104 @@ public abstract class KerberosServerAction extends AbstractServerAction {
       throws AmbariException {
     CommandReport commandReport = null;
 
+    String evaluatedPrincipal = evaluatePrincipal(record, defaultRealm);
+    if (evaluatedPrincipal != null) {
+      commandReport = processIdentity(record, evaluatedPrincipal, operationHandler, kerberosConfiguration, requestSharedDataContext);
+    }
+
+    return commandReport;
+  }
+
+  /**
+   * Evaluates the principal "pattern" found in an identity record to generate the
+   * "evaluated principal" by replacing the _HOST and _REALM variables.
+   *
+   * @param record       a Map containing the data for the current identity record
+   * @param defaultRealm a String declaring the default Kerberos realm
+   * @return a String containing the evaluated principal; or null if the record has no principal
+   */
+  private String evaluatePrincipal(Map<String, String> record, String defaultRealm) {
     if (record != null) {
       String principal = record.get(KerberosIdentityDataFileReader.PRINCIPAL);
       String host = record.get(KerberosIdentityDataFileReader.HOSTNAME);
 
       if (principal != null) {
-        // Evaluate the principal "pattern" found in the record to generate the "evaluated principal"
-        // by replacing the _HOST and _REALM variables.
-        String evaluatedPrincipal = principal.replace("_HOST", host).replace("_REALM", defaultRealm);
+        return principal.replace("_HOST", host).replace("_REALM", defaultRealm);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Tracks the number of identities processed and logs the progress at a regular interval.
+   */
+  private final class IdentityProgress {
+    private final int threads;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong lastLogTime = new AtomicLong(startTime);
+
+    private IdentityProgress(int threads) {
+      this.threads = threads;
+    }
+
+    /**
+     * Counts a processed identity, logging the progress if it was not logged within the interval.
+     */
+    private void recordProcessed() {
+      processed.incrementAndGet();
 
-        commandReport = processIdentity(record, evaluatedPrincipal, operationHandler, kerberosConfiguration, requestSharedDataContext);
+      long now = System.currentTimeMillis();
+      long last = lastLogTime.get();
+      if ((now - last >= PROGRESS_INTERVAL) && lastLogTime.compareAndSet(last, now)) {
+        log();
       }
     }
 
-    return commandReport;
+    private void log() {
+      String message = String.format("Processing identities: %s", this);
+      actionLog.writeStdOut(message);
+      LOG.info(message);
+    }
+
+    private double getRate() {
+      long elapsed = System.currentTimeMillis() - startTime;
+      return (elapsed == 0) ? 0 : processed.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return the progress as a JSON document, used as the structured output of the command
+     */
+    private String toJson() {
+      Map<String, Object> output = new LinkedHashMap<String, Object>();
+      output.put("identities_processed", processed.get());
+      output.put("elapsed_ms", System.currentTimeMillis() - startTime);
+      output.put("identities_per_second", Math.round(getRate() * 100) / 100.0);
+      output.put("threads", threads);
+      return new Gson().toJson(output);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d identities processed in %d ms (%.2f/s) using %d thread(s)",
+          processed.get(), System.currentTimeMillis() - startTime, getRate(), threads);
+    }
+  }
+
+  /**
+   * Names the threads which process identities concurrently.
+   */
+  private static final class IdentityThreadFactory implements ThreadFactory {
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+    private final String prefix = "kerberos-identity-" + POOL_NUMBER.incrementAndGet() + "-";
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
   }
 }
@@ -61,6 +61,13 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
    */
   private String executableKadminLocal = null;
 
+  /**
+   * The file holding the administrator's keytab, if one was given. It is written the first time
+   * kadmin is invoked and kept until this handler is closed rather than being written and removed
+   * for every kadmin invocation.
+   */
+  private File adminKeytabFile = null;
+
   /**
    * Prepares and creates resources to be used by this KerberosOperationHandler
    * <p/>
@@ -100,11 +107,18 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
 
   @Override
   public void close() throws KerberosOperationException {
-    // There is nothing to do here.
     setOpen(false);
 
     executableKadmin = null;
     executableKadminLocal = null;
+
+    // If a temporary keytab file was created, clean it up.
+    if (adminKeytabFile != null) {
+      if (!adminKeytabFile.delete()) {
+        adminKeytabFile.deleteOnExit();
+      }
+      adminKeytabFile = null;
+    }
   }
 
   /**
@@ -146,7 +160,8 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
    * Creates a new principal in a previously configured MIT KDC
    * <p/>
    * This implementation creates a query to send to the kadmin shell command and then interrogates
-   * the result from STDOUT to determine if the operation executed successfully.
+   * the result from STDOUT to determine if the operation executed successfully.  The query to
+   * retrieve the new key number is sent to the same kadmin invocation.
    *
    * @param principal a String containing the principal add
    * @param password  a String containing the password to use when creating the principal
@@ -170,14 +185,17 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
     } else if ((password == null) || password.isEmpty()) {
       throw new KerberosOperationException("Failed to create new principal - no password specified");
     } else {
-      // Create the kdamin query:  add_principal <-randkey|-pw <password>> <principal>
-      ShellCommandUtil.Result result = invokeKAdmin(String.format("add_principal -pw \"%s\" %s", password, principal));
+      // Create the kdamin queries:  add_principal <-randkey|-pw <password>> <principal>
+      //                              get_principal <principal>
+      ShellCommandUtil.Result result = invokeKAdmin(
+          String.format("add_principal -pw \"%s\" %s", password, principal),
+          String.format("get_principal %s", principal));
 
       // If there is data from STDOUT, see if the following string exists:
       //    Principal "<principal>" created
       String stdOut = result.getStdout();
       if ((stdOut != null) && stdOut.contains(String.format("Principal \"%s\" created", principal))) {
-        return getKeyNumber(principal);
+        return parseKeyNumber(principal, result);
       } else {
         throw new KerberosOperationException(String.format("Failed to create service principal for %s\nSTDOUT: %s\nSTDERR: %s",
             principal, stdOut, result.getStderr()));
@@ -189,7 +207,8 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
    * Updates the password for an existing principal in a previously configured MIT KDC
    * <p/>
    * This implementation creates a query to send to the kadmin shell command and then interrogates
-   * the exit code to determine if the operation executed successfully.
+   * the result from STDOUT to determine if the operation executed successfully.  The query to
+   * retrieve the new key number is sent to the same kadmin invocation.
    *
    * @param principal a String containing the principal to update
    * @param password  a String containing the password to set
@@ -210,10 +229,21 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
     } else if ((password == null) || password.isEmpty()) {
       throw new KerberosOperationException("Failed to set password - no password specified");
     } else {
-      // Create the kdamin query:  change_password <-randkey|-pw <password>> <principal>
-      invokeKAdmin(String.format("change_password -pw \"%s\" %s", password, principal));
+      // Create the kdamin queries:  change_password <-randkey|-pw <password>> <principal>
+      //                              get_principal <principal>
+      ShellCommandUtil.Result result = invokeKAdmin(
+          String.format("change_password -pw \"%s\" %s", password, principal),
+          String.format("get_principal %s", principal));
 
-      return getKeyNumber(principal);
+      // If there is data from STDOUT, see if the following string exists:
+      //    Password for "<principal>" changed
+      String stdOut = result.getStdout();
+      if ((stdOut != null) && stdOut.contains(String.format("Password for \"%s\" changed", principal))) {
+        return parseKeyNumber(principal, result);
+      } else {
+        throw new KerberosOperationException(String.format("Failed to set password for %s\nSTDOUT: %s\nSTDERR: %s",
+            principal, stdOut, result.getStderr()));
+      }
     }
   }
 
@@ -266,186 +296,211 @@ public class MITKerberosOperationHandler extends KerberosOperationHandler {
       throw new KerberosOperationException("Failed to get key number for principal  - no principal specified");
     } else {
       // Create the kdamin query:  get_principal <principal>
-      ShellCommandUtil.Result result = invokeKAdmin(String.format("get_principal %s", principal));
+      return parseKeyNumber(principal, invokeKAdmin(String.format("get_principal %s", principal)));
+    }
+  }
 
-      String stdOut = result.getStdout();
-      if (stdOut == null) {
-        String message = String.format("Failed to get key number for %s:\n\tExitCode: %s\n\tSTDOUT: NULL\n\tSTDERR: %s",
-            principal, result.getExitCode(), result.getStderr());
-        LOG.warn(message);
-        throw new KerberosOperationException(message);
-      }
+  /**
+   * Parses the current key number of a principal from the output of the get_principal kadmin
+   * command
+   *
+   * @param principal a String declaring the principal which was looked up
+   * @param result    a ShellCommandUtil.Result containing the output of the kadmin command
+   * @return an Integer declaring the current key number
+   * @throws KerberosOperationException if the key number is not found in the output
+   */
+  private Integer parseKeyNumber(String principal, ShellCommandUtil.Result result)
+      throws KerberosOperationException {
+    String stdOut = result.getStdout();
+    if (stdOut == null) {
+      String message = String.format("Failed to get key number for %s:\n\tExitCode: %s\n\tSTDOUT: NULL\n\tSTDERR: %s",
+          principal, result.getExitCode(), result.getStderr());
+      LOG.warn(message);
+      throw new KerberosOperationException(message);
+    }
 
-      Matcher matcher = PATTERN_GET_KEY_NUMBER.matcher(stdOut);
-      if (matcher.matches()) {
-        NumberFormat numberFormat = NumberFormat.getIntegerInstance();
-        String keyNumber = matcher.group(1);
-
-        numberFormat.setGroupingUsed(false);
-        try {
-          Number number = numberFormat.parse(keyNumber);
-          return (number == null) ? 0 : number.intValue();
-        } catch (ParseException e) {
-          String message = String.format("Failed to get key number for %s - invalid key number value (%s):\n\tExitCode: %s\n\tSTDOUT: NULL\n\tSTDERR: %s",
-              principal, keyNumber, result.getExitCode(), result.getStderr());
-          LOG.warn(message);
-          throw new KerberosOperationException(message);
-        }
-      } else {
-        String message = String.format("Failed to get key number for %s - unexpected STDOUT data:\n\tExitCode: %s\n\tSTDOUT: NULL\n\tSTDERR: %s",
-            principal, result.getExitCode(), result.getStderr());
+    Matcher matcher = PATTERN_GET_KEY_NUMBER.matcher(stdOut);
+    if (matcher.matches()) {
+      NumberFormat numberFormat = NumberFormat.getIntegerInstance();
+      String keyNumber = matcher.group(1);
+
+      numberFormat.setGroupingUsed(false);
+      try {
+        Number number = numberFormat.parse(keyNumber);
+        return (number == null) ? 0 : number.intValue();
+      } catch (ParseException e) {
+        String message = String.format("Failed to get key number for %s - invalid key number value (%s):\n\tExitCode: %s\n\tSTDOUT: NULL\n\tSTDERR: %s",
+            principal, keyNumber, result.getExitCode(), result.getStderr());
         LOG.warn(message);
         throw new KerberosOperationException(message);
       }
+    } else {
+      String message = String.format("Failed to get key number for %s - unexpected STDOUT data:\n\tExitCode: %s\n\tSTDOUT: NULL\n\tSTDERR: %s",
+          principal, result.getExitCode(), result.getStderr());
+      LOG.warn(message);
+      throw new KerberosOperationException(message);
     }
   }
 
   /**
    * Invokes the kadmin shell command to issue queries
+   * <p/>
+   * A single query is passed on the command line.  Several queries are written to the STDIN of a
+   * single kadmin process, one per line, so that they share one authenticated kadmin session
+   * rather than each starting (and authenticating) a process of its own.
    *
-   * @param query a String containing the query to send to the kdamin command
+   * @param queries the Strings containing the queries to send to the kdamin command
    * @return a ShellCommandUtil.Result containing the result of the operation
    * @throws KerberosKDCConnectionException       if a connection to the KDC cannot be made
    * @throws KerberosAdminAuthenticationException if the administrator credentials fail to authenticate
    * @throws KerberosRealmException               if the realm does not map to a KDC
    * @throws KerberosOperationException           if an unexpected error occurred
    */
-  private ShellCommandUtil.Result invokeKAdmin(String query)
+  private ShellCommandUtil.Result invokeKAdmin(String... queries)
       throws KerberosOperationException {
     ShellCommandUtil.Result result = null;
 
-    if ((query == null) || query.isEmpty()) {
+    if ((queries == null) || (queries.length == 0)) {
       throw new KerberosOperationException("Missing kadmin query");
     }
+
+    for (String query : queries) {
+      if ((query == null) || query.isEmpty()) {
+        throw new KerberosOperationException("Missing kadmin query");
+      }
+    }
+
     KerberosCredential administratorCredentials = getAdministratorCredentials();
     String defaultRealm = getDefaultRealm();
 
     List<String> command = new ArrayList<String>();
-    File tempKeytabFile = null;
 
-    try {
-      String adminPrincipal = (administratorCredentials == null)
-          ? null
-          : administratorCredentials.getPrincipal();
+    String adminPrincipal = (administratorCredentials == null)
+        ? null
+        : administratorCredentials.getPrincipal();
 
-      if ((adminPrincipal == null) || adminPrincipal.isEmpty()) {
-        // Set the kdamin interface to be kadmin.local
-        if((executableKadminLocal == null) || executableKadminLocal.isEmpty()) {
-          throw new KerberosOperationException("No path for kadmin.local is available - this KerberosOperationHandler may not have been opened.");
-        }
+    if ((adminPrincipal == null) || adminPrincipal.isEmpty()) {
+      // Set the kdamin interface to be kadmin.local
+      if((executableKadminLocal == null) || executableKadminLocal.isEmpty()) {
+        throw new KerberosOperationException("No path for kadmin.local is available - this KerberosOperationHandler may not have been opened.");
+      }
 
-        command.add(executableKadminLocal);
-      } else {
-        if((executableKadmin == null) || executableKadmin.isEmpty()) {
-          throw new KerberosOperationException("No path for kadmin is available - this KerberosOperationHandler may not have been opened.");
-        }
-        String adminPassword = administratorCredentials.getPassword();
-        String adminKeyTab = administratorCredentials.getKeytab();
+      command.add(executableKadminLocal);
+    } else {
+      if((executableKadmin == null) || executableKadmin.isEmpty()) {
+        throw new KerberosOperationException("No path for kadmin is available - this KerberosOperationHandler may not have been opened.");
+      }
+      String adminPassword = administratorCredentials.getPassword();
+      String adminKeyTab = administratorCredentials.getKeytab();
 
-        // Set the kdamin interface to be kadmin
-        command.add(executableKadmin);
+      // Set the kdamin interface to be kadmin
+      command.add(executableKadmin);
 
-        // Add explicit KDC admin host, if available
-        if (getAdminServerHost() != null) {
-          command.add("-s");
-          command.add(getAdminServerHost());
-        }
+      // Add explicit KDC admin host, if available
+      if (getAdminServerHost() != null) {
+        command.add("-s");
+        command.add(getAdminServerHost());
+      }
 
-        // Add the administrative principal
-        command.add("-p");
-        command.add(adminPrincipal);
+      // Add the administrative principal
+      command.add("-p");
+      command.add(adminPrincipal);
 
-        if ((adminKeyTab != null) && !adminKeyTab.isEmpty()) {
-          tempKeytabFile = createKeytabFile(adminKeyTab);
+      if ((adminKeyTab != null) && !adminKeyTab.isEmpty()) {
+        if (adminKeytabFile == null) {
+          adminKeytabFile = createKeytabFile(adminKeyTab);
+        }
 
-          if (tempKeytabFile != null) {
-            // Add keytab file administrative principal
-            command.add("-k");
-            command.add("-t");
-            command.add(tempKeytabFile.getAbsolutePath());
-          }
-        } else if (adminPassword != null) {
-          // Add password for administrative principal
-          command.add("-w");
-          command.add(adminPassword);
+        if (adminKeytabFile != null) {
+          // Add keytab file administrative principal
+          command.add("-k");
+          command.add("-t");
+          command.add(adminKeytabFile.getAbsolutePath());
         }
+      } else if (adminPassword != null) {
+        // Add password for administrative principal
+        command.add("-w");
+        command.add(adminPassword);
       }
+    }
 
-      if ((defaultRealm != null) && !defaultRealm.isEmpty()) {
-        // Add default realm clause
-        command.add("-r");
-        command.add(defaultRealm);
-      }
+    if ((defaultRealm != null) && !defaultRealm.isEmpty()) {
+      // Add default realm clause
+      command.add("-r");
+      command.add(defaultRealm);
+    }
 
+    if (queries.length == 1) {
       // Add kadmin query
       command.add("-q");
-      command.add(query);
+      command.add(queries[0]);
 
       result = executeCommand(command.toArray(new String[command.size()]));
+    } else {
+      // Send the kadmin queries through STDIN
+      StringBuilder input = new StringBuilder();
+      for (String query : queries) {
+        input.append(query).append('\n');
+      }
 
-      if (!result.isSuccessful()) {
-        // Build command string, replacing administrator password with "********"
-        StringBuilder cleanCommand = new StringBuilder();
-        Iterator<String> iterator = command.iterator();
+      result = executeCommand(command.toArray(new String[command.size()]), input.toString());
+    }
 
-        if (iterator.hasNext()) {
-          cleanCommand.append(iterator.next());
-        }
+    if (!result.isSuccessful()) {
+      // Build command string, replacing administrator password with "********"
+      StringBuilder cleanCommand = new StringBuilder();
+      Iterator<String> iterator = command.iterator();
 
-        while (iterator.hasNext()) {
-          String part = iterator.next();
+      if (iterator.hasNext()) {
+        cleanCommand.append(iterator.next());
+      }
 
-          cleanCommand.append(' ');
+      while (iterator.hasNext()) {
+        String part = iterator.next();
 
-          if (part.contains(" ")) {
-            cleanCommand.append('"');
-            cleanCommand.append(part);
-            cleanCommand.append('"');
-          } else {
-            cleanCommand.append(part);
-          }
+        cleanCommand.append(' ');
 
-          if ("-w".equals(part)) {
-            // Skip the password and use "********" instead
-            if (iterator.hasNext()) {
-              iterator.next();
-            }
-            cleanCommand.append(" ********");
-          }
+        if (part.contains(" ")) {
+          cleanCommand.append('"');
+          cleanCommand.append(part);
+          cleanCommand.append('"');
+        } else {
+          cleanCommand.append(part);
         }
-        String message = String.format("Failed to execute kadmin:\n\tCommand: %s\n\tExitCode: %s\n\tSTDOUT: %s\n\tSTDERR: %s",
-            cleanCommand.toString(), result.getExitCode(), result.getStdout(), result.getStderr());
-        LOG.warn(message);
 
-        // Test STDERR to see of any "expected" error conditions were encountered...
-        String stdErr = result.getStderr();
-        // Did admin credentials fail?
-        if (stdErr.contains("Client not found in Kerberos database")) {
-          throw new KerberosAdminAuthenticationException(stdErr);
-        } else if (stdErr.contains("Incorrect password while initializing")) {
-          throw new KerberosAdminAuthenticationException(stdErr);
-        }
-        // Did we fail to connect to the KDC?
-        else if (stdErr.contains("Cannot contact any KDC")) {
-          throw new KerberosKDCConnectionException(stdErr);
-        } else if (stdErr.contains("Cannot resolve network address for admin server in requested realm while initializing kadmin interface")) {
-          throw new KerberosKDCConnectionException(stdErr);
-        }
-        // Was the realm invalid?
-        else if (stdErr.contains("Missing parameters in krb5.conf required for kadmin client")) {
-          throw new KerberosRealmException(stdErr);
-        } else if (stdErr.contains("Cannot find KDC for requested realm while initializing kadmin interface")) {
-          throw new KerberosRealmException(stdErr);
-        } else {
-          throw new KerberosOperationException("Unexpected error condition executing the kadmin command");
+        if ("-w".equals(part)) {
+          // Skip the password and use "********" instead
+          if (iterator.hasNext()) {
+            iterator.next();
+          }
+          cleanCommand.append(" ********");
         }
       }
-    } finally {
-      // If a temporary keytab file was created, clean it up.
-      if (tempKeytabFile != null) {
-        if (!tempKeytabFile.delete()) {
-          tempKeytabFile.deleteOnExit();
-        }
+      String message = String.format("Failed to execute kadmin:\n\tCommand: %s\n\tExitCode: %s\n\tSTDOUT: %s\n\tSTDERR: %s",
+          cleanCommand.toString(), result.getExitCode(), result.getStdout(), result.getStderr());
+      LOG.warn(message);
+
+      // Test STDERR to see of any "expected" error conditions were encountered...
+      String stdErr = result.getStderr();
+      // Did admin credentials fail?
+      if (stdErr.contains("Client not found in Kerberos database")) {
+        throw new KerberosAdminAuthenticationException(stdErr);
+      } else if (stdErr.contains("Incorrect password while initializing")) {
+        throw new KerberosAdminAuthenticationException(stdErr);
+      }
+      // Did we fail to connect to the KDC?
+      else if (stdErr.contains("Cannot contact any KDC")) {
+        throw new KerberosKDCConnectionException(stdErr);
+      } else if (stdErr.contains("Cannot resolve network address for admin server in requested realm while initializing kadmin interface")) {
+        throw new KerberosKDCConnectionException(stdErr);
+      }
+      // Was the realm invalid?
+      else if (stdErr.contains("Missing parameters in krb5.conf required for kadmin client")) {
+        throw new KerberosRealmException(stdErr);
+      } else if (stdErr.contains("Cannot find KDC for requested realm while initializing kadmin interface")) {
+        throw new KerberosRealmException(stdErr);
+      } else {
+        throw new KerberosOperationException("Unexpected error condition executing the kadmin command");
       }
     }
 
@@ -30,6 +30,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
@@ -66,6 +67,12 @@ public class ConfigHelper {
   private final int STALE_CONFIGS_CACHE_EXPIRATION_TIME = 300;
   private final Cache<ServiceComponentHost, Boolean> staleConfigsCache;
 
+  /**
+   * Incremented whenever the desired configurations or the config groups of a
+   * cluster change, so that values derived from them can be cached by callers.
+   */
+  private final AtomicLong configurationVersion = new AtomicLong();
+
   private static final Logger LOG =
       LoggerFactory.getLogger(ConfigHelper.class);
 
@@ -398,9 +405,20 @@ public class ConfigHelper {
    * Invalidates isStale cache
    */
   public void invalidateStaleConfigsCache() {
+    configurationVersion.incrementAndGet();
     staleConfigsCache.invalidateAll();
   }
 
+  /**
+   * Gets a number which changes every time the desired configurations or the
+   * config groups of any cluster change.
+   *
+   * @return the current configuration version
+   */
+  public long getConfigurationVersion() {
+    return configurationVersion.get();
+  }
+
   /**
    * Invalidates cached isStale value for sch
    *
@@ -20,6 +20,7 @@ package org.apache.ambari.server.state.alert;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -27,10 +28,10 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.agent.ActionQueue;
@@ -60,6 +61,12 @@ import com.google.inject.Singleton;
  * list of {@link AlertDefinitionEntity}s. It is used in order to represent the
  * state of a group of definitions by using
  * {@link AlertDefinitionEntity#getHash()}
+ * <p/>
+ * The definitions and hash of each host are cached until the host or one of
+ * its definitions is invalidated. The service components installed on each
+ * host are kept in a per-cluster index which maps each service component and
+ * each service's masters back to their hosts, so that a change to a single
+ * definition only visits the hosts which run it.
  */
 @Singleton
 public class AlertDefinitionHash {
@@ -108,17 +115,26 @@ public class AlertDefinitionHash {
   private Provider<ConfigHelper> m_configHelper;
 
   /**
-   * Due to the nature of the asynchronous events for alerts and Ambari, this
-   * lock will ensure that only a single writer is writing to the
-   * {@link ActionQueue}.
+   * The definitions and hashes for all hosts for any cluster. The key is the
+   * hostname and the value is a map between cluster name and the host's
+   * definitions.
    */
-  private ReentrantLock m_actionQueueLock = new ReentrantLock();
+  private final ConcurrentMap<String, ConcurrentMap<String, HostDefinitions>> m_hashes =
+      new ConcurrentHashMap<String, ConcurrentMap<String, HostDefinitions>>();
 
   /**
-   * The hashes for all hosts for any cluster. The key is the hostname and the
-   * value is a map between cluster name and hash.
+   * The service components installed on the hosts of each cluster, keyed by
+   * cluster name.
    */
-  private Map<String, Map<String, String>> m_hashes = new HashMap<String, Map<String, String>>();
+  private final ConcurrentMap<String, ComponentIndex> m_componentIndexes =
+      new ConcurrentHashMap<String, ComponentIndex>();
+
+  /**
+   * Incremented on every invalidation of a hash; definitions which were
+   * calculated while an invalidation happened are returned but not cached
+   * since they may already be out of date.
+   */
+  private final AtomicLong m_hashVersion = new AtomicLong();
 
   /**
    * Gets a unique hash value reprssenting all of the alert definitions that
@@ -137,44 +153,38 @@ public class AlertDefinitionHash {
    * @return the unique hash or {@value #NULL_MD5_HASH} if none.
    */
   public String getHash(String clusterName, String hostName) {
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
-    if (null == clusterMapping) {
-      clusterMapping = new ConcurrentHashMap<String, String>();
-      m_hashes.put(hostName, clusterMapping);
-    }
-
-    String hash = clusterMapping.get(hostName);
-    if (null != hash) {
-      return hash;
-    }
-
-    hash = hash(clusterName, hostName);
-    clusterMapping.put(clusterName, hash);
-
-    return hash;
+    return getHostDefinitions(clusterName, hostName).m_hash;
   }
 
   /**
-   * Invalidate all cached hashes causing subsequent lookups to recalculate.
+   * Invalidate all cached hashes and installed components causing subsequent
+   * lookups to recalculate.
    */
   public void invalidateAll() {
+    m_hashVersion.incrementAndGet();
     m_hashes.clear();
+    m_componentIndexes.clear();
   }
 
   /**
-   * Invalidates the cached hash for the specified agent host across all
-   * clusters.
+   * Invalidates the cached hash and installed components for the specified
+   * agent host across all clusters.
    *
    * @param hostName
    *          the host to invalidate the cache for (not {@code null}).
    */
   public void invalidate(String hostName) {
+    m_hashVersion.incrementAndGet();
     m_hashes.remove(hostName);
+
+    for (ComponentIndex index : m_componentIndexes.values()) {
+      index.remove(hostName);
+    }
   }
 
   /**
-   * Invalidates the cached hash for the specified agent host in the specified
-   * cluster.
+   * Invalidates the cached hash and installed components for the specified
+   * agent host in the specified cluster.
    *
    * @param clusterName
    *          the name of the cluster (not {@code null}).
@@ -182,7 +192,27 @@ public class AlertDefinitionHash {
    *          the host to invalidate the cache for (not {@code null}).
    */
   public void invalidate(String clusterName, String hostName) {
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
+    invalidateHash(clusterName, hostName);
+
+    ComponentIndex index = m_componentIndexes.get(clusterName);
+    if (null != index) {
+      index.remove(hostName);
+    }
+  }
+
+  /**
+   * Invalidates only the cached hash for the specified agent host in the
+   * specified cluster; its installed components are unchanged.
+   *
+   * @param clusterName
+   *          the name of the cluster (not {@code null}).
+   * @param hostName
+   *          the host to invalidate the cache for (not {@code null}).
+   */
+  private void invalidateHash(String clusterName, String hostName) {
+    m_hashVersion.incrementAndGet();
+
+    Map<String, HostDefinitions> clusterMapping = m_hashes.get(hostName);
     if (null != clusterMapping) {
       clusterMapping.remove(clusterName);
     }
@@ -201,7 +231,7 @@ public class AlertDefinitionHash {
       return false;
     }
 
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
+    Map<String, HostDefinitions> clusterMapping = m_hashes.get(hostName);
     if (null == clusterMapping) {
       return false;
     }
@@ -229,17 +259,7 @@ public class AlertDefinitionHash {
       String clusterName,
       String hostName) {
 
-    Set<AlertDefinitionEntity> entities = getAlertDefinitionEntities(
-        clusterName, hostName);
-
-    List<AlertDefinition> definitions = new ArrayList<AlertDefinition>(
-        entities.size());
-
-    for (AlertDefinitionEntity entity : entities) {
-      definitions.add(m_factory.coerce(entity));
-    }
-
-    return definitions;
+    return getAlertDefinitions(getHostDefinitions(clusterName, hostName));
   }
 
 
@@ -326,9 +346,9 @@ public class AlertDefinitionHash {
         definitionSourceType, definitionName,
         definitionServiceName, definitionComponentName);
 
-    // invalidate all returned hosts
+    // invalidate all returned hosts; the components they run are unchanged
     for (String hostName : affectedHosts) {
-      invalidate(clusterName, hostName);
+      invalidateHash(clusterName, hostName);
     }
 
     return affectedHosts;
@@ -340,6 +360,10 @@ public class AlertDefinitionHash {
    * definition would entail contacting each returned host and invalidating
    * their current alert definitions.
    * <p/>
+   * The hosts are read from the cluster's component index; only hosts which
+   * joined the cluster or were invalidated since the index was last used have
+   * their components read from the cluster.
+   * <p/>
    * If the definition is an {@link SourceType#AGGREGATE}, this will return an
    * empty set since aggregates do not affect hosts.
    *
@@ -385,49 +409,11 @@ public class AlertDefinitionHash {
       return Collections.emptySet();
     }
 
-    // find all hosts that have the matching service and component
-    for (String hostName : hosts.keySet()) {
-      List<ServiceComponentHost> hostComponents = cluster.getServiceComponentHosts(hostName);
-      if (null == hostComponents || hostComponents.size() == 0) {
-        continue;
-      }
-
-      // if a host has a matching service/component, invalidate it
-      for (ServiceComponentHost component : hostComponents) {
-        String serviceName = component.getServiceName();
-        String componentName = component.getServiceComponentName();
-        if (serviceName.equals(definitionServiceName)
-            && componentName.equals(definitionComponentName)) {
-          affectedHosts.add(hostName);
-        }
-      }
-    }
-
-    // get the service that this alert definition is associated with
-    Map<String, Service> services = cluster.getServices();
-    Service service = services.get(definitionServiceName);
-    if (null == service) {
-      LOG.warn("The alert definition {} has an unknown service of {}",
-          definitionName, definitionServiceName);
-
-      return affectedHosts;
-    }
-
-    // get all master components of the definition's service; any hosts that
-    // run the master should be invalidated as well
-    Map<String, ServiceComponent> components = service.getServiceComponents();
-    if (null != components) {
-      for (Entry<String, ServiceComponent> component : components.entrySet()) {
-        if (component.getValue().isMasterComponent()) {
-          Map<String, ServiceComponentHost> componentHosts = component.getValue().getServiceComponentHosts();
-          if (null != componentHosts) {
-            for (String componentHost : componentHosts.keySet()) {
-              affectedHosts.add(componentHost);
-            }
-          }
-        }
-      }
-    }
+    // find all hosts that have the matching service and component or that
+    // run a master of the definition's service
+    ComponentIndex index = getComponentIndex(cluster, hosts.keySet());
+    affectedHosts.addAll(index.getAssociatedHosts(definitionServiceName,
+        definitionComponentName));
 
     return affectedHosts;
   }
@@ -483,40 +469,105 @@ public class AlertDefinitionHash {
       return;
     }
 
+    Cluster cluster = null;
     try {
-      m_actionQueueLock.lock();
-      for (String hostName : hosts) {
-        List<AlertDefinition> definitions = getAlertDefinitions(clusterName,
-            hostName);
+      cluster = m_clusters.get().getCluster(clusterName);
+    } catch (AmbariException ae) {
+      LOG.warn("Unable to add configurations to alert definition commands",
+          ae);
+    }
 
-        String hash = getHash(clusterName, hostName);
+    for (String hostName : hosts) {
+      HostDefinitions hostDefinitions = getHostDefinitions(clusterName,
+          hostName);
 
-        AlertDefinitionCommand command = new AlertDefinitionCommand(
-            clusterName, hostName, hash, definitions);
+      AlertDefinitionCommand command = new AlertDefinitionCommand(
+          clusterName, hostName, hostDefinitions.m_hash,
+          getAlertDefinitions(hostDefinitions));
 
+      if (null != cluster) {
         try {
-          Cluster cluster = m_clusters.get().getCluster(clusterName);
           command.addConfigs(m_configHelper.get(), cluster);
         } catch (AmbariException ae) {
           LOG.warn("Unable to add configurations to alert definition command",
               ae);
         }
+      }
 
-        // unlike other commands, the alert definitions commands are really
-        // designed to be 1:1 per change; if multiple invalidations happened
-        // before the next heartbeat, there would be several commands that would
-        // force the agents to reschedule their alerts more than once
-        m_actionQueue.dequeue(hostName,
-            AgentCommandType.ALERT_DEFINITION_COMMAND);
+      // unlike other commands, the alert definitions commands are really
+      // designed to be 1:1 per change; if multiple invalidations happened
+      // before the next heartbeat, there would be several commands that would
+      // force the agents to reschedule their alerts more than once. The
+      // replacement is atomic for the host's queue, so concurrent writers
+      // only contend on the same host.
+      m_actionQueue.replace(hostName, command,
+          AgentCommandType.ALERT_DEFINITION_COMMAND,
+          AgentCommandType.ALERT_EXECUTION_COMMAND);
+    }
+  }
 
-        m_actionQueue.dequeue(hostName,
-            AgentCommandType.ALERT_EXECUTION_COMMAND);
+  /**
+   * Gets the cached definitions and hash of a host, calculating them if they
+   * are not cached.
+   *
+   * @param clusterName
+   *          the cluster name (not {@code null}).
+   * @param hostName
+   *          the host name (not {@code null}).
+   * @return the definitions and hash of the host (never {@code null}).
+   */
+  private HostDefinitions getHostDefinitions(String clusterName,
+      String hostName) {
+    ConcurrentMap<String, HostDefinitions> clusterMapping = m_hashes.get(hostName);
+    if (null == clusterMapping) {
+      clusterMapping = new ConcurrentHashMap<String, HostDefinitions>();
+      ConcurrentMap<String, HostDefinitions> existing = m_hashes.putIfAbsent(
+          hostName, clusterMapping);
 
-        m_actionQueue.enqueue(hostName, command);
+      if (null != existing) {
+        clusterMapping = existing;
       }
-    } finally {
-      m_actionQueueLock.unlock();
     }
+
+    HostDefinitions hostDefinitions = clusterMapping.get(clusterName);
+    if (null != hostDefinitions) {
+      return hostDefinitions;
+    }
+
+    long version = m_hashVersion.get();
+
+    Set<AlertDefinitionEntity> definitions = getAlertDefinitionEntities(
+        clusterName, hostName);
+
+    hostDefinitions = new HostDefinitions(definitions, hash(definitions));
+
+    // an invalidation which raced the calculation also removes what was
+    // cached by it
+    clusterMapping.put(clusterName, hostDefinitions);
+    if (version != m_hashVersion.get()) {
+      clusterMapping.remove(clusterName, hostDefinitions);
+    }
+
+    return hostDefinitions;
+  }
+
+  /**
+   * Coerces the cached definitions of a host.
+   *
+   * @param hostDefinitions
+   *          the cached definitions.
+   * @return the definitions (never {@code null}).
+   */
+  private List<AlertDefinition> getAlertDefinitions(
+      HostDefinitions hostDefinitions) {
+    List<AlertDefinition> definitions = new ArrayList<AlertDefinition>(
+        hostDefinitions.m_definitions.size());
+
+    for (AlertDefinitionEntity entity : hostDefinitions.m_definitions) {
+      definitions.add(m_factory.coerce(entity));
+    }
+
+    return definitions;
   }
 
   /**
@@ -525,23 +576,20 @@ public class AlertDefinitionHash {
    * {@link SourceType#AGGREGATE} are not included in the hash since they are
    * not run on the agents.
    *
-   * @param clusterName
-   *          the cluster name (not {@code null}).
-   * @param hostName
-   *          the host name (not {@code null}).
+   * @param hostDefinitions
+   *          the definitions of the host (not {@code null}).
    * @return the unique hash or {@value #NULL_MD5_HASH} if none.
    */
-  private String hash(String clusterName, String hostName) {
-    Set<AlertDefinitionEntity> definitions = getAlertDefinitionEntities(
-        clusterName,
-        hostName);
-
+  private String hash(Set<AlertDefinitionEntity> hostDefinitions) {
     // no definitions found for this host, don't bother hashing
-    if( null == definitions || definitions.size() == 0 ) {
+    if (hostDefinitions.isEmpty()) {
       return NULL_MD5_HASH;
     }
 
     // strip out all AGGREGATE types
+    List<AlertDefinitionEntity> definitions = new ArrayList<AlertDefinitionEntity>(
+        hostDefinitions);
+
     Iterator<AlertDefinitionEntity> iterator = definitions.iterator();
     while (iterator.hasNext()) {
       if (SourceType.AGGREGATE.equals(iterator.next().getSourceType())) {
@@ -603,41 +651,18 @@ public class AlertDefinitionHash {
       }
 
       long clusterId = cluster.getClusterId();
+      HostComponents hostComponents = getHostComponents(cluster, hostName);
 
-      // services and components
-      List<ServiceComponentHost> serviceComponents = cluster.getServiceComponentHosts(hostName);
-      if (null == serviceComponents || !serviceComponents.isEmpty()) {
-        for (ServiceComponentHost serviceComponent : serviceComponents) {
-          String serviceName = serviceComponent.getServiceName();
-          String componentName = serviceComponent.getServiceComponentName();
-
-          // add all alerts for this service/component pair
-          definitions.addAll(m_definitionDao.findByServiceComponent(clusterId,
-              serviceName, componentName));
-        }
-
-        // for every service, get the master components and see if the host
-        // is a master
-        Set<String> services = new HashSet<String>();
-        for (Entry<String, Service> entry : cluster.getServices().entrySet()) {
-          Service service = entry.getValue();
-          Map<String, ServiceComponent> components = service.getServiceComponents();
-          for (Entry<String, ServiceComponent> component : components.entrySet()) {
-            if (component.getValue().isMasterComponent()) {
-              Map<String, ServiceComponentHost> hosts = component.getValue().getServiceComponentHosts();
-
-              if (hosts.containsKey(hostName)) {
-                services.add(service.getName());
-              }
-            }
-          }
-        }
+      // add all alerts for each service/component pair
+      for (List<String> component : hostComponents.m_components) {
+        definitions.addAll(m_definitionDao.findByServiceComponent(clusterId,
+            component.get(0), component.get(1)));
+      }
 
-        // add all service scoped alerts
-        if (services.size() > 0) {
-          definitions.addAll(m_definitionDao.findByServiceMaster(clusterId,
-              services));
-        }
+      // add all service scoped alerts of services that the host is a master of
+      if (hostComponents.m_masterServices.size() > 0) {
+        definitions.addAll(m_definitionDao.findByServiceMaster(clusterId,
+            hostComponents.m_masterServices));
       }
 
       // add any alerts not bound to a service (host level alerts)
@@ -649,4 +674,256 @@ public class AlertDefinitionHash {
 
     return definitions;
   }
+
+  /**
+   * Gets the component index of a cluster, first indexing any of the cluster's
+   * hosts which are not yet indexed and dropping any indexed hosts which have
+   * left the cluster.
+   *
+   * @param cluster
+   *          the cluster (not {@code null}).
+   * @param hostNames
+   *          the names of all of the hosts in the cluster.
+   * @return the index (never {@code null}).
+   */
+  private ComponentIndex getComponentIndex(Cluster cluster,
+      Collection<String> hostNames) {
+    ComponentIndex index = getComponentIndex(cluster.getClusterName());
+
+    for (String hostName : hostNames) {
+      if (!index.contains(hostName)) {
+        long version = index.getVersion();
+        index.put(hostName, readHostComponents(cluster, hostName), version);
+      }
+    }
+
+    index.retainAll(hostNames);
+    return index;
+  }
+
+  /**
+   * Gets the components installed on a host, reading them from the cluster if
+   * they are not indexed.
+   *
+   * @param cluster
+   *          the cluster (not {@code null}).
+   * @param hostName
+   *          the host name (not {@code null}).
+   * @return the components of the host (never {@code null}).
+   */
+  private HostComponents getHostComponents(Cluster cluster, String hostName) {
+    ComponentIndex index = getComponentIndex(cluster.getClusterName());
+
+    HostComponents hostComponents = index.get(hostName);
+    if (null == hostComponents) {
+      long version = index.getVersion();
+      hostComponents = readHostComponents(cluster, hostName);
+      index.put(hostName, hostComponents, version);
+    }
+
+    return hostComponents;
+  }
+
+  private ComponentIndex getComponentIndex(String clusterName) {
+    ComponentIndex index = m_componentIndexes.get(clusterName);
+    if (null == index) {
+      index = new ComponentIndex();
+      ComponentIndex existing = m_componentIndexes.putIfAbsent(clusterName,
+          index);
+
+      if (null != existing) {
+        index = existing;
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Reads the service components installed on a host and the services which
+   * the host is a master of.
+   *
+   * @param cluster
+   *          the cluster (not {@code null}).
+   * @param hostName
+   *          the host name (not {@code null}).
+   * @return the components of the host (never {@code null}).
+   */
+  private HostComponents readHostComponents(Cluster cluster, String hostName) {
+    HostComponents hostComponents = new HostComponents();
+
+    List<ServiceComponentHost> serviceComponentHosts = cluster.getServiceComponentHosts(hostName);
+    if (null == serviceComponentHosts || serviceComponentHosts.isEmpty()) {
+      return hostComponents;
+    }
+
+    Map<String, Service> services = cluster.getServices();
+    for (ServiceComponentHost serviceComponentHost : serviceComponentHosts) {
+      String serviceName = serviceComponentHost.getServiceName();
+      String componentName = serviceComponentHost.getServiceComponentName();
+      hostComponents.m_components.add(Arrays.asList(serviceName, componentName));
+
+      Service service = services.get(serviceName);
+      if (null == service) {
+        continue;
+      }
+
+      Map<String, ServiceComponent> components = service.getServiceComponents();
+      ServiceComponent component = null == components ? null
+          : components.get(componentName);
+
+      if (null != component && component.isMasterComponent()) {
+        hostComponents.m_masterServices.add(serviceName);
+      }
+    }
+
+    return hostComponents;
+  }
+
+  /**
+   * The cached definitions of a host along with their hash.
+   */
+  private static final class HostDefinitions {
+    private final Set<AlertDefinitionEntity> m_definitions;
+    private final String m_hash;
+
+    private HostDefinitions(Set<AlertDefinitionEntity> definitions, String hash) {
+      m_definitions = Collections.unmodifiableSet(definitions);
+      m_hash = hash;
+    }
+  }
+
+  /**
+   * The service components installed on a single host. Each component is a
+   * list of its service name and component name.
+   */
+  private static final class HostComponents {
+    private final Set<List<String>> m_components = new HashSet<List<String>>();
+    private final Set<String> m_masterServices = new HashSet<String>();
+  }
+
+  /**
+   * The installed components of every indexed host of a cluster along with the
+   * reverse mappings from each service component to the hosts which run it
+   * and from each service to the hosts which run one of its masters. All
+   * access is synchronized on the instance.
+   */
+  private static final class ComponentIndex {
+    private final Map<String, HostComponents> m_hosts = new HashMap<String, HostComponents>();
+    private final Map<List<String>, Set<String>> m_componentHosts = new HashMap<List<String>, Set<String>>();
+    private final Map<String, Set<String>> m_masterHosts = new HashMap<String, Set<String>>();
+
+    /**
+     * Incremented on every removal so that components read before a host was
+     * invalidated are not indexed afterward.
+     */
+    private long m_version = 0;
+
+    synchronized long getVersion() {
+      return m_version;
+    }
+
+    synchronized boolean contains(String hostName) {
+      return m_hosts.containsKey(hostName);
+    }
+
+    synchronized HostComponents get(String hostName) {
+      return m_hosts.get(hostName);
+    }
+
+    /**
+     * Indexes the components of a host unless the index changed since the
+     * components were read.
+     */
+    synchronized void put(String hostName, HostComponents hostComponents,
+        long version) {
+      if (version != m_version || m_hosts.containsKey(hostName)) {
+        return;
+      }
+
+      m_hosts.put(hostName, hostComponents);
+
+      for (List<String> component : hostComponents.m_components) {
+        add(m_componentHosts, component, hostName);
+      }
+
+      for (String serviceName : hostComponents.m_masterServices) {
+        add(m_masterHosts, serviceName, hostName);
+      }
+    }
+
+    synchronized void remove(String hostName) {
+      m_version++;
+
+      HostComponents hostComponents = m_hosts.remove(hostName);
+      if (null == hostComponents) {
+        return;
+      }
+
+      for (List<String> component : hostComponents.m_components) {
+        remove(m_componentHosts, component, hostName);
+      }
+
+      for (String serviceName : hostComponents.m_masterServices) {
+        remove(m_masterHosts, serviceName, hostName);
+      }
+    }
+
+    synchronized void retainAll(Collection<String> hostNames) {
+      if (m_hosts.size() <= hostNames.size()) {
+        return;
+      }
+
+      for (String hostName : new ArrayList<String>(m_hosts.keySet())) {
+        if (!hostNames.contains(hostName)) {
+          remove(hostName);
+        }
+      }
+    }
+
+    /**
+     * Gets the hosts which run the service component or any master of the
+     * service.
+     */
+    synchronized Set<String> getAssociatedHosts(String serviceName,
+        String componentName) {
+      Set<String> hosts = new HashSet<String>();
+
+      Set<String> componentHosts = m_componentHosts.get(Arrays.asList(
+          serviceName, componentName));
+
+      if (null != componentHosts) {
+        hosts.addAll(componentHosts);
+      }
+
+      Set<String> masterHosts = m_masterHosts.get(serviceName);
+      if (null != masterHosts) {
+        hosts.addAll(masterHosts);
+      }
+
+      return hosts;
+    }
+
+    private static <K> void add(Map<K, Set<String>> mapping, K key,
+        String hostName) {
+      Set<String> hosts = mapping.get(key);
+      if (null == hosts) {
+        hosts = new HashSet<String>();
+        mapping.put(key, hosts);
+      }
+
+      hosts.add(hostName);
+    }
+
+    private static <K> void remove(Map<K, Set<String>> mapping, K key,
+        String hostName) {
+      Set<String> hosts = mapping.get(key);
+      if (null != hosts) {
+        hosts.remove(hostName);
+        if (hosts.isEmpty()) {
+          mapping.remove(key);
+        }
+      }
+    }
+  }
 }
@@ -29,7 +29,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -139,25 +140,35 @@ public class ClusterImpl implements Cluster {
   @Inject
   private Clusters clusters;
 
-  private StackId desiredStackVersion;
+  /**
+   * The maps below are read far more often than they are written (every
+   * heartbeat and most API reads go through them). They are concurrent so that
+   * lookups do not need the {@link #clusterGlobalLock}; writers still take the
+   * write lock to keep the maps consistent with each other and with the
+   * database.
+   */
+  private volatile StackId desiredStackVersion;
 
   private volatile Map<String, Service> services = null;
 
   /**
    * [ Config Type -> [ Config Version Tag -> Config ] ]
    */
-  private Map<String, Map<String, Config>> allConfigs;
+  private volatile Map<String, Map<String, Config>> allConfigs;
 
   /**
    * [ ServiceName -> [ ServiceComponentName -> [ HostName -> [ ... ] ] ] ]
    */
-  private Map<String, Map<String, Map<String, ServiceComponentHost>>>
+  private final Map<String, Map<String, Map<String, ServiceComponentHost>>>
     serviceComponentHosts;
 
   /**
    * [ HostName -> [ ... ] ]
+   * <p/>
+   * All lock-free reads of service component hosts go through this map; the
+   * map above is only consulted by writers under the write lock.
    */
-  private Map<String, List<ServiceComponentHost>>
+  private final Map<String, List<ServiceComponentHost>>
     serviceComponentHostsByHost;
 
   /**
@@ -257,10 +268,10 @@ public class ClusterImpl implements Cluster {
     injector.injectMembers(this);
     this.clusterEntity = clusterEntity;
 
-    serviceComponentHosts = new HashMap<String,
+    serviceComponentHosts = new ConcurrentHashMap<String,
       Map<String, Map<String, ServiceComponentHost>>>();
 
-    serviceComponentHostsByHost = new HashMap<String,
+    serviceComponentHostsByHost = new ConcurrentHashMap<String,
       List<ServiceComponentHost>>();
 
     desiredStackVersion = new StackId(clusterEntity.getDesiredStack());
@@ -338,7 +349,7 @@ public class ClusterImpl implements Cluster {
           Service service = serviceKV.getValue();
           if (!serviceComponentHosts.containsKey(service.getName())) {
             serviceComponentHosts.put(service.getName(),
-                new HashMap<String, Map<String, ServiceComponentHost>>());
+                new ConcurrentHashMap<String, Map<String, ServiceComponentHost>>());
           }
           for (Entry<String, ServiceComponent> svcComponent : service.getServiceComponents().entrySet()) {
             ServiceComponent comp = svcComponent.getValue();
@@ -346,7 +357,7 @@ public class ClusterImpl implements Cluster {
             if (!serviceComponentHosts.get(service.getName()).containsKey(
                 componentName)) {
               serviceComponentHosts.get(service.getName()).put(componentName,
-                  new HashMap<String, ServiceComponentHost>());
+                  new ConcurrentHashMap<String, ServiceComponentHost>());
             }
             /** Get Service Host Components **/
             for (Entry<String, ServiceComponentHost> svchost : comp.getServiceComponentHosts().entrySet()) {
@@ -354,7 +365,7 @@ public class ClusterImpl implements Cluster {
               ServiceComponentHost svcHostComponent = svchost.getValue();
               if (!serviceComponentHostsByHost.containsKey(hostname)) {
                 serviceComponentHostsByHost.put(hostname,
-                    new ArrayList<ServiceComponentHost>());
+                    new CopyOnWriteArrayList<ServiceComponentHost>());
               }
               List<ServiceComponentHost> compList = serviceComponentHostsByHost.get(hostname);
               compList.add(svcHostComponent);
@@ -380,14 +391,16 @@ public class ClusterImpl implements Cluster {
 
       try {
         if (services == null) {
-          services = new TreeMap<String, Service>();
+          // build the map completely before publishing it since readers do
+          // not take the cluster lock
+          Map<String, Service> loadedServices = new ConcurrentSkipListMap<String, Service>();
           if (!clusterEntity.getClusterServiceEntities().isEmpty()) {
             for (ClusterServiceEntity serviceEntity : clusterEntity.getClusterServiceEntities()) {
               StackId stackId = getCurrentStackVersion();
               try {
                 if (ambariMetaInfo.getService(stackId.getStackName(),
                     stackId.getStackVersion(), serviceEntity.getServiceName()) != null) {
-                  services.put(serviceEntity.getServiceName(),
+                  loadedServices.put(serviceEntity.getServiceName(),
                       serviceFactory.createExisting(this, serviceEntity));
                 }
               } catch (AmbariException e) {
@@ -399,6 +412,7 @@ public class ClusterImpl implements Cluster {
               }
             }
           }
+          services = loadedServices;
         }
       } finally {
         clusterGlobalLock.writeLock().unlock();
@@ -586,21 +600,33 @@ public class ClusterImpl implements Cluster {
   public ServiceComponentHost getServiceComponentHost(String serviceName,
       String serviceComponentName, String hostname) throws AmbariException {
     loadServiceHostComponents();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!serviceComponentHosts.containsKey(serviceName)
-          || !serviceComponentHosts.get(serviceName).containsKey(
-              serviceComponentName)
-          || !serviceComponentHosts.get(serviceName).get(serviceComponentName).containsKey(
-              hostname)) {
-        throw new ServiceComponentHostNotFoundException(getClusterName(),
-            serviceName, serviceComponentName, hostname);
+
+    // lock-free read of the same copy-on-write per-host list that backs
+    // getServiceComponentHosts(hostname), so that the two lookups can never
+    // disagree while a writer is between updating the two maps; concurrent
+    // maps do not accept null keys, so those are simply not found
+    ServiceComponentHost serviceComponentHost = null;
+    List<ServiceComponentHost> hostComponents = null;
+    if (null != serviceName && null != serviceComponentName && null != hostname) {
+      hostComponents = serviceComponentHostsByHost.get(hostname);
+    }
+
+    if (null != hostComponents) {
+      for (ServiceComponentHost sch : hostComponents) {
+        if (serviceName.equals(sch.getServiceName())
+            && serviceComponentName.equals(sch.getServiceComponentName())) {
+          serviceComponentHost = sch;
+          break;
+        }
       }
-      return serviceComponentHosts.get(serviceName).get(serviceComponentName).get(
-          hostname);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+
+    if (null == serviceComponentHost) {
+      throw new ServiceComponentHostNotFoundException(getClusterName(),
+          serviceName, serviceComponentName, hostname);
+    }
+
+    return serviceComponentHost;
   }
 
   @Override
@@ -660,12 +686,12 @@ public class ClusterImpl implements Cluster {
 
       if (!serviceComponentHosts.containsKey(serviceName)) {
         serviceComponentHosts.put(serviceName,
-            new HashMap<String, Map<String, ServiceComponentHost>>());
+            new ConcurrentHashMap<String, Map<String, ServiceComponentHost>>());
       }
 
       if (!serviceComponentHosts.get(serviceName).containsKey(componentName)) {
         serviceComponentHosts.get(serviceName).put(componentName,
-            new HashMap<String, ServiceComponentHost>());
+            new ConcurrentHashMap<String, ServiceComponentHost>());
       }
 
       if (serviceComponentHosts.get(serviceName).get(componentName).containsKey(
@@ -677,7 +703,7 @@ public class ClusterImpl implements Cluster {
 
       if (!serviceComponentHostsByHost.containsKey(hostname)) {
         serviceComponentHostsByHost.put(hostname,
-            new ArrayList<ServiceComponentHost>());
+            new CopyOnWriteArrayList<ServiceComponentHost>());
       }
 
       if (LOG.isDebugEnabled()) {
@@ -787,16 +813,18 @@ public class ClusterImpl implements Cluster {
   public List<ServiceComponentHost> getServiceComponentHosts(
     String hostname) {
     loadServiceHostComponents();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (serviceComponentHostsByHost.containsKey(hostname)) {
-        return new CopyOnWriteArrayList<ServiceComponentHost>(
-            serviceComponentHostsByHost.get(hostname));
-      }
-      return new ArrayList<ServiceComponentHost>();
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+
+    // lock-free read of the copy-on-write per-host list
+    List<ServiceComponentHost> hostComponents = null;
+    if (null != hostname) {
+      hostComponents = serviceComponentHostsByHost.get(hostname);
+    }
+
+    if (null != hostComponents) {
+      return new CopyOnWriteArrayList<ServiceComponentHost>(hostComponents);
     }
+
+    return new ArrayList<ServiceComponentHost>();
   }
 
   @Override
@@ -847,36 +875,28 @@ public class ClusterImpl implements Cluster {
   public Service getService(String serviceName)
     throws AmbariException {
     loadServices();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!services.containsKey(serviceName)) {
-        throw new ServiceNotFoundException(getClusterName(), serviceName);
-      }
-      return services.get(serviceName);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+
+    Service service = null;
+    if (null != serviceName) {
+      service = services.get(serviceName);
+    }
+
+    if (null == service) {
+      throw new ServiceNotFoundException(getClusterName(), serviceName);
     }
+
+    return service;
   }
 
   @Override
   public Map<String, Service> getServices() {
     loadServices();
-    clusterGlobalLock.readLock().lock();
-    try {
-      return new HashMap<String, Service>(services);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
-    }
+    return new HashMap<String, Service>(services);
   }
 
   @Override
   public StackId getDesiredStackVersion() {
-    clusterGlobalLock.readLock().lock();
-    try {
-      return desiredStackVersion;
-    } finally {
-      clusterGlobalLock.readLock().unlock();
-    }
+    return desiredStackVersion;
   }
 
   @Override
@@ -1687,30 +1707,30 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Map<String, Config> getConfigsByType(String configType) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)) {
-        return null;
-      }
+    if (null == configType) {
+      return null;
+    }
 
-      return Collections.unmodifiableMap(allConfigs.get(configType));
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    Map<String, Config> configs = allConfigs.get(configType);
+    if (null == configs) {
+      return null;
     }
+
+    return Collections.unmodifiableMap(configs);
   }
 
   @Override
   public Config getConfig(String configType, String versionTag) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)
-          || !allConfigs.get(configType).containsKey(versionTag)) {
-        return null;
-      }
-      return allConfigs.get(configType).get(versionTag);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    if (null == configType || null == versionTag) {
+      return null;
+    }
+
+    Map<String, Config> configs = allConfigs.get(configType);
+    if (null == configs) {
+      return null;
     }
+
+    return configs.get(versionTag);
   }
 
   @Override
@@ -1721,7 +1741,7 @@ public class ClusterImpl implements Cluster {
         throw new IllegalArgumentException("Config type cannot be empty");
       }
       if (!allConfigs.containsKey(config.getType())) {
-        allConfigs.put(config.getType(), new HashMap<String, Config>());
+        allConfigs.put(config.getType(), new ConcurrentHashMap<String, Config>());
       }
 
       allConfigs.get(config.getType()).put(config.getTag(), config);
@@ -1732,18 +1752,13 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Collection<Config> getAllConfigs() {
-    clusterGlobalLock.readLock().lock();
-    try {
-      List<Config> list = new ArrayList<Config>();
-      for (Entry<String, Map<String, Config>> entry : allConfigs.entrySet()) {
-        for (Config config : entry.getValue().values()) {
-          list.add(config);
-        }
+    List<Config> list = new ArrayList<Config>();
+    for (Entry<String, Map<String, Config>> entry : allConfigs.entrySet()) {
+      for (Config config : entry.getValue().values()) {
+        list.add(config);
       }
-      return Collections.unmodifiableList(list);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+    return Collections.unmodifiableList(list);
   }
 
   @Override
@@ -2797,26 +2812,26 @@ public class ClusterImpl implements Cluster {
   }
 
   /**
-   * Caches all of the {@link ClusterConfigEntity}s in {@link #allConfigs}.
+   * Caches all of the {@link ClusterConfigEntity}s in {@link #allConfigs}. The
+   * cache is built completely before it replaces the existing one since
+   * readers do not take the cluster lock.
    */
   private void cacheConfigurations() {
-    if (null == allConfigs) {
-      allConfigs = new HashMap<String, Map<String, Config>>();
-    }
-
-    allConfigs.clear();
+    Map<String, Map<String, Config>> configs = new ConcurrentHashMap<String, Map<String, Config>>();
 
     if (!clusterEntity.getClusterConfigEntities().isEmpty()) {
       for (ClusterConfigEntity entity : clusterEntity.getClusterConfigEntities()) {
 
-        if (!allConfigs.containsKey(entity.getType())) {
-          allConfigs.put(entity.getType(), new HashMap<String, Config>());
+        if (!configs.containsKey(entity.getType())) {
+          configs.put(entity.getType(), new ConcurrentHashMap<String, Config>());
         }
 
         Config config = configFactory.createExisting(this, entity);
 
-        allConfigs.get(entity.getType()).put(entity.getTag(), config);
+        configs.get(entity.getType()).put(entity.getTag(), config);
       }
     }
+
+    allConfigs = configs;
   }
 }
@@ -28,10 +28,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -56,6 +62,7 @@ import org.apache.ambari.server.notifications.DispatchRunnable;
 import org.apache.ambari.server.notifications.Notification;
 import org.apache.ambari.server.notifications.NotificationDispatcher;
 import org.apache.ambari.server.notifications.Recipient;
+import org.apache.ambari.server.notifications.TargetDispatchQueue;
 import org.apache.ambari.server.orm.dao.AlertDispatchDAO;
 import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
 import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
@@ -98,6 +105,18 @@ import com.google.inject.Provider;
  * {@link #startUp()}. If there is a problem parsing them, the service will
  * still startup normally, producing an error in logs. It will fall back to
  * simple string concatenation for {@link Notification} content in this case.
+ * <p/>
+ * Each {@link AlertTargetEntity} has its own bounded {@link TargetDispatchQueue}
+ * which limits how many of its notifications are delivered at the same time
+ * and how quickly. Notices which do not fit in their target's queue are left
+ * {@link NotificationState#PENDING} and are picked up on a later run. The
+ * final states reported by the dispatchers are written in batches.
+ * <p/>
+ * Notices which were {@link NotificationState#DISPATCHED} but whose final
+ * state was not written, for example because Ambari Server stopped before the
+ * batch was written, are set back to {@link NotificationState#PENDING} during
+ * {@link #startUp()} so that they are dispatched again. A notification can
+ * therefore be delivered more than once after a restart.
  */
 @AmbariService
 public class AlertNoticeDispatchService extends AbstractScheduledService {
@@ -188,18 +207,30 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
   private Provider<AmbariMetaInfo> m_metaInfo;
 
   /**
-   * The executor responsible for dispatching.
+   * The executor responsible for dispatching, shared by all targets. It is
+   * created on first use so that its size can be read from the
+   * configuration.
    */
   private Executor m_executor;
 
+  /**
+   * The queue of each target by target ID.
+   */
+  private final ConcurrentMap<Long, TargetDispatchQueue> m_targetQueues =
+      new ConcurrentHashMap<Long, TargetDispatchQueue>();
+
+  /**
+   * The UUIDs of notices which were delivered or failed and whose state has
+   * not been written yet.
+   */
+  private final Queue<String> m_deliveredNotices = new ConcurrentLinkedQueue<String>();
+  private final Queue<String> m_failedNotices = new ConcurrentLinkedQueue<String>();
+  private final AtomicInteger m_unwrittenNoticeCount = new AtomicInteger();
+
   /**
    * Constructor.
    */
   public AlertNoticeDispatchService() {
-    m_executor = new ThreadPoolExecutor(0, 2, 5L, TimeUnit.MINUTES,
-        new LinkedBlockingQueue<Runnable>(), new AlertDispatchThreadFactory(),
-        new ThreadPoolExecutor.CallerRunsPolicy());
-
     GsonBuilder gsonBuilder = new GsonBuilder();
     gsonBuilder.registerTypeAdapter(AlertTargetProperties.class,
         new AlertTargetPropertyDeserializer());
@@ -218,6 +249,15 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
   protected void startUp() throws Exception {
     super.startUp();
 
+    // nothing has been queued yet, so any notice which is still DISPATCHED
+    // was left over from a previous run
+    try {
+      recoverDispatchedNotices();
+    } catch (Exception exception) {
+      LOG.error("Unable to recover alert notices which were dispatched but not written",
+          exception);
+    }
+
     InputStream inputStream = null;
     String alertTemplatesFile = null;
 
@@ -254,6 +294,38 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Writes the states which have been recorded but not written yet.
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    writeNoticeStates();
+    super.shutDown();
+  }
+
+  /**
+   * Sets the notices which were dispatched but whose final state was never
+   * written back to {@link NotificationState#PENDING} so that the next run
+   * dispatches them again.
+   */
+  private void recoverDispatchedNotices() {
+    List<AlertNoticeEntity> dispatched = m_dao.findDispatchedNotices();
+    if (dispatched.isEmpty()) {
+      return;
+    }
+
+    List<String> uuids = new ArrayList<String>(dispatched.size());
+    for (AlertNoticeEntity notice : dispatched) {
+      uuids.add(notice.getUuid());
+    }
+
+    int updated = m_dao.setNoticeStates(uuids, NotificationState.PENDING);
+    LOG.warn("{} alert notices were dispatched without a final state and will be dispatched again",
+        updated);
+  }
+
   /**
    * Sets the {@link Executor} to use when dispatching {@link Notification}s.
    * This should only be used by unit tests to provide a mock executor.
@@ -262,8 +334,181 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
    *          the executor to use (not {@code null).
 
    */
-  protected void setExecutor(Executor executor) {
+  protected synchronized void setExecutor(Executor executor) {
     m_executor = executor;
+    m_targetQueues.clear();
+  }
+
+  /**
+   * Gets the {@link Executor} used to deliver {@link Notification}s, creating
+   * it if needed. Idle threads are released after a few minutes.
+   *
+   * @return the executor (never {@code null}).
+   */
+  private synchronized Executor getExecutor() {
+    if (null == m_executor) {
+      int threads = Math.max(1, m_configuration.getAlertNoticeDispatchThreads());
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+          5L, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(),
+          new AlertDispatchThreadFactory(),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+
+      executor.allowCoreThreadTimeOut(true);
+      m_executor = executor;
+    }
+
+    return m_executor;
+  }
+
+  /**
+   * Gets the dispatch queue of the target, creating it if needed.
+   *
+   * @param target
+   *          the target (not {@code null}).
+   * @return the queue (never {@code null}).
+   */
+  private TargetDispatchQueue getTargetQueue(AlertTargetEntity target) {
+    TargetDispatchQueue queue = m_targetQueues.get(target.getTargetId());
+    if (null == queue) {
+      queue = new TargetDispatchQueue(target.getTargetName(), getExecutor(),
+          m_configuration.getAlertNoticeDispatchTargetConcurrency(),
+          m_configuration.getAlertNoticeDispatchTargetQueueSize(),
+          m_configuration.getAlertNoticeDispatchTargetRate());
+
+      TargetDispatchQueue existing = m_targetQueues.putIfAbsent(
+          target.getTargetId(), queue);
+
+      if (null != existing) {
+        queue = existing;
+      }
+    }
+
+    return queue;
+  }
+
+  /**
+   * Queues a {@link Notification} on its target's queue. Once it has been
+   * delivered and no other notifications are waiting, the states reported so
+   * far are written.
+   *
+   * @param queue
+   *          the target's queue.
+   * @param dispatcher
+   *          the dispatcher to deliver with.
+   * @param notification
+   *          the notification to deliver.
+   */
+  private void dispatch(TargetDispatchQueue queue,
+      NotificationDispatcher dispatcher, AlertNotification notification) {
+    final DispatchRunnable runnable = new DispatchRunnable(dispatcher, notification);
+
+    boolean queued = queue.offer(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          runnable.run();
+        } finally {
+          if (getBacklog() == 0) {
+            writeNoticeStates();
+          }
+        }
+      }
+    });
+
+    // space was reserved before the notices were marked as DISPATCHED, so
+    // this only happens if the target's queue was replaced in between
+    if (!queued) {
+      LOG.warn("Unable to queue a notification for delivery, the queue is full");
+      notification.Callback.onFailure(notification.CallbackIds);
+    }
+  }
+
+  /**
+   * @return the number of notifications waiting in all target queues.
+   */
+  private int getBacklog() {
+    int backlog = 0;
+    for (TargetDispatchQueue queue : m_targetQueues.values()) {
+      backlog += queue.getBacklog();
+    }
+
+    return backlog;
+  }
+
+  /**
+   * Gets the statistics of the dispatch queues: the total backlog, the number
+   * of notice states not yet written and the statistics of each target's
+   * queue.
+   *
+   * @return the statistics (never {@code null}).
+   */
+  public Map<String, Object> getStatistics() {
+    List<Map<String, Object>> targets = new ArrayList<Map<String, Object>>();
+    for (TargetDispatchQueue queue : m_targetQueues.values()) {
+      targets.add(queue.getStatistics());
+    }
+
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("backlog", getBacklog());
+    statistics.put("unwritten_states", m_unwrittenNoticeCount.get());
+    statistics.put("targets", targets);
+    return statistics;
+  }
+
+  /**
+   * Records the final state of notices; the states are written once enough
+   * have been recorded or when the queues run empty.
+   *
+   * @param uuids
+   *          the UUIDs of the notices.
+   * @param state
+   *          either {@link NotificationState#DELIVERED} or
+   *          {@link NotificationState#FAILED}.
+   */
+  private void recordNoticeStates(List<String> uuids, NotificationState state) {
+    Queue<String> notices = state == NotificationState.DELIVERED
+        ? m_deliveredNotices : m_failedNotices;
+
+    notices.addAll(uuids);
+
+    int unwritten = m_unwrittenNoticeCount.addAndGet(uuids.size());
+    if (unwritten >= m_configuration.getAlertNoticeStateBatchSize()) {
+      writeNoticeStates();
+    }
+  }
+
+  /**
+   * Writes the recorded states of notices, one transaction per state.
+   */
+  private synchronized void writeNoticeStates() {
+    writeNoticeStates(m_deliveredNotices, NotificationState.DELIVERED);
+    writeNoticeStates(m_failedNotices, NotificationState.FAILED);
+  }
+
+  private void writeNoticeStates(Queue<String> notices, NotificationState state) {
+    List<String> uuids = new ArrayList<String>();
+    String uuid;
+    while (null != (uuid = notices.poll())) {
+      uuids.add(uuid);
+    }
+
+    if (uuids.isEmpty()) {
+      return;
+    }
+
+    m_unwrittenNoticeCount.addAndGet(-uuids.size());
+
+    try {
+      int updated = m_dao.setNoticeStates(uuids, state);
+      if (updated < uuids.size()) {
+        LOG.warn("Unable to find {} of {} alert notices to set to {}",
+            uuids.size() - updated, uuids.size(), state);
+      }
+    } catch (Exception exception) {
+      LOG.error(
+          "Unable to update {} alert notices to {}, notifications will continue to be sent",
+          uuids.size(), state, exception);
+    }
   }
 
   /**
@@ -271,6 +516,9 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
    */
   @Override
   protected void runOneIteration() throws Exception {
+    // write anything left over from the previous run
+    writeNoticeStates();
+
     List<AlertNoticeEntity> pending = m_dao.findPendingNotices();
     if (pending.size() == 0) {
       return;
@@ -292,23 +540,67 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
         aggregateMap.put(target, notices);
       }
 
+      notices.add(notice);
+    }
+
+    // keep only as many notices as each target's queue can take; the rest
+    // stay PENDING for the next run
+    Map<AlertTargetEntity, NotificationDispatcher> dispatchers =
+        new HashMap<AlertTargetEntity, NotificationDispatcher>();
+
+    List<AlertNoticeEntity> accepted = new ArrayList<AlertNoticeEntity>(pending.size());
+    for (Entry<AlertTargetEntity, List<AlertNoticeEntity>> entry : aggregateMap.entrySet()) {
+      AlertTargetEntity target = entry.getKey();
+      List<AlertNoticeEntity> notices = entry.getValue();
+
+      String targetType = target.getNotificationType();
+      NotificationDispatcher dispatcher = m_dispatchFactory.getDispatcher(targetType);
+      dispatchers.put(target, dispatcher);
+
+      int capacity = getTargetQueue(target).getRemainingCapacity();
+      if (!dispatcher.isDigestSupported() && notices.size() > capacity) {
+        LOG.warn("The queue of alert target {} is full, {} notices will be dispatched later",
+            target.getTargetName(), notices.size() - capacity);
+
+        notices.subList(capacity, notices.size()).clear();
+      } else if (capacity == 0) {
+        LOG.warn("The queue of alert target {} is full, {} notices will be dispatched later",
+            target.getTargetName(), notices.size());
+
+        notices.clear();
+      }
+
       // at this point, notices have been processed but not yet delivered
-      notice.setNotifyState(NotificationState.DISPATCHED);
-      notice = m_dao.merge(notice);
+      for (AlertNoticeEntity notice : notices) {
+        notice.setNotifyState(NotificationState.DISPATCHED);
+        accepted.add(notice);
+      }
+    }
 
-      notices.add(notice);
+    if (accepted.isEmpty()) {
+      return;
     }
 
+    // mark all accepted notices in a single transaction; the merged instances
+    // are returned in the order in which they were accepted
+    Iterator<AlertNoticeEntity> merged = m_dao.mergeNotices(accepted).iterator();
+
     // now that all of the notices are grouped by target, dispatch them
-    Set<AlertTargetEntity> targets = aggregateMap.keySet();
-    for (AlertTargetEntity target : targets) {
-      List<AlertNoticeEntity> notices = aggregateMap.get(target);
-      if (null == notices || notices.size() == 0) {
+    for (Entry<AlertTargetEntity, List<AlertNoticeEntity>> entry : aggregateMap.entrySet()) {
+      AlertTargetEntity target = entry.getKey();
+      List<AlertNoticeEntity> notices = new ArrayList<AlertNoticeEntity>(
+          entry.getValue().size());
+
+      for (int i = 0; i < entry.getValue().size(); i++) {
+        notices.add(merged.next());
+      }
+
+      if (notices.size() == 0) {
         continue;
       }
 
-      String targetType = target.getNotificationType();
-      NotificationDispatcher dispatcher = m_dispatchFactory.getDispatcher(targetType);
+      NotificationDispatcher dispatcher = dispatchers.get(target);
+      TargetDispatchQueue queue = getTargetQueue(target);
 
       // create a single digest notification if supported
       if (dispatcher.isDigestSupported()) {
@@ -332,8 +624,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
           renderDigestNotificationContent(dispatcher, notification, histories, target);
 
           // dispatch
-          DispatchRunnable runnable = new DispatchRunnable(dispatcher, notification);
-          m_executor.execute(runnable);
+          dispatch(queue, dispatcher, notification);
         } catch (Exception exception) {
           LOG.error("Unable to create notification for alerts", exception);
 
@@ -356,8 +647,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
             renderNotificationContent(dispatcher, notification, history, target);
 
             // dispatch
-            DispatchRunnable runnable = new DispatchRunnable(dispatcher, notification);
-            m_executor.execute(runnable);
+            dispatch(queue, dispatcher, notification);
           } catch (Exception exception) {
             LOG.error("Unable to create notification for alert", exception);
 
@@ -367,6 +657,12 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
         }
       }
     }
+
+    // write the states of anything which failed or was delivered while
+    // queuing
+    if (getBacklog() == 0) {
+      writeNoticeStates();
+    }
   }
 
   /**
@@ -660,9 +956,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
      */
     @Override
     public void onSuccess(List<String> callbackIds) {
-      for (String callbackId : callbackIds) {
-        updateAlertNotice(callbackId, NotificationState.DELIVERED);
-      }
+      recordNoticeStates(callbackIds, NotificationState.DELIVERED);
     }
 
     /**
@@ -670,33 +964,7 @@ public class AlertNoticeDispatchService extends AbstractScheduledService {
      */
     @Override
     public void onFailure(List<String> callbackIds) {
-      for (String callbackId : callbackIds) {
-        updateAlertNotice(callbackId, NotificationState.FAILED);
-      }
-    }
-
-    /**
-     * Updates the {@link AlertNoticeEntity} matching the given UUID with the
-     * specified state.
-     *
-     * @param uuid
-     * @param state
-     */
-    private void updateAlertNotice(String uuid, NotificationState state) {
-      try {
-        AlertNoticeEntity entity = m_dao.findNoticeByUuid(uuid);
-        if (null == entity) {
-          LOG.warn("Unable to find an alert notice with UUID {}", uuid);
-          return;
-        }
-
-        entity.setNotifyState(state);
-        m_dao.merge(entity);
-      } catch (Exception exception) {
-        LOG.error(
-            "Unable to update the alert notice with UUID {} to {}, notifications will continue to be sent",
-            uuid, state, exception);
-      }
+      recordNoticeStates(callbackIds, NotificationState.FAILED);
     }
   }
 
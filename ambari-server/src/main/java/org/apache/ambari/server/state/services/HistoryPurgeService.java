@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
+import org.apache.ambari.server.orm.dao.PurgeResultDTO;
+import org.apache.ambari.server.orm.dao.RequestDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+
+/**
+ * The {@link HistoryPurgeService} removes completed requests, along with their
+ * stages, tasks and execution commands, and old alert history, along with its
+ * notices, according to the configured retention. Rows are removed a chunk at
+ * a time, each in its own short transaction followed by a pause, so that the
+ * purge never holds locks which the action scheduler or the alert receivers
+ * would wait on for long.
+ * <p/>
+ * Requests are kept until all of their tasks have completed and are never
+ * purged while an upgrade or a topology refers to them. Alert history is kept
+ * while it is the latest entry of a current alert. Purging is disabled until a
+ * retention is configured.
+ */
+@AmbariService
+public class HistoryPurgeService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(HistoryPurgeService.class);
+
+  /**
+   * Used to find and remove requests.
+   */
+  @Inject
+  private RequestDAO m_requestDAO;
+
+  /**
+   * Used to find and remove alert history.
+   */
+  @Inject
+  private AlertsDAO m_alertsDAO;
+
+  /**
+   * The configuration instance to get the retention from.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Statistics.
+   */
+  private final AtomicLong m_runCount = new AtomicLong();
+  private final AtomicLong m_lastRunTime = new AtomicLong();
+  private final AtomicLong m_lastRunDuration = new AtomicLong();
+  private final AtomicLong m_purgedRequests = new AtomicLong();
+  private final AtomicLong m_purgedRequestRows = new AtomicLong();
+  private final AtomicLong m_purgedRequestBytes = new AtomicLong();
+  private final AtomicLong m_purgedAlerts = new AtomicLong();
+  private final AtomicLong m_purgedAlertRows = new AtomicLong();
+  private final AtomicLong m_purgedAlertBytes = new AtomicLong();
+
+  /**
+   * Constructor.
+   */
+  public HistoryPurgeService() {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    long start = System.currentTimeMillis();
+
+    try {
+      purgeRequests();
+      purgeAlerts();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (Exception exception) {
+      // keep the service scheduled; the next run picks up where this one
+      // stopped since each chunk is committed on its own
+      LOG.error("Unable to purge history", exception);
+    } finally {
+      m_runCount.incrementAndGet();
+      m_lastRunTime.set(start);
+      m_lastRunDuration.set(System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Returns a schedule that starts after the configured interval and runs
+   * again the configured interval after {@link #runOneIteration()} completes.
+   */
+  @Override
+  protected Scheduler scheduler() {
+    long interval = Math.max(1, m_configuration.getHistoryPurgeInterval());
+    return Scheduler.newFixedDelaySchedule(interval, interval, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Gets the totals purged since the server started keyed by name.
+   *
+   * @return the statistics (never {@code null}).
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("runs", m_runCount.get());
+    statistics.put("last_run_time", m_lastRunTime.get());
+    statistics.put("last_run_duration_ms", m_lastRunDuration.get());
+    statistics.put("requests_purged", m_purgedRequests.get());
+    statistics.put("request_rows_purged", m_purgedRequestRows.get());
+    statistics.put("request_bytes_purged", m_purgedRequestBytes.get());
+    statistics.put("alerts_purged", m_purgedAlerts.get());
+    statistics.put("alert_rows_purged", m_purgedAlertRows.get());
+    statistics.put("alert_bytes_purged", m_purgedAlertBytes.get());
+    return statistics;
+  }
+
+  /**
+   * Removes the completed requests which are older than the retention age or
+   * beyond the retention count, a chunk at a time.
+   */
+  void purgeRequests() throws InterruptedException {
+    int retentionDays = m_configuration.getHistoryPurgeRequestRetentionDays();
+    int retentionCount = m_configuration.getHistoryPurgeRequestRetentionCount();
+    if (retentionDays <= 0 && retentionCount <= 0) {
+      return;
+    }
+
+    long createdBefore = 0;
+    if (retentionDays > 0) {
+      createdBefore = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+    }
+
+    // requests are numbered in the order they are created, so those beyond
+    // the retention count are at or below a single ID
+    long maxRequestId = -1;
+    if (retentionCount > 0) {
+      Long requestId = m_requestDAO.findNewestRequestIdBeyond(retentionCount);
+      if (null != requestId) {
+        maxRequestId = requestId;
+      }
+    }
+
+    int batchSize = Math.max(1, m_configuration.getHistoryPurgeRequestBatchSize());
+    while (isPurging()) {
+      List<Long> requestIds = m_requestDAO.findPurgeableRequestIds(createdBefore,
+          maxRequestId, batchSize);
+
+      if (requestIds.isEmpty()) {
+        return;
+      }
+
+      long chunkStart = System.currentTimeMillis();
+      PurgeResultDTO result = m_requestDAO.purge(requestIds);
+      long chunkTime = System.currentTimeMillis() - chunkStart;
+
+      m_purgedRequests.addAndGet(requestIds.size());
+      m_purgedRequestRows.addAndGet(result.getTotalRows());
+      m_purgedRequestBytes.addAndGet(result.getBytes());
+
+      LOG.info("Purged {} requests ({} to {}) in {}ms: {}", requestIds.size(),
+          requestIds.get(0), requestIds.get(requestIds.size() - 1), chunkTime, result);
+
+      if (requestIds.size() < batchSize) {
+        return;
+      }
+
+      pause();
+    }
+  }
+
+  /**
+   * Removes the alert history which is older than the retention age, along
+   * with its notices, a chunk at a time.
+   */
+  void purgeAlerts() throws InterruptedException {
+    int retentionDays = m_configuration.getHistoryPurgeAlertRetentionDays();
+    if (retentionDays <= 0) {
+      return;
+    }
+
+    long beforeDate = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+    int batchSize = Math.max(1, m_configuration.getHistoryPurgeAlertBatchSize());
+
+    while (isPurging()) {
+      List<Long> historyIds = m_alertsDAO.findPurgeableHistoryIds(beforeDate, batchSize);
+      if (historyIds.isEmpty()) {
+        return;
+      }
+
+      long chunkStart = System.currentTimeMillis();
+      PurgeResultDTO result = m_alertsDAO.purgeHistory(historyIds);
+      long chunkTime = System.currentTimeMillis() - chunkStart;
+
+      m_purgedAlerts.addAndGet(historyIds.size());
+      m_purgedAlertRows.addAndGet(result.getTotalRows());
+      m_purgedAlertBytes.addAndGet(result.getBytes());
+
+      LOG.info("Purged {} alert history entries in {}ms: {}", historyIds.size(),
+          chunkTime, result);
+
+      if (historyIds.size() < batchSize) {
+        return;
+      }
+
+      pause();
+    }
+  }
+
+  /**
+   * @return {@code true} unless the service is being stopped.
+   */
+  private boolean isPurging() {
+    State state = state();
+    return state != State.STOPPING && state != State.TERMINATED
+        && state != State.FAILED;
+  }
+
+  /**
+   * Waits between chunks so that other writers are not starved.
+   */
+  private void pause() throws InterruptedException {
+    long delay = m_configuration.getHistoryPurgeChunkDelay();
+    if (delay > 0) {
+      Thread.sleep(delay);
+    }
+  }
+}
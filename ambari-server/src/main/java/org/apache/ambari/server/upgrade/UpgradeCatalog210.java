@@ -87,6 +87,8 @@ public class UpgradeCatalog210 extends AbstractUpgradeCatalog {
   private static final String TOPOLOGY_HOST_REQUEST_TABLE = "topology_host_request";
   private static final String TOPOLOGY_HOST_TASK_TABLE = "topology_host_task";
   private static final String TOPOLOGY_LOGICAL_TASK_TABLE = "topology_logical_task";
+  private static final String STAGE_TABLE = "stage";
+  private static final String EXECUTION_COMMAND_FRAGMENT_TABLE = "execution_command_fragment";
 
   // constants for stack table changes
   private static final String STACK_ID_COLUMN_NAME = "stack_id";
@@ -153,6 +155,27 @@ public class UpgradeCatalog210 extends AbstractUpgradeCatalog {
     executeWidgetDDLUpdates();
     executeStackDDLUpdates();
     executeTopologyDDLUpdates();
+    executeExecutionCommandDDLUpdates();
+  }
+
+  /**
+   * Adds the table holding the parts of execution commands which are shared
+   * by the commands of a stage. Commands which were already written remain
+   * readable as they are.
+   */
+  private void executeExecutionCommandDDLUpdates() throws AmbariException, SQLException {
+    List<DBColumnInfo> columns = new ArrayList<DBColumnInfo>();
+    columns.add(new DBColumnInfo("request_id", Long.class, null, null, false));
+    columns.add(new DBColumnInfo("stage_id", Long.class, null, null, false));
+    columns.add(new DBColumnInfo("fragment_hash", String.class, 64, null, false));
+    columns.add(new DBColumnInfo("content", byte[].class, null, null, true));
+
+    dbAccessor.createTable(EXECUTION_COMMAND_FRAGMENT_TABLE, columns,
+        "request_id", "stage_id", "fragment_hash");
+
+    dbAccessor.addFKConstraint(EXECUTION_COMMAND_FRAGMENT_TABLE,
+        "FK_exec_cmd_fragment_stage_id", new String[] { "stage_id", "request_id" },
+        STAGE_TABLE, new String[] { "stage_id", "request_id" }, false);
   }
 
   private void executeTopologyDDLUpdates() throws AmbariException, SQLException {
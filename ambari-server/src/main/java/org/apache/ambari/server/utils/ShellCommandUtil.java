@@ -24,6 +24,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 
 /**
  * Logs OpenSsl command exit code with description
@@ -166,6 +167,21 @@ public class ShellCommandUtil {
 
   public static Result runCommand(String [] args) throws IOException,
           InterruptedException {
+    return runCommand(args, null);
+  }
+
+  /**
+   * Runs a command, writing the given input to its STDIN. This allows a
+   * command which reads its instructions from STDIN to be handed several of
+   * them in a single process.
+   *
+   * @param args  the command and its arguments
+   * @param input the data to write to the command's STDIN, or null to leave
+   *              STDIN empty
+   * @return the result of the command
+   */
+  public static Result runCommand(String [] args, String input) throws IOException,
+          InterruptedException {
     ProcessBuilder builder = new ProcessBuilder(args);
     Process process;
     if (WINDOWS) {
@@ -180,6 +196,14 @@ public class ShellCommandUtil {
     } else {
       process = builder.start();
     }
+    OutputStream stdin = process.getOutputStream();
+    try {
+      if (input != null) {
+        stdin.write(input.getBytes());
+      }
+    } finally {
+      stdin.close();
+    }
     //TODO: not sure whether output buffering will work properly
     // if command output is too intensive
     process.waitFor();
@@ -249,6 +249,13 @@ CREATE TABLE role_success_criteria (
   success_factor DOUBLE NOT NULL,
   PRIMARY KEY (role, request_id, stage_id));
 
+CREATE TABLE execution_command_fragment (
+  request_id BIGINT NOT NULL,
+  stage_id BIGINT NOT NULL,
+  fragment_hash VARCHAR(64) NOT NULL,
+  content LONGBLOB,
+  PRIMARY KEY (request_id, stage_id, fragment_hash));
+
 CREATE TABLE stage (
   stage_id BIGINT NOT NULL,
   request_id BIGINT NOT NULL,
@@ -678,6 +685,7 @@ ALTER TABLE execution_command ADD CONSTRAINT FK_execution_command_task_id FOREIG
 ALTER TABLE host_role_command ADD CONSTRAINT FK_host_role_command_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES stage (stage_id, request_id);
 ALTER TABLE host_role_command ADD CONSTRAINT FK_host_role_command_host_id FOREIGN KEY (host_id) REFERENCES hosts (host_id);
 ALTER TABLE role_success_criteria ADD CONSTRAINT role_success_criteria_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES stage (stage_id, request_id);
+ALTER TABLE execution_command_fragment ADD CONSTRAINT FK_exec_cmd_fragment_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES stage (stage_id, request_id);
 ALTER TABLE stage ADD CONSTRAINT FK_stage_request_id FOREIGN KEY (request_id) REFERENCES request (request_id);
 ALTER TABLE request ADD CONSTRAINT FK_request_schedule_id FOREIGN KEY (request_schedule_id) REFERENCES requestschedule (schedule_id);
 ALTER TABLE ClusterHostMapping ADD CONSTRAINT FK_clhostmapping_cluster_id FOREIGN KEY (cluster_id) REFERENCES clusters (cluster_id);
@@ -289,6 +289,14 @@ CREATE TABLE ambari.role_success_criteria (
   PRIMARY KEY (role, request_id, stage_id));
 GRANT ALL PRIVILEGES ON TABLE ambari.role_success_criteria TO :username;
 
+CREATE TABLE ambari.execution_command_fragment (
+  request_id BIGINT NOT NULL,
+  stage_id BIGINT NOT NULL,
+  fragment_hash VARCHAR(64) NOT NULL,
+  content BYTEA,
+  PRIMARY KEY (request_id, stage_id, fragment_hash));
+GRANT ALL PRIVILEGES ON TABLE ambari.execution_command_fragment TO :username;
+
 CREATE TABLE ambari.stage (
   stage_id BIGINT NOT NULL,
   request_id BIGINT NOT NULL,
@@ -754,6 +762,7 @@ ALTER TABLE ambari.execution_command ADD CONSTRAINT FK_execution_command_task_id
 ALTER TABLE ambari.host_role_command ADD CONSTRAINT FK_host_role_command_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES ambari.stage (stage_id, request_id);
 ALTER TABLE ambari.host_role_command ADD CONSTRAINT FK_host_role_command_host_id FOREIGN KEY (host_id) REFERENCES ambari.hosts (host_id);
 ALTER TABLE ambari.role_success_criteria ADD CONSTRAINT role_success_criteria_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES ambari.stage (stage_id, request_id);
+ALTER TABLE ambari.execution_command_fragment ADD CONSTRAINT FK_exec_cmd_fragment_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES ambari.stage (stage_id, request_id);
 ALTER TABLE ambari.stage ADD CONSTRAINT FK_stage_request_id FOREIGN KEY (request_id) REFERENCES ambari.request (request_id);
 ALTER TABLE ambari.request ADD CONSTRAINT FK_request_schedule_id FOREIGN KEY (request_schedule_id) REFERENCES ambari.requestschedule (schedule_id);
 ALTER TABLE ambari.ClusterHostMapping ADD CONSTRAINT FK_clhostmapping_cluster_id FOREIGN KEY (cluster_id) REFERENCES ambari.clusters (cluster_id);
@@ -115,6 +115,8 @@ IF OBJECT_ID('user_roles', 'U') IS NOT NULL DROP TABLE user_roles
 GO
 IF OBJECT_ID('ClusterHostMapping', 'U') IS NOT NULL DROP TABLE ClusterHostMapping
 GO
+IF OBJECT_ID('execution_command_fragment', 'U') IS NOT NULL DROP TABLE execution_command_fragment
+GO
 IF OBJECT_ID('role_success_criteria', 'U') IS NOT NULL DROP TABLE role_success_criteria
 GO
 IF OBJECT_ID('execution_command', 'U') IS NOT NULL DROP TABLE execution_command
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.Role;
+import org.apache.ambari.server.RoleCommand;
+import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.orm.dao.ExecutionCommandDAO;
+import org.apache.ambari.server.orm.dao.HostRoleCommandDAO;
+import org.apache.ambari.server.orm.dao.StageDAO;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntity;
+import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.svccomphost.ServiceComponentHostStartEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * Compares the time taken by {@link ActionDBAccessor#persistActions} and the
+ * bytes it writes for a large stage with and without compact storage.
+ */
+@Ignore
+public class ActionDBAccessorPerformanceTest {
+
+  private Injector injector;
+
+  @Inject
+  private Clusters clusters;
+
+  @Inject
+  private ActionDBAccessor db;
+
+  @Inject
+  private Configuration configuration;
+
+  @Inject
+  private ExecutionCommandDAO executionCommandDAO;
+
+  @Inject
+  private HostRoleCommandDAO hostRoleCommandDAO;
+
+  @Inject
+  private StageDAO stageDAO;
+
+  @Inject
+  private StageFactory stageFactory;
+
+  @Before
+  public void setup() throws AmbariException {
+    injector = Guice.createInjector(new InMemoryDefaultTestModule());
+    injector.getInstance(GuiceJpaInitializer.class);
+    injector.getInstance(AmbariMetaInfo.class);
+    injector.injectMembers(this);
+
+    clusters.addCluster("cluster1", new StackId("HDP-0.1"));
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  @Test
+  public void testPersistLargeStage() throws AmbariException {
+    int hosts = 200;
+    Map<String, Map<String, String>> configurations = createConfigurations(20, 50);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(hosts);
+
+    configuration.setProperty(Configuration.EXECUTION_COMMAND_COMPACT_STORAGE_KEY, "false");
+    List<Stage> stages = new ArrayList<Stage>();
+    stages.add(createLargeStage(1L, 1L, hosts, configurations, clusterHostInfo));
+
+    long plainStart = System.nanoTime();
+    db.persistActions(new Request(stages, clusters));
+    long plainTime = System.nanoTime() - plainStart;
+    long plainBytes = getStoredCommandBytes(1L);
+
+    configuration.setProperty(Configuration.EXECUTION_COMMAND_COMPACT_STORAGE_KEY, "true");
+    stages = new ArrayList<Stage>();
+    stages.add(createLargeStage(2L, 1L, hosts, configurations, clusterHostInfo));
+
+    long compactStart = System.nanoTime();
+    db.persistActions(new Request(stages, clusters));
+    long compactTime = System.nanoTime() - compactStart;
+    long compactBytes = getStoredCommandBytes(2L);
+
+    System.out.println("Persisted a stage of " + hosts + " commands: plain " + plainBytes
+        + " bytes in " + plainTime / 1000000 + "ms, compact " + compactBytes + " bytes in "
+        + compactTime / 1000000 + "ms");
+  }
+
+  private Stage createLargeStage(long requestId, long stageId, int hosts,
+      Map<String, Map<String, String>> configurations,
+      Map<String, Set<String>> clusterHostInfo) throws AmbariException {
+    Stage s = stageFactory.createNew(requestId, "/a/b", "cluster1", 1L, "action db accessor test",
+        "clusterHostInfo", "commandParamsStage", "hostParamsStage");
+    s.setStageId(stageId);
+
+    for (int i = 0; i < hosts; i++) {
+      String host = "c64-" + i;
+      if (requestId == 1L) {
+        clusters.addHost(host);
+        clusters.getHost(host).persist();
+      }
+
+      s.addHostRoleExecutionCommand(host, Role.DATANODE, RoleCommand.START,
+          new ServiceComponentHostStartEvent(Role.DATANODE.toString(),
+              host, System.currentTimeMillis()), "cluster1", "HDFS", false);
+
+      ExecutionCommand command = s.getExecutionCommandWrapper(host,
+          Role.DATANODE.toString()).getExecutionCommand();
+      command.setConfigurations(new TreeMap<String, Map<String, String>>(configurations));
+      command.setClusterHostInfo(new TreeMap<String, Set<String>>(clusterHostInfo));
+    }
+
+    return s;
+  }
+
+  private long getStoredCommandBytes(long requestId) {
+    long bytes = 0;
+    for (HostRoleCommandEntity entity : hostRoleCommandDAO.findByRequest(requestId)) {
+      bytes += executionCommandDAO.findByPK(entity.getTaskId()).getCommand().length;
+    }
+
+    for (StageEntity stageEntity : stageDAO.findByRequestId(requestId)) {
+      if (null != stageEntity.getExecutionCommandFragments()) {
+        for (ExecutionCommandFragmentEntity fragment : stageEntity.getExecutionCommandFragments()) {
+          bytes += fragment.getContent().length;
+        }
+      }
+    }
+
+    return bytes;
+  }
+
+  private static Map<String, Map<String, String>> createConfigurations(int types,
+      int properties) {
+    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
+    for (int i = 0; i < types; i++) {
+      Map<String, String> configuration = new TreeMap<String, String>();
+      for (int j = 0; j < properties; j++) {
+        configuration.put("property." + i + "." + j, "/var/lib/value/" + i + "/" + j);
+      }
+
+      configurations.put("type" + i + "-site", configuration);
+    }
+
+    return configurations;
+  }
+
+  private static Map<String, Set<String>> createClusterHostInfo(int hosts) {
+    Set<String> allHosts = new TreeSet<String>();
+    for (int i = 0; i < hosts; i++) {
+      allHosts.add("c64-" + i);
+    }
+
+    Map<String, Set<String>> clusterHostInfo = new TreeMap<String, Set<String>>();
+    clusterHostInfo.put("all_hosts", allHosts);
+    clusterHostInfo.put("slave_hosts", allHosts);
+    return clusterHostInfo;
+  }
+}
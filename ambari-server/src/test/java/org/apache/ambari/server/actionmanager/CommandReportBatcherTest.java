@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.agent.CommandReport;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link CommandReportBatcher}.
+ */
+public class CommandReportBatcherTest {
+
+  /**
+   * Tests that reports from heartbeats which queue up while a batch is being
+   * written are written together in the next batch.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testReportsAreCoalesced() throws Exception {
+    final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch firstFlushStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirstFlush = new CountDownLatch(1);
+
+    ActionDBAccessor db = createNiceMock(ActionDBAccessor.class);
+    db.updateHostRoleStates(anyObject(Collection.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        if (firstFlushStarted.getCount() > 0) {
+          firstFlushStarted.countDown();
+          releaseFirstFlush.await();
+        }
+
+        batchSizes.add(((Collection<?>) getCurrentArguments()[0]).size());
+        return null;
+      }
+    }).anyTimes();
+    replay(db);
+
+    final CommandReportBatcher batcher = new CommandReportBatcher(db, 100, 1000, 500);
+    batcher.start();
+
+    ExecutorService executor = Executors.newFixedThreadPool(10);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    futures.add(submit(executor, batcher, createReports(0, 2)));
+    firstFlushStarted.await();
+
+    // the other heartbeats arrive while the first one is being written
+    for (int i = 1; i < 10; i++) {
+      futures.add(submit(executor, batcher, createReports(i * 2, 2)));
+    }
+
+    while (batcher.getQueueDepth() < 9) {
+      Thread.sleep(10);
+    }
+
+    releaseFirstFlush.countDown();
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+
+    executor.shutdown();
+    batcher.stop();
+
+    Assert.assertEquals(2, batchSizes.size());
+    Assert.assertEquals(2, batchSizes.get(0).intValue());
+    Assert.assertEquals(18, batchSizes.get(1).intValue());
+    Assert.assertEquals(20, batcher.getReportCount());
+    Assert.assertEquals(2, batcher.getBatchCount());
+    Assert.assertEquals(0, batcher.getQueueDepth());
+  }
+
+  /**
+   * Tests that a heartbeat which arrives while nothing else is queued does not
+   * wait for the linger time.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testIdleHeartbeatIsWrittenImmediately() throws Exception {
+    ActionDBAccessor db = createNiceMock(ActionDBAccessor.class);
+    replay(db);
+
+    // a linger time far beyond the test timeout
+    CommandReportBatcher batcher = new CommandReportBatcher(db, 10, 10,
+        TimeUnit.HOURS.toMillis(1));
+    batcher.start();
+
+    try {
+      batcher.submit(createReports(1, 1));
+      batcher.submit(createReports(2, 1));
+    } finally {
+      batcher.stop();
+    }
+
+    Assert.assertEquals(2, batcher.getBatchCount());
+    Assert.assertEquals(2, batcher.getReportCount());
+  }
+
+  /**
+   * Tests that when a batch cannot be written, the reports of each heartbeat
+   * are retried on their own and only the heartbeat with the bad report fails.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testFailedBatchIsRetriedPerHeartbeat() throws Exception {
+    final long badTaskId = 7;
+    final List<Long> writtenTaskIds = Collections.synchronizedList(new ArrayList<Long>());
+    final CountDownLatch firstFlushStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirstFlush = new CountDownLatch(1);
+
+    ActionDBAccessor db = createNiceMock(ActionDBAccessor.class);
+    db.updateHostRoleStates(anyObject(Collection.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        if (firstFlushStarted.getCount() > 0) {
+          firstFlushStarted.countDown();
+          releaseFirstFlush.await();
+        }
+
+        @SuppressWarnings("unchecked")
+        Collection<CommandReport> reports = (Collection<CommandReport>) getCurrentArguments()[0];
+        for (CommandReport report : reports) {
+          if (report.getTaskId() == badTaskId) {
+            throw new RuntimeException("bad report");
+          }
+        }
+
+        for (CommandReport report : reports) {
+          writtenTaskIds.add(report.getTaskId());
+        }
+        return null;
+      }
+    }).anyTimes();
+    replay(db);
+
+    CommandReportBatcher batcher = new CommandReportBatcher(db, 100, 1000, 500);
+    batcher.start();
+
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    futures.add(submit(executor, batcher, createReports(0, 1)));
+    firstFlushStarted.await();
+
+    for (int i = 1; i < 5; i++) {
+      futures.add(submit(executor, batcher, createReports(i * 2, 2)));
+    }
+
+    while (batcher.getQueueDepth() < 4) {
+      Thread.sleep(10);
+    }
+
+    releaseFirstFlush.countDown();
+
+    int failures = 0;
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        futures.get(i).get();
+      } catch (ExecutionException e) {
+        // only the heartbeat with tasks 6 and 7 fails
+        Assert.assertEquals(3, i);
+        Assert.assertTrue(e.getCause() instanceof AmbariException);
+        failures++;
+      }
+    }
+
+    executor.shutdown();
+    batcher.stop();
+
+    Assert.assertEquals(1, failures);
+    Assert.assertEquals(7, writtenTaskIds.size());
+    Assert.assertFalse(writtenTaskIds.contains(6L));
+    Assert.assertFalse(writtenTaskIds.contains(badTaskId));
+    Assert.assertEquals(1, batcher.getRetriedBatchCount());
+    Assert.assertEquals(1, batcher.getFailedHeartbeatCount());
+  }
+
+  /**
+   * Tests that a failure writing the batch is reported to the heartbeat.
+   *
+   * @throws Exception
+   */
+  @Test(expected = AmbariException.class)
+  public void testFailureIsPropagated() throws Exception {
+    ActionDBAccessor db = createNiceMock(ActionDBAccessor.class);
+    db.updateHostRoleStates(anyObject(Collection.class));
+    expectLastCall().andThrow(new RuntimeException("database unavailable")).anyTimes();
+    replay(db);
+
+    CommandReportBatcher batcher = new CommandReportBatcher(db, 10, 10, 0);
+    batcher.start();
+
+    try {
+      batcher.submit(createReports(1, 1));
+    } finally {
+      batcher.stop();
+    }
+  }
+
+  /**
+   * Tests that reports are written on the calling thread when the writer is not
+   * running.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDirectWriteWhenStopped() throws Exception {
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+
+    ActionDBAccessor db = createNiceMock(ActionDBAccessor.class);
+    db.updateHostRoleStates(anyObject(Collection.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        batchSizes.add(((Collection<?>) getCurrentArguments()[0]).size());
+        return null;
+      }
+    }).anyTimes();
+    replay(db);
+
+    CommandReportBatcher batcher = new CommandReportBatcher(db, 10, 10, 0);
+    batcher.stop();
+    batcher.submit(createReports(1, 3));
+
+    Assert.assertEquals(1, batchSizes.size());
+    Assert.assertEquals(3, batchSizes.get(0).intValue());
+    Assert.assertEquals(1, batcher.getDirectWriteCount());
+    Assert.assertEquals(0, batcher.getBatchCount());
+  }
+
+  private static Future<Void> submit(ExecutorService executor,
+      final CommandReportBatcher batcher, final List<CommandReport> reports) {
+    return executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        batcher.submit(reports);
+        return null;
+      }
+    });
+  }
+
+  private static List<CommandReport> createReports(long firstTaskId, int count) {
+    List<CommandReport> reports = new ArrayList<CommandReport>();
+    for (int i = 0; i < count; i++) {
+      CommandReport report = new CommandReport();
+      report.setTaskId(firstTaskId + i);
+      report.setStatus(HostRoleStatus.COMPLETED.name());
+      report.setStdOut("");
+      report.setStdErr("");
+      reports.add(report);
+    }
+
+    return reports;
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import static org.apache.ambari.server.actionmanager.ExecutionCommandCodecTest.createClusterHostInfo;
+import static org.apache.ambari.server.actionmanager.ExecutionCommandCodecTest.createCommand;
+import static org.apache.ambari.server.actionmanager.ExecutionCommandCodecTest.createConfigurations;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ambari.server.agent.ExecutionCommand;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the bytes written and the time taken to encode the commands of a
+ * large stage with those of plain JSON.
+ */
+@Ignore
+public class ExecutionCommandCodecPerformanceTest {
+
+  @Test
+  public void testLargeStage() {
+    int hosts = 2000;
+    Map<String, Map<String, String>> configurations = createConfigurations(40, 50);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(hosts);
+
+    long plainStart = System.nanoTime();
+    long plainBytes = 0;
+    for (int i = 0; i < hosts; i++) {
+      ExecutionCommand command = createCommand("h" + i, i, configurations, clusterHostInfo);
+      plainBytes += new ExecutionCommandWrapper(command).getJson().getBytes().length;
+    }
+    long plainTime = System.nanoTime() - plainStart;
+
+    ExecutionCommandCodec codec = new ExecutionCommandCodec();
+    ExecutionCommandCodec.StageFragments fragments = new ExecutionCommandCodec.StageFragments();
+
+    long compactStart = System.nanoTime();
+    long compactBytes = 0;
+    for (int i = 0; i < hosts; i++) {
+      ExecutionCommand command = createCommand("h" + i, i, configurations, clusterHostInfo);
+      compactBytes += codec.encode(new ExecutionCommandWrapper(command), fragments).length;
+    }
+
+    for (byte[] fragment : fragments.getCompressedFragments().values()) {
+      compactBytes += fragment.length;
+    }
+    long compactTime = System.nanoTime() - compactStart;
+
+    System.out.println("Stage of " + hosts + " commands: plain " + plainBytes + " bytes in "
+        + plainTime / 1000000 + "ms, compact " + compactBytes + " bytes in "
+        + compactTime / 1000000 + "ms");
+  }
+}
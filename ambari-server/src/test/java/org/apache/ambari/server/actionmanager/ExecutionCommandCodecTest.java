@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ambari.server.RoleCommand;
+import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.utils.StageUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonParser;
+
+/**
+ * Tests {@link ExecutionCommandCodec}.
+ */
+public class ExecutionCommandCodecTest {
+
+  /**
+   * Tests that a command is the same after being stored and read back.
+   */
+  @Test
+  public void testRoundTrip() {
+    Map<String, Map<String, String>> configurations = createConfigurations(10, 20);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(50);
+    ExecutionCommand command = createCommand("h1", 1L, configurations, clusterHostInfo);
+
+    ExecutionCommandCodec codec = new ExecutionCommandCodec();
+    ExecutionCommandCodec.StageFragments fragments = new ExecutionCommandCodec.StageFragments();
+    byte[] stored = codec.encode(new ExecutionCommandWrapper(command), fragments);
+
+    Assert.assertTrue(ExecutionCommandCodec.isCompressed(stored));
+    Assert.assertEquals(2, fragments.getCompressedFragments().size());
+
+    String json = codec.decode(stored, fragments);
+    assertSameJson(StageUtils.getGson().toJson(command), json);
+
+    ExecutionCommand decoded = StageUtils.getGson().fromJson(json, ExecutionCommand.class);
+    Assert.assertEquals(configurations, decoded.getConfigurations());
+    Assert.assertEquals(clusterHostInfo, decoded.getClusterHostInfo());
+    Assert.assertEquals("h1", decoded.getHostname());
+  }
+
+  /**
+   * Tests that the parts shared by the commands of a stage are kept once.
+   */
+  @Test
+  public void testSharedFragmentsAreStoredOnce() {
+    Map<String, Map<String, String>> configurations = createConfigurations(10, 20);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(50);
+
+    ExecutionCommandCodec codec = new ExecutionCommandCodec();
+    ExecutionCommandCodec.StageFragments fragments = new ExecutionCommandCodec.StageFragments();
+
+    for (int i = 0; i < 10; i++) {
+      // each command has its own copy of the same values
+      codec.encode(new ExecutionCommandWrapper(createCommand("h" + i, i,
+          new HashMap<String, Map<String, String>>(configurations),
+          new HashMap<String, Set<String>>(clusterHostInfo))), fragments);
+    }
+
+    Assert.assertEquals(2, fragments.getCompressedFragments().size());
+
+    // different configurations make a new fragment
+    codec.encode(new ExecutionCommandWrapper(createCommand("h10", 10L,
+        createConfigurations(11, 20), clusterHostInfo)), fragments);
+
+    Assert.assertEquals(3, fragments.getCompressedFragments().size());
+  }
+
+  /**
+   * Tests that small members are left in the command and that commands
+   * written as plain JSON are read as they are.
+   */
+  @Test
+  public void testSmallAndPlainCommands() {
+    ExecutionCommand command = createCommand("h1", 1L, createConfigurations(1, 1),
+        createClusterHostInfo(1));
+
+    ExecutionCommandCodec codec = new ExecutionCommandCodec();
+    ExecutionCommandCodec.StageFragments fragments = new ExecutionCommandCodec.StageFragments();
+    byte[] stored = codec.encode(new ExecutionCommandWrapper(command), fragments);
+
+    Assert.assertTrue(fragments.getCompressedFragments().isEmpty());
+    assertSameJson(StageUtils.getGson().toJson(command), codec.decode(stored, fragments));
+
+    String json = StageUtils.getGson().toJson(command);
+    Assert.assertFalse(ExecutionCommandCodec.isCompressed(json.getBytes()));
+    Assert.assertEquals(json, codec.decode(json.getBytes(), fragments));
+
+    // the wrapper reads plain commands without the codec
+    Assert.assertEquals(json, new ExecutionCommandWrapper(json.getBytes(), 1L, 1L).getJson());
+  }
+
+  /**
+   * Tests that a command referring to a missing fragment is rejected.
+   */
+  @Test(expected = RuntimeException.class)
+  public void testMissingFragment() {
+    ExecutionCommand command = createCommand("h1", 1L, createConfigurations(10, 20),
+        createClusterHostInfo(50));
+
+    ExecutionCommandCodec codec = new ExecutionCommandCodec();
+    byte[] stored = codec.encode(new ExecutionCommandWrapper(command),
+        new ExecutionCommandCodec.StageFragments());
+
+    codec.decode(stored, new ExecutionCommandCodec.StageFragments());
+  }
+
+  /**
+   * Tests that the commands of a large stage take a fraction of the space of
+   * their plain JSON.
+   */
+  @Test
+  public void testLargeStageIsCompact() {
+    int hosts = 100;
+    Map<String, Map<String, String>> configurations = createConfigurations(40, 50);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(hosts);
+
+    ExecutionCommandCodec codec = new ExecutionCommandCodec();
+    ExecutionCommandCodec.StageFragments fragments = new ExecutionCommandCodec.StageFragments();
+
+    long plainBytes = 0;
+    long compactBytes = 0;
+    for (int i = 0; i < hosts; i++) {
+      ExecutionCommand command = createCommand("h" + i, i, configurations, clusterHostInfo);
+      plainBytes += new ExecutionCommandWrapper(command).getJson().getBytes().length;
+      compactBytes += codec.encode(new ExecutionCommandWrapper(command), fragments).length;
+    }
+
+    Assert.assertEquals(2, fragments.getCompressedFragments().size());
+    for (byte[] fragment : fragments.getCompressedFragments().values()) {
+      compactBytes += fragment.length;
+    }
+
+    Assert.assertTrue(compactBytes * 20 < plainBytes);
+  }
+
+  private static void assertSameJson(String expected, String actual) {
+    JsonParser parser = new JsonParser();
+    Assert.assertEquals(parser.parse(expected), parser.parse(actual));
+  }
+
+  static ExecutionCommand createCommand(String hostName, long taskId,
+      Map<String, Map<String, String>> configurations,
+      Map<String, Set<String>> clusterHostInfo) {
+    ExecutionCommand command = new ExecutionCommand();
+    command.setClusterName("c1");
+    command.setHostname(hostName);
+    command.setTaskId(taskId);
+    command.setCommandId("1-1");
+    command.setRole("DATANODE");
+    command.setRoleCommand(RoleCommand.START);
+    command.setServiceName("HDFS");
+    command.setComponentName("DATANODE");
+    command.setConfigurations(configurations);
+    command.setClusterHostInfo(clusterHostInfo);
+
+    Map<String, String> hostLevelParams = new TreeMap<String, String>();
+    hostLevelParams.put("jdk_location", "http://server:8080/resources/");
+    hostLevelParams.put("stack_name", "HDP");
+    hostLevelParams.put("stack_version", "2.2");
+    command.setHostLevelParams(hostLevelParams);
+    return command;
+  }
+
+  static Map<String, Map<String, String>> createConfigurations(int types,
+      int properties) {
+    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
+    for (int i = 0; i < types; i++) {
+      Map<String, String> configuration = new TreeMap<String, String>();
+      for (int j = 0; j < properties; j++) {
+        configuration.put("property." + i + "." + j, "/var/lib/value/" + i + "/" + j);
+      }
+
+      configurations.put("type" + i + "-site", configuration);
+    }
+
+    return configurations;
+  }
+
+  static Map<String, Set<String>> createClusterHostInfo(int hosts) {
+    Set<String> allHosts = new TreeSet<String>();
+    for (int i = 0; i < hosts; i++) {
+      allHosts.add("host" + i + ".example.com");
+    }
+
+    Map<String, Set<String>> clusterHostInfo = new TreeMap<String, Set<String>>();
+    clusterHostInfo.put("all_hosts", allHosts);
+    clusterHostInfo.put("slave_hosts", allHosts);
+    return clusterHostInfo;
+  }
+}
@@ -26,16 +26,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.persistence.EntityManager;
 
 import junit.framework.Assert;
 
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.HostNotFoundException;
 import org.apache.ambari.server.Role;
 import org.apache.ambari.server.RoleCommand;
 import org.apache.ambari.server.agent.ActionQueue;
 import org.apache.ambari.server.agent.CommandReport;
+import org.apache.ambari.server.agent.ExecutionCommand;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.api.services.BaseRequest;
 import org.apache.ambari.server.configuration.Configuration;
@@ -48,7 +54,10 @@ import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
 import org.apache.ambari.server.orm.dao.ExecutionCommandDAO;
 import org.apache.ambari.server.orm.dao.HostRoleCommandDAO;
+import org.apache.ambari.server.orm.dao.StageDAO;
+import org.apache.ambari.server.orm.entities.ExecutionCommandFragmentEntity;
 import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
 import org.apache.ambari.server.serveraction.MockServerAction;
 import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.StackId;
@@ -303,6 +312,71 @@ public class TestActionDBAccessorImpl {
     }
   }
 
+  /**
+   * Tests that commands written in their compact form are read back from the
+   * database and reassembled from the fragments of their stage.
+   */
+  @Test
+  public void testPersistActionsCompactRoundTrip() throws AmbariException {
+    Map<String, Map<String, String>> configurations = createConfigurations(10, 20);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(50);
+
+    List<Stage> stages = new ArrayList<Stage>();
+    stages.add(createLargeStage(requestId, stageId, 3, configurations, clusterHostInfo));
+    db.persistActions(new Request(stages, clusters));
+
+    // the configurations and cluster host info are written once for the stage
+    StageEntity stageEntity = injector.getInstance(StageDAO.class).findByRequestId(
+        requestId).get(0);
+    assertEquals(2, stageEntity.getExecutionCommandFragments().size());
+    for (ExecutionCommandFragmentEntity fragment : stageEntity.getExecutionCommandFragments()) {
+      assertNotNull(executionCommandDAO.findFragmentByPK(requestId, stageId,
+          fragment.getFragmentHash()));
+    }
+
+    // read everything back from the database
+    injector.getInstance(EntityManager.class).clear();
+
+    Stage stage = db.getAllStages(requestId).get(0);
+    for (int i = 0; i < 3; i++) {
+      String host = "c64-" + i;
+      ExecutionCommandWrapper wrapper = stage.getExecutionCommands(host).get(0);
+      ExecutionCommand command = wrapper.getExecutionCommand();
+
+      assertTrue(ExecutionCommandCodec.isCompressed(
+          executionCommandDAO.findByPK(command.getTaskId()).getCommand()));
+      assertEquals(host, command.getHostname());
+      assertEquals(configurations, command.getConfigurations());
+      assertEquals(clusterHostInfo, command.getClusterHostInfo());
+    }
+  }
+
+  /**
+   * Tests that {@link ActionDBAccessor#persistActions} writes a fraction of
+   * the bytes for a large stage when compact storage is enabled.
+   */
+  @Test
+  public void testPersistActionsCompactStorageSize() throws AmbariException {
+    int hosts = 50;
+    Map<String, Map<String, String>> configurations = createConfigurations(20, 50);
+    Map<String, Set<String>> clusterHostInfo = createClusterHostInfo(hosts);
+    Configuration configuration = injector.getInstance(Configuration.class);
+
+    configuration.setProperty(Configuration.EXECUTION_COMMAND_COMPACT_STORAGE_KEY, "false");
+    List<Stage> stages = new ArrayList<Stage>();
+    stages.add(createLargeStage(requestId, stageId, hosts, configurations, clusterHostInfo));
+    db.persistActions(new Request(stages, clusters));
+    long plainBytes = getStoredCommandBytes(requestId);
+
+    configuration.setProperty(Configuration.EXECUTION_COMMAND_COMPACT_STORAGE_KEY, "true");
+    stages = new ArrayList<Stage>();
+    stages.add(createLargeStage(requestId + 1, stageId, hosts, configurations, clusterHostInfo));
+    db.persistActions(new Request(stages, clusters));
+    long compactBytes = getStoredCommandBytes(requestId + 1);
+
+    assertTrue(compactBytes * 10 < plainBytes);
+  }
+
   @Test
   public void testHostRoleScheduled() throws InterruptedException, AmbariException {
     populateActionDB(db, hostName, requestId, stageId);
@@ -675,6 +749,88 @@ public class TestActionDBAccessorImpl {
     return s;
   }
 
+  /**
+   * Creates a stage with a command on each of the hosts {@code c64-0} to
+   * {@code c64-<hosts - 1>}, creating the hosts if needed. Every command has
+   * its own copy of the configurations and cluster host info.
+   */
+  private Stage createLargeStage(long requestId, long stageId, int hosts,
+      Map<String, Map<String, String>> configurations,
+      Map<String, Set<String>> clusterHostInfo) throws AmbariException {
+    Stage s = stageFactory.createNew(requestId, "/a/b", "cluster1", 1L, "action db accessor test",
+        "clusterHostInfo", "commandParamsStage", "hostParamsStage");
+    s.setStageId(stageId);
+
+    for (int i = 0; i < hosts; i++) {
+      String host = "c64-" + i;
+      try {
+        clusters.getHost(host);
+      } catch (HostNotFoundException e) {
+        clusters.addHost(host);
+        clusters.getHost(host).persist();
+      }
+
+      s.addHostRoleExecutionCommand(host, Role.DATANODE, RoleCommand.START,
+          new ServiceComponentHostStartEvent(Role.DATANODE.toString(),
+              host, System.currentTimeMillis()), "cluster1", "HDFS", false);
+
+      ExecutionCommand command = s.getExecutionCommandWrapper(host,
+          Role.DATANODE.toString()).getExecutionCommand();
+      command.setConfigurations(new TreeMap<String, Map<String, String>>(configurations));
+      command.setClusterHostInfo(new TreeMap<String, Set<String>>(clusterHostInfo));
+    }
+
+    return s;
+  }
+
+  /**
+   * @return the number of bytes written for the commands of the request and
+   *         the fragments of its stages.
+   */
+  private long getStoredCommandBytes(long requestId) {
+    long bytes = 0;
+    for (HostRoleCommandEntity entity : hostRoleCommandDAO.findByRequest(requestId)) {
+      bytes += executionCommandDAO.findByPK(entity.getTaskId()).getCommand().length;
+    }
+
+    for (StageEntity stageEntity : injector.getInstance(StageDAO.class).findByRequestId(requestId)) {
+      if (null != stageEntity.getExecutionCommandFragments()) {
+        for (ExecutionCommandFragmentEntity fragment : stageEntity.getExecutionCommandFragments()) {
+          bytes += fragment.getContent().length;
+        }
+      }
+    }
+
+    return bytes;
+  }
+
+  private static Map<String, Map<String, String>> createConfigurations(int types,
+      int properties) {
+    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
+    for (int i = 0; i < types; i++) {
+      Map<String, String> configuration = new TreeMap<String, String>();
+      for (int j = 0; j < properties; j++) {
+        configuration.put("property." + i + "." + j, "/var/lib/value/" + i + "/" + j);
+      }
+
+      configurations.put("type" + i + "-site", configuration);
+    }
+
+    return configurations;
+  }
+
+  private static Map<String, Set<String>> createClusterHostInfo(int hosts) {
+    Set<String> allHosts = new TreeSet<String>();
+    for (int i = 0; i < hosts; i++) {
+      allHosts.add("c64-" + i);
+    }
+
+    Map<String, Set<String>> clusterHostInfo = new TreeMap<String, Set<String>>();
+    clusterHostInfo.put("all_hosts", allHosts);
+    clusterHostInfo.put("slave_hosts", allHosts);
+    return clusterHostInfo;
+  }
+
   private void populateActionDBWithCustomAction(ActionDBAccessor db, String hostname,
                                 long requestId, long stageId) throws AmbariException {
     Stage s = stageFactory.createNew(requestId, "/a/b", "cluster1", 1L, "action db accessor test",
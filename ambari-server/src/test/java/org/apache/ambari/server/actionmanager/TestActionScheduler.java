@@ -95,6 +95,7 @@ import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Ticker;
 import com.google.common.reflect.TypeToken;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -217,6 +218,111 @@ public class TestActionScheduler {
 
     //Wait for sometime, it shouldn't be scheduled this time.
     ac = waitForQueueSize(hostname, aq, 0, scheduler);
+    assertEquals(1, scheduler.getRequestsInProgressCount());
+
+    //Once nothing is in progress the request is no longer tracked
+    when(db.getCommandsInProgressCount()).thenReturn(0);
+    scheduler.doWork();
+    assertEquals(0, scheduler.getRequestsInProgressCount());
+  }
+
+  /**
+   * Tests the cycle and request latency statistics against a controlled
+   * clock.
+   */
+  @Test
+  public void testSchedulerStatistics() throws Exception {
+    Properties properties = new Properties();
+    Configuration conf = new Configuration(properties);
+    Clusters fsm = mock(Clusters.class);
+    Cluster oneClusterMock = mock(Cluster.class);
+    Service serviceObj = mock(Service.class);
+    ServiceComponent scomp = mock(ServiceComponent.class);
+    ServiceComponentHost sch = mock(ServiceComponentHost.class);
+    UnitOfWork unitOfWork = mock(UnitOfWork.class);
+    when(fsm.getCluster(anyString())).thenReturn(oneClusterMock);
+    when(oneClusterMock.getService(anyString())).thenReturn(serviceObj);
+    when(serviceObj.getServiceComponent(anyString())).thenReturn(scomp);
+    when(scomp.getServiceComponentHost(anyString())).thenReturn(sch);
+    when(serviceObj.getCluster()).thenReturn(oneClusterMock);
+    when(fsm.getClusterById(anyLong())).thenReturn(oneClusterMock);
+    when(oneClusterMock.getClusterId()).thenReturn(Long.valueOf(1L));
+
+    Host host = mock(Host.class);
+    HashMap<String, ServiceComponentHost> hosts =
+            new HashMap<String, ServiceComponentHost>();
+    hosts.put(hostname, sch);
+    HostEntity hostEntity = new HostEntity();
+    hostEntity.setHostName(hostname);
+    hostDAO.merge(hostEntity);
+    when(scomp.getServiceComponentHosts()).thenReturn(hosts);
+
+    when(fsm.getHost(anyString())).thenReturn(host);
+    when(host.getState()).thenReturn(HostState.HEALTHY);
+    when(host.getHostName()).thenReturn(hostname);
+
+    final TestTicker ticker = new TestTicker();
+    ActionDBAccessor db = mock(ActionDBAccessorImpl.class);
+    final List<Stage> stages = new ArrayList<Stage>();
+    stages.add(StageUtils.getATestStage(1, 977, hostname, CLUSTER_HOST_INFO,
+      "{\"host_param\":\"param_value\"}", "{\"stage_param\":\"param_value\"}"));
+    when(db.getCommandsInProgressCount()).thenReturn(stages.size());
+    // loading the stages takes 5 ms
+    when(db.getStagesInProgress()).thenAnswer(new Answer<List<Stage>>() {
+      @Override
+      public List<Stage> answer(InvocationOnMock invocation) throws Throwable {
+        ticker.advance(5);
+        return stages;
+      }
+    });
+
+    RequestEntity request = mock(RequestEntity.class);
+    when(request.isExclusive()).thenReturn(false);
+    when(db.getRequestEntity(anyLong())).thenReturn(request);
+
+    ActionScheduler scheduler = new ActionScheduler(100, 10000, db,
+        new ActionQueue(), fsm, 10000, new HostsMap((String) null),
+        unitOfWork, null, conf);
+    scheduler.setTicker(ticker);
+
+    // the request is picked up at 5 ms
+    scheduler.doWork();
+    assertEquals(1, scheduler.getCycleCount());
+    assertEquals(5, scheduler.getLastCycleTime());
+    assertEquals(1, scheduler.getRequestsInProgressCount());
+    assertEquals(0, scheduler.getAverageRequestLatency(), 0);
+
+    ticker.advance(95);
+    scheduler.doWork();
+    assertEquals(2, scheduler.getCycleCount());
+    assertEquals(1, scheduler.getRequestsInProgressCount());
+
+    // the request completes at 200 ms
+    ticker.advance(95);
+    when(db.getCommandsInProgressCount()).thenReturn(0);
+    scheduler.doWork();
+    assertEquals(3, scheduler.getCycleCount());
+    assertEquals(0, scheduler.getLastCycleTime());
+    assertEquals(5, scheduler.getMaxCycleTime());
+    assertEquals(10.0 / 3, scheduler.getAverageCycleTime(), 0.001);
+    assertEquals(0, scheduler.getRequestsInProgressCount());
+    assertEquals(195, scheduler.getAverageRequestLatency(), 0);
+  }
+
+  /**
+   * A {@link Ticker} which only moves when advanced.
+   */
+  private static class TestTicker extends Ticker {
+    private long nanos = 0;
+
+    void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
   }
 
   private List<AgentCommand> waitForQueueSize(String hostname, ActionQueue aq,
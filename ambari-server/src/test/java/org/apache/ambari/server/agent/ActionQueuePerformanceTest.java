@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares removing commands by ID from a host with many queued status
+ * commands against the linear scan that the queue used to perform.
+ */
+@Ignore
+public class ActionQueuePerformanceTest {
+
+  @Test
+  public void testDequeueCommandId() throws Exception {
+    final int statusCommands = 2000;
+    final int executionCommands = 500;
+    String c6401 = "c6401.ambari.apache.org";
+
+    ActionQueue queue = new ActionQueue();
+    Queue<AgentCommand> scanningQueue = new ConcurrentLinkedQueue<AgentCommand>();
+
+    for (int i = 0; i < statusCommands; i++) {
+      StatusCommand command = new StatusCommand();
+      queue.enqueue(c6401, command);
+      scanningQueue.add(command);
+    }
+
+    for (int i = 0; i < executionCommands; i++) {
+      ExecutionCommand command = new ExecutionCommand();
+      command.setCommandId("1-" + i);
+      queue.enqueue(c6401, command);
+      scanningQueue.add(command);
+    }
+
+    // remove the newest commands first, as cancelling a request does
+    long start = System.nanoTime();
+    for (int i = executionCommands - 1; i >= 0; i--) {
+      assertTrue(null != queue.dequeue(c6401, "1-" + i));
+    }
+    long indexedTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = executionCommands - 1; i >= 0; i--) {
+      String commandId = "1-" + i;
+      Iterator<AgentCommand> iterator = scanningQueue.iterator();
+      while (iterator.hasNext()) {
+        AgentCommand command = iterator.next();
+        if (command instanceof ExecutionCommand
+            && ((ExecutionCommand) command).getCommandId().equals(commandId)) {
+          iterator.remove();
+          break;
+        }
+      }
+    }
+    long scanningTime = System.nanoTime() - start;
+
+    System.out.println("Removed " + executionCommands + " commands by ID from "
+        + (statusCommands + executionCommands) + " queued commands in "
+        + indexedTime / 1000 + "us indexed, " + scanningTime / 1000 + "us scanning");
+
+    assertEquals(statusCommands, queue.size(c6401));
+    assertEquals(statusCommands, scanningQueue.size());
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link AgentRequests}.
+ */
+public class AgentRequestsTest {
+
+  @Test
+  public void testExecutionDetailsRequest() {
+    AgentRequests requests = new AgentRequests();
+    Assert.assertFalse(requests.shouldSendExecutionDetails("h1", "DATANODE"));
+
+    requests.setExecutionDetailsRequest("h1", "DATANODE", "true");
+    requests.setExecutionDetailsRequest("h1", "NAMENODE", "");
+    Assert.assertTrue(requests.shouldSendExecutionDetails("h1", "DATANODE"));
+    Assert.assertFalse(requests.shouldSendExecutionDetails("h1", "NAMENODE"));
+    Assert.assertFalse(requests.shouldSendExecutionDetails("h2", "DATANODE"));
+
+    requests.setExecutionDetailsRequest("h1", "DATANODE", "False");
+    Assert.assertFalse(requests.shouldSendExecutionDetails("h1", "DATANODE"));
+  }
+
+  /**
+   * Tests that requests set by heartbeats while the monitor shards read them
+   * are not lost.
+   */
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    final AgentRequests requests = new AgentRequests();
+    final int threadCount = 8;
+    final int hostCount = 200;
+    final CountDownLatch start = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < threadCount; t++) {
+        final String component = "COMPONENT" + t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for (int h = 0; h < hostCount; h++) {
+              requests.shouldSendExecutionDetails("host" + h, component);
+              requests.setExecutionDetailsRequest("host" + h, component, "true");
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (int h = 0; h < hostCount; h++) {
+      for (int t = 0; t < threadCount; t++) {
+        Assert.assertTrue(requests.shouldSendExecutionDetails("host" + h, "COMPONENT" + t));
+      }
+    }
+  }
+}
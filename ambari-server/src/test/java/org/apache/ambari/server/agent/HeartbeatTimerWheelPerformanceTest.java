@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the time taken by {@link HeartbeatTimerWheel} to find the few
+ * expired hosts among many with the time taken to check the last heartbeat of
+ * every host.
+ */
+@Ignore
+public class HeartbeatTimerWheelPerformanceTest {
+
+  @Test
+  public void testExpiryCost() {
+    int hostCount = 20000;
+    int cycles = 100;
+    long interval = 1000;
+    long[] lastHeartbeats = new long[hostCount];
+
+    HeartbeatTimerWheel wheel = new HeartbeatTimerWheel(interval, 64, 0);
+    for (int i = 0; i < hostCount; i++) {
+      wheel.schedule("host-" + i, 2 * interval);
+    }
+
+    long wheelTime = 0;
+    long scanTime = 0;
+    int wheelExpired = 0;
+    int scanExpired = 0;
+    for (int cycle = 1; cycle <= cycles; cycle++) {
+      long now = cycle * interval;
+
+      // every host but the first heartbeats during the cycle
+      for (int i = 1; i < hostCount; i++) {
+        lastHeartbeats[i] = now;
+        wheel.schedule("host-" + i, now + 2 * interval);
+      }
+
+      long start = System.nanoTime();
+      wheelExpired += wheel.expire(now).size();
+      wheelTime += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < hostCount; i++) {
+        if (lastHeartbeats[i] + 2 * interval <= now) {
+          scanExpired++;
+        }
+      }
+      scanTime += System.nanoTime() - start;
+
+      // a lost host is tracked again on the next cycle
+      if (!wheel.contains("host-0")) {
+        wheel.schedule("host-0", lastHeartbeats[0] + 2 * interval);
+      }
+    }
+
+    Assert.assertEquals(cycles - 1, wheelExpired);
+    Assert.assertEquals(cycles - 1, scanExpired);
+
+    System.out.println(hostCount + " hosts over " + cycles + " cycles: timer wheel expiry "
+        + TimeUnit.NANOSECONDS.toMillis(wheelTime) + "ms, full scan "
+        + TimeUnit.NANOSECONDS.toMillis(scanTime) + "ms");
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link HeartbeatTimerWheel}.
+ */
+public class HeartbeatTimerWheelTest {
+
+  /**
+   * Tests that only the hosts whose deadline has passed are expired.
+   */
+  @Test
+  public void testExpire() {
+    HeartbeatTimerWheel wheel = new HeartbeatTimerWheel(100, 8, 1000);
+    wheel.schedule("h1", 1150);
+    wheel.schedule("h2", 1250);
+    wheel.schedule("h3", 1190);
+
+    Assert.assertTrue(wheel.expire(1149).isEmpty());
+
+    Map<String, Long> expired = wheel.expire(1200);
+    Assert.assertEquals(2, expired.size());
+    Assert.assertEquals(Long.valueOf(1150), expired.get("h1"));
+    Assert.assertEquals(Long.valueOf(1190), expired.get("h3"));
+    Assert.assertFalse(wheel.contains("h1"));
+    Assert.assertTrue(wheel.contains("h2"));
+
+    // h2 is later in the tick which was just visited
+    Assert.assertTrue(wheel.expire(1249).isEmpty());
+    Assert.assertEquals(1, wheel.expire(1250).size());
+    Assert.assertEquals(0, wheel.size());
+  }
+
+  /**
+   * Tests that a rescheduled host expires at its new deadline only.
+   */
+  @Test
+  public void testReschedule() {
+    HeartbeatTimerWheel wheel = new HeartbeatTimerWheel(100, 8, 1000);
+    wheel.schedule("h1", 1150);
+    wheel.schedule("h1", 1450);
+
+    Assert.assertTrue(wheel.expire(1300).isEmpty());
+    Assert.assertTrue(wheel.contains("h1"));
+    Assert.assertEquals(Long.valueOf(1450), wheel.expire(1500).get("h1"));
+
+    wheel.schedule("h2", 1600);
+    wheel.cancel("h2");
+    Assert.assertTrue(wheel.expire(1700).isEmpty());
+  }
+
+  /**
+   * Tests deadlines further away than one rotation of the wheel and deadlines
+   * which have already passed.
+   */
+  @Test
+  public void testDeadlinesOutsideWheel() {
+    HeartbeatTimerWheel wheel = new HeartbeatTimerWheel(100, 4, 1000);
+    wheel.schedule("far", 1950);
+    wheel.schedule("past", 500);
+
+    Map<String, Long> expired = wheel.expire(1000);
+    Assert.assertEquals(1, expired.size());
+    Assert.assertTrue(expired.containsKey("past"));
+
+    // visits the bucket of "far" before its rotation comes up
+    Assert.assertTrue(wheel.expire(1500).isEmpty());
+    Assert.assertTrue(wheel.contains("far"));
+
+    // a gap longer than the wheel still finds it
+    Assert.assertTrue(wheel.expire(5000).containsKey("far"));
+  }
+
+  /**
+   * Tests that among many hosts which keep heartbeating only the lost host is
+   * expired, once per cycle.
+   */
+  @Test
+  public void testOnlyLostHostIsExpired() {
+    int hostCount = 1000;
+    int cycles = 10;
+    long interval = 1000;
+
+    HeartbeatTimerWheel wheel = new HeartbeatTimerWheel(interval, 64, 0);
+    for (int i = 0; i < hostCount; i++) {
+      wheel.schedule("host-" + i, 2 * interval);
+    }
+
+    for (int cycle = 1; cycle <= cycles; cycle++) {
+      long now = cycle * interval;
+
+      // every host but the first heartbeats during the cycle
+      for (int i = 1; i < hostCount; i++) {
+        wheel.schedule("host-" + i, now + 2 * interval);
+      }
+
+      Map<String, Long> expired = wheel.expire(now);
+      if (cycle == 1) {
+        Assert.assertTrue(expired.isEmpty());
+        Assert.assertEquals(hostCount, wheel.size());
+      } else {
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals(Long.valueOf(now), expired.get("host-0"));
+        Assert.assertEquals(hostCount - 1, wheel.size());
+      }
+
+      // a lost host is tracked again on the next cycle
+      wheel.schedule("host-0", now + interval);
+    }
+  }
+}
@@ -375,4 +375,150 @@ public class TestActionQueue {
     assertEquals(4, queue.size(c6401));
     assertEquals(3, queue.size(c6402));
   }
+
+  /**
+   * Tests that {@link ActionQueue#replace} removes only the replaced types of
+   * the host and adds the new command.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReplaceCommandTypes() throws Exception {
+    ActionQueue queue = new ActionQueue();
+    String c6401 = "c6401.ambari.apache.org";
+    String c6402 = "c6402.ambari.apache.org";
+
+    StatusCommand status = new StatusCommand();
+    queue.enqueue(c6401, status);
+    queue.enqueue(c6401, new AlertDefinitionCommand("c1", c6401, "1", null));
+    queue.enqueue(c6401, new AlertExecutionCommand("c1", c6401, null));
+    queue.enqueue(c6402, new AlertDefinitionCommand("c1", c6402, "1", null));
+
+    AlertDefinitionCommand replacement = new AlertDefinitionCommand("c1", c6401, "2", null);
+    List<AgentCommand> removed = queue.replace(c6401, replacement,
+        AgentCommandType.ALERT_DEFINITION_COMMAND,
+        AgentCommandType.ALERT_EXECUTION_COMMAND);
+
+    assertEquals(2, removed.size());
+    assertEquals(2, queue.size(c6401));
+    assertEquals(1, queue.size(c6402));
+    assertTrue(status == queue.dequeue(c6401));
+    assertTrue(replacement == queue.dequeue(c6401));
+
+    // a host without a queue gets one
+    assertEquals(0, queue.replace("c6403.ambari.apache.org", replacement,
+        AgentCommandType.ALERT_DEFINITION_COMMAND).size());
+    assertEquals(1, queue.size("c6403.ambari.apache.org"));
+  }
+
+  /**
+   * Tests that execution commands are removed by ID, including when the same
+   * command was queued more than once.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDequeueCommandId() throws Exception {
+    ActionQueue queue = new ActionQueue();
+    String c6401 = "c6401.ambari.apache.org";
+
+    queue.enqueue(c6401, createExecutionCommand("1-1"));
+    queue.enqueue(c6401, new StatusCommand());
+    queue.enqueue(c6401, createExecutionCommand("1-2"));
+    queue.enqueue(c6401, createExecutionCommand("1-1"));
+
+    assertEquals("1-1", ((ExecutionCommand) queue.dequeue(c6401, "1-1")).getCommandId());
+    assertEquals(3, queue.size(c6401));
+    assertEquals("1-1", ((ExecutionCommand) queue.dequeue(c6401, "1-1")).getCommandId());
+    assertEquals(null, queue.dequeue(c6401, "1-1"));
+    assertEquals(null, queue.dequeue("c6402.ambari.apache.org", "1-2"));
+
+    // removing by type keeps the ID index consistent
+    assertEquals(1, queue.dequeue(c6401, AgentCommandType.EXECUTION_COMMAND).size());
+    assertEquals(null, queue.dequeue(c6401, "1-2"));
+    assertEquals(1, queue.size(c6401));
+  }
+
+  /**
+   * Tests that {@link ActionQueue#dequeue(String)} is FIFO across command types
+   * and that {@link ActionQueue#dequeueAll(String)} returns cancel commands
+   * before execution commands and status commands last.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDequeueOrdering() throws Exception {
+    ActionQueue queue = new ActionQueue();
+    String c6401 = "c6401.ambari.apache.org";
+
+    StatusCommand status = new StatusCommand();
+    ExecutionCommand execution1 = createExecutionCommand("1-1");
+    ExecutionCommand execution2 = createExecutionCommand("1-2");
+    CancelCommand cancel = new CancelCommand();
+
+    queue.enqueue(c6401, status);
+    queue.enqueue(c6401, execution1);
+    queue.enqueue(c6401, cancel);
+
+    assertTrue(status == queue.dequeue(c6401));
+    assertTrue(execution1 == queue.dequeue(c6401));
+
+    queue.enqueue(c6401, status);
+    queue.enqueue(c6401, execution1);
+    queue.enqueue(c6401, execution2);
+
+    List<AgentCommand> commands = queue.dequeueAll(c6401);
+    assertEquals(4, commands.size());
+    assertTrue(cancel == commands.get(0));
+    assertTrue(execution1 == commands.get(1));
+    assertTrue(execution2 == commands.get(2));
+    assertTrue(status == commands.get(3));
+    assertEquals(0, queue.size(c6401));
+    assertEquals(null, queue.dequeue(c6401));
+  }
+
+  /**
+   * Tests removing commands by ID, newest first as cancelling a request does,
+   * from a host with many queued status commands.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDequeueCommandIdWithManyStatusCommands() throws Exception {
+    final int statusCommands = 200;
+    final int executionCommands = 50;
+    String c6401 = "c6401.ambari.apache.org";
+
+    ActionQueue queue = new ActionQueue();
+    List<StatusCommand> queuedStatusCommands = new ArrayList<StatusCommand>();
+
+    for (int i = 0; i < statusCommands; i++) {
+      StatusCommand command = new StatusCommand();
+      queue.enqueue(c6401, command);
+      queuedStatusCommands.add(command);
+    }
+
+    for (int i = 0; i < executionCommands; i++) {
+      queue.enqueue(c6401, createExecutionCommand("1-" + i));
+    }
+
+    for (int i = executionCommands - 1; i >= 0; i--) {
+      AgentCommand command = queue.dequeue(c6401, "1-" + i);
+      assertEquals("1-" + i, ((ExecutionCommand) command).getCommandId());
+      assertEquals(null, queue.dequeue(c6401, "1-" + i));
+    }
+
+    // only the status commands are left, in the order they were queued
+    assertEquals(statusCommands, queue.size(c6401));
+    for (StatusCommand command : queuedStatusCommands) {
+      assertTrue(command == queue.dequeue(c6401));
+    }
+    assertEquals(null, queue.dequeue(c6401));
+  }
+
+  private static ExecutionCommand createExecutionCommand(String commandId) {
+    ExecutionCommand command = new ExecutionCommand();
+    command.setCommandId(commandId);
+    return command;
+  }
 }
@@ -18,6 +18,7 @@
 package org.apache.ambari.server.agent;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
@@ -190,6 +191,80 @@ public class TestHeartbeatMonitor {
     assertTrue("HeartbeatMonitor should not generate StatusCommands for host2 because it has no services", cmds.isEmpty());
   }
 
+  @Test
+  public void testStatusCommandTemplatesAreShared() throws Exception {
+    StackId stackId = new StackId("HDP-0.1");
+    Clusters clusters = injector.getInstance(Clusters.class);
+    clusters.addHost(hostname1);
+    setOsFamily(clusters.getHost(hostname1), "redhat", "6.3");
+    clusters.getHost(hostname1).persist();
+    clusters.addCluster(clusterName, stackId);
+    Cluster cluster = clusters.getCluster(clusterName);
+    helper.getOrCreateRepositoryVersion(stackId, stackId.getStackVersion());
+    cluster.createClusterVersion(stackId, stackId.getStackVersion(), "admin",
+        RepositoryVersionState.UPGRADING);
+
+    ConfigFactory configFactory = injector.getInstance(ConfigFactory.class);
+    Config config = configFactory.createNew(cluster, "hadoop-env",
+        new HashMap<String,String>() {{ put("a", "b"); }}, new HashMap<String, Map<String,String>>());
+    config.setTag("version1");
+    cluster.addConfig(config);
+    cluster.addDesiredConfig("_test", Collections.singleton(config));
+
+    clusters.mapHostToCluster(hostname1, clusterName);
+    Service hdfs = cluster.addService(serviceName);
+    hdfs.persist();
+    hdfs.addServiceComponent(Role.DATANODE.name()).persist();
+    hdfs.getServiceComponent(Role.DATANODE.name()).addServiceComponentHost(hostname1).persist();
+    hdfs.addServiceComponent(Role.NAMENODE.name()).persist();
+    hdfs.getServiceComponent(Role.NAMENODE.name()).addServiceComponentHost(hostname1).persist();
+
+    hdfs.getServiceComponent(Role.DATANODE.name()).getServiceComponentHost(hostname1).setState(State.INSTALLED);
+    hdfs.getServiceComponent(Role.NAMENODE.name()).getServiceComponentHost(hostname1).setState(State.INSTALLED);
+
+    ActionQueue aq = new ActionQueue();
+    ActionManager am = mock(ActionManager.class);
+    HeartbeatMonitor hm = new HeartbeatMonitor(clusters, aq, am,
+      heartbeatMonitorWakeupIntervalMS, injector);
+
+    List<StatusCommand> cmds = hm.generateStatusCommands(hostname1);
+    assertEquals(2, cmds.size());
+    assertEquals(2, hm.getTemplateMissCount());
+    assertEquals("b", cmds.get(0).getConfigurations().get("hadoop-env").get("a"));
+
+    // the templates are reused and the commands share their configurations
+    List<StatusCommand> cachedCmds = hm.generateStatusCommands(hostname1);
+    assertEquals(2, cachedCmds.size());
+    assertEquals(2, hm.getTemplateMissCount());
+    assertEquals(2, hm.getTemplateHitCount());
+    for (StatusCommand cmd : cachedCmds) {
+      boolean shared = false;
+      for (StatusCommand previous : cmds) {
+        shared |= previous.getConfigurations() == cmd.getConfigurations();
+      }
+      assertTrue(shared);
+    }
+
+    // the parameters belong to each command
+    cachedCmds.get(0).getCommandParams().put("request_version", "true");
+    assertFalse(cmds.get(0).getCommandParams().containsKey("request_version"));
+    assertFalse(cmds.get(1).getCommandParams().containsKey("request_version"));
+
+    // a configuration change discards the templates
+    Config config2 = configFactory.createNew(cluster, "hadoop-env",
+        new HashMap<String,String>() {{ put("a", "c"); }}, new HashMap<String, Map<String,String>>());
+    config2.setTag("version2");
+    cluster.addConfig(config2);
+    cluster.addDesiredConfig("_test", Collections.singleton(config2));
+
+    cmds = hm.generateStatusCommands(hostname1);
+    assertEquals(4, hm.getTemplateMissCount());
+    assertEquals("version2", cluster.getDesiredConfigByType("hadoop-env").getTag());
+    for (StatusCommand cmd : cmds) {
+      assertTrue(cmd.getConfigurations().containsKey("hadoop-env"));
+    }
+  }
+
   @Test
   public void testStatusCommandForAnyComponents() throws Exception {
     StackId stackId = new StackId("HDP-0.1");
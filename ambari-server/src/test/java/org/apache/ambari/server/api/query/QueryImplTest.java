@@ -33,11 +33,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.Field;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.ambari.server.api.query.render.DefaultRenderer;
@@ -49,8 +51,11 @@ import org.apache.ambari.server.api.resources.StackResourceDefinition;
 import org.apache.ambari.server.api.resources.StackVersionResourceDefinition;
 import org.apache.ambari.server.api.resources.SubResourceDefinition;
 import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.StreamingResultImpl;
+import org.apache.ambari.server.api.services.serializers.JsonSerializer;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.internal.ClusterControllerImpl;
 import org.apache.ambari.server.controller.internal.ClusterControllerImplTest;
 import org.apache.ambari.server.controller.internal.PageRequestImpl;
@@ -842,6 +847,71 @@ public class QueryImplTest {
     Assert.assertNotNull(hostNode.getObject().getPropertyValue("c1/p3"));
   }
 
+  @Test
+  public void testExecute_streamedCollection() throws Exception {
+    Configuration previous = setStreamingEnabled(true);
+    try {
+      QueryImpl instance = new TestQuery(new HashMap<Resource.Type, String>(), new StackResourceDefinition());
+
+      Result result = instance.execute();
+
+      // the top level resources are only built while the result is written
+      Assert.assertTrue(result instanceof StreamingResultImpl);
+      Assert.assertTrue(((StreamingResultImpl) result).getResultTreeRoot().getChildren().isEmpty());
+      Assert.assertFalse(result.getResultTree().getChildren().isEmpty());
+    } finally {
+      setConfiguration(previous);
+    }
+  }
+
+  @Test
+  public void testExecute_streamingSubResourceFailure() throws Exception {
+    Configuration previous = setStreamingEnabled(true);
+    try {
+      ClusterController clusterController = new ClusterControllerImpl(new ClusterControllerImplTest.TestProviderModule()) {
+        @Override
+        public Iterable<Resource> getIterable(Resource.Type type, QueryResponse queryResponse,
+                                              org.apache.ambari.server.controller.spi.Request request,
+                                              Predicate predicate, PageRequest pageRequest, SortRequest sortRequest)
+            throws NoSuchParentResourceException, UnsupportedPropertyException, NoSuchResourceException, SystemException {
+          if (type == Resource.Type.StackVersion) {
+            throw new SystemException("sub-resource failure");
+          }
+          return super.getIterable(type, queryResponse, request, predicate, pageRequest, sortRequest);
+        }
+      };
+
+      QueryImpl instance = new TestQuery(new HashMap<Resource.Type, String>(),
+          new StackResourceDefinition(), clusterController);
+      instance.addProperty("versions/*", null);
+
+      // the failure is reported by execute() so that it becomes an error
+      // result, rather than after the response status has been sent
+      try {
+        instance.execute();
+        fail("Expected SystemException");
+      } catch (SystemException e) {
+        Assert.assertEquals("sub-resource failure", e.getMessage());
+      }
+    } finally {
+      setConfiguration(previous);
+    }
+  }
+
+  private static Configuration setStreamingEnabled(boolean enabled) throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("api.response.streaming.enabled", Boolean.toString(enabled));
+    return setConfiguration(new Configuration(properties));
+  }
+
+  private static Configuration setConfiguration(Configuration configuration) throws Exception {
+    Field field = JsonSerializer.class.getDeclaredField("s_configuration");
+    field.setAccessible(true);
+    Configuration previous = (Configuration) field.get(null);
+    field.set(null, configuration);
+    return previous;
+  }
+
   public static class TestQuery extends QueryImpl {
     public TestQuery(Map<Resource.Type, String> mapIds, ResourceDefinition resourceDefinition) {
       super(mapIds, resourceDefinition, new ClusterControllerImpl(new ClusterControllerImplTest.TestProviderModule()));
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.api.query.render;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ambari.server.api.query.Query;
+import org.apache.ambari.server.api.query.render.AlertSummaryGroupedRenderer.AlertDefinitionSummary;
+import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.ResultImpl;
+import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.controller.internal.AlertResourceProvider;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PredicateBuilder;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex;
+import org.apache.ambari.server.orm.dao.AlertSummaryIndex.IndexedAlert;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
+import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
+import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.MaintenanceState;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+/**
+ * Tests {@link AlertSummaryRenderer} and {@link AlertSummaryGroupedRenderer}.
+ */
+public class AlertSummaryRendererTest {
+
+  private static final long CLUSTER_ID = 1L;
+
+  /**
+   * Tests that the alert summary renderers give the same summaries from the
+   * index as from the alert resources returned by a query, and that the query
+   * is executed when the index can't answer it.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRenderedSummaries() throws Exception {
+    final List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    alerts.add(createAlert(1, "HDFS", "h1", AlertState.OK, MaintenanceState.OFF, "datanode", 100, "ok 1"));
+    alerts.add(createAlert(2, "HDFS", "h2", AlertState.OK, MaintenanceState.OFF, "datanode", 300, "ok 2"));
+    alerts.add(createAlert(3, "HDFS", "h3", AlertState.CRITICAL, MaintenanceState.ON, "datanode", 200, "down"));
+    alerts.add(createAlert(4, "HDFS", "h1", AlertState.WARNING, MaintenanceState.OFF, "namenode", 400, "slow"));
+    alerts.add(createAlert(5, "YARN", "h2", AlertState.CRITICAL, MaintenanceState.OFF, "nodemanager", 500, "down"));
+    alerts.add(createAlert(6, "YARN", "h3", AlertState.CRITICAL, MaintenanceState.OFF, "nodemanager", 600, "still down"));
+    alerts.add(createAlert(7, "YARN", "h3", AlertState.UNKNOWN, MaintenanceState.IMPLIED_FROM_HOST, "nodemanager", 50, "?"));
+    alerts.add(createAlert(8, "AMBARI", null, null, MaintenanceState.OFF, "server", 700, "none"));
+
+    final AlertsDAO dao = createNiceMock(AlertsDAO.class);
+    expect(dao.findCurrentIndexed(CLUSTER_ID, null, null)).andReturn(
+        createIndexed(alerts, null, null)).anyTimes();
+    expect(dao.findCurrentIndexed(CLUSTER_ID, "YARN", "h3")).andReturn(
+        createIndexed(alerts, "YARN", "h3")).anyTimes();
+
+    Cluster cluster = createNiceMock(Cluster.class);
+    expect(cluster.getClusterId()).andReturn(CLUSTER_ID).anyTimes();
+    final Clusters clusters = createNiceMock(Clusters.class);
+    expect(clusters.getCluster("c1")).andReturn(cluster).anyTimes();
+    replay(dao, cluster, clusters);
+
+    Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(AlertsDAO.class).toInstance(dao);
+        bind(Clusters.class).toInstance(clusters);
+        requestStaticInjection(AlertSummaryRenderer.class);
+      }
+    });
+
+    Predicate clusterPredicate = new PredicateBuilder().property(
+        AlertResourceProvider.ALERT_CLUSTER_NAME).equals("c1").toPredicate();
+    Predicate hostPredicate = new PredicateBuilder().property(
+        AlertResourceProvider.ALERT_CLUSTER_NAME).equals("c1").and().property(
+        AlertResourceProvider.ALERT_SERVICE).equals("YARN").and().property(
+        AlertResourceProvider.ALERT_HOST).equals("h3").toPredicate();
+
+    AlertSummaryRenderer renderer = new AlertSummaryRenderer();
+    AlertSummaryGroupedRenderer groupedRenderer = new AlertSummaryGroupedRenderer();
+
+    // the cluster
+    Result queried = createResult(alerts, null, null);
+    assertStateSummary(getSummary(renderer.finalizeResult(queried)),
+        getSummary(renderer.getPrecomputedResult(createQuery(clusterPredicate))));
+    assertGroupedSummary(getGroupedSummary(groupedRenderer.finalizeResult(queried)),
+        getGroupedSummary(groupedRenderer.getPrecomputedResult(createQuery(clusterPredicate))));
+
+    AlertStateSummary clusterSummary = getSummary(
+        renderer.getPrecomputedResult(createQuery(clusterPredicate)));
+    Assert.assertEquals(2, clusterSummary.Ok.Count);
+    Assert.assertEquals(2, clusterSummary.Critical.Count);
+    Assert.assertEquals(1, clusterSummary.Critical.MaintenanceCount);
+    Assert.assertEquals(600, clusterSummary.Critical.Timestamp);
+    Assert.assertEquals(1, clusterSummary.Unknown.Count);
+    Assert.assertEquals(1, clusterSummary.Unknown.MaintenanceCount);
+
+    // a service on a host
+    queried = createResult(alerts, "YARN", "h3");
+    assertStateSummary(getSummary(renderer.finalizeResult(queried)),
+        getSummary(renderer.getPrecomputedResult(createQuery(hostPredicate))));
+    assertGroupedSummary(getGroupedSummary(groupedRenderer.finalizeResult(queried)),
+        getGroupedSummary(groupedRenderer.getPrecomputedResult(createQuery(hostPredicate))));
+
+    // not indexed yet
+    Assert.assertNull(renderer.getPrecomputedResult(createQuery(new PredicateBuilder().property(
+        AlertResourceProvider.ALERT_CLUSTER_NAME).equals("c1").and().property(
+        AlertResourceProvider.ALERT_HOST).equals("h1").toPredicate())));
+
+    // not a scope of the index
+    Assert.assertNull(groupedRenderer.getPrecomputedResult(createQuery(new PredicateBuilder().property(
+        AlertResourceProvider.ALERT_CLUSTER_NAME).equals("c1").and().property(
+        AlertResourceProvider.ALERT_STATE).equals("CRITICAL").toPredicate())));
+    Assert.assertNull(renderer.getPrecomputedResult(createQuery(new PredicateBuilder().property(
+        AlertResourceProvider.ALERT_CLUSTER_NAME).equals("c1").or().property(
+        AlertResourceProvider.ALERT_SERVICE).equals("YARN").toPredicate())));
+  }
+
+  private static Query createQuery(Predicate predicate) {
+    Query query = createNiceMock(Query.class);
+    expect(query.getPredicate()).andReturn(predicate).anyTimes();
+    replay(query);
+    return query;
+  }
+
+  /**
+   * Creates the alerts the index holds for a scope.
+   */
+  private static List<IndexedAlert> createIndexed(List<AlertCurrentEntity> alerts,
+      String serviceName, String hostName) {
+    List<IndexedAlert> indexed = new ArrayList<IndexedAlert>();
+    for (AlertCurrentEntity alert : alerts) {
+      AlertHistoryEntity history = alert.getAlertHistory();
+      if ((null == serviceName || serviceName.equals(history.getServiceName()))
+          && (null == hostName || hostName.equals(history.getHostName()))) {
+        indexed.add(AlertSummaryIndex.createEntry(alert));
+      }
+    }
+
+    return indexed;
+  }
+
+  /**
+   * Creates the result of a query for the alert resources of a scope.
+   */
+  private static Result createResult(List<AlertCurrentEntity> alerts,
+      String serviceName, String hostName) {
+    Result result = new ResultImpl(true);
+    TreeNode<Resource> tree = result.getResultTree();
+
+    for (AlertCurrentEntity alert : alerts) {
+      AlertHistoryEntity history = alert.getAlertHistory();
+      if ((null != serviceName && !serviceName.equals(history.getServiceName()))
+          || (null != hostName && !hostName.equals(history.getHostName()))) {
+        continue;
+      }
+
+      Resource resource = new ResourceImpl(Resource.Type.Alert);
+      resource.setProperty(AlertResourceProvider.ALERT_STATE, history.getAlertState());
+      resource.setProperty(AlertResourceProvider.ALERT_ORIGINAL_TIMESTAMP, alert.getOriginalTimestamp());
+      resource.setProperty(AlertResourceProvider.ALERT_MAINTENANCE_STATE, alert.getMaintenanceState());
+      resource.setProperty(AlertResourceProvider.ALERT_TEXT, alert.getLatestText());
+      resource.setProperty(AlertResourceProvider.ALERT_DEFINITION_ID,
+          history.getAlertDefinition().getDefinitionId());
+      resource.setProperty(AlertResourceProvider.ALERT_DEFINITION_NAME,
+          history.getAlertDefinition().getDefinitionName());
+      tree.addChild(resource, "Alert " + alert.getAlertId());
+    }
+
+    return result;
+  }
+
+  private static AlertStateSummary getSummary(Result result) {
+    Assert.assertNotNull(result);
+    return (AlertStateSummary) result.getResultTree().getChild(
+        "alerts_summary").getObject().getPropertyValue("alerts_summary");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, AlertDefinitionSummary> getGroupedSummary(Result result) {
+    Assert.assertNotNull(result);
+    List<AlertDefinitionSummary> summaries = (List<AlertDefinitionSummary>) result.getResultTree().getChild(
+        "alerts_summary_grouped").getObject().getPropertyValue("alerts_summary_grouped");
+
+    Map<String, AlertDefinitionSummary> summaryMap = new HashMap<String, AlertDefinitionSummary>();
+    for (AlertDefinitionSummary summary : summaries) {
+      summaryMap.put(summary.Name, summary);
+    }
+
+    Assert.assertEquals(summaries.size(), summaryMap.size());
+    return summaryMap;
+  }
+
+  private static void assertGroupedSummary(Map<String, AlertDefinitionSummary> expected,
+      Map<String, AlertDefinitionSummary> actual) {
+    Assert.assertEquals(expected.keySet(), actual.keySet());
+    for (String name : expected.keySet()) {
+      Assert.assertEquals(expected.get(name).Id, actual.get(name).Id);
+      assertStateSummary(expected.get(name).State, actual.get(name).State);
+    }
+  }
+
+  private static void assertStateSummary(AlertStateSummary expected, AlertStateSummary actual) {
+    assertStateValues(expected.Ok, actual.Ok);
+    assertStateValues(expected.Warning, actual.Warning);
+    assertStateValues(expected.Critical, actual.Critical);
+    assertStateValues(expected.Unknown, actual.Unknown);
+  }
+
+  private static void assertStateValues(AlertStateValues expected, AlertStateValues actual) {
+    Assert.assertEquals(expected.Count, actual.Count);
+    Assert.assertEquals(expected.MaintenanceCount, actual.MaintenanceCount);
+    Assert.assertEquals(expected.Timestamp, actual.Timestamp);
+    Assert.assertEquals(expected.AlertText, actual.AlertText);
+  }
+
+  private static AlertCurrentEntity createAlert(long alertId, String serviceName,
+      String hostName, AlertState state, MaintenanceState maintenanceState,
+      String definitionName, long originalTimestamp, String text) {
+    AlertDefinitionEntity definition = new AlertDefinitionEntity();
+    definition.setDefinitionId((long) definitionName.hashCode());
+    definition.setDefinitionName(definitionName);
+
+    AlertHistoryEntity history = new AlertHistoryEntity();
+    history.setClusterId(CLUSTER_ID);
+    history.setServiceName(serviceName);
+    history.setHostName(hostName);
+    history.setAlertState(state);
+    history.setAlertDefinition(definition);
+
+    AlertCurrentEntity current = new AlertCurrentEntity();
+    current.setAlertId(alertId);
+    current.setAlertHistory(history);
+    current.setMaintenanceState(maintenanceState);
+    current.setOriginalTimestamp(originalTimestamp);
+    current.setLatestText(text);
+    return current;
+  }
+}
@@ -499,6 +499,35 @@ public abstract class BaseRequestTest {
     verify(uriInfo, mapQueryParams);
   }
 
+  @Test
+  public void testGetFieldsWithMaxPoints() throws Exception {
+    String fields = "metrics/cpu/cpu_user[1,2,3,100],metrics/cpu/cpu_wio[4,5,6]";
+    UriInfo uriInfo = createMock(UriInfo.class);
+
+    @SuppressWarnings("unchecked")
+    MultivaluedMap<String, String> mapQueryParams = createMock(MultivaluedMap.class);
+
+    expect(uriInfo.getQueryParameters()).andReturn(mapQueryParams);
+    expect(mapQueryParams.getFirst("fields")).andReturn(fields);
+
+    replay(uriInfo, mapQueryParams);
+
+    Request request = getTestRequest(null, null, uriInfo, null, null, null, null);
+    Map<String, TemporalInfo> mapFields = request.getFields();
+
+    assertEquals(2, mapFields.size());
+
+    TemporalInfo cpuUser = mapFields.get(PropertyHelper.getPropertyId("metrics/cpu", "cpu_user"));
+    assertEquals(new TemporalInfoImpl(1, 2, 3, 100), cpuUser);
+    assertEquals(Integer.valueOf(100), cpuUser.getMaxPoints());
+
+    TemporalInfo cpuWio = mapFields.get(PropertyHelper.getPropertyId("metrics/cpu", "cpu_wio"));
+    assertEquals(new TemporalInfoImpl(4, 5, 6), cpuWio);
+    assertNull(cpuWio.getMaxPoints());
+
+    verify(uriInfo, mapQueryParams);
+  }
+
   @Test
   public void testParseRenderer_minimalResponse() throws Exception {
 
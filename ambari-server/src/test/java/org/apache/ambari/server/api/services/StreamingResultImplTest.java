@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.api.services;
+
+import org.apache.ambari.server.api.resources.ResourceDefinition;
+import org.apache.ambari.server.api.resources.ResourceInstance;
+import org.apache.ambari.server.api.services.parsers.RequestBodyParser;
+import org.apache.ambari.server.api.services.serializers.JsonSerializer;
+import org.apache.ambari.server.api.services.serializers.ResultSerializer;
+import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.junit.Test;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * StreamingResultImpl unit tests.
+ */
+public class StreamingResultImplTest {
+
+  @Test
+  public void testGetResultTreeBuildsRemainingChildren() throws Exception {
+    HostNodeIterator children = new HostNodeIterator(3);
+    StreamingResultImpl result = createResult(children);
+
+    Iterator<TreeNode<Resource>> streamed = result.getStreamedChildren();
+    streamed.next();
+    assertEquals(1, children.built);
+    assertTrue(result.getResultTreeRoot().getChildren().isEmpty());
+
+    // the child which was already iterated is not part of the tree
+    TreeNode<Resource> tree = result.getResultTree();
+    assertEquals(3, children.built);
+    assertEquals(2, tree.getChildren().size());
+    assertFalse(result.getStreamedChildren().hasNext());
+  }
+
+  @Test
+  public void testPostProcessStreamedChildren() throws Exception {
+    HostNodeIterator children = new HostNodeIterator(2);
+    StreamingResultImpl result = createResult(children);
+
+    Request request = createRequest();
+    replay(request);
+    new ResultPostProcessorImpl(request).process(result);
+
+    // the root is processed, the children only once they are built
+    TreeNode<Resource> root = result.getResultTreeRoot();
+    assertEquals("items", root.getName());
+    assertEquals("http://localhost:8080/api/v1/hosts", root.getStringProperty("href"));
+    assertEquals(0, children.built);
+
+    TreeNode<Resource> child = result.getStreamedChildren().next();
+    assertEquals("http://localhost:8080/api/v1/hosts/host0", child.getStringProperty("href"));
+    assertTrue(root.getChildren().isEmpty());
+  }
+
+  @Test
+  public void testHandleRequestStreamsResult() throws Exception {
+    HostNodeIterator children = new HostNodeIterator(3);
+    final StreamingResultImpl result = createProcessedResult(children, createRequest());
+    final Request request = createNiceMock(Request.class);
+    expect(request.process()).andReturn(result);
+    replay(request);
+
+    BaseService service = new BaseService() {
+      @Override
+      RequestFactory getRequestFactory() {
+        return new RequestFactory() {
+          @Override
+          public Request createRequest(HttpHeaders headers, RequestBody body, UriInfo uriInfo,
+                                       Request.Type requestType, ResourceInstance resource) {
+            return request;
+          }
+        };
+      }
+
+      @Override
+      protected RequestBodyParser getBodyParser() {
+        return new RequestBodyParser() {
+          @Override
+          public Set<RequestBody> parse(String body) {
+            return Collections.singleton(new RequestBody());
+          }
+        };
+      }
+
+      @Override
+      protected ResultSerializer getResultSerializer() {
+        return new JsonSerializer();
+      }
+    };
+
+    Response response = service.handleRequest(null, null, null, Request.Type.GET,
+        createNiceMock(ResourceInstance.class));
+
+    assertEquals(200, response.getStatus());
+    assertTrue(response.getEntity() instanceof StreamingOutput);
+    // nothing is built until the response is written
+    assertEquals(0, children.built);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(out);
+
+    assertEquals(3, children.built);
+    assertTrue(result.getResultTreeRoot().getChildren().isEmpty());
+
+    // the same as the buffered serialization of the complete tree
+    Result expected = createProcessedResult(new HostNodeIterator(3), createRequest());
+    assertEquals(new JsonSerializer().serialize(expected), out.toString("UTF-8"));
+  }
+
+  private StreamingResultImpl createResult(HostNodeIterator children) {
+    StreamingResultImpl result = new StreamingResultImpl(true);
+    TreeNode<Resource> root = result.getResultTreeRoot();
+    root.setProperty("isCollection", "true");
+    children.parent = root;
+    result.setStreamedChildren(children);
+    return result;
+  }
+
+  private StreamingResultImpl createProcessedResult(HostNodeIterator children, Request request) {
+    StreamingResultImpl result = createResult(children);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    replay(request);
+    new ResultPostProcessorImpl(request).process(result);
+    return result;
+  }
+
+  private Request createRequest() {
+    ResourceDefinition resourceDefinition = createNiceMock(ResourceDefinition.class);
+    expect(resourceDefinition.getType()).andReturn(Resource.Type.Host).anyTimes();
+    List<ResourceDefinition.PostProcessor> postProcessors = new ArrayList<ResourceDefinition.PostProcessor>();
+    postProcessors.add(new ResourceDefinition.PostProcessor() {
+      @Override
+      public void process(Request request, TreeNode<Resource> resultNode, String href) {
+        resultNode.setProperty("href", href + "/" +
+            resultNode.getObject().getPropertyValue("Hosts/host_name"));
+      }
+    });
+    expect(resourceDefinition.getPostProcessors()).andReturn(postProcessors).anyTimes();
+
+    ResourceInstance resource = createNiceMock(ResourceInstance.class);
+    expect(resource.getResourceDefinition()).andReturn(resourceDefinition).anyTimes();
+    expect(resource.getSubResources()).andReturn(
+        Collections.<String, ResourceInstance>emptyMap()).anyTimes();
+
+    Request request = createNiceMock(Request.class);
+    expect(request.getURI()).andReturn("http://localhost:8080/api/v1/hosts").anyTimes();
+    expect(request.getResource()).andReturn(resource).anyTimes();
+
+    replay(resourceDefinition, resource);
+    return request;
+  }
+
+  /**
+   * Builds a host node on each call to next() and counts the nodes built.
+   */
+  private static class HostNodeIterator implements Iterator<TreeNode<Resource>> {
+    private final int hostCount;
+    private TreeNode<Resource> parent;
+    private int built = 0;
+
+    private HostNodeIterator(int hostCount) {
+      this.hostCount = hostCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return built < hostCount;
+    }
+
+    @Override
+    public TreeNode<Resource> next() {
+      Resource host = new ResourceImpl(Resource.Type.Host);
+      host.setProperty("Hosts/host_name", "host" + built);
+      return new TreeNodeImpl<Resource>(parent, host, "Host:" + built++);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -21,17 +21,24 @@ package org.apache.ambari.server.api.services.serializers;
 import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.services.ResultImpl;
 import org.apache.ambari.server.api.services.ResultStatus;
+import org.apache.ambari.server.api.services.StreamingResultImpl;
 import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.junit.Test;
 
 import javax.ws.rs.core.UriInfo;
 
+import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * JSONSerializer unit tests
@@ -207,6 +214,108 @@ public class JsonSerializerTest {
 
     verify(uriInfo, resource/*, resource2*/);
   }
-    
-  
+
+  @Test
+  public void testSerializeToStream() throws Exception {
+    Result result = createHostsResult(3);
+    String expected = new JsonSerializer().serialize(result).toString();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonSerializer().serialize(createHostsResult(3), out);
+
+    assertEquals(expected, out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testSerializeErrorToStream() throws Exception {
+    Result result = new ResultImpl(new ResultStatus(ResultStatus.STATUS.BAD_REQUEST, "bad request"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonSerializer().serialize(result, out);
+
+    assertEquals(new JsonSerializer().serialize(result).toString(), out.toString("UTF-8"));
+  }
+
+  /**
+   * Tests that the children of a streamed result are written as they are
+   * built rather than after the whole result tree is built, and that they are
+   * not retained by the result.
+   */
+  @Test
+  public void testSerializeStreamedResult() throws Exception {
+    final int hostCount = 5000;
+    String expected = new JsonSerializer().serialize(createHostsResult(hostCount)).toString();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final long[] writtenBeforeNode = new long[hostCount];
+    StreamingResultImpl result = new StreamingResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    final TreeNode<Resource> items = result.getResultTreeRoot();
+    items.setName("items");
+    result.setStreamedChildren(new Iterator<TreeNode<Resource>>() {
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < hostCount;
+      }
+
+      @Override
+      public TreeNode<Resource> next() {
+        writtenBeforeNode[i] = out.size();
+        return createHostNode(items, i++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    });
+
+    new JsonSerializer().serialize(result, out);
+
+    assertEquals(expected, out.toString("UTF-8"));
+    assertEquals(0, writtenBeforeNode[0]);
+    // the first hosts were written before the last host was built
+    assertTrue(writtenBeforeNode[hostCount - 1] > 0);
+    assertTrue(writtenBeforeNode[hostCount - 1] > out.size() / 2);
+    assertTrue(items.getChildren().isEmpty());
+    assertFalse(result.getStreamedChildren().hasNext());
+  }
+
+  private Result createHostsResult(int hostCount) {
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> items = result.getResultTree().addChild(null, "items");
+
+    for (int i = 0; i < hostCount; i++) {
+      items.addChild(createHostNode(items, i));
+    }
+
+    return result;
+  }
+
+  private TreeNode<Resource> createHostNode(TreeNode<Resource> parent, int i) {
+    String hostName = "c6401-" + i + ".ambari.apache.org";
+
+    Resource host = new ResourceImpl(Resource.Type.Host);
+    host.setProperty("Hosts/host_name", hostName);
+    host.setProperty("Hosts/cluster_name", "c1");
+    host.setProperty("Hosts/host_state", "HEALTHY");
+    host.setProperty("Hosts/total_mem", 16432000L);
+    TreeNode<Resource> hostNode = new TreeNodeImpl<Resource>(parent, host, "Host:" + i);
+    hostNode.setProperty("href", "http://localhost:8080/api/v1/hosts/" + hostName);
+
+    TreeNode<Resource> components = hostNode.addChild(null, "host_components");
+    for (String componentName : new String[] {"DATANODE", "NODEMANAGER", "METRICS_MONITOR"}) {
+      Resource component = new ResourceImpl(Resource.Type.HostComponent);
+      component.setProperty("HostRoles/cluster_name", "c1");
+      component.setProperty("HostRoles/component_name", componentName);
+      component.setProperty("HostRoles/host_name", hostName);
+      component.setProperty("HostRoles/state", "STARTED");
+      components.addChild(component, "HostComponent:" + componentName).setProperty("href",
+          "http://localhost:8080/api/v1/hosts/" + hostName + "/host_components/" + componentName);
+    }
+    return hostNode;
+  }
 }
@@ -29,11 +29,16 @@ import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.junit.Assert;
 import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.apache.ambari.server.controller.metrics.MetricsServiceProvider.MetricsService;
 
 /**
@@ -423,6 +428,79 @@ public class JMXPropertyProviderTest {
     }
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testPopulateResourcesCoalescesIdenticalRequests() throws Exception {
+    final AtomicInteger fetchCount = new AtomicInteger();
+
+    // Set the provider to take 50 millis to return the JMX values
+    TestStreamProvider  streamProvider = new TestStreamProvider(50L) {
+      @Override
+      public InputStream readFrom(String spec) throws IOException {
+        fetchCount.incrementAndGet();
+        return super.readFrom(spec);
+      }
+    };
+    TestJMXHostProvider hostProvider = new TestJMXHostProvider(true);
+    TestMetricHostProvider metricsHostProvider = new TestMetricHostProvider();
+    Set<Resource> resources = new HashSet<Resource>();
+
+    JMXPropertyProvider propertyProvider = new JMXPropertyProvider(
+        PropertyHelper.getJMXPropertyIds(Resource.Type.HostComponent),
+        streamProvider,
+        hostProvider,
+        metricsHostProvider,
+        PropertyHelper.getPropertyId("HostRoles", "cluster_name"),
+        PropertyHelper.getPropertyId("HostRoles", "host_name"),
+        PropertyHelper.getPropertyId("HostRoles", "component_name"),
+        PropertyHelper.getPropertyId("HostRoles", "state"));
+
+    for (int i = 0; i < NUMBER_OF_RESOURCES; ++i) {
+      // datanode
+      Resource resource = new ResourceImpl(Resource.Type.HostComponent);
+
+      resource.setProperty(HOST_COMPONENT_HOST_NAME_PROPERTY_ID, "domu-12-31-39-14-ee-b4.compute-1.internal");
+      resource.setProperty(HOST_COMPONENT_COMPONENT_NAME_PROPERTY_ID, "DATANODE");
+      resource.setProperty("unique_id", i);
+
+      resources.add(resource);
+    }
+
+    // request with an empty set should get all supported properties
+    Request request = PropertyHelper.getReadRequest(Collections.<String>emptySet());
+
+    String endpoint = "domu-12-31-39-14-ee-b4.compute-1.internal:50075";
+    JMXPropertyProvider.EndpointStatistics statistics =
+        JMXPropertyProvider.getEndpointStatistics().get(endpoint);
+    long requests = null == statistics ? 0 : statistics.getRequestCount();
+    long coalesced = JMXPropertyProvider.getCoalescedRequestCount();
+    Set<Resource> resourceSet = propertyProvider.populateResources(resources, request, null);
+
+    Assert.assertEquals(NUMBER_OF_RESOURCES, resourceSet.size());
+    for (Resource resource : resourceSet) {
+      Assert.assertEquals(856,  resource.getPropertyValue(PropertyHelper.getPropertyId("metrics/rpc", "ReceivedBytes")));
+    }
+
+    // resources asking for the same URL while it is in flight share the fetch
+    Assert.assertTrue(fetchCount.get() < NUMBER_OF_RESOURCES);
+    Assert.assertEquals(NUMBER_OF_RESOURCES - fetchCount.get(),
+        JMXPropertyProvider.getCoalescedRequestCount() - coalesced);
+
+    statistics = JMXPropertyProvider.getEndpointStatistics().get(endpoint);
+    Assert.assertNotNull(statistics);
+    Assert.assertEquals(0, statistics.getInFlightCount());
+    Assert.assertEquals(fetchCount.get(), statistics.getRequestCount() - requests);
+    Assert.assertEquals(0, statistics.getFailureCount());
+
+    // the statistics reported by the server
+    Map<String, Object> reported = JMXPropertyProvider.getStatistics();
+    Assert.assertEquals(JMXPropertyProvider.getCoalescedRequestCount(), reported.get("coalesced_requests"));
+    Map<String, Object> endpoints = (Map<String, Object>) reported.get("endpoints");
+    Map<String, Object> reportedEndpoint = (Map<String, Object>) endpoints.get(endpoint);
+    Assert.assertEquals(statistics.getRequestCount(), reportedEndpoint.get("requests"));
+    Assert.assertEquals(0L, reportedEndpoint.get("in_flight"));
+  }
+
   @Test
   public void testPopulateResourcesTimeout() throws Exception {
     // Set the provider to take 100 millis to return the JMX values
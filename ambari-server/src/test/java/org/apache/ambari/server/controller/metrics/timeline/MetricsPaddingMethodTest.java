@@ -47,7 +47,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, 1l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
 
     Assert.assertEquals(11, values.size());
     Assert.assertEquals(new Long(now - 10000), values.keySet().iterator().next());
@@ -75,7 +75,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, 1l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
 
     Assert.assertEquals(11, values.size());
     Assert.assertEquals(new Long(now - 10000), values.keySet().iterator().next());
@@ -104,7 +104,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 3000, now, 1l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
 
     Assert.assertEquals(4, values.size());
     Assert.assertEquals(new Long(now - 3000), values.keySet().iterator().next());
@@ -129,7 +129,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, 1000l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
 
     Assert.assertEquals(11, values.size());
     Assert.assertEquals(new Long(now - 10000), values.keySet().iterator().next());
@@ -155,7 +155,7 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 10000, now, null);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
 
     Assert.assertEquals(1, values.size());
     Assert.assertEquals(new Long(now - 1000), values.keySet().iterator().next());
@@ -182,12 +182,57 @@ public class MetricsPaddingMethodTest {
 
     TemporalInfo temporalInfo = getTemporalInfo(now - 1000, now, 10l);
     paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
-    TreeMap<Long, Double> values = (TreeMap<Long, Double>) timelineMetric.getMetricValues();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
 
     Assert.assertEquals(3, values.size());
   }
 
+  @Test
+  public void testPaddingWithMaxPoints() throws Exception {
+    MetricsPaddingMethod paddingMethod =
+      new MetricsPaddingMethod(MetricsPaddingMethod.PADDING_STRATEGY.ZEROS);
+
+    long now = System.currentTimeMillis();
+
+    TimelineMetric timelineMetric = new TimelineMetric();
+    timelineMetric.setMetricName("m1");
+    timelineMetric.setHostName("h1");
+    timelineMetric.setAppId("a1");
+    timelineMetric.setTimestamp(now);
+    TreeMap<Long, Double> inputValues = new TreeMap<Long, Double>();
+    inputValues.put(now - 1000, 1.0d);
+    inputValues.put(now - 2000, 2.0d);
+    inputValues.put(now - 3000, 3.0d);
+    timelineMetric.setMetricValues(inputValues);
+
+    // The padding interval is widened so that the range holds 10 points
+    TemporalInfo temporalInfo = getTemporalInfo(now - 100000, now, 1l, 10);
+    paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
+
+    Assert.assertEquals(13, values.size());
+    Assert.assertEquals(new Long(now - 100000), values.firstKey());
+    Assert.assertEquals(new Long(now - 90000), values.higherKey(now - 100000));
+    Assert.assertEquals(new Long(now - 1000), values.lastKey());
+    Assert.assertEquals(0.0, values.firstEntry().getValue());
+
+    // A budget finer than the data does not narrow the interval
+    timelineMetric.setMetricValues(inputValues);
+    temporalInfo = getTemporalInfo(now - 10000, now, 1l, 1000);
+    paddingMethod.applyPaddingStrategy(timelineMetric, temporalInfo);
+    values = new TreeMap<Long, Double>(timelineMetric.getMetricValues());
+
+    Assert.assertEquals(11, values.size());
+    Assert.assertEquals(new Long(now - 10000), values.firstKey());
+    Assert.assertEquals(new Long(now), values.lastKey());
+  }
+
   private TemporalInfo getTemporalInfo(final Long startTime, final Long endTime, final Long step) {
+    return getTemporalInfo(startTime, endTime, step, null);
+  }
+
+  private TemporalInfo getTemporalInfo(final Long startTime, final Long endTime,
+                                       final Long step, final Integer maxPoints) {
     return new TemporalInfo() {
       @Override
       public Long getStartTime() {
@@ -203,6 +248,11 @@ public class MetricsPaddingMethodTest {
       public Long getStep() {
         return step;
       }
+
+      @Override
+      public Integer getMaxPoints() {
+        return maxPoints;
+      }
     };
   }
 }
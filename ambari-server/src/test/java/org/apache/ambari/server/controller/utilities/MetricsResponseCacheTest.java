@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MetricsResponseCache} and {@link CachingStreamProvider}.
+ */
+public class MetricsResponseCacheTest {
+
+  @Test
+  public void testCachedResponse() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(60000L, 1024 * 1024);
+
+    CountingStreamProvider delegate = new CountingStreamProvider(0L);
+    StreamProvider streamProvider = new CachingStreamProvider(delegate, cache);
+
+    Assert.assertEquals("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user", read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user")));
+    Assert.assertEquals("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user", read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user")));
+    Assert.assertEquals("http://host2:6188/ws/v1/timeline/metrics?metricNames=cpu_user", read(streamProvider.readFrom("http://host2:6188/ws/v1/timeline/metrics?metricNames=cpu_user")));
+
+    // the parameters are part of the key
+    Assert.assertEquals("http://host1:80/ganglia?a", read(streamProvider.readFrom("http://host1:80/ganglia", "POST", "a")));
+    Assert.assertEquals("http://host1:80/ganglia?b", read(streamProvider.readFrom("http://host1:80/ganglia", "POST", "b")));
+    Assert.assertEquals("http://host1:80/ganglia?a", read(streamProvider.readFrom("http://host1:80/ganglia", "POST", "a")));
+
+    Assert.assertEquals(4, delegate.count.get());
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(4, cache.getMissCount());
+    Assert.assertEquals(4, cache.getSize());
+  }
+
+  @Test
+  public void testExpiredResponse() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(50L, 1024 * 1024);
+
+    CountingStreamProvider delegate = new CountingStreamProvider(0L);
+    StreamProvider streamProvider = new CachingStreamProvider(delegate, cache);
+
+    read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+    Thread.sleep(100L);
+    read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+
+    Assert.assertEquals(2, delegate.count.get());
+  }
+
+  @Test
+  public void testSizeEviction() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(60000L, 100);
+
+    StreamProvider streamProvider = new CachingStreamProvider(new CountingStreamProvider(0L), cache);
+    for (int i = 0; i < 10; i++) {
+      read(streamProvider.readFrom("http://host" + i + ":6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+    }
+
+    Assert.assertTrue(cache.getEvictionCount() > 0);
+    Assert.assertTrue(cache.getSize() < 10);
+  }
+
+  @Test
+  public void testConcurrentRequestsAreCoalesced() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(60000L, 1024 * 1024);
+
+    CountingStreamProvider delegate = new CountingStreamProvider(200L);
+    final StreamProvider streamProvider = new CachingStreamProvider(delegate, cache);
+
+    ExecutorService executor = Executors.newFixedThreadPool(10);
+    List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+        }
+      }));
+    }
+
+    for (Future<String> future : futures) {
+      Assert.assertEquals("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user", future.get());
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(1, delegate.count.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailureIsNotCached() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(60000L, 1024 * 1024);
+
+    StreamProvider streamProvider = new CachingStreamProvider(new CountingStreamProvider(0L) {
+      @Override
+      public InputStream readFrom(String spec) throws IOException {
+        throw new IOException("Connection refused");
+      }
+    }, cache);
+
+    try {
+      streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user");
+    } finally {
+      Assert.assertEquals(0, cache.getSize());
+    }
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    Assert.assertFalse(cache.isEnabled());
+
+    CountingStreamProvider delegate = new CountingStreamProvider(0L);
+    StreamProvider streamProvider = new CachingStreamProvider(delegate, cache);
+
+    read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+    read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+
+    Assert.assertEquals(2, delegate.count.get());
+    Assert.assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  public void testTemporalAndJmxRequestsBypassCache() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(60000L, 1024 * 1024);
+
+    CountingStreamProvider delegate = new CountingStreamProvider(0L);
+    StreamProvider streamProvider = new CachingStreamProvider(delegate, cache);
+
+    String[] specs = new String[] {
+        "http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user&startTime=1000&endTime=2000",
+        "http://host1:80/cgi-bin/rrd.py?c=HDPSlaves&m=cpu_user&s=1000&e=2000&r=15",
+        "http://host1:50070/jmx"};
+    for (String spec : specs) {
+      read(streamProvider.readFrom(spec));
+      read(streamProvider.readFrom(spec));
+    }
+    read(streamProvider.readFrom("http://host1:80/ganglia", "POST", "m=cpu_user&s=1000&e=2000"));
+    read(streamProvider.readFrom("http://host1:80/ganglia", "POST", "m=cpu_user&s=1000&e=2000"));
+
+    Assert.assertEquals(8, delegate.count.get());
+    Assert.assertEquals(8, cache.getBypassCount());
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertEquals(0, cache.getSize());
+
+    // a point in time Ganglia request is cached
+    read(streamProvider.readFrom("http://host1:80/cgi-bin/rrd.py?c=HDPSlaves&m=cpu_user&e=now&pt=true"));
+    read(streamProvider.readFrom("http://host1:80/cgi-bin/rrd.py?c=HDPSlaves&m=cpu_user&e=now&pt=true"));
+
+    Assert.assertEquals(9, delegate.count.get());
+    Assert.assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testConfiguredCache() throws Exception {
+    Properties properties = new Properties();
+    Assert.assertFalse(new MetricsResponseCache(new Configuration(properties)).isEnabled());
+
+    properties.setProperty("server.metrics.response.cache.enabled", "true");
+    Assert.assertTrue(new MetricsResponseCache(new Configuration(properties)).isEnabled());
+  }
+
+  @Test
+  public void testStatistics() throws Exception {
+    MetricsResponseCache cache = new MetricsResponseCache();
+    cache.init(60000L, 1024 * 1024);
+
+    StreamProvider streamProvider = new CachingStreamProvider(new CountingStreamProvider(0L), cache);
+    read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+    read(streamProvider.readFrom("http://host1:6188/ws/v1/timeline/metrics?metricNames=cpu_user"));
+    read(streamProvider.readFrom("http://host1:50070/jmx"));
+
+    Map<String, Object> statistics = cache.getStatistics();
+    Assert.assertEquals(Boolean.TRUE, statistics.get("enabled"));
+    Assert.assertEquals(1L, statistics.get("hits"));
+    Assert.assertEquals(1L, statistics.get("misses"));
+    Assert.assertEquals(0L, statistics.get("evictions"));
+    Assert.assertEquals(1L, statistics.get("bypassed"));
+    Assert.assertEquals(1L, statistics.get("size"));
+  }
+
+  private static String read(InputStream in) throws IOException {
+    try {
+      return IOUtils.toString(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Stream provider returning the requested spec as the response.
+   */
+  private static class CountingStreamProvider implements StreamProvider {
+    private final AtomicInteger count = new AtomicInteger();
+    private final long delay;
+
+    private CountingStreamProvider(long delay) {
+      this.delay = delay;
+    }
+
+    @Override
+    public InputStream readFrom(String spec) throws IOException {
+      count.incrementAndGet();
+      if (delay > 0) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          // do nothing
+        }
+      }
+      return new ByteArrayInputStream(spec.getBytes());
+    }
+
+    @Override
+    public InputStream readFrom(String spec, String requestMethod, String params) throws IOException {
+      return readFrom(spec + "?" + params);
+    }
+  }
+}
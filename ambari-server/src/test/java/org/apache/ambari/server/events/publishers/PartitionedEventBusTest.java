@@ -0,0 +1,315 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.events.publishers.PartitionedEventBus.OverflowPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Tests {@link PartitionedEventBus}.
+ */
+public class PartitionedEventBusTest {
+
+  /**
+   * Tests that events with the same key are received in the order they were
+   * posted while several threads post concurrently.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testOrderingPerKey() throws Exception {
+    final int threads = 4;
+    final int eventsPerThread = 5000;
+
+    final PartitionedEventBus bus = new PartitionedEventBus("test-bus", 4, 100,
+        OverflowPolicy.BLOCK, new KeyFunction());
+
+    OrderListener listener = new OrderListener(threads * eventsPerThread);
+    bus.register(listener);
+
+    List<Thread> posters = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++) {
+      final String key = "key-" + i;
+      posters.add(new Thread() {
+        @Override
+        public void run() {
+          for (int sequence = 0; sequence < eventsPerThread; sequence++) {
+            bus.post(new KeyedEvent(key, sequence));
+          }
+        }
+      });
+    }
+
+    for (Thread poster : posters) {
+      poster.start();
+    }
+
+    for (Thread poster : posters) {
+      poster.join();
+    }
+
+    Assert.assertTrue(listener.latch.await(20, TimeUnit.SECONDS));
+    Assert.assertFalse(listener.outOfOrder);
+    Assert.assertEquals(threads * eventsPerThread, bus.getDispatchedCount());
+    Assert.assertEquals(0, bus.getDiscardedCount());
+
+    bus.shutdown();
+  }
+
+  /**
+   * Tests that events posted to a full lane are dropped with the
+   * {@link OverflowPolicy#DISCARD} policy.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testDiscardOverflow() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 1, 2,
+        OverflowPolicy.DISCARD, new KeyFunction());
+
+    BlockingListener listener = new BlockingListener();
+    bus.register(listener);
+
+    // the first event occupies the lane's thread and the next two fill its
+    // queue
+    bus.post(new KeyedEvent("a", 0));
+    Assert.assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+    bus.post(new KeyedEvent("a", 1));
+    bus.post(new KeyedEvent("a", 2));
+    bus.post(new KeyedEvent("a", 3));
+    bus.post(new KeyedEvent("a", 4));
+
+    Assert.assertEquals(2, bus.getQueueDepth());
+    Assert.assertEquals(2, bus.getOverflowCount());
+    Assert.assertEquals(2, bus.getDiscardedCount());
+
+    listener.release.countDown();
+    bus.shutdown();
+
+    Map<String, Object> statistics = bus.getStatistics();
+    Assert.assertEquals(1, statistics.get("lanes"));
+    Assert.assertEquals(5L, statistics.get("posted"));
+    Assert.assertEquals("DISCARD", statistics.get("overflow_policy"));
+  }
+
+  /**
+   * Tests that events posted to a full lane are run on the posting thread with
+   * the {@link OverflowPolicy#CALLER_RUNS} policy.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testCallerRunsOverflow() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 1, 1,
+        OverflowPolicy.CALLER_RUNS, new KeyFunction());
+
+    BlockingListener listener = new BlockingListener();
+    bus.register(listener);
+
+    bus.post(new KeyedEvent("a", 0));
+    Assert.assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+    bus.post(new KeyedEvent("a", 1));
+
+    // the lane is busy and its queue is full
+    bus.post(new KeyedEvent("b", 2));
+    Assert.assertEquals(Thread.currentThread(), listener.threads.get(2));
+
+    listener.release.countDown();
+    bus.shutdown();
+
+    Assert.assertEquals(1, bus.getOverflowCount());
+    Assert.assertEquals(0, bus.getDiscardedCount());
+  }
+
+  /**
+   * Tests that a subscriber which posts to its own full lane with the
+   * {@link OverflowPolicy#BLOCK} policy does not deadlock the lane.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 30000)
+  public void testBlockOverflowFromLaneThread() throws Exception {
+    final PartitionedEventBus bus = new PartitionedEventBus("test-bus", 1, 1,
+        OverflowPolicy.BLOCK, new KeyFunction());
+
+    RepublishingListener listener = new RepublishingListener(bus);
+    bus.register(listener);
+
+    // the first event occupies the lane's thread and the second fills its
+    // queue before the subscriber re-publishes
+    bus.post(new KeyedEvent("a", 0));
+    Assert.assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+    bus.post(new KeyedEvent("a", 1));
+    listener.queueFull.countDown();
+
+    Assert.assertTrue(listener.received.await(10, TimeUnit.SECONDS));
+    bus.shutdown();
+
+    // the re-published event is delivered on the lane's thread after the
+    // event which published it
+    Assert.assertEquals(3, listener.sequences.size());
+    Assert.assertEquals(Integer.valueOf(0), listener.sequences.get(0));
+    Assert.assertEquals(Integer.valueOf(RepublishingListener.REPUBLISHED),
+        listener.sequences.get(1));
+    Assert.assertEquals(Integer.valueOf(1), listener.sequences.get(2));
+    Assert.assertEquals(listener.laneThread, listener.republishedThread);
+    Assert.assertEquals(1, bus.getOverflowCount());
+    Assert.assertEquals(0, bus.getDiscardedCount());
+  }
+
+  /**
+   * Tests that equal keys always map to the same lane and that the keys are
+   * spread across the lanes.
+   */
+  @Test
+  public void testLaneSelection() {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 8, 10,
+        OverflowPolicy.BLOCK, new KeyFunction());
+
+    boolean[] used = new boolean[bus.getLaneCount()];
+    for (int i = 0; i < 1000; i++) {
+      int lane = bus.getLane(new KeyedEvent("host-" + i, 0));
+      Assert.assertEquals(lane, bus.getLane(new KeyedEvent("host-" + i, 1)));
+      used[lane] = true;
+    }
+
+    for (boolean laneUsed : used) {
+      Assert.assertTrue(laneUsed);
+    }
+
+    Assert.assertEquals(0, bus.getLane(new Object()));
+    bus.shutdown();
+  }
+
+  /**
+   * An event with a partition key and a sequence number.
+   */
+  private static final class KeyedEvent {
+    private final String key;
+    private final int sequence;
+
+    private KeyedEvent(String key, int sequence) {
+      this.key = key;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Partitions {@link KeyedEvent}s by their key.
+   */
+  private static final class KeyFunction implements Function<Object, Object> {
+    @Override
+    public Object apply(Object event) {
+      return event instanceof KeyedEvent ? ((KeyedEvent) event).key : null;
+    }
+  }
+
+  /**
+   * Checks that the sequence numbers of each key are received in order.
+   */
+  public static final class OrderListener {
+    private final Map<String, Integer> lastSequences = new ConcurrentHashMap<String, Integer>();
+    private final CountDownLatch latch;
+    private volatile boolean outOfOrder = false;
+
+    private OrderListener(int count) {
+      latch = new CountDownLatch(count);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(KeyedEvent event) {
+      Integer last = lastSequences.get(event.key);
+      if ((null == last && event.sequence != 0)
+          || (null != last && event.sequence != last + 1)) {
+        outOfOrder = true;
+      }
+
+      lastSequences.put(event.key, event.sequence);
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Re-publishes an event with the same key from the first event once the
+   * lane's queue is full.
+   */
+  public static final class RepublishingListener {
+    private static final int REPUBLISHED = 100;
+
+    private final PartitionedEventBus bus;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch queueFull = new CountDownLatch(1);
+    private final CountDownLatch received = new CountDownLatch(3);
+    private final List<Integer> sequences = new CopyOnWriteArrayList<Integer>();
+    private volatile Thread laneThread;
+    private volatile Thread republishedThread;
+
+    private RepublishingListener(PartitionedEventBus bus) {
+      this.bus = bus;
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(KeyedEvent event) throws InterruptedException {
+      sequences.add(event.sequence);
+      if (event.sequence == 0) {
+        laneThread = Thread.currentThread();
+        started.countDown();
+        queueFull.await();
+        bus.post(new KeyedEvent(event.key, REPUBLISHED));
+      } else if (event.sequence == REPUBLISHED) {
+        republishedThread = Thread.currentThread();
+      }
+
+      received.countDown();
+    }
+  }
+
+  /**
+   * Blocks the lane's thread on the first event until released.
+   */
+  public static final class BlockingListener {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Map<Integer, Thread> threads = new ConcurrentHashMap<Integer, Thread>();
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(KeyedEvent event) throws InterruptedException {
+      threads.put(event.sequence, Thread.currentThread());
+      if (event.sequence == 0) {
+        started.countDown();
+        release.await();
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.notifications;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link TargetDispatchQueue}.
+ */
+public class TargetDispatchQueueTest {
+
+  /**
+   * Tests that the queue refuses work beyond its capacity and that work is
+   * only started up to the concurrency limit.
+   */
+  @Test
+  public void testCapacityAndConcurrency() {
+    HoldingExecutor executor = new HoldingExecutor();
+    TargetDispatchQueue queue = new TargetDispatchQueue("target", executor, 1, 2, 0);
+
+    final AtomicInteger runs = new AtomicInteger();
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+
+    Assert.assertTrue(queue.offer(runnable));
+    Assert.assertTrue(queue.offer(runnable));
+    Assert.assertFalse(queue.offer(runnable));
+
+    // only one worker is started for a concurrency of 1
+    Assert.assertEquals(1, executor.runnables.size());
+    Assert.assertEquals(2, queue.getBacklog());
+    Assert.assertEquals(0, queue.getRemainingCapacity());
+    Assert.assertEquals(1, queue.getRejectedCount());
+
+    executor.runAll();
+
+    Assert.assertEquals(2, runs.get());
+    Assert.assertTrue(queue.isIdle());
+    Assert.assertEquals(2, queue.getRemainingCapacity());
+
+    Map<String, Object> statistics = queue.getStatistics();
+    Assert.assertEquals("target", statistics.get("name"));
+    Assert.assertEquals(2L, statistics.get("delivered"));
+    Assert.assertEquals(1L, statistics.get("rejected"));
+  }
+
+  /**
+   * Tests that a slow target does not use more than its share of a shared
+   * executor.
+   */
+  @Test
+  public void testSlowTargetDoesNotBlockOthers() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      TargetDispatchQueue slow = new TargetDispatchQueue("slow", executor, 1, 10, 0);
+      TargetDispatchQueue fast = new TargetDispatchQueue("fast", executor, 1, 10, 0);
+
+      final CountDownLatch release = new CountDownLatch(1);
+      for (int i = 0; i < 5; i++) {
+        slow.offer(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+      }
+
+      final CountDownLatch delivered = new CountDownLatch(3);
+      for (int i = 0; i < 3; i++) {
+        fast.offer(new Runnable() {
+          @Override
+          public void run() {
+            delivered.countDown();
+          }
+        });
+      }
+
+      Assert.assertTrue(delivered.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(1, slow.getActiveCount());
+      Assert.assertTrue(slow.getBacklog() >= 4);
+
+      release.countDown();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that a failing notification does not stop the queue.
+   */
+  @Test
+  public void testExceptionDoesNotStopQueue() {
+    HoldingExecutor executor = new HoldingExecutor();
+    TargetDispatchQueue queue = new TargetDispatchQueue("target", executor, 1, 10, 0);
+
+    final AtomicInteger runs = new AtomicInteger();
+    queue.offer(new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException();
+      }
+    });
+
+    queue.offer(new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    });
+
+    executor.runAll();
+
+    Assert.assertEquals(1, runs.get());
+    Assert.assertTrue(queue.isIdle());
+  }
+
+  /**
+   * Holds on to each runnable until {@link #runAll()} is called.
+   */
+  private static final class HoldingExecutor implements Executor {
+    private final List<Runnable> runnables = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable runnable) {
+      runnables.add(runnable);
+    }
+
+    private void runAll() {
+      while (!runnables.isEmpty()) {
+        runnables.remove(0).run();
+      }
+    }
+  }
+}
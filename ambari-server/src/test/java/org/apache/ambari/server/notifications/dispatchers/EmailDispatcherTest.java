@@ -37,8 +37,11 @@ import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.util.Modules;
 
+import javax.mail.Address;
 import javax.mail.AuthenticationFailedException;
+import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.Session;
 import javax.mail.Transport;
 
 /**
@@ -163,6 +166,62 @@ public class EmailDispatcherTest {
     Assert.assertEquals(TargetConfigurationResult.Status.VALID, configValidationResult.getStatus());
   }
 
+  /**
+   * Tests that a connection is reused for notifications with the same
+   * properties and that a failed connection is not returned to the pool.
+   */
+  @Test
+  public void testTransportIsPooled() throws Exception {
+    Transport transport = EasyMock.createNiceMock(Transport.class);
+    EasyMock.expect(transport.isConnected()).andReturn(true).anyTimes();
+
+    EmailDispatcher dispatcher = EasyMock.createMockBuilder(EmailDispatcher.class).
+        withConstructor().addMockedMethods("connect").createMock();
+
+    EasyMock.expect(dispatcher.connect(EasyMock.anyObject(Session.class))).andReturn(
+        transport).once();
+
+    EasyMock.replay(dispatcher, transport);
+
+    DispatchCallback callback = EasyMock.createNiceMock(DispatchCallback.class);
+    dispatcher.dispatch(createNotification(callback));
+    dispatcher.dispatch(createNotification(callback));
+
+    EasyMock.verify(dispatcher);
+    Assert.assertEquals(1, dispatcher.getIdleTransportCount());
+
+    // a failed send closes the connection
+    EasyMock.reset(transport);
+    EasyMock.expect(transport.isConnected()).andReturn(true).anyTimes();
+    transport.sendMessage(EasyMock.anyObject(Message.class),
+        EasyMock.anyObject(Address[].class));
+    EasyMock.expectLastCall().andThrow(new MessagingException());
+    transport.close();
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(transport);
+
+    dispatcher.dispatch(createNotification(callback));
+
+    EasyMock.verify(transport);
+    Assert.assertEquals(0, dispatcher.getIdleTransportCount());
+  }
+
+  private static Notification createNotification(DispatchCallback callback) {
+    Notification notification = new Notification();
+    notification.Callback = callback;
+    notification.CallbackIds = new ArrayList<String>();
+    notification.Subject = "subject";
+    notification.Body = "body";
+    notification.DispatchProperties = new HashMap<String, String>();
+    notification.DispatchProperties.put("mail.smtp.host", "localhost");
+
+    Recipient recipient = new Recipient();
+    recipient.Identifier = "foo@localhost";
+    notification.Recipients = new ArrayList<Recipient>();
+    notification.Recipients.add(recipient);
+    return notification;
+  }
+
   /**
    *
    */
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.MaintenanceState;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link AlertSummaryIndex}.
+ */
+public class AlertSummaryIndexTest {
+
+  private static final long CLUSTER_ID = 1L;
+  private static final long REFRESH_INTERVAL = 60000L;
+
+  /**
+   * Tests the counts of a cluster loaded from its current alerts.
+   */
+  @Test
+  public void testLoad() {
+    List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    alerts.add(createAlert(1, "HDFS", "h1", AlertState.OK, MaintenanceState.OFF));
+    alerts.add(createAlert(2, "HDFS", "h1", AlertState.CRITICAL, MaintenanceState.OFF));
+    alerts.add(createAlert(3, "HDFS", "h2", AlertState.WARNING, MaintenanceState.OFF));
+    alerts.add(createAlert(4, "YARN", "h2", AlertState.CRITICAL, MaintenanceState.ON));
+    alerts.add(createAlert(5, "YARN", "h3", AlertState.UNKNOWN, MaintenanceState.OFF));
+    alerts.add(createAlert(6, "AMBARI", null, AlertState.OK, MaintenanceState.OFF));
+
+    AlertSummaryIndex index = new AlertSummaryIndex();
+    AlertSummaryIndex.ClusterSummary summary = index.getClusterSummary(CLUSTER_ID,
+        new ListLoader(alerts), REFRESH_INTERVAL);
+
+    assertSummary(summary.getSummary(null, null), 2, 1, 1, 1, 1);
+    assertSummary(summary.getSummary("HDFS", null), 1, 1, 1, 0, 0);
+    assertSummary(summary.getSummary("YARN", null), 0, 0, 0, 1, 1);
+    assertSummary(summary.getSummary(null, "h2"), 0, 1, 0, 0, 1);
+    assertSummary(summary.getSummary("HDFS", "h1"), 1, 0, 1, 0, 0);
+    assertSummary(summary.getSummary("STORM", null), 0, 0, 0, 0, 0);
+
+    // h1 is critical, h2 is warning since its critical alert is in
+    // maintenance and h3 is unknown
+    AlertHostSummaryDTO hostSummary = summary.getHostSummary();
+    Assert.assertEquals(0, hostSummary.getOkCount());
+    Assert.assertEquals(1, hostSummary.getWarningCount());
+    Assert.assertEquals(1, hostSummary.getCriticalCount());
+    Assert.assertEquals(1, hostSummary.getUnknownCount());
+  }
+
+  /**
+   * Tests that state and maintenance changes move alerts between counts.
+   */
+  @Test
+  public void testIncrementalUpdates() {
+    List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    AlertCurrentEntity alert = createAlert(1, "HDFS", "h1", AlertState.OK, MaintenanceState.OFF);
+    alerts.add(alert);
+
+    AlertSummaryIndex index = new AlertSummaryIndex();
+    AlertSummaryIndex.ClusterSummary summary = index.getClusterSummary(CLUSTER_ID,
+        new ListLoader(alerts), REFRESH_INTERVAL);
+
+    assertSummary(summary.getSummary(null, null), 1, 0, 0, 0, 0);
+    Assert.assertEquals(1, summary.getHostSummary().getOkCount());
+
+    alert.getAlertHistory().setAlertState(AlertState.CRITICAL);
+    index.onStateChanged(alert);
+    assertSummary(summary.getSummary(null, null), 0, 0, 1, 0, 0);
+    Assert.assertEquals(0, summary.getHostSummary().getOkCount());
+    Assert.assertEquals(1, summary.getHostSummary().getCriticalCount());
+
+    alert.setMaintenanceState(MaintenanceState.ON);
+    index.onMaintenanceChanged(alert);
+    assertSummary(summary.getSummary(null, null), 0, 0, 0, 0, 1);
+    Assert.assertEquals(1, summary.getHostSummary().getOkCount());
+
+    // a state change carrying an older maintenance state does not undo it
+    AlertCurrentEntity stale = createAlert(1, "HDFS", "h1", AlertState.WARNING, MaintenanceState.OFF);
+    index.onStateChanged(stale);
+    assertSummary(summary.getSummary(null, null), 0, 0, 0, 0, 1);
+
+    alert.setMaintenanceState(MaintenanceState.OFF);
+    index.onMaintenanceChanged(alert);
+    assertSummary(summary.getSummary(null, null), 0, 1, 0, 0, 0);
+
+    // a new alert on a new host
+    index.onStateChanged(createAlert(2, "YARN", "h2", AlertState.UNKNOWN, MaintenanceState.OFF));
+    assertSummary(summary.getSummary(null, null), 0, 1, 0, 1, 0);
+    assertSummary(summary.getSummary("YARN", null), 0, 0, 0, 1, 0);
+    Assert.assertEquals(1, summary.getHostSummary().getWarningCount());
+    Assert.assertEquals(1, summary.getHostSummary().getUnknownCount());
+  }
+
+  /**
+   * Tests that changes received while a cluster is loading are applied after
+   * the alerts read from the database.
+   */
+  @Test
+  public void testChangesDuringLoadAreReplayed() {
+    final AlertSummaryIndex index = new AlertSummaryIndex();
+    final List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    alerts.add(createAlert(1, "HDFS", "h1", AlertState.OK, MaintenanceState.OFF));
+
+    AlertSummaryIndex.Loader loader = new AlertSummaryIndex.Loader() {
+      @Override
+      public List<AlertCurrentEntity> load(long clusterId) {
+        // written after the database was read
+        index.onStateChanged(createAlert(1, "HDFS", "h1", AlertState.CRITICAL, MaintenanceState.OFF));
+        index.onStateChanged(createAlert(2, "HDFS", "h2", AlertState.WARNING, MaintenanceState.OFF));
+
+        // another reader does not wait for the load
+        Assert.assertNull(index.getClusterSummary(clusterId, this, REFRESH_INTERVAL));
+        return alerts;
+      }
+    };
+
+    AlertSummaryIndex.ClusterSummary summary = index.getClusterSummary(CLUSTER_ID,
+        loader, REFRESH_INTERVAL);
+
+    assertSummary(summary.getSummary(null, null), 0, 1, 1, 0, 0);
+  }
+
+  /**
+   * Tests that invalidated and expired clusters are read again.
+   */
+  @Test
+  public void testInvalidateAndRefresh() {
+    List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    alerts.add(createAlert(1, "HDFS", "h1", AlertState.OK, MaintenanceState.OFF));
+    ListLoader loader = new ListLoader(alerts);
+
+    AlertSummaryIndex index = new AlertSummaryIndex();
+    index.getClusterSummary(CLUSTER_ID, loader, REFRESH_INTERVAL);
+    index.getClusterSummary(CLUSTER_ID, loader, REFRESH_INTERVAL);
+    Assert.assertEquals(1, loader.loads.get());
+
+    alerts.clear();
+    index.invalidate();
+    assertSummary(index.getClusterSummary(CLUSTER_ID, loader, REFRESH_INTERVAL).getSummary(
+        null, null), 0, 0, 0, 0, 0);
+    Assert.assertEquals(2, loader.loads.get());
+
+    index.getClusterSummary(CLUSTER_ID, loader, 0);
+    Assert.assertEquals(3, loader.loads.get());
+  }
+
+  /**
+   * Tests that the text of an alert received without a state change replaces
+   * the indexed text without changing the counts.
+   */
+  @Test
+  public void testTextRefresh() {
+    List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    alerts.add(createAlert(1, "HDFS", "h1", AlertState.WARNING, MaintenanceState.OFF));
+    alerts.get(0).setLatestText("slow");
+
+    AlertSummaryIndex index = new AlertSummaryIndex();
+    AlertSummaryIndex.ClusterSummary summary = index.getClusterSummary(CLUSTER_ID,
+        new ListLoader(alerts), REFRESH_INTERVAL);
+    Assert.assertEquals("slow", summary.getAlerts(null, null).get(0).getText());
+
+    index.onTextChanged(CLUSTER_ID, 1L, "slower");
+    Assert.assertEquals("slower", summary.getAlerts("HDFS", "h1").get(0).getText());
+    assertSummary(summary.getSummary(null, null), 0, 1, 0, 0, 0);
+
+    // alerts and clusters which are not indexed are ignored
+    index.onTextChanged(CLUSTER_ID, 2L, "unknown");
+    index.onTextChanged(CLUSTER_ID + 1, 1L, "other cluster");
+    Assert.assertEquals(1, summary.getAlerts(null, null).size());
+    Assert.assertEquals("slower", summary.getAlerts(null, null).get(0).getText());
+  }
+
+  /**
+   * Tests the alerts looked up by service and host as they move between
+   * states.
+   */
+  @Test
+  public void testGetAlerts() {
+    List<AlertCurrentEntity> alerts = new ArrayList<AlertCurrentEntity>();
+    alerts.add(createAlert(1, "HDFS", "h1", AlertState.OK, MaintenanceState.OFF));
+    alerts.add(createAlert(2, "HDFS", "h2", AlertState.OK, MaintenanceState.OFF));
+    alerts.add(createAlert(3, "YARN", "h2", AlertState.OK, MaintenanceState.OFF));
+    alerts.add(createAlert(4, "AMBARI", null, AlertState.OK, MaintenanceState.OFF));
+
+    AlertSummaryIndex index = new AlertSummaryIndex();
+    AlertSummaryIndex.ClusterSummary summary = index.getClusterSummary(CLUSTER_ID,
+        new ListLoader(alerts), REFRESH_INTERVAL);
+
+    Assert.assertEquals(4, summary.getAlerts(null, null).size());
+    Assert.assertEquals(2, summary.getAlerts("HDFS", null).size());
+    Assert.assertEquals(2, summary.getAlerts(null, "h2").size());
+    Assert.assertEquals(1, summary.getAlerts("YARN", "h2").size());
+    Assert.assertEquals(1, summary.getAlerts("AMBARI", null).size());
+    Assert.assertTrue(summary.getAlerts("YARN", "h1").isEmpty());
+    Assert.assertTrue(summary.getAlerts(null, "h3").isEmpty());
+
+    // a changed alert replaces its entry in every lookup
+    index.onStateChanged(createAlert(3, "YARN", "h2", AlertState.CRITICAL, MaintenanceState.OFF));
+    Assert.assertEquals(2, summary.getAlerts(null, "h2").size());
+    Assert.assertEquals(AlertState.CRITICAL, summary.getAlerts("YARN", null).get(0).getState());
+    Assert.assertEquals(AlertState.CRITICAL, summary.getAlerts("YARN", "h2").get(0).getState());
+    assertSummary(summary.getSummary("YARN", "h2"), 0, 0, 1, 0, 0);
+  }
+
+  private static void assertSummary(AlertSummaryDTO summary, int ok, int warning,
+      int critical, int unknown, int maintenance) {
+    Assert.assertEquals(ok, summary.getOkCount());
+    Assert.assertEquals(warning, summary.getWarningCount());
+    Assert.assertEquals(critical, summary.getCriticalCount());
+    Assert.assertEquals(unknown, summary.getUnknownCount());
+    Assert.assertEquals(maintenance, summary.getMaintenanceCount());
+  }
+
+  private static AlertCurrentEntity createAlert(long alertId, String serviceName,
+      String hostName, AlertState state, MaintenanceState maintenanceState) {
+    AlertHistoryEntity history = new AlertHistoryEntity();
+    history.setClusterId(CLUSTER_ID);
+    history.setServiceName(serviceName);
+    history.setHostName(hostName);
+    history.setAlertState(state);
+
+    AlertCurrentEntity current = new AlertCurrentEntity();
+    current.setAlertId(alertId);
+    current.setAlertHistory(history);
+    current.setMaintenanceState(maintenanceState);
+    return current;
+  }
+
+  /**
+   * Returns a fixed list of alerts and counts the loads.
+   */
+  private static final class ListLoader implements AlertSummaryIndex.Loader {
+    private final List<AlertCurrentEntity> alerts;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private ListLoader(List<AlertCurrentEntity> alerts) {
+      this.alerts = alerts;
+    }
+
+    @Override
+    public List<AlertCurrentEntity> load(long clusterId) {
+      loads.incrementAndGet();
+      return new ArrayList<AlertCurrentEntity>(alerts);
+    }
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.ambari.server.orm.dao;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -1350,4 +1351,35 @@ public class AlertsDAOTest {
     currentAlerts = m_dao.findCurrent();
     assertEquals(4, currentAlerts.size());
   }
+
+  /**
+   * Tests that old alert history is purged in chunks and that the history of
+   * current alerts is kept.
+   */
+  @Test
+  public void testPurgeHistory() throws Exception {
+    // the latest history entry of each of the 5 definitions is current
+    List<Long> historyIds = m_dao.findPurgeableHistoryIds(System.currentTimeMillis(), 1000);
+    assertEquals(95, historyIds.size());
+
+    for (AlertCurrentEntity current : m_dao.findCurrent()) {
+      assertFalse(historyIds.contains(current.getAlertHistory().getAlertId()));
+    }
+
+    // nothing is older than the first entry
+    calendar.clear();
+    calendar.set(2014, Calendar.JANUARY, 1);
+    assertTrue(m_dao.findPurgeableHistoryIds(calendar.getTimeInMillis(), 1000).isEmpty());
+
+    List<Long> chunk = m_dao.findPurgeableHistoryIds(System.currentTimeMillis(), 10);
+    assertEquals(historyIds.subList(0, 10), chunk);
+
+    PurgeResultDTO result = m_dao.purgeHistory(chunk);
+    assertEquals(Integer.valueOf(10), result.getRows().get("alert_history"));
+    assertEquals(Integer.valueOf(0), result.getRows().get("alert_notice"));
+    assertTrue(result.getBytes() > 0);
+
+    assertEquals(90, m_dao.findAll().size());
+    assertEquals(5, m_dao.findCurrent().size());
+  }
 }
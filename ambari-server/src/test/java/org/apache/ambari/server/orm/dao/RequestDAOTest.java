@@ -24,6 +24,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.Role;
 import org.apache.ambari.server.RoleCommand;
@@ -40,6 +43,7 @@ import org.apache.ambari.server.orm.entities.RequestEntity;
 import org.apache.ambari.server.orm.entities.ResourceEntity;
 import org.apache.ambari.server.orm.entities.ResourceTypeEntity;
 import org.apache.ambari.server.orm.entities.StageEntity;
+import org.apache.ambari.server.orm.entities.StageEntityPK;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -134,6 +138,71 @@ public class RequestDAOTest {
     Assert.assertEquals(calc3.getStatus(), calc4.getStatus());
   }
 
+  /**
+   * Tests that only completed requests which are old enough are purged and
+   * that their stages and tasks are removed with them.
+   */
+  @Test
+  public void testPurge() throws Exception {
+    createGraph();
+
+    // a completed request created a day ago
+    ClusterEntity clusterEntity = clusterDAO.findByName("test_cluster1");
+    RequestEntity requestEntity = new RequestEntity();
+    requestEntity.setRequestId(200L);
+    requestEntity.setClusterId(clusterEntity.getClusterId());
+    requestEntity.setCreateTime(System.currentTimeMillis() - 86400000L);
+    requestEntity.setInputs("{}");
+    requestEntity.setStages(new ArrayList<StageEntity>());
+    requestDAO.create(requestEntity);
+
+    HostEntity host = hostDAO.findByName("test_host1");
+    createStages(1L, 2, host, requestEntity, HostRoleStatus.COMPLETED, false);
+    requestDAO.merge(requestEntity);
+
+    // request 100 still has tasks in progress
+    long now = System.currentTimeMillis() + 1;
+    Assert.assertEquals(Collections.singletonList(200L),
+        requestDAO.findPurgeableRequestIds(now, -1, 10));
+
+    Assert.assertTrue(requestDAO.findPurgeableRequestIds(0, -1, 10).isEmpty());
+    Assert.assertEquals(Collections.singletonList(200L),
+        requestDAO.findPurgeableRequestIds(0, 200L, 10));
+
+    Assert.assertEquals(Long.valueOf(100L), requestDAO.findNewestRequestIdBeyond(1));
+    Assert.assertNull(requestDAO.findNewestRequestIdBeyond(2));
+
+    Cache cache = injector.getInstance(EntityManager.class).getEntityManagerFactory().getCache();
+    StageEntityPK keptStage = new StageEntityPK();
+    keptStage.setRequestId(100L);
+    keptStage.setStageId(1L);
+    StageEntityPK purgedStage = new StageEntityPK();
+    purgedStage.setRequestId(200L);
+    purgedStage.setStageId(1L);
+    Assert.assertTrue(cache.contains(StageEntity.class, keptStage));
+    Assert.assertTrue(cache.contains(StageEntity.class, purgedStage));
+
+    PurgeResultDTO result = requestDAO.purge(Collections.singletonList(200L));
+    Assert.assertEquals(Integer.valueOf(1), result.getRows().get("request"));
+    Assert.assertEquals(Integer.valueOf(2), result.getRows().get("stage"));
+    Assert.assertEquals(Integer.valueOf(2), result.getRows().get("host_role_command"));
+
+    // only the inputs of the request have a length
+    Assert.assertEquals(2L, result.getBytes());
+
+    // the entities of other requests stay cached
+    Assert.assertTrue(cache.contains(StageEntity.class, keptStage));
+    Assert.assertTrue(cache.contains(RequestEntity.class, 100L));
+    Assert.assertFalse(cache.contains(StageEntity.class, purgedStage));
+    Assert.assertFalse(cache.contains(RequestEntity.class, 200L));
+    Assert.assertFalse(cache.contains(HostEntity.class, host.getHostId()));
+
+    Assert.assertNull(requestDAO.findByPK(200L));
+    Assert.assertNotNull(requestDAO.findByPK(100L));
+    Assert.assertTrue(hostRoleCommandDAO.findByRequest(200L).isEmpty());
+    Assert.assertEquals(8, hostRoleCommandDAO.findByRequest(100L).size());
+  }
+
   private void createGraph() {
     OrmTestHelper helper = injector.getInstance(OrmTestHelper.class);
     helper.createDefaultData();
@@ -29,6 +29,7 @@ import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.agent.CommandReport;
 import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.state.Cluster;
 import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.stack.OsFamily;
@@ -39,8 +40,10 @@ import org.junit.Test;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -53,16 +56,19 @@ public class KerberosServerActionTest {
   File temporaryDirectory;
   private Injector injector;
   private KerberosServerAction action;
+  private Clusters clusters;
+  private ExecutionCommand mockExecutionCommand;
+  private HostRoleCommand mockHostRoleCommand;
 
   @Before
   public void setUp() throws Exception {
     final Cluster cluster = mock(Cluster.class);
 
-    final Clusters clusters = mock(Clusters.class);
+    clusters = mock(Clusters.class);
     when(clusters.getCluster(anyString())).thenReturn(cluster);
 
-    final ExecutionCommand mockExecutionCommand = mock(ExecutionCommand.class);
-    final HostRoleCommand mockHostRoleCommand = mock(HostRoleCommand.class);
+    mockExecutionCommand = mock(ExecutionCommand.class);
+    mockHostRoleCommand = mock(HostRoleCommand.class);
 
     injector = Guice.createInjector(new AbstractModule() {
 
@@ -204,6 +210,68 @@ public class KerberosServerActionTest {
     Assert.assertEquals(HostRoleStatus.FAILED.toString(), report.getStatus());
   }
 
+  @Test
+  public void testProcessIdentitiesConcurrently() throws Exception {
+    final StubKerberosOperationHandlerFactory handlerFactory = new StubKerberosOperationHandlerFactory();
+
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.KERBEROS_OPERATION_THREADS_KEY, "3");
+    final Configuration configuration = new Configuration(properties);
+
+    Injector concurrentInjector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(KerberosServerAction.class).toInstance(new KerberosServerAction() {
+          @Override
+          protected boolean isConcurrentProcessingSupported() {
+            return true;
+          }
+
+          @Override
+          protected CommandReport processIdentity(Map<String, String> identityRecord, String evaluatedPrincipal,
+                                                  KerberosOperationHandler operationHandler,
+                                                  Map<String, String> kerberosConfiguration,
+                                                  Map<String, Object> requestSharedDataContext)
+              throws AmbariException {
+            Assert.assertTrue(operationHandler.isOpen());
+            requestSharedDataContext.put(evaluatedPrincipal, Thread.currentThread().getName());
+            return null;
+          }
+
+          @Override
+          public CommandReport execute(ConcurrentMap<String, Object> requestSharedDataContext)
+              throws AmbariException, InterruptedException {
+            return processIdentities(requestSharedDataContext);
+          }
+        });
+
+        bind(KerberosOperationHandlerFactory.class).toInstance(handlerFactory);
+        bind(Configuration.class).toInstance(configuration);
+        bind(Clusters.class).toInstance(clusters);
+        bind(OsFamily.class).toInstance(createNiceMock(OsFamily.class));
+      }
+    });
+
+    KerberosServerAction concurrentAction = concurrentInjector.getInstance(KerberosServerAction.class);
+    concurrentAction.setExecutionCommand(mockExecutionCommand);
+    concurrentAction.setHostRoleCommand(mockHostRoleCommand);
+
+    ConcurrentMap<String, Object> sharedMap = new ConcurrentHashMap<String, Object>();
+    CommandReport report = concurrentAction.processIdentities(sharedMap);
+    Assert.assertNotNull(report);
+    Assert.assertEquals(HostRoleStatus.COMPLETED.toString(), report.getStatus());
+    Assert.assertTrue(report.getStructuredOut().contains("\"identities_processed\":10"));
+    Assert.assertTrue(report.getStructuredOut().contains("\"threads\":3"));
+
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(sharedMap.containsKey("principal|hostName|REALM.COM" + i));
+    }
+
+    // each worker opens and closes its own handler
+    Assert.assertEquals(3, handlerFactory.opened.get());
+    Assert.assertEquals(3, handlerFactory.closed.get());
+  }
+
   @Test
   public void testGetAdministrativeCredentials() throws AmbariException {
     KerberosCredential credentials = action.getAdministratorCredential(commandParams);
@@ -212,4 +280,51 @@ public class KerberosServerActionTest {
     Assert.assertEquals("password", credentials.getPassword());
     Assert.assertEquals("keytab", credentials.getKeytab());
   }
-}
\ No newline at end of file
+
+  /**
+   * Creates stub handlers which count how often they are opened and closed.
+   */
+  private static class StubKerberosOperationHandlerFactory extends KerberosOperationHandlerFactory {
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Override
+    public KerberosOperationHandler getKerberosOperationHandler(KDCType kdcType) {
+      return new KerberosOperationHandler() {
+        @Override
+        public void open(KerberosCredential administratorCredentials, String defaultRealm,
+                         Map<String, String> kerberosConfiguration) throws KerberosOperationException {
+          opened.incrementAndGet();
+          setOpen(true);
+        }
+
+        @Override
+        public void close() throws KerberosOperationException {
+          closed.incrementAndGet();
+          setOpen(false);
+        }
+
+        @Override
+        public boolean principalExists(String principal) throws KerberosOperationException {
+          return false;
+        }
+
+        @Override
+        public Integer createPrincipal(String principal, String password, boolean service)
+            throws KerberosOperationException {
+          return 0;
+        }
+
+        @Override
+        public Integer setPrincipalPassword(String principal, String password) throws KerberosOperationException {
+          return 0;
+        }
+
+        @Override
+        public boolean removePrincipal(String principal) throws KerberosOperationException {
+          return true;
+        }
+      };
+    }
+  }
+}
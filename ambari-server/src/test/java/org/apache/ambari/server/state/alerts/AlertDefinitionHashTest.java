@@ -305,6 +305,62 @@ public class AlertDefinitionHashTest extends TestCase {
     assertTrue(invalidatedHosts.contains(HOSTNAME));
   }
 
+  /**
+   * Tests that changing a definition only invalidates the hosts which run its
+   * service component or a master of its service.
+   */
+  @Test
+  public void testInvalidateHostsUsesComponentIndex() {
+    String hash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertNotNull(hash);
+
+    AlertDefinitionEntity yarnDefinition = new AlertDefinitionEntity();
+    yarnDefinition.setDefinitionId(4L);
+    yarnDefinition.setClusterId(1L);
+    yarnDefinition.setHash(UUID.randomUUID().toString());
+    yarnDefinition.setServiceName("YARN");
+    yarnDefinition.setComponentName("RESOURCEMANAGER");
+    yarnDefinition.setScope(Scope.SERVICE);
+    yarnDefinition.setScheduleInterval(1);
+
+    Set<String> invalidatedHosts = m_hash.invalidateHosts(yarnDefinition);
+    assertEquals(0, invalidatedHosts.size());
+    assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+
+    // the host is a NAMENODE master, so HDFS service alerts affect it
+    invalidatedHosts = m_hash.invalidateHosts(m_hdfsService);
+    assertEquals(1, invalidatedHosts.size());
+    assertTrue(invalidatedHosts.contains(HOSTNAME));
+    assertFalse(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+  }
+
+  /**
+   * Tests that the hash and definitions of a host are cached together until
+   * the host is invalidated.
+   */
+  @Test
+  public void testHashCachedUntilInvalidated() {
+    String hash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertEquals(3, m_hash.getAlertDefinitions(CLUSTERNAME, HOSTNAME).size());
+
+    AlertDefinitionEntity agentScoped = new AlertDefinitionEntity();
+    agentScoped.setDefinitionId(5L);
+    agentScoped.setClusterId(1L);
+    agentScoped.setHash(UUID.randomUUID().toString());
+    agentScoped.setServiceName("AMBARI");
+    agentScoped.setComponentName("AMBARI_AGENT");
+    agentScoped.setScope(Scope.HOST);
+    agentScoped.setScheduleInterval(1);
+    m_agentDefinitions.add(agentScoped);
+
+    assertEquals(hash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+    assertEquals(3, m_hash.getAlertDefinitions(CLUSTERNAME, HOSTNAME).size());
+
+    m_hash.invalidate(CLUSTERNAME, HOSTNAME);
+    assertFalse(hash.equals(m_hash.getHash(CLUSTERNAME, HOSTNAME)));
+    assertEquals(4, m_hash.getAlertDefinitions(CLUSTERNAME, HOSTNAME).size());
+  }
+
   /**
    *
    */
@@ -18,12 +18,16 @@
 package org.apache.ambari.server.state.alerts;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 import java.util.UUID;
 
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.events.AlertReceivedEvent;
 import org.apache.ambari.server.events.listeners.alerts.AlertReceivedListener;
+import org.apache.ambari.server.events.publishers.AlertEventPublisher;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
 import org.apache.ambari.server.orm.OrmTestHelper;
@@ -31,6 +35,7 @@ import org.apache.ambari.server.orm.dao.AlertDefinitionDAO;
 import org.apache.ambari.server.orm.dao.AlertsDAO;
 import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
 import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
 import org.apache.ambari.server.state.Alert;
 import org.apache.ambari.server.state.AlertState;
 import org.apache.ambari.server.state.Cluster;
@@ -68,6 +73,11 @@ public class AlertReceivedListenerTest {
   private ServiceComponentFactory m_componentFactory;
   private ServiceComponentHostFactory m_schFactory;
 
+  /**
+   * Listener with write-behind enabled, stopped after each test.
+   */
+  private AlertReceivedListener m_writeBehindListener;
+
   @Before
   public void setup() throws Exception {
     m_injector = Guice.createInjector(new InMemoryDefaultTestModule());
@@ -112,6 +122,11 @@ public class AlertReceivedListenerTest {
 
   @After
   public void teardown() {
+    if (null != m_writeBehindListener) {
+      m_writeBehindListener.stop();
+      m_writeBehindListener = null;
+    }
+
     m_injector.getInstance(PersistService.class).stop();
     m_injector = null;
   }
@@ -259,4 +274,78 @@ public class AlertReceivedListenerTest {
     allCurrent = m_dao.findCurrent();
     assertEquals(0, allCurrent.size());
   }
+
+  /**
+   * Tests that unchanged alerts are served from memory and written in a batch
+   * while state changes are written immediately.
+   */
+  @Test
+  public void testWriteBehind() {
+    String definitionName = ALERT_DEFINITION + "1";
+    String componentName = "DATANODE";
+
+    Configuration configuration = m_injector.getInstance(Configuration.class);
+    configuration.setProperty("alerts.current.write.behind.enabled", "true");
+
+    m_writeBehindListener = new AlertReceivedListener(
+        m_injector.getInstance(AlertEventPublisher.class), configuration);
+    m_injector.injectMembers(m_writeBehindListener);
+    AlertReceivedListener listener = m_writeBehindListener;
+
+    Alert alert1 = new Alert(definitionName, null, "HDFS", componentName,
+        HOST1, AlertState.OK);
+
+    alert1.setCluster(m_cluster.getClusterName());
+    alert1.setLabel(ALERT_LABEL);
+    alert1.setText("HDFS " + componentName + " is OK");
+    alert1.setTimestamp(1L);
+
+    listener.onAlertEvent(new AlertReceivedEvent(m_cluster.getClusterId(), alert1));
+    assertEquals(0, m_dao.getPendingLatestUpdateCount());
+
+    // the same state is only recorded in memory
+    alert1.setTimestamp(2L);
+    alert1.setText("HDFS " + componentName + " is still OK");
+    listener.onAlertEvent(new AlertReceivedEvent(m_cluster.getClusterId(), alert1));
+    assertEquals(1, m_dao.getPendingLatestUpdateCount());
+
+    AlertCurrentEntity current = m_dao.findCurrentByHostAndName(
+        m_cluster.getClusterId(), HOST1, definitionName);
+    assertEquals(1L, current.getLatestTimestamp().longValue());
+
+    assertEquals(1, m_dao.flushLatestUpdates());
+    assertEquals(0, m_dao.getPendingLatestUpdateCount());
+
+    current = m_dao.findCurrentByHostAndName(m_cluster.getClusterId(), HOST1,
+        definitionName);
+    assertEquals(2L, current.getLatestTimestamp().longValue());
+    assertEquals("HDFS " + componentName + " is still OK", current.getLatestText());
+
+    // a state change is written immediately and not overwritten by an older
+    // pending timestamp
+    alert1.setTimestamp(3L);
+    assertTrue(m_dao.updateLatestIfUnchanged(m_cluster.getClusterId(),
+        definitionName, HOST1, AlertState.OK, 3L, "pending"));
+
+    alert1.setState(AlertState.CRITICAL);
+    alert1.setTimestamp(4L);
+    alert1.setText("HDFS " + componentName + " is CRITICAL");
+    listener.onAlertEvent(new AlertReceivedEvent(m_cluster.getClusterId(), alert1));
+
+    current = m_dao.findCurrentByHostAndName(m_cluster.getClusterId(), HOST1,
+        definitionName);
+    AlertHistoryEntity history = current.getAlertHistory();
+    assertEquals(AlertState.CRITICAL, history.getAlertState());
+    assertEquals(4L, current.getLatestTimestamp().longValue());
+
+    assertEquals(0, m_dao.flushLatestUpdates());
+    current = m_dao.findCurrentByHostAndName(m_cluster.getClusterId(), HOST1,
+        definitionName);
+    assertEquals(4L, current.getLatestTimestamp().longValue());
+
+    // removing current alerts discards the state kept in memory
+    m_dao.removeCurrentByHost(HOST1);
+    assertFalse(m_dao.updateLatestIfUnchanged(m_cluster.getClusterId(),
+        definitionName, HOST1, AlertState.CRITICAL, 5L, "removed"));
+  }
 }
@@ -0,0 +1,370 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.ambari.server.state.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.ServiceComponentHostNotFoundException;
+import org.apache.ambari.server.events.listeners.upgrade.HostVersionOutOfSyncListener;
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.orm.OrmTestHelper;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.Host;
+import org.apache.ambari.server.state.RepositoryVersionState;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
+import org.apache.ambari.server.state.ServiceComponentFactory;
+import org.apache.ambari.server.state.ServiceComponentHost;
+import org.apache.ambari.server.state.ServiceComponentHostFactory;
+import org.apache.ambari.server.state.ServiceFactory;
+import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.State;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.persist.PersistService;
+import com.google.inject.util.Modules;
+
+/**
+ * Tests that the read paths of {@link ClusterImpl} used by heartbeats and API
+ * requests are not serialized behind the cluster-wide write lock and stay
+ * consistent while service component hosts are being added and removed.
+ */
+public class ClusterLockContentionTest {
+  private static final int NUMBER_OF_HOSTS = 20;
+  private static final int NUMBER_OF_READERS = 4;
+  private static final int NUMBER_OF_ROUNDS = 50;
+
+  @Inject
+  private Injector injector;
+
+  @Inject
+  private Clusters clusters;
+
+  @Inject
+  private ServiceFactory serviceFactory;
+
+  @Inject
+  private ServiceComponentFactory serviceComponentFactory;
+
+  @Inject
+  private ServiceComponentHostFactory serviceComponentHostFactory;
+
+  @Inject
+  private OrmTestHelper helper;
+
+  private StackId stackId = new StackId("HDP-0.1");
+
+  private Cluster cluster;
+
+  private List<String> hostNames = new ArrayList<String>(NUMBER_OF_HOSTS);
+
+  /**
+   * Creates the hosts and installs a NAMENODE and DATANODE on each of them.
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    injector = Guice.createInjector(Modules.override(
+        new InMemoryDefaultTestModule()).with(new MockModule()));
+
+    injector.getInstance(GuiceJpaInitializer.class);
+    injector.injectMembers(this);
+    clusters.addCluster("c1", stackId);
+    cluster = clusters.getCluster("c1");
+    helper.getOrCreateRepositoryVersion(stackId, stackId.getStackVersion());
+    cluster.createClusterVersion(stackId,
+        stackId.getStackVersion(), "admin", RepositoryVersionState.UPGRADING);
+
+    for (int i = 0; i < NUMBER_OF_HOSTS; i++) {
+      String hostName = "c64-" + i;
+      hostNames.add(hostName);
+
+      clusters.addHost(hostName);
+      setOsFamily(clusters.getHost(hostName), "redhat", "6.4");
+      clusters.getHost(hostName).persist();
+      clusters.mapHostToCluster(hostName, "c1");
+    }
+
+    Service service = serviceFactory.createNew(cluster, "HDFS");
+    cluster.addService(service);
+    service.persist();
+
+    ServiceComponent nameNode = addServiceComponent(service, "NAMENODE");
+    ServiceComponent dataNode = addServiceComponent(service, "DATANODE");
+
+    for (String hostName : hostNames) {
+      addServiceComponentHost(nameNode, hostName);
+      addServiceComponentHost(dataNode, hostName);
+    }
+
+    ((ClusterImpl) cluster).loadServiceHostComponents();
+  }
+
+  @After
+  public void teardown() {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  /**
+   * Tests that lookups complete while another thread holds the cluster write
+   * lock.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 60000)
+  public void testReadsDoNotWaitForWriteLock() throws Exception {
+    ReaderThread reader = new ReaderThread();
+
+    Lock writeLock = cluster.getClusterGlobalLock().writeLock();
+    writeLock.lock();
+    try {
+      reader.start();
+      reader.join(TimeUnit.SECONDS.toMillis(20));
+
+      Assert.assertFalse("Readers blocked on the cluster write lock", reader.isAlive());
+      Assert.assertNull(reader.failure);
+      Assert.assertEquals(NUMBER_OF_HOSTS, reader.operations);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Tests that the per-host and per-component lookups never disagree while
+   * another thread is adding and removing a component on every host; both
+   * are served from the same per-host list, so a reader can never observe a
+   * component in one of them but not in the other mid-update.
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 60000)
+  public void testLookupsConsistentDuringUpdates() throws Exception {
+    Service service = cluster.getService("HDFS");
+    ServiceComponent secondaryNameNode = addServiceComponent(service, "SECONDARY_NAMENODE");
+
+    final List<ServiceComponentHost> toggled = new ArrayList<ServiceComponentHost>();
+    for (String hostName : hostNames) {
+      toggled.add(serviceComponentHostFactory.createNew(secondaryNameNode, hostName));
+    }
+
+    final AtomicBoolean writing = new AtomicBoolean(true);
+    final AtomicReference<Exception> writerFailure = new AtomicReference<Exception>();
+
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int round = 0; round < NUMBER_OF_ROUNDS; round++) {
+            for (ServiceComponentHost sch : toggled) {
+              ((ClusterImpl) cluster).addServiceComponentHost(sch);
+            }
+
+            for (ServiceComponentHost sch : toggled) {
+              cluster.removeServiceComponentHost(sch);
+            }
+          }
+        } catch (Exception exception) {
+          writerFailure.set(exception);
+        } finally {
+          writing.set(false);
+        }
+      }
+    };
+
+    List<ConsistencyReaderThread> readers = new ArrayList<ConsistencyReaderThread>();
+    for (int i = 0; i < NUMBER_OF_READERS; i++) {
+      readers.add(new ConsistencyReaderThread(writing));
+    }
+
+    for (ConsistencyReaderThread reader : readers) {
+      reader.start();
+    }
+
+    writer.start();
+    writer.join();
+
+    for (ConsistencyReaderThread reader : readers) {
+      reader.join();
+      Assert.assertNull(reader.failure);
+      Assert.assertTrue(reader.passes > 0);
+    }
+
+    Assert.assertNull(writerFailure.get());
+
+    // every round ended with a removal, so both maps are back to the
+    // original two components on each host
+    for (String hostName : hostNames) {
+      Assert.assertEquals(2, cluster.getServiceComponentHosts(hostName).size());
+      try {
+        ((ClusterImpl) cluster).getServiceComponentHost("HDFS", "SECONDARY_NAMENODE", hostName);
+        Assert.fail("Expected ServiceComponentHostNotFoundException");
+      } catch (ServiceComponentHostNotFoundException expected) {
+        // expected
+      }
+    }
+
+    // the maps still accept the component again, so neither kept a stale
+    // entry that would be reported as a duplicate
+    for (ServiceComponentHost sch : toggled) {
+      ((ClusterImpl) cluster).addServiceComponentHost(sch);
+    }
+
+    for (String hostName : hostNames) {
+      Assert.assertEquals(3, cluster.getServiceComponentHosts(hostName).size());
+      Assert.assertNotNull(((ClusterImpl) cluster).getServiceComponentHost("HDFS", "SECONDARY_NAMENODE", hostName));
+    }
+  }
+
+  /**
+   * Performs the lookups done while processing a heartbeat for every host.
+   */
+  private final class ReaderThread extends Thread {
+    private volatile long operations = 0;
+    private volatile Exception failure;
+
+    @Override
+    public void run() {
+      try {
+        for (String hostName : hostNames) {
+          Assert.assertNotNull(cluster.getDesiredStackVersion());
+          Assert.assertNotNull(cluster.getService("HDFS"));
+          Assert.assertEquals(2, cluster.getServiceComponentHosts(hostName).size());
+          Assert.assertNotNull(((ClusterImpl) cluster).getServiceComponentHost("HDFS", "DATANODE", hostName));
+          operations++;
+        }
+      } catch (Exception exception) {
+        failure = exception;
+      }
+    }
+  }
+
+  /**
+   * Checks, for every host and until the writer is done, that the components
+   * which are never modified are always found and that the toggled component
+   * is either fully present or fully absent.
+   */
+  private final class ConsistencyReaderThread extends Thread {
+    private final AtomicBoolean writing;
+    private volatile long passes = 0;
+    private volatile Throwable failure;
+
+    private ConsistencyReaderThread(AtomicBoolean writing) {
+      this.writing = writing;
+    }
+
+    @Override
+    public void run() {
+      try {
+        do {
+          for (String hostName : hostNames) {
+            List<ServiceComponentHost> hostComponents = cluster.getServiceComponentHosts(hostName);
+            Set<String> componentNames = new HashSet<String>();
+            for (ServiceComponentHost sch : hostComponents) {
+              Assert.assertEquals(hostName, sch.getHostName());
+              Assert.assertTrue("Duplicate " + sch.getServiceComponentName() + " on " + hostName,
+                  componentNames.add(sch.getServiceComponentName()));
+            }
+
+            Assert.assertTrue(componentNames.contains("NAMENODE"));
+            Assert.assertTrue(componentNames.contains("DATANODE"));
+            Assert.assertTrue(hostComponents.size() == 2 || hostComponents.size() == 3);
+
+            Assert.assertNotNull(((ClusterImpl) cluster).getServiceComponentHost("HDFS", "NAMENODE", hostName));
+            Assert.assertNotNull(((ClusterImpl) cluster).getServiceComponentHost("HDFS", "DATANODE", hostName));
+
+            try {
+              ServiceComponentHost sch = ((ClusterImpl) cluster).getServiceComponentHost(
+                  "HDFS", "SECONDARY_NAMENODE", hostName);
+              Assert.assertEquals(hostName, sch.getHostName());
+            } catch (ServiceComponentHostNotFoundException expected) {
+              // removed by the writer
+            }
+          }
+
+          passes++;
+        } while (writing.get());
+      } catch (Throwable throwable) {
+        failure = throwable;
+      }
+    }
+  }
+
+  private void setOsFamily(Host host, String osFamily, String osVersion) {
+    Map<String, String> hostAttributes = new HashMap<String, String>(2);
+    hostAttributes.put("os_family", osFamily);
+    hostAttributes.put("os_release_version", osVersion);
+    host.setHostAttributes(hostAttributes);
+  }
+
+  private ServiceComponent addServiceComponent(Service service,
+      String componentName) throws AmbariException {
+    ServiceComponent serviceComponent = serviceComponentFactory.createNew(service,
+        componentName);
+    service.addServiceComponent(serviceComponent);
+    serviceComponent.setDesiredState(State.INSTALLED);
+    serviceComponent.persist();
+    return serviceComponent;
+  }
+
+  private void addServiceComponentHost(ServiceComponent serviceComponent,
+      String hostName) throws AmbariException {
+    ServiceComponentHost sch = serviceComponentHostFactory.createNew(
+        serviceComponent, hostName);
+
+    serviceComponent.addServiceComponentHost(sch);
+    sch.setDesiredState(State.INSTALLED);
+    sch.setState(State.INSTALLED);
+    sch.setDesiredStackVersion(stackId);
+    sch.setStackVersion(stackId);
+    sch.persist();
+  }
+
+  /**
+   * Mocks out listeners which are not needed by this test.
+   */
+  private class MockModule implements Module {
+    @Override
+    public void configure(Binder binder) {
+      binder.bind(HostVersionOutOfSyncListener.class).toInstance(
+          EasyMock.createNiceMock(HostVersionOutOfSyncListener.class));
+    }
+  }
+}
@@ -47,6 +47,8 @@ import com.google.inject.persist.UnitOfWork;
 import junit.framework.Assert;
 
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.ServiceComponentHostNotFoundException;
+import org.apache.ambari.server.ServiceNotFoundException;
 import org.apache.ambari.server.agent.AgentEnv;
 import org.apache.ambari.server.agent.AgentEnv.Directory;
 import org.apache.ambari.server.agent.DiskInfo;
@@ -928,6 +930,55 @@ public class ClusterTest {
         createQuery("SELECT service FROM ClusterServiceEntity service").getResultList().size());
   }
 
+  /**
+   * Tests that lookups with {@code null} keys keep returning "not found" now
+   * that the backing maps are concurrent and do not accept {@code null} keys.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLookupsWithNullKeys() throws Exception {
+    createDefaultCluster();
+
+    Service hdfs = c1.addService("HDFS");
+    hdfs.persist();
+
+    Config config = configFactory.createNew(c1, "hdfs-site",
+        new HashMap<String, String>(), new HashMap<String, Map<String, String>>());
+    config.setTag("version1");
+    c1.addConfig(config);
+
+    assertNotNull(c1.getConfig("hdfs-site", "version1"));
+    Assert.assertNull(c1.getConfig("hdfs-site", null));
+    Assert.assertNull(c1.getConfig(null, "version1"));
+    Assert.assertNull(c1.getConfig(null, null));
+    assertNotNull(c1.getConfigsByType("hdfs-site"));
+    Assert.assertNull(c1.getConfigsByType(null));
+
+    assertEquals(0, c1.getServiceComponentHosts(null).size());
+
+    try {
+      c1.getService(null);
+      fail("Expected ServiceNotFoundException");
+    } catch (ServiceNotFoundException e) {
+      // Expected
+    }
+
+    try {
+      ((ClusterImpl) c1).getServiceComponentHost("HDFS", "NAMENODE", null);
+      fail("Expected ServiceComponentHostNotFoundException");
+    } catch (ServiceComponentHostNotFoundException e) {
+      // Expected
+    }
+
+    try {
+      ((ClusterImpl) c1).getServiceComponentHost(null, null, "h1");
+      fail("Expected ServiceComponentHostNotFoundException");
+    } catch (ServiceComponentHostNotFoundException e) {
+      // Expected
+    }
+  }
+
   @Test
   public void testGetHostsDesiredConfigs() throws Exception {
     createDefaultCluster();
@@ -24,20 +24,31 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.notifications.DispatchFactory;
 import org.apache.ambari.server.notifications.Notification;
 import org.apache.ambari.server.notifications.NotificationDispatcher;
 import org.apache.ambari.server.notifications.TargetConfigurationResult;
+import org.apache.ambari.server.notifications.dispatchers.EmailDispatcher;
 import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
 import org.apache.ambari.server.orm.dao.AlertDispatchDAO;
 import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
@@ -49,6 +60,7 @@ import org.apache.ambari.server.state.NotificationState;
 import org.apache.ambari.server.state.alert.Scope;
 import org.apache.ambari.server.state.alert.SourceType;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -183,6 +195,7 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
    */
   @Test
   public void testNoDispatch() throws Exception {
+    expectNoDispatchedNotices();
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(
         new ArrayList<AlertNoticeEntity>()).once();
 
@@ -208,11 +221,11 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
   public void testDigestDispatch() throws Exception {
     MockEmailDispatcher dispatcher = new MockEmailDispatcher();
     List<AlertNoticeEntity> notices = getSingleMockNotice(dispatcher.getType());
-    AlertNoticeEntity notice = notices.get(0);
 
+    expectNoDispatchedNotices();
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
     EasyMock.expect(m_dispatchFactory.getDispatcher("EMAIL")).andReturn(dispatcher).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).atLeastOnce();
+    expectMergeNotices();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
 
@@ -243,11 +256,9 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
   public void testSingleDispatch() throws Exception {
     MockSnmpDispatcher dispatcher = new MockSnmpDispatcher();
 
-    List<AlertNoticeEntity> notices = getSingleMockNotice(dispatcher.getType());
-    AlertNoticeEntity notice = notices.get(0);
-
+    expectNoDispatchedNotices();
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(getSnmpMockNotices()).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).atLeastOnce();
+    expectMergeNotices();
     EasyMock.expect(m_dispatchFactory.getDispatcher("SNMP")).andReturn(
         dispatcher).atLeastOnce();
 
@@ -277,13 +288,12 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
   public void testFailedDispatch() throws Exception {
     MockEmailDispatcher dispatcher = new MockEmailDispatcher();
     List<AlertNoticeEntity> notices = getSingleMockNotice(dispatcher.getType());
-    AlertNoticeEntity notice = notices.get(0);
 
     // these expectations happen b/c we need to mark the notice as FAILED
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).once();
-    EasyMock.expect(m_dao.findNoticeByUuid(ALERT_NOTICE_UUID_1)).andReturn(notice).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).once();
+    expectMergeNotices();
+    EasyMock.expect(m_dao.setNoticeStates(
+        Collections.singletonList(ALERT_NOTICE_UUID_1), NotificationState.FAILED)).andReturn(1).once();
     EasyMock.expect(m_dispatchFactory.getDispatcher(dispatcher.getType())).andReturn(dispatcher).once();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
@@ -315,8 +325,9 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
     AlertNoticeEntity notice = notices.get(0);
 
     // these expectations happen b/c we need to mark the notice as FAILED
+    expectNoDispatchedNotices();
     EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
-    EasyMock.expect(m_dao.merge(notice)).andReturn(notice).atLeastOnce();
+    expectMergeNotices();
     EasyMock.expect(m_dispatchFactory.getDispatcher(dispatcher.getType())).andReturn(dispatcher).once();
 
     EasyMock.replay(m_dao, m_dispatchFactory);
@@ -339,6 +350,125 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
     assertEquals(NotificationState.DISPATCHED, notice.getNotifyState());
   }
 
+  /**
+   * Tests that notices which do not fit in their target's queue are left
+   * {@link NotificationState#PENDING} for the next run.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testFullTargetQueueLeavesNoticesPending() throws Exception {
+    MockSnmpDispatcher dispatcher = new MockSnmpDispatcher();
+    List<AlertNoticeEntity> notices = getSnmpMockNotices();
+
+    expectNoDispatchedNotices();
+    EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
+    EasyMock.expect(m_dispatchFactory.getDispatcher("SNMP")).andReturn(dispatcher).once();
+    expectMergeNotices();
+
+    EasyMock.replay(m_dao, m_dispatchFactory);
+
+    m_injector.getInstance(Configuration.class).setProperty(
+        "alerts.notice.dispatch.target.queue.size", "1");
+
+    AlertNoticeDispatchService service = m_injector.getInstance(AlertNoticeDispatchService.class);
+    service.startUp();
+
+    // nothing is delivered until the executor is run
+    HoldingExecutor executor = new HoldingExecutor();
+    service.setExecutor(executor);
+    service.runOneIteration();
+
+    EasyMock.verify(m_dao, m_dispatchFactory);
+
+    assertEquals(NotificationState.DISPATCHED, notices.get(0).getNotifyState());
+    assertEquals(NotificationState.PENDING, notices.get(1).getNotifyState());
+    assertEquals(1, service.getStatistics().get("backlog"));
+
+    executor.runAll();
+    assertEquals(1, dispatcher.getNotifications().size());
+    assertEquals(0, service.getStatistics().get("backlog"));
+  }
+
+  /**
+   * Tests that notices which were left {@link NotificationState#DISPATCHED}
+   * by a previous run are set back to {@link NotificationState#PENDING} on
+   * startup and are then delivered to a local SMTP server.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDispatchedNoticesAreRedispatched() throws Exception {
+    SmtpServer smtpServer = new SmtpServer();
+    try {
+      List<AlertNoticeEntity> notices = getSingleMockNotice("EMAIL");
+      final AlertNoticeEntity notice = notices.get(0);
+      notice.getAlertTarget().setProperties("{ \"ambari.dispatch.recipients\" : [\"ambari@example.com\"], "
+          + "\"mail.smtp.host\" : \"localhost\", "
+          + "\"mail.smtp.port\" : \"" + smtpServer.getPort() + "\", "
+          + "\"mail.smtp.from\" : \"ambari@example.com\" }");
+
+      // the notice was dispatched but its state was never written
+      notice.setNotifyState(NotificationState.DISPATCHED);
+      EasyMock.expect(m_dao.findDispatchedNotices()).andReturn(notices).once();
+      EasyMock.expect(m_dao.setNoticeStates(Collections.singletonList(ALERT_NOTICE_UUID_1),
+          NotificationState.PENDING)).andAnswer(new IAnswer<Integer>() {
+            @Override
+            public Integer answer() throws Throwable {
+              notice.setNotifyState(NotificationState.PENDING);
+              return 1;
+            }
+          }).once();
+
+      EasyMock.expect(m_dao.findPendingNotices()).andReturn(notices).once();
+      expectMergeNotices();
+      EasyMock.expect(m_dao.setNoticeStates(Collections.singletonList(ALERT_NOTICE_UUID_1),
+          NotificationState.DELIVERED)).andReturn(1).once();
+      EasyMock.expect(m_dispatchFactory.getDispatcher("EMAIL")).andReturn(
+          new EmailDispatcher()).once();
+
+      EasyMock.replay(m_dao, m_dispatchFactory);
+
+      AlertNoticeDispatchService service = m_injector.getInstance(AlertNoticeDispatchService.class);
+      service.startUp();
+      assertEquals(NotificationState.PENDING, notice.getNotifyState());
+
+      service.setExecutor(new MockExecutor());
+      service.runOneIteration();
+
+      EasyMock.verify(m_dao, m_dispatchFactory);
+
+      List<String> messages = smtpServer.getMessages();
+      assertEquals(1, messages.size());
+      assertTrue(messages.get(0).contains("ambari@example.com"));
+    } finally {
+      smtpServer.close();
+    }
+  }
+
+  /**
+   * Expects that no notices were left DISPATCHED by a previous run.
+   */
+  private void expectNoDispatchedNotices() {
+    EasyMock.expect(m_dao.findDispatchedNotices()).andReturn(
+        new ArrayList<AlertNoticeEntity>()).once();
+  }
+
+  /**
+   * Expects the notices to be marked as DISPATCHED in a single batch and
+   * returns them as the merged instances.
+   */
+  private void expectMergeNotices() {
+    EasyMock.expect(m_dao.mergeNotices(EasyMock.<List<AlertNoticeEntity>> anyObject())).andAnswer(
+        new IAnswer<List<AlertNoticeEntity>>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public List<AlertNoticeEntity> answer() throws Throwable {
+            return (List<AlertNoticeEntity>) EasyMock.getCurrentArguments()[0];
+          }
+        }).once();
+  }
+
   /**
    * Gets a single PENDING notice.
    *
@@ -606,6 +736,113 @@ public class AlertNoticeDispatchServiceTest extends AlertNoticeDispatchService {
     }
   }
 
+  /**
+   * An {@link Executor} that holds on to each {@link Runnable} until
+   * {@link #runAll()} is called.
+   */
+  private static final class HoldingExecutor implements Executor {
+
+    private final List<Runnable> m_runnables = new ArrayList<Runnable>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable runnable) {
+      m_runnables.add(runnable);
+    }
+
+    public void runAll() {
+      while (!m_runnables.isEmpty()) {
+        m_runnables.remove(0).run();
+      }
+    }
+  }
+
+  /**
+   * A minimal SMTP server on a local port which accepts every message and
+   * keeps its content.
+   */
+  private static final class SmtpServer implements Runnable {
+
+    private final ServerSocket m_serverSocket;
+    private final List<String> m_messages = new CopyOnWriteArrayList<String>();
+
+    private SmtpServer() throws IOException {
+      m_serverSocket = new ServerSocket(0);
+
+      Thread thread = new Thread(this, "smtp-server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    public int getPort() {
+      return m_serverSocket.getLocalPort();
+    }
+
+    public List<String> getMessages() {
+      return m_messages;
+    }
+
+    public void close() throws IOException {
+      m_serverSocket.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      try {
+        while (!m_serverSocket.isClosed()) {
+          Socket socket = m_serverSocket.accept();
+          try {
+            converse(socket);
+          } finally {
+            socket.close();
+          }
+        }
+      } catch (IOException exception) {
+        // the server was closed
+      }
+    }
+
+    private void converse(Socket socket) throws IOException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), "US-ASCII"));
+      Writer writer = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+
+      reply(writer, "220 localhost");
+
+      String line;
+      while (null != (line = reader.readLine())) {
+        String command = line.toUpperCase();
+        if (command.startsWith("DATA")) {
+          reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+
+          StringBuilder message = new StringBuilder();
+          while (null != (line = reader.readLine()) && !line.equals(".")) {
+            message.append(line).append("\n");
+          }
+
+          m_messages.add(message.toString());
+          reply(writer, "250 OK");
+        } else if (command.startsWith("QUIT")) {
+          reply(writer, "221 Bye");
+          return;
+        } else {
+          reply(writer, "250 OK");
+        }
+      }
+    }
+
+    private void reply(Writer writer, String reply) throws IOException {
+      writer.write(reply);
+      writer.write("\r\n");
+      writer.flush();
+    }
+  }
+
   /**
    *
    */
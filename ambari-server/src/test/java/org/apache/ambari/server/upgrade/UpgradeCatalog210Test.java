@@ -19,6 +19,7 @@
 package org.apache.ambari.server.upgrade;
 
 import static junit.framework.Assert.assertEquals;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMockBuilder;
 import static org.easymock.EasyMock.createNiceMock;
@@ -102,11 +103,13 @@ public class UpgradeCatalog210Test {
     HostSectionDDL hostSectionDDL = new HostSectionDDL();
     WidgetSectionDDL widgetSectionDDL = new WidgetSectionDDL();
     ViewSectionDDL viewSectionDDL = new ViewSectionDDL();
+    ExecutionCommandSectionDDL executionCommandSectionDDL = new ExecutionCommandSectionDDL();
 
     // Execute any DDL schema changes
     hostSectionDDL.execute(dbAccessor);
     widgetSectionDDL.execute(dbAccessor);
     viewSectionDDL.execute(dbAccessor);
+    executionCommandSectionDDL.execute(dbAccessor);
 
     // Replay sections
     replay(dbAccessor, configuration, resultSet);
@@ -124,6 +127,7 @@ public class UpgradeCatalog210Test {
     hostSectionDDL.verify(dbAccessor);
     widgetSectionDDL.verify(dbAccessor);
     viewSectionDDL.verify(dbAccessor);
+    executionCommandSectionDDL.verify(dbAccessor);
   }
 
   @Test
@@ -448,4 +452,48 @@ public class UpgradeCatalog210Test {
       Assert.assertEquals("cluster_config", clusterConfigColumn.getName());
     }
   }
+
+  /**
+   * Verify execution command fragment changes
+   */
+  class ExecutionCommandSectionDDL implements SectionDDL {
+
+    Capture<List<DBColumnInfo>> fragmentColumnsCapture = new Capture<List<DBColumnInfo>>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(DBAccessor dbAccessor) throws SQLException {
+      dbAccessor.createTable(eq("execution_command_fragment"),
+          capture(fragmentColumnsCapture), eq("request_id"), eq("stage_id"), eq("fragment_hash"));
+
+      dbAccessor.addFKConstraint(eq("execution_command_fragment"),
+          eq("FK_exec_cmd_fragment_stage_id"), aryEq(new String[] { "stage_id", "request_id" }),
+          eq("stage"), aryEq(new String[] { "stage_id", "request_id" }), eq(false));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void verify(DBAccessor dbAccessor) throws SQLException {
+      List<DBColumnInfo> columns = fragmentColumnsCapture.getValue();
+      assertEquals(4, columns.size());
+
+      Map<String, DBColumnInfo> columnsByName = new HashMap<String, DBColumnInfo>();
+      for (DBColumnInfo column : columns) {
+        columnsByName.put(column.getName(), column);
+      }
+
+      Assert.assertEquals(Long.class, columnsByName.get("request_id").getType());
+      Assert.assertFalse(columnsByName.get("request_id").isNullable());
+      Assert.assertEquals(Long.class, columnsByName.get("stage_id").getType());
+      Assert.assertFalse(columnsByName.get("stage_id").isNullable());
+      Assert.assertEquals(String.class, columnsByName.get("fragment_hash").getType());
+      Assert.assertEquals(Integer.valueOf(64), columnsByName.get("fragment_hash").getLength());
+      Assert.assertFalse(columnsByName.get("fragment_hash").isNullable());
+      Assert.assertEquals(byte[].class, columnsByName.get("content").getType());
+    }
+  }
 }
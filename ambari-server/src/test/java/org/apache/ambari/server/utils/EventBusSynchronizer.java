@@ -25,6 +25,7 @@ import org.apache.ambari.server.events.listeners.alerts.AlertMaintenanceModeList
 import org.apache.ambari.server.events.listeners.alerts.AlertReceivedListener;
 import org.apache.ambari.server.events.listeners.alerts.AlertServiceStateListener;
 import org.apache.ambari.server.events.listeners.alerts.AlertStateChangedListener;
+import org.apache.ambari.server.events.listeners.alerts.AlertSummaryIndexListener;
 import org.apache.ambari.server.events.listeners.upgrade.DistributeRepositoriesActionListener;
 import org.apache.ambari.server.events.listeners.upgrade.HostVersionOutOfSyncListener;
 import org.apache.ambari.server.events.publishers.AlertEventPublisher;
@@ -123,6 +124,7 @@ public class EventBusSynchronizer {
     synchronizedBus.register(injector.getInstance(AlertAggregateListener.class));
     synchronizedBus.register(injector.getInstance(AlertReceivedListener.class));
     synchronizedBus.register(injector.getInstance(AlertStateChangedListener.class));
+    synchronizedBus.register(injector.getInstance(AlertSummaryIndexListener.class));
   }
 
   private static void replaceEventBus(Class<?> eventPublisherClass,